@@ -0,0 +1,507 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.filesystem;
+
+import net.jcip.annotations.ThreadSafe;
+import thredds.inventory.*;
+import ucar.unidata.util.StringUtil2;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * An MController that keeps the inventory of each collection in memory, and keeps it current with a WatchService
+ * instead of rescanning the directories.
+ * <p>
+ * Changes are reported to the listener as CollectionUpdateEvents, once a collection has been quiet for quietSecs, so a
+ * burst of new files makes one event. Directories that cant be watched are rescanned whenever recheck is asked for,
+ * as ControllerOS does. Since some file systems (eg NFS) do not report changes made on other machines, each collection
+ * is also rescanned every reconcileSecs, and any differences are reported.
+ * <p>
+ * Collections that are not read through an MController, like GRIB partitions, can list their directories one at a time
+ * with getDirectory().
+ */
+@ThreadSafe
+public class ControllerWatch implements MController {
+  static private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ControllerWatch.class);
+
+  // what we know about one directory
+  private static class Directory {
+    final Path path;
+    Map<String, BasicFileAttributes> entries = new TreeMap<>(); // sorted by name
+    WatchKey key;         // null if not watched
+    boolean dirty = true; // must be read before it is used
+
+    Directory(Path path) {
+      this.path = path;
+    }
+  }
+
+  // a top directory, with or without its subdirectories, and the changes not yet reported
+  private static class Inventory {
+    final Path top;
+    final boolean recursive;
+    final Set<String> collectionNames = new TreeSet<>();
+    final Map<String, CollectionConfig> configs = new HashMap<>(); // collection name -> its file filter, if added with one
+    final Set<String> added = new TreeSet<>();
+    final Set<String> removed = new TreeSet<>();
+    boolean changed;
+    long lastChange, lastReconcile;
+
+    Inventory(Path top, boolean recursive) {
+      this.top = top;
+      this.recursive = recursive;
+    }
+
+    boolean contains(Path dir) {
+      return recursive ? dir.startsWith(top) : dir.equals(top);
+    }
+
+    // is the file in one of the collections? index files never are, so writing them is not a change
+    boolean wants(Path file, BasicFileAttributes attr) {
+      if (attr.isDirectory()) return true;
+      String name = file.getFileName().toString();
+      if (name.endsWith(".gbx9") || name.matches(".*\\.ncx\\d?")) return false;
+      if (configs.isEmpty()) return true;
+      MFile mfile = new MFileOS7(file, attr);
+      for (CollectionConfig mc : configs.values())
+        if (mc.accept(mfile)) return true;
+      return false;
+    }
+  }
+
+  // all fields guarded by this
+  private final Consumer<CollectionUpdateEvent> listener;
+  private final long quietMsecs, reconcileMsecs;
+  private final Map<Path, Directory> dirs = new HashMap<>();
+  private final Map<String, Inventory> inventories = new HashMap<>();
+  private final WatchService watcher; // null if not available
+  private final Thread watchThread;
+  private final ScheduledExecutorService timer;
+  private int countEvents, countRescans, countReconcileChanges;
+
+  /**
+   * Constructor.
+   *
+   * @param listener      is sent an event when a collection changes; may be null
+   * @param quietSecs     report changes after the collection has not changed for this long
+   * @param reconcileSecs rescan each collection this often; 0 means never
+   */
+  public ControllerWatch(Consumer<CollectionUpdateEvent> listener, int quietSecs, int reconcileSecs) {
+    this.listener = listener;
+    this.quietMsecs = 1000L * quietSecs;
+    this.reconcileMsecs = 1000L * reconcileSecs;
+
+    WatchService ws = null;
+    try {
+      ws = FileSystems.getDefault().newWatchService();
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.warn("ControllerWatch: no WatchService, directories will be rescanned", e);
+    }
+    this.watcher = ws;
+
+    if (watcher != null) {
+      watchThread = new Thread(this::processEvents, "ControllerWatch");
+      watchThread.setDaemon(true);
+      watchThread.start();
+    } else {
+      watchThread = null;
+    }
+
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "ControllerWatch-timer");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public synchronized void addCollection(String collectionName, CollectionConfig mc) {
+    Path top = getTop(mc);
+    if (Files.isDirectory(top)) {
+      Inventory inv = getInventory(top, mc.wantSubdirs());
+      inv.collectionNames.add(collectionName);
+      inv.configs.put(collectionName, mc);
+    }
+  }
+
+  /**
+   * List one directory from the inventory; it is read only if it cant be watched.
+   * From now on the directory is watched, and its changes are reported for collectionName.
+   *
+   * @param collectionName report changes for this collection
+   * @param dir            the directory
+   * @return entry name -> attributes, sorted by name
+   * @throws IOException if dir is not a directory
+   */
+  public synchronized SortedMap<String, BasicFileAttributes> getDirectory(String collectionName, Path dir) throws IOException {
+    if (!Files.isDirectory(dir))
+      throw new NotDirectoryException(dir.toString());
+    boolean isNew = !dirs.containsKey(dir);
+    getInventory(dir, false).collectionNames.add(collectionName);
+    Directory d = addDirectory(dir, false);
+    if (d.key == null && !isNew)
+      rescan(d);
+    return new TreeMap<>(d.entries);
+  }
+
+  @Override
+  public Iterator<MFile> getInventoryAll(CollectionConfig mc, boolean recheck) {
+    return collect(mc, true, false, recheck);
+  }
+
+  @Override
+  public Iterator<MFile> getInventoryTop(CollectionConfig mc, boolean recheck) {
+    return collect(mc, false, false, recheck);
+  }
+
+  @Override
+  public Iterator<MFile> getSubdirs(CollectionConfig mc, boolean recheck) {
+    return collect(mc, false, true, recheck);
+  }
+
+  @Override
+  public void close() {
+    timer.shutdownNow();
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (IOException e) {
+        logger.warn("ControllerWatch: close failed", e);
+      }
+      watchThread.interrupt();
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    int nwatched = 0;
+    for (Directory d : dirs.values())
+      if (d.key != null) nwatched++;
+    return String.format("ControllerWatch{collections=%d directories=%d watched=%d events=%d rescans=%d reconcileChanges=%d}",
+            inventories.size(), dirs.size(), nwatched, countEvents, countRescans, countReconcileChanges);
+  }
+
+  ////////////////////////////////////////////////////////////
+  // inventory
+
+  static private Path getTop(CollectionConfig mc) {
+    String path = mc.getDirectoryName();
+    if (path.startsWith("file:")) {
+      path = path.substring(5);
+    }
+    return Paths.get(path);
+  }
+
+  private Inventory getInventory(Path top, boolean recursive) {
+    String key = top + (recursive ? "/**" : "");
+    Inventory inv = inventories.get(key);
+    if (inv == null) {
+      inv = new Inventory(top, recursive);
+      addDirectory(top, recursive);  // before the inventory is added, so the existing files are not reported
+      inv.lastReconcile = System.currentTimeMillis();
+      inventories.put(key, inv);
+    }
+    return inv;
+  }
+
+  // leaves before subdirectories, as ControllerOS
+  private synchronized Iterator<MFile> collect(CollectionConfig mc, boolean recursive, boolean wantDirs, boolean recheck) {
+    Path top = getTop(mc);
+    if (!Files.isDirectory(top)) return null;
+    getInventory(top, recursive);
+
+    List<MFile> result = new ArrayList<>();
+    collect(top, recursive, wantDirs, recheck, mc, result);
+    return result.iterator();
+  }
+
+  private void collect(Path dir, boolean recursive, boolean wantDirs, boolean recheck, CollectionConfig mc, List<MFile> result) {
+    Directory d = addDirectory(dir, false);
+    if (recheck && d.key == null)
+      d.dirty = true;
+    if (d.dirty)
+      rescan(d);
+
+    List<Path> subdirs = new ArrayList<>();
+    for (Map.Entry<String, BasicFileAttributes> entry : d.entries.entrySet()) {
+      Path path = dir.resolve(entry.getKey());
+      MFile mfile = new MFileOS7(path, entry.getValue()); // a new MFile each time, since the caller may set auxInfo
+      if (entry.getValue().isDirectory()) {
+        if (recursive) subdirs.add(path);
+        if (wantDirs && mc.accept(mfile)) result.add(mfile);
+      } else if (!wantDirs && mc.accept(mfile)) {
+        result.add(mfile);
+      }
+    }
+    for (Path subdir : subdirs)
+      collect(subdir, true, wantDirs, recheck, mc, result);
+  }
+
+  // watch and read a directory, and its subdirectories if recursive
+  private Directory addDirectory(Path dir, boolean recursive) {
+    Directory d = dirs.get(dir);
+    if (d == null) {
+      d = new Directory(dir);
+      dirs.put(dir, d);
+      watch(d); // before it is read, so no change is missed
+    }
+    if (d.dirty)
+      rescan(d);
+
+    if (recursive) {
+      for (Map.Entry<String, BasicFileAttributes> entry : d.entries.entrySet())
+        if (entry.getValue().isDirectory())
+          addDirectory(dir.resolve(entry.getKey()), true);
+    }
+    return d;
+  }
+
+  private void removeDirectory(Path dir) {
+    Directory d = dirs.remove(dir);
+    if (d == null) return;
+    if (d.key != null)
+      d.key.cancel();
+    for (Map.Entry<String, BasicFileAttributes> entry : d.entries.entrySet()) {
+      Path path = dir.resolve(entry.getKey());
+      if (entry.getValue().isDirectory())
+        removeDirectory(path);
+      else
+        report(path, entry.getValue(), false, true);
+    }
+  }
+
+  // read the directory, and report any differences from what we had
+  private void rescan(Directory d) {
+    countRescans++;
+    Map<String, BasicFileAttributes> entries = new TreeMap<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(d.path)) {
+      for (Path p : ds) {
+        try {
+          entries.put(p.getFileName().toString(), Files.readAttributes(p, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+          // deleted since the directory was read
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("ControllerWatch: cant read directory {}: {}", d.path, e.getMessage());
+      return;
+    }
+
+    Map<String, BasicFileAttributes> old = d.entries;
+    d.entries = entries;
+    d.dirty = false;
+    for (Map.Entry<String, BasicFileAttributes> entry : old.entrySet()) {
+      if (!entries.containsKey(entry.getKey()))
+        removed(d, entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String, BasicFileAttributes> entry : entries.entrySet())
+      changed(d, entry.getKey(), old.get(entry.getKey()), entry.getValue());
+  }
+
+  // an entry was added (before == null) or may have changed
+  private void changed(Directory d, String name, BasicFileAttributes before, BasicFileAttributes after) {
+    Path path = d.path.resolve(name);
+    if (after.isDirectory()) {
+      if (before == null) {
+        if (isInRecursiveInventory(d.path))
+          addDirectory(path, true);
+        report(path, after, true, false); // a new subdirectory changes the listing of d
+      }
+    } else if (before == null) {
+      report(path, after, true, true);
+    } else if (before.size() != after.size() || !before.lastModifiedTime().equals(after.lastModifiedTime())) {
+      report(path, after, true, false);
+    }
+  }
+
+  private void removed(Directory d, String name, BasicFileAttributes before) {
+    Path path = d.path.resolve(name);
+    if (before.isDirectory()) {
+      removeDirectory(path);
+      report(path, before, false, false);
+    } else
+      report(path, before, false, true);
+  }
+
+  private boolean isInRecursiveInventory(Path dir) {
+    for (Inventory inv : inventories.values())
+      if (inv.recursive && inv.contains(dir)) return true;
+    return false;
+  }
+
+  // a file was added or removed (isNew), or modified; attr is its last known attributes
+  private void report(Path file, BasicFileAttributes attr, boolean added, boolean isNew) {
+    long now = System.currentTimeMillis();
+    String path = StringUtil2.replace(file.toString(), '\\', "/");
+    for (Inventory inv : inventories.values()) {
+      if (!inv.contains(file.getParent()) || !inv.wants(file, attr)) continue;
+      inv.changed = true;
+      inv.lastChange = now;
+      if (isNew && listener != null && !inv.collectionNames.isEmpty()) {
+        if (added) {
+          if (!inv.removed.remove(path)) inv.added.add(path);
+        } else {
+          if (!inv.added.remove(path)) inv.removed.add(path);
+        }
+      }
+    }
+  }
+
+  ////////////////////////////////////////////////////////////
+  // WatchService
+
+  private void watch(Directory d) {
+    if (watcher == null) return;
+    try {
+      d.key = d.path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.debug("ControllerWatch: cant watch {}: {}", d.path, e.getMessage()); // it will be rescanned
+    }
+  }
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watcher.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      List<WatchEvent<?>> events = key.pollEvents();
+      synchronized (this) {
+        try {
+          Directory d = dirs.get((Path) key.watchable());
+          if (d == null || d.key != key) continue;
+          countEvents += events.size();
+
+          for (WatchEvent<?> event : events) {
+            if (event.kind() == OVERFLOW) { // events were lost
+              rescan(d);
+              break;
+            }
+            update(d, ((Path) event.context()).toString());
+          }
+
+          if (!key.reset()) { // no longer accessible
+            d.key = null;
+            d.dirty = true;
+          }
+        } catch (Throwable t) {
+          logger.error("ControllerWatch: processEvents failed", t);
+        }
+      }
+    }
+  }
+
+  private void update(Directory d, String name) {
+    BasicFileAttributes after;
+    try {
+      after = Files.readAttributes(d.path.resolve(name), BasicFileAttributes.class);
+    } catch (IOException e) {
+      after = null; // deleted
+    }
+
+    BasicFileAttributes before = d.entries.get(name);
+    if (after == null) {
+      if (before != null) {
+        d.entries.remove(name);
+        removed(d, name, before);
+      }
+    } else {
+      d.entries.put(name, after);
+      changed(d, name, before, after);
+    }
+  }
+
+  ////////////////////////////////////////////////////////////
+  // reconcile and report, on the timer thread
+
+  private void tick() {
+    List<CollectionUpdateEvent> events = new ArrayList<>();
+    try {
+      synchronized (this) {
+        long now = System.currentTimeMillis();
+        for (Inventory inv : inventories.values()) {
+          if (reconcileMsecs > 0 && now - inv.lastReconcile > reconcileMsecs)
+            reconcile(inv, now);
+
+          if (inv.changed && now - inv.lastChange >= quietMsecs) {
+            for (String collectionName : inv.collectionNames)
+              events.add(new CollectionUpdateEvent(CollectionUpdateType.test, collectionName, "watch",
+                      new ArrayList<>(inv.added), new ArrayList<>(inv.removed)));
+            inv.added.clear();
+            inv.removed.clear();
+            inv.changed = false;
+          }
+        }
+      }
+
+      if (listener != null) {
+        for (CollectionUpdateEvent event : events) {
+          logger.debug("ControllerWatch: {}", event);
+          listener.accept(event);
+        }
+      }
+    } catch (Throwable t) {
+      logger.error("ControllerWatch: tick failed", t);
+    }
+  }
+
+  // rescan everything in the inventory, in case events were missed
+  private void reconcile(Inventory inv, long now) {
+    boolean changed = inv.changed;
+    inv.changed = false;
+    for (Directory d : dirs.values())
+      if (inv.contains(d.path)) d.dirty = true;
+    addDirectory(inv.top, inv.recursive);
+    inv.lastReconcile = now;
+
+    if (inv.changed) {
+      countReconcileChanges++;
+      logger.info("ControllerWatch: rescan of {} found changes that were not reported by the WatchService", inv.top);
+    }
+    inv.changed |= changed;
+  }
+
+}
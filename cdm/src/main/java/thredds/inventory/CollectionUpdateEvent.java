@@ -3,6 +3,9 @@ package thredds.inventory;
 
 import net.jcip.annotations.Immutable;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Events when a fc should be updated.
  * guava.EventBus wires together listeners and sources, and
@@ -15,11 +18,23 @@ public class CollectionUpdateEvent {
   private final CollectionUpdateType type;
   private final String collectionName;
   private final String source;
+  private final List<String> added, removed;
 
   public CollectionUpdateEvent(CollectionUpdateType type, String collectionName, String source) {
+    this(type, collectionName, source, null, null);
+  }
+
+  /**
+   * An event that knows which files changed, eg from a WatchService.
+   * @param added paths of files added to the collection, may be null
+   * @param removed paths of files removed from the collection, may be null
+   */
+  public CollectionUpdateEvent(CollectionUpdateType type, String collectionName, String source, List<String> added, List<String> removed) {
     this.type = type;
     this.collectionName = collectionName;
     this.source = source;
+    this.added = (added == null) ? Collections.<String>emptyList() : Collections.unmodifiableList(added);
+    this.removed = (removed == null) ? Collections.<String>emptyList() : Collections.unmodifiableList(removed);
   }
 
   public CollectionUpdateType getType() {
@@ -30,6 +45,20 @@ public class CollectionUpdateEvent {
     return collectionName;
   }
 
+  public String getSource() {
+    return source;
+  }
+
+  /** @return paths of the files added, if known, else empty */
+  public List<String> getAdded() {
+    return added;
+  }
+
+  /** @return paths of the files removed, if known, else empty */
+  public List<String> getRemoved() {
+    return removed;
+  }
+
   @Override
   public String toString() {
     return collectionName+": "+ type + "source='" + source;
@@ -68,6 +68,15 @@ public interface MController {
    */
   public Iterator<MFile> getSubdirs(CollectionConfig mc, boolean recheck);
 
+  /**
+   * Tell the controller that a collection uses this directory, so it can report changes to it.
+   * Called before the collection is scanned. The default does nothing.
+   * @param collectionName name of the collection
+   * @param mc defines the collection
+   */
+  public default void addCollection(String collectionName, CollectionConfig mc) {
+  }
+
   public void close();
 
 }
@@ -498,6 +498,7 @@ public class MFileCollectionManager extends CollectionManagerAbstract {
       // System.out.printf("MFileCollectionManager reallyScan %s %s%n", mc.getDirectoryName(), CalendarDate.present());
 
       // lOOK: are there any circumstances where we dont need to recheck against OS, ie always use cached values?
+      controller.addCollection(collectionName, mc);
       Iterator<MFile> iter = (mc.wantSubdirs()) ? controller.getInventoryAll(mc, true) : controller.getInventoryTop(mc, true);  /// NCDC wants subdir /global/nomads/nexus/gfsanl/**/gfsanl_3_.*\.grb$
       if (iter == null) {
         logger.error(collectionName + ": Invalid collection= " + mc);
@@ -49,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A Builder of DirectoryPartitions and DirectoryCollections.
@@ -153,14 +154,23 @@ public class DirectoryBuilder {
     if (partitionStatus == PartitionStatus.unknown) {
 
         int countDir=0, countFile=0, count =0;
-        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
-          Iterator<Path> iterator = dirStream.iterator();
-          while (iterator.hasNext() && count++ < 100) {
-            Path p = iterator.next();
-            BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
+        Map<String, BasicFileAttributes> listing = DirectoryCollection.listDirectory(topCollectionName, dir);
+        if (listing != null) {
+          for (BasicFileAttributes attr : listing.values()) {
+            if (count++ >= 100) break;
             if (attr.isDirectory()) countDir++;
             else countFile++;
           }
+        } else {
+          try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+            Iterator<Path> iterator = dirStream.iterator();
+            while (iterator.hasNext() && count++ < 100) {
+              Path p = iterator.next();
+              BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
+              if (attr.isDirectory()) countDir++;
+              else countFile++;
+            }
+          }
         }
       partitionStatus = (countFile > countDir) ? PartitionStatus.isLeaf : PartitionStatus.isDirectoryPartition;
     }
@@ -259,6 +269,24 @@ public class DirectoryBuilder {
     if (debug) System.out.printf("DirectoryBuilder.scanForChildren on %s ", dir);
 
     int count = 0;
+    try {
+      Map<String, BasicFileAttributes> listing = DirectoryCollection.listDirectory(topCollectionName, dir);
+      if (listing != null) {
+        for (Map.Entry<String, BasicFileAttributes> entry : listing.entrySet()) {
+          if (entry.getValue().isDirectory()) {
+            children.add(new DirectoryBuilder(topCollectionName, dir.resolve(entry.getKey()), entry.getValue(), suffix));
+            if (debug && (++count % 10 == 0)) System.out.printf("%d ", count);
+          }
+        }
+        childrenConstructed = true;
+        return;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      childrenConstructed = true;
+      return;
+    }
+
     try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
       for (Path p : ds) {
         BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
@@ -33,6 +33,7 @@
 
 package thredds.inventory.partition;
 
+import thredds.filesystem.ControllerWatch;
 import thredds.filesystem.MFileOS7;
 import thredds.inventory.CollectionAbstract;
 import thredds.inventory.MFile;
@@ -81,6 +82,38 @@ public class DirectoryCollection extends CollectionAbstract {
     return Paths.get(dir.toString(), collectionName + suffix);
   }
 
+  static private volatile ControllerWatch watch; // null means dont use
+
+  /**
+   * Keep the directories of partitioned collections in the inventory of a ControllerWatch, instead of reading them each
+   * time. Each directory is watched once it has been listed, and a change is sent to the watch listener as a
+   * CollectionUpdateEvent for the top collection.
+   * @param controller use this, or null for none (default)
+   */
+  static public void setWatch(ControllerWatch controller) {
+    watch = controller;
+  }
+
+  /**
+   * List a directory from the ControllerWatch or the DirectoryInventoryCache, if either is in use.
+   * @param topCollectionName changes to the directory are reported for this collection
+   * @param dir the directory
+   * @return entry name -> attributes, sorted by name, or null if the caller must read the directory itself
+   * @throws IOException if the directory cant be read
+   */
+  static Map<String, BasicFileAttributes> listDirectory(String topCollectionName, Path dir) throws IOException {
+    ControllerWatch controller = watch;
+    if (controller != null)
+      return controller.getDirectory(topCollectionName, dir);
+
+    DirectoryInventoryCache cache = DirectoryInventoryCache.getInstance();
+    if (cache == null) return null;
+    Map<String, BasicFileAttributes> result = new LinkedHashMap<>();
+    for (DirectoryInventoryCache.Entry entry : cache.getListing(dir).getEntries())
+      result.put(entry.getName(), entry);
+    return result;
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////
 
   final String topCollection;
@@ -130,11 +163,62 @@ public class DirectoryCollection extends CollectionAbstract {
     if (debug) System.out.printf("Close DirectoryCollection %s%n", collectionName);
   }
 
+  /**
+   * Get the current listing of the collection directory from the DirectoryInventoryCache.
+   * Get it once, before checking the collection, and pass it to isUpToDate() and setUpToDate().
+   * @return the listing, or null if the DirectoryInventoryCache is not used
+   * @throws IOException if the directory cant be read
+   */
+  public DirectoryInventoryCache.Listing getListing() throws IOException {
+    DirectoryInventoryCache cache = DirectoryInventoryCache.getInstance();
+    return (cache == null) ? null : cache.getListing(collectionDir);
+  }
+
+  /**
+   * Is the collection unchanged since it was found to be up to date with its index?
+   * @param listing from getListing(), may be null
+   * @param indexLastModified last modified time of the index
+   * @return true if setUpToDate() was called on this listing with this index and the same files in the collection
+   * @throws IOException on read error
+   */
+  public boolean isUpToDate(DirectoryInventoryCache.Listing listing, long indexLastModified) throws IOException {
+    if (listing == null) return false;
+    List<String> paths = new ArrayList<>();
+    try (CloseableIterator<MFile> iter = getFileIterator()) {
+      while (iter.hasNext())
+        paths.add(iter.next().getPath());
+    }
+    return listing.isVerified(indexLastModified, fingerprint(paths));
+  }
+
+  /**
+   * Record that the collection is up to date with its index.
+   * @param listing from getListing() before the collection was checked, may be null
+   * @param indexLastModified last modified time of the index
+   * @param paths the paths of the files that were checked against the index
+   */
+  public void setUpToDate(DirectoryInventoryCache.Listing listing, long indexLastModified, Collection<String> paths) {
+    if (listing == null) return;
+    listing.setVerified(indexLastModified, fingerprint(paths));
+  }
+
+  // identifies the files in the collection, which depends on the filter and olderThan as well as the directory
+  private static long fingerprint(Collection<String> paths) {
+    List<String> sorted = new ArrayList<>(paths);
+    Collections.sort(sorted);
+    long result = 17;
+    for (String path : sorted)
+      result = 31 * result + path.hashCode();
+    return result;
+  }
+
   // returns everything in the current directory, subject to sfilter
   private class MyFileIterator implements CloseableIterator<MFile> {
     int debugNum;
     DirectoryStream<Path> dirStream;
     Iterator<Path> dirStreamIterator;
+    Path dir;
+    Iterator<Map.Entry<String, BasicFileAttributes>> cachedIterator; // if using the ControllerWatch or DirectoryInventoryCache
     MFile nextMFile;
     int count = 0;
 
@@ -143,6 +227,17 @@ public class DirectoryCollection extends CollectionAbstract {
         debugNum = debugCount++;
         System.out.printf(" MyFileIterator %s (%d)", dir, debugNum);
       }
+      this.dir = dir;
+      try {
+        Map<String, BasicFileAttributes> listing = listDirectory(topCollection, dir);
+        if (listing != null) {
+          cachedIterator = listing.entrySet().iterator();
+          return;
+        }
+      } catch (IOException ioe) {
+        logger.error("Failed to list directory "+dir.getFileName(), ioe);
+        throw ioe;
+      }
       try {
         dirStream = Files.newDirectoryStream(dir, new MyStreamFilter());
         dirStreamIterator = dirStream.iterator();
@@ -153,6 +248,7 @@ public class DirectoryCollection extends CollectionAbstract {
     }
 
     public boolean hasNext() {
+      if (cachedIterator != null) return hasNextCached();
       while (true) {
         // if (debug && count % 100 == 0) System.out.printf("%d ", count);
         count++;
@@ -180,6 +276,30 @@ public class DirectoryCollection extends CollectionAbstract {
       }
     }
 
+    private boolean hasNextCached() {
+      long now = System.currentTimeMillis();
+      MyStreamFilter filter = new MyStreamFilter();
+      try {
+        while (cachedIterator.hasNext()) {
+          count++;
+          Map.Entry<String, BasicFileAttributes> entry = cachedIterator.next();
+          BasicFileAttributes attr = entry.getValue();
+          if (attr.isDirectory()) continue;
+          long millisSinceModified = now - attr.lastModifiedTime().toMillis();
+          if (millisSinceModified < olderThanMillis)
+            continue;
+          Path nextPath = dir.resolve(entry.getKey());
+          if (!filter.accept(nextPath)) continue;
+          nextMFile = new MFileOS7(nextPath, attr);
+          return true;
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      nextMFile = null;
+      return false;
+    }
+
     public MFile next() {
       if (nextMFile == null) throw new NoSuchElementException();
       return nextMFile;
@@ -193,7 +313,7 @@ public class DirectoryCollection extends CollectionAbstract {
     // then we could use the try-with-resource
     public void close() throws IOException {
       if (debug) System.out.printf(" closed %d (%d)%n", count, debugNum);
-      dirStream.close();
+      if (dirStream != null) dirStream.close();
     }
   }
 
@@ -204,6 +324,17 @@ public class DirectoryCollection extends CollectionAbstract {
   public void iterateOverMFileCollection(Visitor visit) throws IOException {
     if (debug) System.out.printf(" iterateOverMFileCollection %s ", collectionDir);
     int count = 0;
+    Map<String, BasicFileAttributes> listing = listDirectory(topCollection, collectionDir);
+    if (listing != null) {
+      MyStreamFilter filter = new MyStreamFilter();
+      for (Map.Entry<String, BasicFileAttributes> entry : listing.entrySet()) {
+        Path p = collectionDir.resolve(entry.getKey());
+        if (!entry.getValue().isDirectory() && filter.accept(p))
+          visit.consume(new MFileOS7(p, entry.getValue()));
+      }
+      return;
+    }
+
     try (DirectoryStream<Path> ds = Files.newDirectoryStream(collectionDir, new MyStreamFilter())) {
       for (Path p : ds) {
         try {
@@ -0,0 +1,326 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.inventory.partition;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A persistent cache of directory listings, for partitioned collections with many directories that rarely change.
+ * <p>
+ * The listing of a directory (name, size and last modified of each entry) is used as long as the last modified time of the
+ * directory is unchanged, so an update over unchanged directories does not list them or read the attributes of their files.
+ * A file rewritten in place does not change its directory, so is not seen: use this only where files are added, removed
+ * or renamed, not modified.
+ * <p>
+ * The listings are kept in one file, read when the cache is opened and written by save().
+ */
+@ThreadSafe
+public class DirectoryInventoryCache {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DirectoryInventoryCache.class);
+  static private final int MAGIC = 0x44494e56; // "DINV"
+  static private final int VERSION = 1;
+  static private final long MTIME_RESOLUTION = 2000; // dont trust a listing made this soon after the directory changed
+
+  static private volatile DirectoryInventoryCache instance; // null means dont use
+
+  /**
+   * Set the cache used by DirectoryCollection and DirectoryBuilder.
+   * @param cache use this cache, or null for none (default)
+   */
+  static public void setInstance(DirectoryInventoryCache cache) {
+    instance = cache;
+  }
+
+  /** @return the cache to use, or null if none */
+  static public DirectoryInventoryCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * One entry in a directory. Also serves as its BasicFileAttributes, for MFileOS7.
+   */
+  static public class Entry implements BasicFileAttributes {
+    private final String name;
+    private final boolean isDirectory;
+    private final long size, lastModified;
+
+    Entry(String name, boolean isDirectory, long size, long lastModified) {
+      this.name = name;
+      this.isDirectory = isDirectory;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+      return FileTime.fromMillis(lastModified);
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+      return lastModifiedTime();
+    }
+
+    @Override
+    public FileTime creationTime() {
+      return lastModifiedTime();
+    }
+
+    @Override
+    public boolean isRegularFile() {
+      return !isDirectory;
+    }
+
+    @Override
+    public boolean isDirectory() {
+      return isDirectory;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+      return false;
+    }
+
+    @Override
+    public boolean isOther() {
+      return false;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    @Override
+    public Object fileKey() {
+      return null;
+    }
+  }
+
+  /**
+   * The listing of one directory, sorted by name.
+   * Also remembers the last time the collection in the directory was found to be up to date with its index.
+   */
+  static public class Listing {
+    private final long dirLastModified;
+    private final long scanned;
+    private final List<Entry> entries;
+    private long verifiedIndex, verifiedFingerprint; // guarded by this
+
+    Listing(long dirLastModified, long scanned, List<Entry> entries) {
+      this.dirLastModified = dirLastModified;
+      this.scanned = scanned;
+      this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> getEntries() {
+      return entries;
+    }
+
+    /**
+     * Was the collection found up to date against this index, with these files?
+     * @param indexLastModified last modified time of the index
+     * @param fingerprint identifies the files in the collection
+     * @return true if setVerified() was called with the same values since the directory last changed
+     */
+    public synchronized boolean isVerified(long indexLastModified, long fingerprint) {
+      return verifiedIndex != 0 && verifiedIndex == indexLastModified && verifiedFingerprint == fingerprint;
+    }
+
+    public synchronized void setVerified(long indexLastModified, long fingerprint) {
+      this.verifiedIndex = indexLastModified;
+      this.verifiedFingerprint = fingerprint;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////
+
+  private final File file;
+  private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+  private volatile boolean dirty;
+  private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+
+  /**
+   * Open the cache, reading the listings in the file if it exists.
+   * @param file keep the listings in this file
+   */
+  public DirectoryInventoryCache(File file) {
+    this.file = file;
+    if (file.exists()) {
+      try {
+        read();
+      } catch (IOException e) {
+        logger.warn("DirectoryInventoryCache: cant read {}, starting empty: {}", file, e.getMessage());
+        listings.clear();
+      }
+    }
+  }
+
+  /**
+   * Get the listing of a directory, from the cache if the directory has not changed since it was listed.
+   * @param dir the directory
+   * @return its listing
+   * @throws IOException if the directory cant be read
+   */
+  public Listing getListing(Path dir) throws IOException {
+    String key = dir.toString();
+    BasicFileAttributes attr;
+    try {
+      attr = Files.readAttributes(dir, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      if (listings.remove(key) != null) dirty = true;
+      throw e;
+    }
+    long dirLastModified = attr.lastModifiedTime().toMillis();
+
+    Listing listing = listings.get(key);
+    if (listing != null && listing.dirLastModified == dirLastModified && listing.scanned - dirLastModified > MTIME_RESOLUTION) {
+      hits.incrementAndGet();
+      return listing;
+    }
+
+    misses.incrementAndGet();
+    listing = scan(dir, dirLastModified);
+    listings.put(key, listing);
+    dirty = true;
+    return listing;
+  }
+
+  private Listing scan(Path dir, long dirLastModified) throws IOException {
+    long scanned = System.currentTimeMillis(); // before reading, so a change while reading is seen next time
+    List<Entry> entries = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+      for (Path p : ds) {
+        try {
+          BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
+          entries.add(new Entry(p.getFileName().toString(), attr.isDirectory(), attr.size(), attr.lastModifiedTime().toMillis()));
+        } catch (IOException ioe) {
+          // catch error and skip file
+          logger.warn("DirectoryInventoryCache: failed to read attributes of {}: {}", p, ioe.getMessage());
+        }
+      }
+    }
+    Collections.sort(entries, (e1, e2) -> e1.name.compareTo(e2.name));
+    return new Listing(dirLastModified, scanned, entries);
+  }
+
+  /**
+   * Write the listings to the file, if anything has changed.
+   * @throws IOException on write error
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty) return;
+    dirty = false;
+
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs())
+      throw new IOException("Cant create directory " + parent);
+
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      List<Map.Entry<String, Listing>> all = new ArrayList<>(listings.entrySet());
+      out.writeInt(all.size());
+      for (Map.Entry<String, Listing> e : all) {
+        Listing listing = e.getValue();
+        out.writeUTF(e.getKey());
+        out.writeLong(listing.dirLastModified);
+        out.writeLong(listing.scanned);
+        synchronized (listing) {
+          out.writeLong(listing.verifiedIndex);
+          out.writeLong(listing.verifiedFingerprint);
+        }
+        out.writeInt(listing.entries.size());
+        for (Entry entry : listing.entries) {
+          out.writeUTF(entry.name);
+          out.writeBoolean(entry.isDirectory);
+          out.writeLong(entry.size);
+          out.writeLong(entry.lastModified);
+        }
+      }
+    } catch (IOException ioe) {
+      dirty = true;
+      throw ioe;
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    logger.debug("DirectoryInventoryCache: wrote {} listings to {}", listings.size(), file);
+  }
+
+  private void read() throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+      if (in.readInt() != MAGIC) throw new IOException("not a DirectoryInventoryCache file");
+      int version = in.readInt();
+      if (version != VERSION) throw new IOException("unknown version " + version);
+      int nlistings = in.readInt();
+      for (int i = 0; i < nlistings; i++) {
+        String key = in.readUTF();
+        long dirLastModified = in.readLong();
+        long scanned = in.readLong();
+        long verifiedIndex = in.readLong();
+        long verifiedFingerprint = in.readLong();
+        int n = in.readInt();
+        List<Entry> entries = new ArrayList<>(n);
+        for (int j = 0; j < n; j++)
+          entries.add(new Entry(in.readUTF(), in.readBoolean(), in.readLong(), in.readLong()));
+        Listing listing = new Listing(dirLastModified, scanned, entries);
+        listing.setVerified(verifiedIndex, verifiedFingerprint);
+        listings.put(key, listing);
+      }
+    }
+    logger.info("DirectoryInventoryCache: read {} listings from {}", listings.size(), file);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("DirectoryInventoryCache{file=%s listings=%d hits=%d misses=%d}", file, listings.size(), hits.get(), misses.get());
+  }
+}
@@ -37,6 +37,8 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
 import java.nio.*;
 
 /**
@@ -450,6 +452,82 @@ public abstract class Array {
     return indexCalc.getIndexIterator(this);
   }
 
+  /**
+   * Pass each element of the array, in canonical order, to the action, converted to double if needed.
+   * Loops directly over the backing storage, so is much faster than an IndexIterator.
+   * Only for numeric types.
+   *
+   * @param action called for each element
+   */
+  public void forEachDouble(final DoubleConsumer action) {
+    indexCalc.forEachRun((start, stride, n) -> {
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        action.accept(getDouble(elem));
+    });
+  }
+
+  /**
+   * Combine the elements of the array, in canonical order, converted to double if needed.
+   * The result is op(...op(op(identity, e0), e1)..., en-1).
+   * Only for numeric types.
+   *
+   * @param identity start with this value
+   * @param op       combine the result so far with the next element
+   * @return the final result, or identity if the array is empty
+   */
+  public double reduceDouble(double identity, final DoubleBinaryOperator op) {
+    final double[] result = new double[]{identity};
+    indexCalc.forEachRun((start, stride, n) -> {
+      double r = result[0];
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        r = op.applyAsDouble(r, getDouble(elem));
+      result[0] = r;
+    });
+    return result[0];
+  }
+
+  /**
+   * Copy the elements of the array, in canonical order, into a java double array, converting if needed.
+   *
+   * @param dest    copy into here, must have room for getSize() elements starting at destOff
+   * @param destOff starting position in dest
+   */
+  public void copyTo(final double[] dest, int destOff) {
+    final int[] pos = new int[]{destOff};
+    indexCalc.forEachRun((start, stride, n) -> {
+      int p = pos[0];
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        dest[p++] = getDouble(elem);
+      pos[0] = p;
+    });
+  }
+
+  /**
+   * Copy the elements of the array, in canonical order, into a java float array, converting if needed.
+   *
+   * @param dest    copy into here, must have room for getSize() elements starting at destOff
+   * @param destOff starting position in dest
+   */
+  public void copyTo(final float[] dest, int destOff) {
+    final int[] pos = new int[]{destOff};
+    indexCalc.forEachRun((start, stride, n) -> {
+      int p = pos[0];
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        dest[p++] = getFloat(elem);
+      pos[0] = p;
+    });
+  }
+
+  /**
+   * Is the array in canonical order over its whole backing storage?
+   * If so, element i of the array is element i of getStorage().
+   *
+   * @return true if the backing storage can be used directly
+   */
+  boolean isContiguous() {
+    return indexCalc.isFastIterator() && !isConstant();
+  }
+
   /**
    * Get the number of dimensions of the array.
    *
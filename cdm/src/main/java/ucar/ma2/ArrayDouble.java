@@ -34,6 +34,8 @@ package ucar.ma2;
 
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
 
 /**
  * Concrete implementation of Array specialized for doubles.
@@ -107,6 +109,57 @@ public class ArrayDouble extends Array {
   /* Get underlying primitive array storage. CAUTION! You may invalidate your warrentee! */
   public Object getStorage() { return storageD; }
 
+  @Override
+  public void forEachDouble(final DoubleConsumer action) {
+    final double[] data = storageD;
+    indexCalc.forEachRun((start, stride, n) -> {
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        action.accept(data[elem]);
+    });
+  }
+
+  @Override
+  public double reduceDouble(double identity, final DoubleBinaryOperator op) {
+    final double[] data = storageD;
+    final double[] result = new double[]{identity};
+    indexCalc.forEachRun((start, stride, n) -> {
+      double r = result[0];
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        r = op.applyAsDouble(r, data[elem]);
+      result[0] = r;
+    });
+    return result[0];
+  }
+
+  @Override
+  public void copyTo(final double[] dest, int destOff) {
+    final double[] data = storageD;
+    final int[] pos = new int[]{destOff};
+    indexCalc.forEachRun((start, stride, n) -> {
+      int p = pos[0];
+      if (stride == 1) {
+        System.arraycopy(data, start, dest, p, n);
+        p += n;
+      } else {
+        for (int i = 0, elem = start; i < n; i++, elem += stride)
+          dest[p++] = data[elem];
+      }
+      pos[0] = p;
+    });
+  }
+
+  @Override
+  public void copyTo(final float[] dest, int destOff) {
+    final double[] data = storageD;
+    final int[] pos = new int[]{destOff};
+    indexCalc.forEachRun((start, stride, n) -> {
+      int p = pos[0];
+      for (int i = 0, elem = start; i < n; i++, elem += stride)
+        dest[p++] = (float) data[elem];
+      pos[0] = p;
+    });
+  }
+
   // copy from javaArray to storage using the iterator: used by factory( Object);
   protected void copyFrom1DJavaArray(IndexIterator iter, Object javaArray) {
     double[] ja = (double []) javaArray;
@@ -502,6 +502,59 @@ public class Index implements Cloneable {
     return fastIterator;
   }
 
+  /**
+   * Callback for forEachRun().
+   */
+  interface RunVisitor {
+    /**
+     * Elements start, start + stride, ... start + (n-1)*stride of the backing storage are next in canonical order.
+     */
+    void visit(int start, int stride, int n);
+  }
+
+  /**
+   * Visit the elements of the backing storage in canonical order, one run along the innermost dimension at a time.
+   * When the Index is in canonical order, this is a single run over the whole storage.
+   * Not for variable length arrays.
+   *
+   * @param visitor called for each run
+   */
+  void forEachRun(RunVisitor visitor) {
+    if (size <= 0)
+      return;
+    if (this instanceof IndexConstant) {
+      visitor.visit(0, 0, (int) size);
+      return;
+    }
+    if (fastIterator) {
+      visitor.visit(0, 1, (int) size);
+      return;
+    }
+    if (rank == 0) {
+      visitor.visit(offset, 1, 1);
+      return;
+    }
+
+    int inner = rank - 1;
+    int[] counter = new int[inner];
+    int start = offset;
+    while (true) {
+      visitor.visit(start, stride[inner], shape[inner]);
+
+      // odometer over the outer dimensions
+      int k = inner - 1;
+      for (; k >= 0; k--) {
+        start += stride[k];
+        if (++counter[k] < shape[k])
+          break;
+        start -= stride[k] * shape[k];
+        counter[k] = 0;
+      }
+      if (k < 0)
+        return;
+    }
+  }
+
   /**
    * Get the total number of elements in the array.
    *
@@ -34,6 +34,9 @@ package ucar.ma2;
 
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import ucar.nc2.util.Misc;
 
 /**
@@ -43,6 +46,9 @@ import ucar.nc2.util.Misc;
  * @see Index
  */
 public class MAMath {
+  // getStats() works on blocks of this many elements, and uses the fork-join pool for arrays at least this big
+  static final int STATS_BLOCK = 64 * 1024;
+  static final long STATS_PARALLEL_SIZE = 1024 * 1024;
 
   /**
    * Add elements of two arrays together, allocating the result array.
@@ -274,6 +280,11 @@ public class MAMath {
     if (!conformable(a, result))
       throw new IllegalArgumentException("copy arrays are not conformable");
 
+    if (result instanceof ArrayDouble && result.isContiguous()) {
+      a.copyTo((double[]) result.getStorage(), 0);
+      return;
+    }
+
     IndexIterator iterA = a.getIndexIterator();
     IndexIterator iterR = result.getIndexIterator();
     while (iterA.hasNext())
@@ -294,6 +305,11 @@ public class MAMath {
     if (!conformable(a, result))
       throw new IllegalArgumentException("copy arrays are not conformable");
 
+    if (result instanceof ArrayFloat && result.isContiguous()) {
+      a.copyTo((float[]) result.getStorage(), 0);
+      return;
+    }
+
     IndexIterator iterA = a.getIndexIterator();
     IndexIterator iterR = result.getIndexIterator();
     while (iterA.hasNext())
@@ -454,28 +470,14 @@ public class MAMath {
     return rank;
   }
 
+  // NaN compares false, so the comparisons below skip it
+
   public static double getMinimum(Array a) {
-    IndexIterator iter = a.getIndexIterator();
-    double min = Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
-      if (Double.isNaN(val)) continue;
-      if (val < min)
-        min = val;
-    }
-    return min;
+    return a.reduceDouble(Double.MAX_VALUE, (min, val) -> (val < min) ? val : min);
   }
 
   public static double getMaximum(Array a) {
-    IndexIterator iter = a.getIndexIterator();
-    double max = -Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
-      if (Double.isNaN(val)) continue;
-      if (val > max)
-        max = val;
-    }
-    return max;
+    return a.reduceDouble(-Double.MAX_VALUE, (max, val) -> (val > max) ? val : max);
   }
 
   /**
@@ -485,76 +487,60 @@ public class MAMath {
    * @return MinMax
    */
   public static MAMath.MinMax getMinMax(Array a) {
-    IndexIterator iter = a.getIndexIterator();
-    double max = -Double.MAX_VALUE;
-    double min = Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
-      if (Double.isNaN(val)) continue;
-      if (val > max)
-        max = val;
-      if (val < min)
-        min = val;
-    }
-    return new MinMax(min, max);
+    if (a.getSize() >= STATS_PARALLEL_SIZE)
+      return getStats(a, null).getMinMax();
+
+    final MinMax result = new MinMax(Double.MAX_VALUE, -Double.MAX_VALUE);
+    a.forEachDouble(val -> {
+      if (val > result.max)
+        result.max = val;
+      if (val < result.min)
+        result.min = val;
+    });
+    return result;
   }
 
   public static MAMath.MinMax getMinMaxSkipMissingData(Array a, IsMissingEvaluator eval) {
     if (eval == null || !eval.hasMissing())
       return MAMath.getMinMax(a);
+    if (a.getSize() >= STATS_PARALLEL_SIZE)
+      return getStats(a, eval).getMinMax();
 
-    IndexIterator iter = a.getIndexIterator();
-    double max = -Double.MAX_VALUE;
-    double min = Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
+    final MinMax result = new MinMax(Double.MAX_VALUE, -Double.MAX_VALUE);
+    a.forEachDouble(val -> {
       if (eval.isMissing(val))
-        continue;
-      if (val > max)
-        max = val;
-      if (val < min)
-        min = val;
-    }
-    return new MAMath.MinMax(min, max);
+        return;
+      if (val > result.max)
+        result.max = val;
+      if (val < result.min)
+        result.min = val;
+    });
+    return result;
   }
 
 
-  public static double getMinimumSkipMissingData(Array a, double missingValue) {
-    IndexIterator iter = a.getIndexIterator();
-    double min = Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
-      if ((val != missingValue) && (val < min))
-        min = val;
-    }
-    return min;
+  public static double getMinimumSkipMissingData(Array a, final double missingValue) {
+    return a.reduceDouble(Double.MAX_VALUE, (min, val) -> ((val != missingValue) && (val < min)) ? val : min);
   }
 
-  public static double getMaximumSkipMissingData(Array a, double missingValue) {
-    IndexIterator iter = a.getIndexIterator();
-    double max = -Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
-      if ((val != missingValue) && (val > max))
-        max = val;
-    }
-    return max;
+  public static double getMaximumSkipMissingData(Array a, final double missingValue) {
+    return a.reduceDouble(-Double.MAX_VALUE, (max, val) -> ((val != missingValue) && (val > max)) ? val : max);
   }
 
-  public static MAMath.MinMax getMinMaxSkipMissingData(Array a, double missingValue) {
-    IndexIterator iter = a.getIndexIterator();
-    double max = -Double.MAX_VALUE;
-    double min = Double.MAX_VALUE;
-    while (iter.hasNext()) {
-      double val = iter.getDoubleNext();
+  public static MAMath.MinMax getMinMaxSkipMissingData(Array a, final double missingValue) {
+    if (a.getSize() >= STATS_PARALLEL_SIZE)
+      return getStats(a, missingValue).getMinMax();
+
+    final MinMax result = new MinMax(Double.MAX_VALUE, -Double.MAX_VALUE);
+    a.forEachDouble(val -> {
       if (val == missingValue)
-        continue;
-      if (val > max)
-        max = val;
-      if (val < min)
-        min = val;
-    }
-    return new MinMax(min, max);
+        return;
+      if (val > result.max)
+        result.max = val;
+      if (val < result.min)
+        result.min = val;
+    });
+    return result;
   }
 
 
@@ -579,12 +565,7 @@ public class MAMath {
    * @return sum of elements
    */
   public static double sumDouble(Array a) {
-    double sum = 0;
-    IndexIterator iterA = a.getIndexIterator();
-    while (iterA.hasNext()) {
-      sum += iterA.getDoubleNext();
-    }
-    return sum;
+    return a.reduceDouble(0, (sum, val) -> sum + val);
   }
 
   /**
@@ -594,16 +575,208 @@ public class MAMath {
    * @param missingValue skip values equal to this, or which are NaNs
    * @return sum of elements
    */
-  public static double sumDoubleSkipMissingData(Array a, double missingValue) {
-    double sum = 0;
-    IndexIterator iterA = a.getIndexIterator();
-    while (iterA.hasNext()) {
-      double val = iterA.getDoubleNext();
-      if ((val == missingValue) || Double.isNaN(val))
-        continue;
-      sum += val;
+  public static double sumDoubleSkipMissingData(Array a, final double missingValue) {
+    if (a.getSize() >= STATS_PARALLEL_SIZE)
+      return getStats(a, missingValue).getSum();
+    return a.reduceDouble(0, (sum, val) -> ((val == missingValue) || Double.isNaN(val)) ? sum : sum + val);
+  }
+
+  /**
+   * Compute the statistics of the valid values of an array in one pass, getting values as doubles.
+   * NaNs are always skipped. Large arrays are split into blocks which are processed in parallel on the
+   * fork-join common pool, so eval must be safe to call from several threads.
+   * The blocks and the order they are combined in depend only on the size of the array, so the results are
+   * the same from run to run.
+   *
+   * @param a    the array
+   * @param eval skip values for which eval.isMissing() is true; may be null
+   * @return Stats
+   */
+  public static Stats getStats(Array a, IsMissingEvaluator eval) {
+    if (eval != null && !eval.hasMissing())
+      eval = null;
+    StatsTask task = new StatsTask(a, a.isContiguous(), 0, (int) a.getSize(), eval);
+    if (a.getSize() >= STATS_PARALLEL_SIZE)
+      return ForkJoinPool.commonPool().invoke(task);
+    return task.compute();
+  }
+
+  /**
+   * Compute the statistics of an array, skipping missingValue and NaNs.
+   *
+   * @param a            the array
+   * @param missingValue skip values equal to this
+   * @return Stats
+   */
+  public static Stats getStats(Array a, final double missingValue) {
+    return getStats(a, new IsMissingEvaluator() {
+      public boolean hasMissing() {
+        return true;
+      }
+
+      public boolean isMissing(double val) {
+        return val == missingValue;
+      }
+    });
+  }
+
+  /**
+   * Summary statistics of the valid values of an array.
+   */
+  public static class Stats {
+    private long count;
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+    private double sum;
+    private double m2; // sum of squared differences from the mean
+
+    /** number of valid values */
+    public long getCount() {
+      return count;
+    }
+
+    /** smallest valid value, or Double.MAX_VALUE if none */
+    public double getMin() {
+      return min;
+    }
+
+    /** largest valid value, or -Double.MAX_VALUE if none */
+    public double getMax() {
+      return max;
+    }
+
+    public MinMax getMinMax() {
+      return new MinMax(min, max);
+    }
+
+    /** sum of valid values */
+    public double getSum() {
+      return sum;
+    }
+
+    /** mean of valid values, or NaN if none */
+    public double getMean() {
+      return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    /** population variance of valid values, or NaN if none */
+    public double getVariance() {
+      return (count == 0) ? Double.NaN : m2 / count;
+    }
+
+    public double getStandardDeviation() {
+      return Math.sqrt(getVariance());
+    }
+
+    // pairwise combination (Chan et al), so sums are not accumulated into one ever growing total
+    Stats combine(Stats other) {
+      if (other.count == 0) return this;
+      if (count == 0) return other;
+      Stats result = new Stats();
+      result.count = count + other.count;
+      result.min = Math.min(min, other.min);
+      result.max = Math.max(max, other.max);
+      result.sum = sum + other.sum;
+      double delta = other.getMean() - getMean();
+      result.m2 = m2 + other.m2 + delta * delta * ((double) count * other.count / result.count);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Stats{" +
+              "count=" + count +
+              ", min=" + min +
+              ", max=" + max +
+              ", mean=" + getMean() +
+              ", stddev=" + getStandardDeviation() +
+              '}';
+    }
+  }
+
+  // splits the elements [start, end) in canonical order at block boundaries until they fit in one block
+  private static class StatsTask extends RecursiveTask<Stats> {
+    private static final long serialVersionUID = 1L;
+
+    private final Array a;
+    private final boolean contiguous;
+    private final int start, end;
+    private final IsMissingEvaluator eval;
+
+    StatsTask(Array a, boolean contiguous, int start, int end, IsMissingEvaluator eval) {
+      this.a = a;
+      this.contiguous = contiguous;
+      this.start = start;
+      this.end = end;
+      this.eval = eval;
+    }
+
+    @Override
+    protected Stats compute() {
+      int nblocks = (end - start + STATS_BLOCK - 1) / STATS_BLOCK;
+      if (nblocks <= 1)
+        return computeBlock();
+
+      int mid = start + (nblocks / 2) * STATS_BLOCK;
+      StatsTask left = new StatsTask(a, contiguous, start, mid, eval);
+      StatsTask right = new StatsTask(a, contiguous, mid, end, eval);
+      if (ForkJoinTask.inForkJoinPool()) {
+        right.fork();
+        Stats leftStats = left.compute();
+        return leftStats.combine(right.join());
+      }
+      return left.compute().combine(right.compute());
+    }
+
+    // two passes over one block, which is small enough to stay in cache: count/min/max/sum, then m2
+    private Stats computeBlock() {
+      Stats stats = new Stats();
+      if (start >= end)
+        return stats;
+      Index index = contiguous ? null : a.getIndex();
+      double mean = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        if (index != null)
+          index.set(counter(index.getShape(), start));
+        for (int i = start; i < end; i++) {
+          double val;
+          if (index == null) {
+            val = a.getDouble(i);
+          } else {
+            val = a.getDouble(index);
+            index.incr();
+          }
+          if (Double.isNaN(val) || (eval != null && eval.isMissing(val)))
+            continue;
+
+          if (pass == 0) {
+            stats.count++;
+            stats.sum += val;
+            if (val < stats.min)
+              stats.min = val;
+            if (val > stats.max)
+              stats.max = val;
+          } else {
+            double delta = val - mean;
+            stats.m2 += delta * delta;
+          }
+        }
+        if (stats.count == 0)
+          break;
+        mean = stats.sum / stats.count;
+      }
+      return stats;
+    }
+
+    // the index counter of the nth element in canonical order
+    private static int[] counter(int[] shape, int n) {
+      int[] counter = new int[shape.length];
+      for (int k = shape.length - 1; k >= 0; k--) {
+        counter[k] = n % shape[k];
+        n /= shape[k];
+      }
+      return counter;
     }
-    return sum;
   }
 
   /**
@@ -887,6 +887,25 @@ public class NetcdfFileWriter implements Closeable {
     defineMode = false;
   }
 
+  /**
+   * Instead of create(), leave define mode without creating the file, so that the metadata can be written
+   * to a stream by ucar.nc2.iosp.netcdf3.N3outputStreamWriter. Only for new netcdf-3 files.
+   * No data can be written through this object afterwards.
+   *
+   * @return the NetcdfFile holding the metadata
+   */
+  public NetcdfFile createForStreaming() {
+    if (!defineMode)
+      throw new UnsupportedOperationException("not in define mode");
+    if (!isNewFile || version != Version.netcdf3)
+      throw new UnsupportedOperationException("can only stream a new netcdf-3 file");
+
+    ncfile.finish();
+    defineMode = false;
+    spiw = null; // nothing was opened
+    return ncfile;
+  }
+
   ////////////////////////////////////////////
   // redefine
 
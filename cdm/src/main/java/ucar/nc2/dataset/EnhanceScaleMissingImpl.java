@@ -651,6 +651,32 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
     return data;
   }
 
+  /**
+   * Same as convertScaleOffsetMissing(Array), but put the result into a float array supplied by the caller,
+   * rather than allocating a new Array.
+   *
+   * @param in     data to convert; may be changed in place if there is no scale/offset
+   * @param out    put the converted values here, in canonical order
+   * @param outOff starting position in out; there must be room for in.getSize() values
+   */
+  public void convertScaleOffsetMissing(Array in, float[] out, int outOff) {
+    if (!convertPacked(in, out, null, outOff))
+      convertScaleOffsetMissing(in).copyTo(out, outOff);
+  }
+
+  /**
+   * Same as convertScaleOffsetMissing(Array), but put the result into a double array supplied by the caller,
+   * rather than allocating a new Array.
+   *
+   * @param in     data to convert; may be changed in place if there is no scale/offset
+   * @param out    put the converted values here, in canonical order
+   * @param outOff starting position in out; there must be room for in.getSize() values
+   */
+  public void convertScaleOffsetMissing(Array in, double[] out, int outOff) {
+    if (!convertPacked(in, null, out, outOff))
+      convertScaleOffsetMissing(in).copyTo(out, outOff);
+  }
+
   /**
    * Convert Data with scale and offset.
    * Also translate missing data to NaNs if useNaNs = true.
@@ -662,6 +688,16 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
     if (!hasScaleOffset) return in;
     if (debugRead) System.out.println("convertScaleOffset ");
 
+    if (convertedDataType == DataType.FLOAT) {
+      float[] storage = new float[(int) in.getSize()];
+      if (convertPacked(in, storage, null, 0))
+        return Array.factory(convertedDataType, in.getShape(), storage);
+    } else if (convertedDataType == DataType.DOUBLE) {
+      double[] storage = new double[(int) in.getSize()];
+      if (convertPacked(in, null, storage, 0))
+        return Array.factory(convertedDataType, in.getShape(), storage);
+    }
+
     Array out = Array.factory(convertedDataType, in.getShape());
     IndexIterator iterIn = in.getIndexIterator();
     IndexIterator iterOut = out.getIndexIterator();
@@ -710,6 +746,75 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
     }
   }
 
+  /**
+   * Convert packed byte, short or int data with scale and offset, and translate missing data to NaNs if useNaNs = true,
+   * in one loop over the packed java array. Exactly one of fout, dout must be non-null.
+   *
+   * @return false if in is not packed byte, short or int data, and nothing was done.
+   */
+  private boolean convertPacked(Array in, float[] fout, double[] dout, int off) {
+    if (!hasScaleOffset || in.isConstant())
+      return false;
+    Class<?> elemType = in.getElementType();
+    if (elemType != byte.class && elemType != short.class && elemType != int.class)
+      return false;
+
+    boolean unsigned = isUnsigned || in.isUnsigned();
+    Object packed = in.get1DJavaArray(in.getDataType()); // no copy if already in canonical order
+    int n = (int) in.getSize();
+    if (elemType == byte.class)
+      convertPacked((byte[]) packed, n, unsigned, fout, dout, off);
+    else if (elemType == short.class)
+      convertPacked((short[]) packed, n, unsigned, fout, dout, off);
+    else
+      convertPacked((int[]) packed, n, unsigned, fout, dout, off);
+    return true;
+  }
+
+  // the masks give the unsigned value, or leave the sign extended value alone
+
+  private void convertPacked(byte[] in, int n, boolean unsigned, float[] fout, double[] dout, int off) {
+    final int mask = unsigned ? 0xff : -1;
+    final boolean checkMissing = useNaNs && hasMissing();
+    for (int i = 0; i < n; i++) {
+      double val = scale * (in[i] & mask) + offset;
+      if (checkMissing && isMissing_(val))
+        val = Double.NaN;
+      if (fout != null)
+        fout[off + i] = (float) val;
+      else
+        dout[off + i] = val;
+    }
+  }
+
+  private void convertPacked(short[] in, int n, boolean unsigned, float[] fout, double[] dout, int off) {
+    final int mask = unsigned ? 0xffff : -1;
+    final boolean checkMissing = useNaNs && hasMissing();
+    for (int i = 0; i < n; i++) {
+      double val = scale * (in[i] & mask) + offset;
+      if (checkMissing && isMissing_(val))
+        val = Double.NaN;
+      if (fout != null)
+        fout[off + i] = (float) val;
+      else
+        dout[off + i] = val;
+    }
+  }
+
+  private void convertPacked(int[] in, int n, boolean unsigned, float[] fout, double[] dout, int off) {
+    final long mask = unsigned ? 0xffffffffL : -1L;
+    final boolean checkMissing = useNaNs && hasMissing();
+    for (int i = 0; i < n; i++) {
+      double val = scale * (in[i] & mask) + offset;
+      if (checkMissing && isMissing_(val))
+        val = Double.NaN;
+      if (fout != null)
+        fout[off + i] = (float) val;
+      else
+        dout[off + i] = val;
+    }
+  }
+
   /**
    * Translate missing data to NaNs. Data must be DOUBLE or FLOAT
    *
@@ -340,6 +340,22 @@ public class VariableDS extends ucar.nc2.Variable implements VariableEnhanced, E
     return scaleMissingProxy.convertScaleOffsetMissing(data);
   }
 
+  /**
+   * Convert data into a float array supplied by the caller.
+   * @see #convertScaleOffsetMissing(Array)
+   */
+  public void convertScaleOffsetMissing(Array in, float[] out, int outOff) {
+    scaleMissingProxy.convertScaleOffsetMissing(in, out, outOff);
+  }
+
+  /**
+   * Convert data into a double array supplied by the caller.
+   * @see #convertScaleOffsetMissing(Array)
+   */
+  public void convertScaleOffsetMissing(Array in, double[] out, int outOff) {
+    scaleMissingProxy.convertScaleOffsetMissing(in, out, outOff);
+  }
+
   public double getValidMax() {
     return scaleMissingProxy.getValidMax();
   }
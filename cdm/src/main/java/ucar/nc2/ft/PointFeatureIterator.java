@@ -32,7 +32,10 @@
  */
 package ucar.nc2.ft;
 
+import ucar.nc2.ft.point.PointFeatureBatch;
+
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.Iterator;
 
 /**
@@ -76,6 +79,22 @@ public interface PointFeatureIterator extends Closeable, Iterator<PointFeature>
    */
   void close();
 
+  /**
+   * Get the next block of PointFeatures, stored by column.
+   * The batch is cleared, then filled until it is full or the iteration is done.
+   * Implementations that read from a Structure override this to avoid making a PointFeature for each point.
+   *
+   * @param batch put the points here
+   * @return number of points in the batch; 0 when the iteration is done.
+   * @throws IOException on read error
+   */
+  default int nextBatch(PointFeatureBatch batch) throws IOException {
+    batch.clear();
+    while (!batch.isFull() && hasNext())
+      batch.add(next());
+    return batch.size();
+  }
+
   /**
    * A filter on PointFeatures
    */
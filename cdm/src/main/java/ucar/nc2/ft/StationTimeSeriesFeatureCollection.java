@@ -51,6 +51,16 @@ public interface StationTimeSeriesFeatureCollection extends PointFeatureCC, Iter
   List<StationFeature> getStationFeatures( List<String> stnNames)  throws IOException;
   List<StationFeature> getStationFeatures( ucar.unidata.geoloc.LatLonRect boundingBox) throws IOException;
 
+  /**
+   * Find the stations closest to the specified point.
+   *
+   * @param pt find stations closest to this point
+   * @param n max number of stations to return
+   * @return up to n stations, closest first
+   * @throws IOException on read error
+   */
+  List<StationFeature> findClosestStationFeatures(ucar.unidata.geoloc.LatLonPoint pt, int n) throws IOException;
+
   StationFeature findStationFeature(String name);
   StationTimeSeriesFeature getStationTimeSeriesFeature(StationFeature s) throws IOException;
 
@@ -0,0 +1,290 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataW;
+import ucar.ma2.StructureMembers;
+import ucar.nc2.ft.PointFeature;
+import ucar.unidata.geoloc.EarthLocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A block of PointFeatures stored by column: time, lat, lon, alt as primitive arrays, and each member of the
+ * feature data as an Array whose outer dimension is the point index.
+ * Filled by PointFeatureIterator.nextBatch(), and reused across calls, so dont hold on to the arrays.
+ * <p>
+ * The member columns are set up from the first point added; members not in that point are ignored.
+ * Nested Structures, Sequences, opaque and variable length members are not stored.
+ */
+public class PointFeatureBatch {
+  private final int capacity;
+  private final double[] obsTime, nomTime, lat, lon, alt;
+  private int size;
+
+  private StructureMembers members; // of the columns
+  private List<Column> columns;
+
+  /**
+   * Constructor
+   * @param capacity max number of points in the batch
+   */
+  public PointFeatureBatch(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity must be > 0");
+    this.capacity = capacity;
+    this.obsTime = new double[capacity];
+    this.nomTime = new double[capacity];
+    this.lat = new double[capacity];
+    this.lon = new double[capacity];
+    this.alt = new double[capacity];
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** @return number of points in the batch */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isFull() {
+    return size == capacity;
+  }
+
+  /** Remove all points. The member columns are kept for reuse. */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Add a point, copying its data.
+   * @param pf add this
+   * @throws IOException on read error
+   */
+  public void add(PointFeature pf) throws IOException {
+    add(pf.getObservationTime(), pf.getNominalTime(), pf.getLocation(), pf.getFeatureData());
+  }
+
+  /**
+   * Add a point, copying its data.
+   *
+   * @param obsTime observation time, in the units of the collection
+   * @param nomTime nominal time, in the units of the collection
+   * @param loc location of the point
+   * @param sdata feature data; values are copied, so this may be reused by the caller
+   */
+  public void add(double obsTime, double nomTime, EarthLocation loc, StructureData sdata) {
+    if (size == capacity) throw new IllegalStateException("batch is full");
+    if (columns == null) makeColumns(sdata);
+
+    this.obsTime[size] = obsTime;
+    this.nomTime[size] = nomTime;
+    this.lat[size] = loc.getLatitude();
+    this.lon[size] = loc.getLongitude();
+    this.alt[size] = loc.getAltitude();
+
+    boolean sameMembers = (sdata.getStructureMembers() == members);
+    for (Column col : columns) {
+      StructureMembers.Member m = sameMembers ? col.member : sdata.findMember(col.member.getName());
+      if (m != null)
+        col.copy(sdata, m, size);
+    }
+    size++;
+  }
+
+  private void makeColumns(StructureData sdata) {
+    members = sdata.getStructureMembers();
+    columns = new ArrayList<>();
+    for (StructureMembers.Member m : members.getMembers()) {
+      DataType dt = m.getDataType();
+      if (dt == DataType.STRUCTURE || dt == DataType.SEQUENCE || dt == DataType.OPAQUE) continue;
+      if (m.isVariableLength() || m.getSize() < 1) continue;
+      columns.add(new Column(m, capacity));
+    }
+  }
+
+  public double[] getObservationTimes() {
+    return obsTime;
+  }
+
+  public double[] getNominalTimes() {
+    return nomTime;
+  }
+
+  public double[] getLatitudes() {
+    return lat;
+  }
+
+  public double[] getLongitudes() {
+    return lon;
+  }
+
+  public double[] getAltitudes() {
+    return alt;
+  }
+
+  /** @return names of the member columns, empty if nothing has been added yet */
+  public List<String> getMemberNames() {
+    if (columns == null) return Collections.emptyList();
+    List<String> result = new ArrayList<>(columns.size());
+    for (Column col : columns)
+      result.add(col.member.getName());
+    return result;
+  }
+
+  /**
+   * Get the data for one member.
+   * @param memberName name of the member
+   * @return Array of shape [size, member shape], or null if not found. This is a view of the batch storage.
+   */
+  public Array getMemberData(String memberName) {
+    Column col = findColumn(memberName);
+    return (col == null) ? null : col.getData(size);
+  }
+
+  /**
+   * Get the data type of one member.
+   * @param memberName name of the member
+   * @return DataType, or null if not found
+   */
+  public DataType getMemberDataType(String memberName) {
+    Column col = findColumn(memberName);
+    return (col == null) ? null : col.member.getDataType();
+  }
+
+  /**
+   * Make a StructureData for one point from the member columns.
+   * @param row index of point, 0 .. size-1
+   * @return StructureData containing the member data of that point
+   */
+  public StructureData getStructureData(int row) {
+    if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row + " size " + size);
+    StructureMembers sm = new StructureMembers(members.getName());
+    StructureDataW sdata = new StructureDataW(sm);
+    for (Column col : columns) {
+      StructureMembers.Member m = sm.addMember(col.member.getName(), col.member.getDescription(),
+              col.member.getUnitsString(), col.member.getDataType(), col.member.getShape());
+      sdata.setMemberData(m, col.data.slice(0, row));
+    }
+    return sdata;
+  }
+
+  private Column findColumn(String memberName) {
+    if (columns == null) return null;
+    for (Column col : columns)
+      if (col.member.getName().equals(memberName)) return col;
+    return null;
+  }
+
+  private static class Column {
+    final StructureMembers.Member member;
+    final int elemSize;
+    final Array data;   // shape [capacity, member shape]
+    final Object store; // data.getStorage()
+
+    Column(StructureMembers.Member member, int capacity) {
+      this.member = member;
+      this.elemSize = member.getSize();
+      int[] mshape = member.getShape();
+      int[] shape = new int[mshape.length + 1];
+      shape[0] = capacity;
+      System.arraycopy(mshape, 0, shape, 1, mshape.length);
+      this.data = Array.factory(member.getDataType(), shape);
+      this.store = data.getStorage();
+    }
+
+    void copy(StructureData sdata, StructureMembers.Member m, int row) {
+      int pos = row * elemSize;
+      Class<?> primitive = m.getDataType().getPrimitiveClassType();
+
+      if (primitive == double.class && store instanceof double[]) {
+        if (elemSize == 1) ((double[]) store)[pos] = sdata.getScalarDouble(m);
+        else System.arraycopy(sdata.getJavaArrayDouble(m), 0, store, pos, elemSize);
+
+      } else if (primitive == float.class && store instanceof float[]) {
+        if (elemSize == 1) ((float[]) store)[pos] = sdata.getScalarFloat(m);
+        else System.arraycopy(sdata.getJavaArrayFloat(m), 0, store, pos, elemSize);
+
+      } else if (primitive == int.class && store instanceof int[]) {
+        if (elemSize == 1) ((int[]) store)[pos] = sdata.getScalarInt(m);
+        else System.arraycopy(sdata.getJavaArrayInt(m), 0, store, pos, elemSize);
+
+      } else if (primitive == short.class && store instanceof short[]) {
+        if (elemSize == 1) ((short[]) store)[pos] = sdata.getScalarShort(m);
+        else System.arraycopy(sdata.getJavaArrayShort(m), 0, store, pos, elemSize);
+
+      } else if (primitive == byte.class && store instanceof byte[]) {
+        if (elemSize == 1) ((byte[]) store)[pos] = sdata.getScalarByte(m);
+        else System.arraycopy(sdata.getJavaArrayByte(m), 0, store, pos, elemSize);
+
+      } else if (primitive == long.class && store instanceof long[]) {
+        if (elemSize == 1) ((long[]) store)[pos] = sdata.getScalarLong(m);
+        else System.arraycopy(sdata.getJavaArrayLong(m), 0, store, pos, elemSize);
+
+      } else if (primitive == char.class && store instanceof char[]) {
+        System.arraycopy(sdata.getJavaArrayChar(m), 0, store, pos, elemSize);
+
+      } else if (primitive == String.class && store instanceof Object[]) {
+        if (elemSize == 1) ((Object[]) store)[pos] = sdata.getScalarString(m);
+        else System.arraycopy(sdata.getJavaArrayString(m), 0, store, pos, elemSize);
+
+      } else { // general case
+        Array.arraycopy(sdata.getArray(m), 0, data, pos, elemSize);
+      }
+    }
+
+    Array getData(int size) {
+      if (size == data.getShape()[0]) return data;
+      int[] shape = data.getShape();
+      int[] origin = new int[shape.length];
+      shape[0] = size;
+      try {
+        return data.section(origin, shape);
+      } catch (ucar.ma2.InvalidRangeException e) {
+        throw new IllegalStateException(e); // cant happen
+      }
+    }
+  }
+
+}
@@ -78,6 +78,27 @@ public abstract class PointIteratorAbstract implements PointFeatureIterator, Ite
     maxTime = Math.max(maxTime, obsTime);
   }
 
+  // same as calcBounds(PointFeature), for the points in a batch starting at start
+  protected void calcBounds(PointFeatureBatch batch, int start) {
+    count += batch.size() - start;
+    if (!calcBounds) return;
+
+    double[] lat = batch.getLatitudes();
+    double[] lon = batch.getLongitudes();
+    double[] time = batch.getObservationTimes();
+    LatLonPointImpl llpt = new LatLonPointImpl();
+    for (int i = start; i < batch.size(); i++) {
+      llpt.set(lat[i], lon[i]);
+      if (bb == null)
+        bb = new LatLonRect(llpt, .001, .001);
+      else
+        bb.extend(llpt);
+
+      minTime = Math.min(minTime, time[i]);
+      maxTime = Math.max(maxTime, time[i]);
+    }
+  }
+
   protected void finishCalcBounds() {
     if (!calcBounds) return;
 
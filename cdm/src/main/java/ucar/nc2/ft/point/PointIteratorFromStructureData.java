@@ -53,9 +53,24 @@ public abstract class PointIteratorFromStructureData extends PointIteratorAbstra
   // makeFeature may return null, if so then skip it and go to next iteration
   protected abstract PointFeature makeFeature(int recnum, StructureData sdata) throws IOException;
 
+  /**
+   * Add the point in sdata to the batch, if its not missing.
+   * Subclasses should override to add the point directly, without making a PointFeature.
+   * Only called when there is no filter.
+   *
+   * @return true if the point was added
+   */
+  protected boolean addToBatch(int recnum, StructureData sdata, PointFeatureBatch batch) throws IOException {
+    PointFeature pf = makeFeature(recnum, sdata);
+    if (pf == null || pf.getLocation().isMissing()) return false;
+    batch.add(pf);
+    return true;
+  }
+
   private PointFeatureIterator.Filter filter;
   private StructureDataIterator structIter;
   private PointFeature feature = null; // hasNext must cache
+  private boolean pending = false;     // hasNext was called, but not next
   private boolean finished = false;
 
   /**
@@ -81,8 +96,10 @@ public abstract class PointIteratorFromStructureData extends PointIteratorAbstra
         if (feature.getLocation().isMissing()) {
           continue;
         }
-        if (filter == null || filter.filter(feature))
+        if (filter == null || filter.filter(feature)) {
+          pending = true;
           return true;
+        }
       }
 
       // all done
@@ -97,11 +114,33 @@ public abstract class PointIteratorFromStructureData extends PointIteratorAbstra
 
   @Override
   public PointFeature next() {
+    pending = false;
     if (feature == null) return null;
     calcBounds(feature);
     return feature;
   }
 
+  @Override
+  public int nextBatch(PointFeatureBatch batch) throws IOException {
+    if (filter != null)
+      return super.nextBatch(batch); // filter needs the PointFeature
+
+    batch.clear();
+    if (pending) // dont lose the one that hasNext() found
+      batch.add(next());
+
+    int start = batch.size();
+    while (!batch.isFull()) {
+      StructureData sdata = nextStructureData();
+      if (sdata == null) break;
+      addToBatch(structIter.getCurrentRecno(), sdata, batch);
+    }
+    calcBounds(batch, start);
+
+    if (batch.isEmpty()) close();
+    return batch.size();
+  }
+
   @Override
   public void close() {
     if (finished) return;
@@ -111,6 +150,7 @@ public abstract class PointIteratorFromStructureData extends PointIteratorAbstra
   }
 
   private StructureData nextStructureData() throws IOException {
+    if (finished) return null;
     return structIter.hasNext() ? structIter.next() : null;
   }
 }
@@ -32,12 +32,14 @@
  */
 package ucar.nc2.ft.point;
 
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.LatLonRect;
 import ucar.unidata.geoloc.Station;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,7 +53,9 @@ import java.util.Map;
 public class StationHelper {
   private List<StationFeature> stations;
   private Map<String, StationFeature> stationHash;
+  private volatile StationIndex index; // spatial index, built on first use
   private static final boolean debug = false;
+  private static final int MIN_INDEX_SIZE = 100; // smaller than this, just scan the list
 
   public StationHelper() {
     stations = new ArrayList<>();
@@ -61,11 +65,13 @@ public class StationHelper {
   public void addStation( StationFeature s) {
     stations.add(s);
     stationHash.put(s.getName(), s);
+    index = null;
   }
 
   public void setStations( List<StationFeature> nstations) {
     stations = new ArrayList<>();
     stationHash = new HashMap<>();
+    index = null;
     for (StationFeature s : nstations)
       addStation(s);
   }
@@ -110,21 +116,31 @@ public class StationHelper {
     return rect;
   }
 
+  // Double-check idiom for lazy initialization, as in StationTimeSeriesCollectionImpl.getStationHelper()
+  private StationIndex getIndex() {
+    StationIndex result = index;
+    if (result == null) {
+      synchronized (this) {
+        result = index;
+        if (result == null)
+          index = result = new StationIndex(new ArrayList<>(stations));
+      }
+    }
+    return result;
+  }
+
   public List<Station> getStations(LatLonRect boundingBox) throws IOException {
     if (boundingBox == null) return getStations();
-    
-    LatLonPointImpl latlonPt = new LatLonPointImpl();
+
     List<Station> result = new ArrayList<>();
-    for (StationFeature s : stations) {
-      latlonPt.set(s.getLatitude(), s.getLongitude());
-      if (boundingBox.contains(latlonPt))
-        result.add(s);
-    }
+    result.addAll(getStationFeatures(boundingBox));
     return result;
   }
 
   public List<StationFeature> getStationFeatures(LatLonRect boundingBox) throws IOException {
     if (boundingBox == null) return stations;
+    if (stations.size() >= MIN_INDEX_SIZE)
+      return getIndex().getStations(boundingBox);
 
     LatLonPointImpl latlonPt = new LatLonPointImpl();
     List<StationFeature> result = new ArrayList<>();
@@ -136,6 +152,19 @@ public class StationHelper {
     return result;
   }
 
+  /**
+   * Find the stations closest to the specified point, closest first.
+   * The metric is (lat-lat0)**2 + (cos(lat0)*(lon-lon0))**2
+   *
+   * @param pt find stations closest to this point
+   * @param n  max number of stations to return
+   * @return up to n stations, sorted by distance from pt
+   */
+  public List<StationFeature> getClosestStationFeatures(LatLonPoint pt, int n) {
+    if (n <= 0 || stations.isEmpty()) return Collections.emptyList();
+    return getIndex().getClosestStations(pt, n);
+  }
+
   public StationFeature getStation(String name) {
     return stationHash.get( name);
   }
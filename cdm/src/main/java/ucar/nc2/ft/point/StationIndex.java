@@ -0,0 +1,267 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import net.jcip.annotations.Immutable;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Uniform lat/lon bucket grid over a fixed list of stations, used by StationHelper for bounding box
+ * and nearest station queries. Built once, then read only.
+ * <p>
+ * Results are identical to a linear scan: bounding box candidates are filtered with LatLonRect.contains(), and
+ * returned in the original station order. Stations whose lat/lon lie outside the normal ranges (or are missing)
+ * are not bucketed, they are always tested.
+ */
+@Immutable
+class StationIndex {
+  private static final int STATIONS_PER_CELL = 8;
+  private static final double MIN_CELL_DEG = 0.1;
+  private static final double MAX_CELL_DEG = 30.0;
+
+  private final List<StationFeature> stations;
+  private final int nlat, nlon;
+  private final double latCell, lonCell;   // degrees
+  private final int[] cellStart;           // CSR: stations in cell k are cellIndex[cellStart[k] .. cellStart[k+1]-1]
+  private final int[] cellIndex;
+  private final int[] others;              // not in any cell
+
+  StationIndex(List<StationFeature> stations) {
+    this.stations = stations;
+    int n = stations.size();
+
+    double cellDeg = Math.sqrt(180.0 * 360.0 * STATIONS_PER_CELL / Math.max(n, 1));
+    cellDeg = Math.max(MIN_CELL_DEG, Math.min(MAX_CELL_DEG, cellDeg));
+    this.nlat = (int) Math.ceil(180.0 / cellDeg);
+    this.nlon = (int) Math.ceil(360.0 / cellDeg);
+    this.latCell = 180.0 / nlat;
+    this.lonCell = 360.0 / nlon;
+
+    // two passes: count, then fill
+    int[] cellOf = new int[n];
+    int[] count = new int[nlat * nlon + 1];
+    int nothers = 0;
+    for (int i = 0; i < n; i++) {
+      StationFeature s = stations.get(i);
+      int cell = findCell(s.getLatitude(), s.getLongitude());
+      cellOf[i] = cell;
+      if (cell < 0) nothers++;
+      else count[cell + 1]++;
+    }
+    for (int k = 1; k < count.length; k++)
+      count[k] += count[k - 1];
+    this.cellStart = Arrays.copyOf(count, count.length);
+
+    this.cellIndex = new int[n - nothers];
+    this.others = new int[nothers];
+    int[] next = Arrays.copyOf(count, count.length - 1);
+    int otherCount = 0;
+    for (int i = 0; i < n; i++) {
+      if (cellOf[i] < 0) others[otherCount++] = i;
+      else cellIndex[next[cellOf[i]]++] = i;
+    }
+  }
+
+  // return cell, or -1 if lat/lon not in the normal range
+  private int findCell(double lat, double lon) {
+    if (!(lat >= -90.0 && lat <= 90.0 && lon >= -180.0 && lon <= 180.0)) return -1;
+    return latRow(lat) * nlon + lonCol(lon);
+  }
+
+  private int latRow(double lat) {
+    int row = (int) Math.floor((lat + 90.0) / latCell);
+    return Math.max(0, Math.min(nlat - 1, row));
+  }
+
+  private int lonCol(double lon) {
+    int col = (int) Math.floor((lon + 180.0) / lonCell);
+    return Math.max(0, Math.min(nlon - 1, col));
+  }
+
+  /**
+   * Find the stations contained in the bounding box.
+   * @param bb bounding box, not null
+   * @return stations in bb, in the original order
+   */
+  List<StationFeature> getStations(LatLonRect bb) {
+    double eps = 1.0e-9; // same as LatLonRect.contains()
+    double latMin = bb.getLowerLeftPoint().getLatitude();
+    double latMax = bb.getUpperRightPoint().getLatitude();
+    if (latMax + eps < -90.0 || latMin - eps > 90.0)
+      return subset(bb, others, others.length);
+    int row0 = latRow(latMin - eps);
+    int row1 = latRow(latMax + eps);
+
+    int[] found = new int[stations.size()];
+    int nfound = 0;
+
+    double lonMin = bb.getLowerLeftPoint().getLongitude();
+    double lonMax = bb.getUpperRightPoint().getLongitude();
+    if (bb.isAllLongitude() || (bb.crossDateline() && lonCol(lonMax) >= lonCol(lonMin))) {
+      nfound = addColumns(found, nfound, row0, row1, 0, nlon - 1);
+    } else if (bb.crossDateline()) {
+      nfound = addColumns(found, nfound, row0, row1, lonCol(lonMin), nlon - 1);
+      nfound = addColumns(found, nfound, row0, row1, 0, lonCol(lonMax));
+    } else if (lonMin <= lonMax) {
+      nfound = addColumns(found, nfound, row0, row1, lonCol(lonMin), lonCol(lonMax));
+    }
+    for (int idx : others)
+      found[nfound++] = idx;
+
+    Arrays.sort(found, 0, nfound);
+    return subset(bb, found, nfound);
+  }
+
+  private int addColumns(int[] found, int nfound, int row0, int row1, int col0, int col1) {
+    for (int row = row0; row <= row1; row++) {
+      for (int col = col0; col <= col1; col++) {
+        int cell = row * nlon + col;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+          found[nfound++] = cellIndex[k];
+      }
+    }
+    return nfound;
+  }
+
+  private List<StationFeature> subset(LatLonRect bb, int[] candidates, int ncandidates) {
+    List<StationFeature> result = new ArrayList<>();
+    for (int i = 0; i < ncandidates; i++) {
+      StationFeature s = stations.get(candidates[i]);
+      if (bb.contains(s.getLatitude(), s.getLongitude()))
+        result.add(s);
+    }
+    return result;
+  }
+
+  /**
+   * Find the n stations closest to the specified point.
+   * The metric is (lat-lat0)**2 + (cos(lat0)*(lon-lon0))**2, same as the NCSS closest station.
+   *
+   * @param pt find stations closest to this point
+   * @param n  max number of stations to return
+   * @return up to n stations, closest first
+   */
+  List<StationFeature> getClosestStations(LatLonPoint pt, int n) {
+    if (n <= 0 || stations.isEmpty()) return Collections.emptyList();
+
+    double lat = pt.getLatitude();
+    double lon = LatLonPointImpl.lonNormal(pt.getLongitude());
+    double cos = Math.cos(Math.toRadians(lat));
+
+    // max-heap on distance, so the worst of the current best n is on top
+    PriorityQueue<Candidate> best = new PriorityQueue<>(n + 1, Collections.reverseOrder(Candidate.byDistance));
+    for (int idx : others)
+      consider(best, n, idx, lat, lon, cos);
+
+    if (lat >= -90.0 && lat <= 90.0) {
+      int row = latRow(lat);
+      int col = lonCol(lon);
+      double minStep = Math.min(latCell, Math.abs(cos) * lonCell);
+      int maxRing = Math.max(nlat, nlon / 2 + 1);
+
+      for (int ring = 0; ring <= maxRing; ring++) {
+        // no station in this ring or beyond can be closer than this
+        if (ring > 1 && best.size() == n) {
+          double bound = (ring - 1) * minStep;
+          if (bound * bound > best.peek().dist) break;
+        }
+        for (int drow = -ring; drow <= ring; drow++) {
+          int r = row + drow;
+          if (r < 0 || r >= nlat) continue;
+          boolean edgeRow = Math.abs(drow) == ring;
+          for (int dcol = -ring; dcol <= ring; dcol++) {
+            if (!edgeRow && Math.abs(dcol) != ring) continue; // only the ring itself
+            if (2 * dcol <= -nlon || 2 * dcol > nlon) continue; // wrapped around: already seen from the other side
+            int c = Math.floorMod(col + dcol, nlon);
+            int cell = r * nlon + c;
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+              consider(best, n, cellIndex[k], lat, lon, cos);
+          }
+        }
+      }
+    } else {
+      for (int idx : cellIndex)
+        consider(best, n, idx, lat, lon, cos);
+    }
+
+    List<Candidate> sorted = new ArrayList<>(best);
+    Collections.sort(sorted, Candidate.byDistance);
+    List<StationFeature> result = new ArrayList<>(sorted.size());
+    for (Candidate c : sorted)
+      result.add(stations.get(c.idx));
+    return result;
+  }
+
+  private void consider(PriorityQueue<Candidate> best, int n, int idx, double lat, double lon, double cos) {
+    StationFeature s = stations.get(idx);
+    double dy = lat - s.getLatitude();
+    double dx = cos * (lon - LatLonPointImpl.lonNormal(s.getLongitude(), lon));
+    double dist = dy * dy + dx * dx;
+    if (Double.isNaN(dist)) return;
+
+    if (best.size() < n) {
+      best.add(new Candidate(idx, dist));
+    } else if (Candidate.byDistance.compare(new Candidate(idx, dist), best.peek()) < 0) {
+      best.poll();
+      best.add(new Candidate(idx, dist));
+    }
+  }
+
+  private static class Candidate {
+    static final Comparator<Candidate> byDistance = new Comparator<Candidate>() {
+      @Override
+      public int compare(Candidate o1, Candidate o2) {
+        int c = Double.compare(o1.dist, o2.dist);
+        return (c != 0) ? c : Integer.compare(o1.idx, o2.idx); // ties go to the earlier station
+      }
+    };
+
+    final int idx;
+    final double dist;
+
+    Candidate(int idx, double dist) {
+      this.idx = idx;
+      this.dist = dist;
+    }
+  }
+
+}
@@ -106,6 +106,11 @@ public abstract class StationTimeSeriesCollectionImpl extends PointFeatureCCImpl
     return getStationHelper().getStationFeatures(boundingBox);
   }
 
+  @Override
+  public List<StationFeature> findClosestStationFeatures(ucar.unidata.geoloc.LatLonPoint pt, int n) throws IOException {
+    return getStationHelper().getClosestStationFeatures(pt, n);
+  }
+
   @Override
   public StationFeature findStationFeature(String name) {
     return getStationHelper().getStation(name);
@@ -40,12 +40,14 @@ import ucar.nc2.ft.DsgFeatureCollection;
 import ucar.nc2.ft.PointFeature;
 import ucar.nc2.ft.point.CollectionInfo;
 import ucar.nc2.ft.point.PointCollectionImpl;
+import ucar.nc2.ft.point.PointFeatureBatch;
 import ucar.nc2.ft.point.PointFeatureImpl;
 import ucar.nc2.ft.point.PointIteratorFromStructureData;
 import ucar.nc2.ft.point.StationFeature;
 import ucar.nc2.ft.point.StationFeatureHas;
 import ucar.nc2.ft.point.StationPointFeature;
 import ucar.nc2.time.CalendarDateUnit;
+import ucar.unidata.geoloc.EarthLocation;
 
 /**
  * A PointFeatureIterator which uses a NestedTable to implement makeFeature().
@@ -83,6 +85,27 @@ public class StandardPointFeatureIterator extends PointIteratorFromStructureData
     return new StandardPointFeature(cursor.copy(), timeUnit, obsTime);
   }
 
+  // same as makeFeature(), but the values go straight into the batch, and the cursor is not copied
+  @Override
+  protected boolean addToBatch(int recnum, StructureData sdata, PointFeatureBatch batch) throws IOException {
+    cursor.recnum[0] = recnum;
+    cursor.tableData[0] = sdata;
+    cursor.currentIndex = 0;
+    ft.addParentJoin(cursor);
+
+    if (isMissing()) return false;
+    double obsTime = ft.getObsTime(this.cursor);
+
+    cursor.currentIndex = 1; // as in StandardPointFeature
+    double nomTime = ft.getNomTime(this.cursor);
+    if (Double.isNaN(nomTime)) nomTime = obsTime;
+    EarthLocation location = ft.getEarthLocation(this.cursor);
+    if (location.isMissing()) return false;
+
+    batch.add(obsTime, nomTime, location, ft.makeObsStructureData(cursor, 0));
+    return true;
+  }
+
   protected boolean isMissing() throws IOException {
     return ft.isTimeMissing(this.cursor) || ft.isMissing(this.cursor);
   }
@@ -44,6 +44,7 @@ import ucar.nc2.*;
 import ucar.nc2.constants.*;
 import ucar.nc2.dataset.CoordinateAxis;
 import ucar.nc2.ft.*;
+import ucar.nc2.ft.point.PointFeatureBatch;
 import ucar.nc2.ft.point.StationPointFeature;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateFormatter;
@@ -52,6 +53,7 @@ import ucar.nc2.util.CancelTask;
 import ucar.nc2.write.Nc4Chunking;
 import ucar.nc2.write.Nc4ChunkingStrategy;
 import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.LatLonRect;
 
 import java.io.Closeable;
@@ -100,6 +102,7 @@ public abstract class CFPointWriter implements Closeable {
 
 
   private static boolean debug = false;
+  private static final int BATCH_SIZE = 1000; // number of points written at once
 
   public static int writeFeatureCollection(FeatureDatasetPoint fdpoint, String fileOut, NetcdfFileWriter.Version version) throws IOException {
     return writeFeatureCollection(fdpoint, fileOut, new CFPointWriterConfig(version));
@@ -151,14 +154,32 @@ public abstract class CFPointWriter implements Closeable {
       pointWriter.setExtraVariables( pfc.getExtraVariables());
 
       int count = 0;
-      for (PointFeature pf : pfc) {
-        if (count == 0)
-          pointWriter.writeHeader(pf);
+      Iterator<PointFeature> it = pfc.iterator();
+      if (it instanceof PointFeatureIterator) { // the collections in this library, which can read in batches
+        try (PointFeatureIterator iter = (PointFeatureIterator) it) {
+          if (iter.hasNext()) {
+            PointFeature pf = iter.next();  // the header is made from the first point
+            pointWriter.writeHeader(pf);
+            pointWriter.writeRecord(pf, pf.getFeatureData());
+            count++;
+
+            PointFeatureBatch batch = new PointFeatureBatch(BATCH_SIZE);
+            while (iter.nextBatch(batch) > 0) {
+              pointWriter.writeBatch(batch);
+              count += batch.size();
+              if (debug) System.out.printf("%d%n", count);
+            }
+          }
+        }
 
-        pointWriter.writeRecord(pf, pf.getFeatureData());
-        count++;
-        if (debug && count % 100 == 0) System.out.printf("%d ", count);
-        if (debug && count % 1000 == 0) System.out.printf("%n ");
+      } else {
+        while (it.hasNext()) {
+          PointFeature pf = it.next();
+          if (count == 0)
+            pointWriter.writeHeader(pf);
+          pointWriter.writeRecord(pf, pf.getFeatureData());
+          count++;
+        }
       }
 
       pointWriter.finish();
@@ -796,6 +817,31 @@ public abstract class CFPointWriter implements Closeable {
     if ((maxDate == null) || maxDate.isBefore(obsDate)) maxDate = obsDate;
   }
 
+  // keep track of the bounding box for a batch of points
+  protected void trackBB(PointFeatureBatch batch) {
+    double[] lat = batch.getLatitudes();
+    double[] lon = batch.getLongitudes();
+    double[] time = batch.getObservationTimes();
+    double minTime = Double.MAX_VALUE;
+    double maxTime = -Double.MAX_VALUE;
+    LatLonPointImpl loc = new LatLonPointImpl();
+    for (int i = 0; i < batch.size(); i++) {
+      loc.set(lat[i], lon[i]);
+      if (llbb == null)
+        llbb = new LatLonRect(loc, .001, .001);
+      else
+        llbb.extend(loc);
+      minTime = Math.min(minTime, time[i]);
+      maxTime = Math.max(maxTime, time[i]);
+    }
+    if (batch.size() == 0) return;
+
+    CalendarDate minBatch = timeUnit.makeCalendarDate(minTime);
+    CalendarDate maxBatch = timeUnit.makeCalendarDate(maxTime);
+    if ((minDate == null) || minDate.isAfter(minBatch)) minDate = minBatch;
+    if ((maxDate == null) || maxDate.isBefore(maxBatch)) maxDate = maxBatch;
+  }
+
   public void finish() throws IOException {
     if (llbb != null) {
       writer.updateAttribute(null, new Attribute(ACDD.LAT_MIN, llbb.getLowerLeftPoint().getLatitude()));
@@ -40,7 +40,9 @@ import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateUnit;
 import ucar.nc2.*;
 import ucar.nc2.ft.*;
+import ucar.nc2.ft.point.PointFeatureBatch;
 import ucar.unidata.geoloc.EarthLocation;
+import ucar.unidata.geoloc.EarthLocationImpl;
 import ucar.ma2.*;
 
 import java.util.*;
@@ -51,7 +53,7 @@ import java.io.IOException;
  *
  * <pre>
  *   writeHeader()
- *   iterate { writeRecord() }
+ *   iterate { writeRecord() or writeBatch() }
  *   finish()
  * </pre>
  *
@@ -100,7 +102,10 @@ public class WriterCFPointCollection extends CFPointWriter {
   private int obsRecno = 0;
   public void writeRecord(double timeCoordValue, CalendarDate obsDate, EarthLocation loc, StructureData sdata) throws IOException {
     trackBB(loc.getLatLon(), obsDate);
+    writeObs(timeCoordValue, loc, sdata);
+  }
 
+  private void writeObs(double timeCoordValue, EarthLocation loc, StructureData sdata) throws IOException {
     StructureDataScalar coords = new StructureDataScalar("Coords");
     coords.addMember(timeName, null, null, DataType.DOUBLE, timeCoordValue);
     coords.addMember(latName,  null, null, DataType.DOUBLE, loc.getLatitude());
@@ -114,4 +119,63 @@ public class WriterCFPointCollection extends CFPointWriter {
     obsRecno = super.writeStructureData(obsRecno, record, sdall, dataMap);
   }
 
-}
\ No newline at end of file
+  /**
+   * Write a block of points, as returned by PointFeatureIterator.nextBatch().
+   * For netcdf-3, each variable is written for all the points at once.
+   *
+   * @param batch the points, with times in the units of this writer
+   * @throws IOException on write error
+   */
+  public void writeBatch(PointFeatureBatch batch) throws IOException {
+    int n = batch.size();
+    if (n == 0) return;
+    trackBB(batch);
+
+    double[] time = batch.getObservationTimes();
+    double[] lat = batch.getLatitudes();
+    double[] lon = batch.getLongitudes();
+    double[] alt = batch.getAltitudes();
+
+    if (isExtendedModel) { // structure records are written one at a time
+      for (int i = 0; i < n; i++)
+        writeObs(time[i], new EarthLocationImpl(lat[i], lon[i], alt[i]), batch.getStructureData(i));
+      return;
+    }
+
+    List<String> coordNames = new ArrayList<>();
+    try {
+      writeColumn(timeName, Array.factory(DataType.DOUBLE, new int[] {n}, Arrays.copyOf(time, n)));
+      writeColumn(latName, Array.factory(DataType.DOUBLE, new int[] {n}, Arrays.copyOf(lat, n)));
+      writeColumn(lonName, Array.factory(DataType.DOUBLE, new int[] {n}, Arrays.copyOf(lon, n)));
+      Collections.addAll(coordNames, timeName, latName, lonName);
+      if (altUnits != null) {
+        writeColumn(altName, Array.factory(DataType.DOUBLE, new int[] {n}, Arrays.copyOf(alt, n)));
+        coordNames.add(altName);
+      }
+
+      for (String name : batch.getMemberNames()) {
+        if (coordNames.contains(name)) continue; // coords take precedence, as in writeRecord()
+        Array data = batch.getMemberData(name);
+        if (data.getDataType() == DataType.STRING)  // convert to ArrayChar
+          data = ArrayChar.makeFromStringArray((ArrayObject) data);
+        writeColumn(name, data);
+      }
+
+    } catch (InvalidRangeException e) {
+      e.printStackTrace();
+      throw new IllegalStateException(e);
+    }
+
+    obsRecno += n;
+  }
+
+  // write data starting at the current record
+  private void writeColumn(String varName, Array data) throws IOException, InvalidRangeException {
+    Variable v = dataMap.get(varName);
+    if (v == null) return;
+    int[] origin = new int[data.getRank()];
+    origin[0] = obsRecno;
+    writer.write(v, origin, data);
+  }
+
+}
@@ -40,6 +40,7 @@ import ucar.nc2.AttributeContainerHelper;
 import ucar.nc2.Dimension;
 import ucar.nc2.VariableSimpleIF;
 import ucar.nc2.util.Indent;
+import ucar.unidata.geoloc.LatLonPoint;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
@@ -188,6 +189,14 @@ public class Coverage implements VariableSimpleIF, IsMissingEvaluator {
     return reader.readData(this, subset, false);
   }
 
+  /**
+   * Read the data at each of a list of lat/lon points.
+   * @see CoverageReader#readData(Coverage, SubsetParams, List)
+   */
+  public List<GeoReferencedArray> readData(SubsetParams subset, List<? extends LatLonPoint> points) throws IOException, InvalidRangeException {
+    return reader.readData(this, subset, points);
+  }
+
   ////////////////////////////////////////////////////////////////////////////////////////
   // implement VariableSimpleIF
 
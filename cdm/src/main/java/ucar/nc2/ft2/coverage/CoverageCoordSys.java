@@ -38,6 +38,8 @@ import ucar.nc2.constants.AxisType;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.util.*;
 import ucar.nc2.util.Optional;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.ProjectionImpl;
 import ucar.unidata.geoloc.projection.LatLonProjection;
 
@@ -417,6 +419,60 @@ public class CoverageCoordSys {
 
   public Optional<CoverageCoordSys> subset(SubsetParams params, boolean makeCFcompliant, boolean finish) {
     Formatter errMessages = new Formatter();
+    AtomicBoolean isConstantForecast = new AtomicBoolean(false); // need a mutable boolean
+    List<CoverageCoordAxis> subsetAxes = subsetNonHoriz(params, makeCFcompliant, isConstantForecast, errMessages);
+
+    Optional<HorizCoordSys> horizo = horizCoordSys.subset(params);
+    if (!horizo.isPresent())
+      errMessages.format("%s;%n", horizo.getErrorMessage());
+    else {
+      HorizCoordSys subsetHcs = horizo.get();
+      subsetAxes.addAll(subsetHcs.getCoordAxes());
+    }
+
+    String errs = errMessages.toString();
+    if (errs.length() > 0)
+      return Optional.empty(errs);
+
+    return Optional.of(makeSubset(subsetAxes, isConstantForecast.get(), finish));
+  }
+
+  /**
+   * Subset for each of a list of lat/lon points.
+   * The non-horizontal axes are subset once and shared by all the points; for each point, only the
+   * (x, y) index of the grid cell containing it is found. Any horizontal subset in params is ignored.
+   *
+   * @param params non-horizontal subset
+   * @param points lat/lon points
+   * @param makeCFcompliant as in subset()
+   * @param finish as in subset()
+   * @return one CoverageCoordSys for each point, with x and y of length 1 (except for 2D lat/lon), or null if the point
+   *   is not in the grid. Empty if the non-horizontal subset fails.
+   */
+  public Optional<List<CoverageCoordSys>> subsetPoints(SubsetParams params, List<? extends LatLonPoint> points, boolean makeCFcompliant, boolean finish) {
+    Formatter errMessages = new Formatter();
+    AtomicBoolean isConstantForecast = new AtomicBoolean(false);
+    List<CoverageCoordAxis> nonHorizAxes = subsetNonHoriz(params, makeCFcompliant, isConstantForecast, errMessages);
+    String errs = errMessages.toString();
+    if (errs.length() > 0)
+      return Optional.empty(errs);
+
+    List<CoverageCoordSys> result = new ArrayList<>(points.size());
+    for (LatLonPoint point : points) {
+      SubsetParams pointParams = new SubsetParams().setLatLonPoint(new LatLonPointImpl(point));
+      Optional<HorizCoordSys> horizo = horizCoordSys.subset(pointParams);
+      if (!horizo.isPresent()) {
+        result.add(null);
+        continue;
+      }
+      List<CoverageCoordAxis> subsetAxes = new ArrayList<>(nonHorizAxes);
+      subsetAxes.addAll(horizo.get().getCoordAxes());
+      result.add(makeSubset(subsetAxes, isConstantForecast.get(), finish));
+    }
+    return Optional.of(result);
+  }
+
+  private List<CoverageCoordAxis> subsetNonHoriz(SubsetParams params, boolean makeCFcompliant, AtomicBoolean isConstantForecast, Formatter errMessages) {
     List<CoverageCoordAxis> subsetAxes = new ArrayList<>();
     for (CoverageCoordAxis axis : getAxes()) {
       if (axis.getDependenceType() == CoverageCoordAxis.DependenceType.dependent) continue;
@@ -438,7 +494,6 @@ public class CoverageCoordSys {
       }
     }
 
-    AtomicBoolean isConstantForecast = new AtomicBoolean(false); // need a mutable boolean
     if (time2DCoordSys != null) {
       ucar.nc2.util.Optional<List<CoverageCoordAxis>> time2Do = time2DCoordSys.subset(params, isConstantForecast, makeCFcompliant);
       if (!time2Do.isPresent())
@@ -447,18 +502,10 @@ public class CoverageCoordSys {
         subsetAxes.addAll(time2Do.get());
     }
 
-    Optional<HorizCoordSys> horizo = horizCoordSys.subset(params);
-    if (!horizo.isPresent())
-      errMessages.format("%s;%n", horizo.getErrorMessage());
-    else {
-      HorizCoordSys subsetHcs = horizo.get();
-      subsetAxes.addAll(subsetHcs.getCoordAxes());
-    }
-
-    String errs = errMessages.toString();
-    if (errs.length() > 0)
-      return Optional.empty(errs);
+    return subsetAxes;
+  }
 
+  private CoverageCoordSys makeSubset(List<CoverageCoordAxis> subsetAxes, boolean isConstantForecast, boolean finish) {
     Collections.sort(subsetAxes);
 
     List<String> names = new ArrayList<>();
@@ -469,10 +516,10 @@ public class CoverageCoordSys {
     MyCoordSysContainer fakeDataset = new MyCoordSysContainer(subsetAxes, getTransforms());
     resultCoordSys.setDataset(fakeDataset);
     resultCoordSys.setHorizCoordSys(resultCoordSys.makeHorizCoordSys());
-    resultCoordSys.setIsConstantForecast(isConstantForecast.get());
+    resultCoordSys.setIsConstantForecast(isConstantForecast);
     if (finish) resultCoordSys.setImmutable();
 
-    return Optional.of(resultCoordSys);
+    return resultCoordSys;
   }
 
   public List<CoverageCoordAxis> getDependentAxes(CoverageCoordAxis indAxis) {
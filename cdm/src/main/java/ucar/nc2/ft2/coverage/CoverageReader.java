@@ -35,8 +35,12 @@ package ucar.nc2.ft2.coverage;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import ucar.ma2.InvalidRangeException;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
 
 /**
  * Abstraction to read the data in a coverage.
@@ -51,6 +55,31 @@ public interface CoverageReader extends Closeable {
 
   GeoReferencedArray readData(Coverage coverage, SubsetParams subset, boolean canonicalOrder) throws IOException, InvalidRangeException;
 
+  /**
+   * Read the data at each of a list of lat/lon points, for all the time, vertical, etc coordinates in the subset.
+   * Any horizontal subset in the params is ignored.
+   * This default reads each point separately; implementations should override to find the (x, y) index of each point
+   * once, and to read the data for all the points together.
+   *
+   * @param coverage read this coverage
+   * @param subset the non-horizontal subset
+   * @param points the lat/lon points
+   * @return one GeoReferencedArray for each point, in canonical order, or null if the point is not in the grid.
+   */
+  default List<GeoReferencedArray> readData(Coverage coverage, SubsetParams subset, List<? extends LatLonPoint> points) throws IOException, InvalidRangeException {
+    HorizCoordSys hcs = coverage.getCoordSys().getHorizCoordSys();
+    List<GeoReferencedArray> result = new ArrayList<>(points.size());
+    for (LatLonPoint point : points) {
+      if (!hcs.findXYindexFromLatLon(point).isPresent()) {
+        result.add(null);
+        continue;
+      }
+      SubsetParams pointSubset = subset.copy().setLatLonPoint(new LatLonPointImpl(point));
+      result.add(readData(coverage, pointSubset, true));
+    }
+    return result;
+  }
+
   // List<ArrayWithCoordinates> readData(List<Coverage> coverage, SubsetParams subset) throws IOException;
 
 }
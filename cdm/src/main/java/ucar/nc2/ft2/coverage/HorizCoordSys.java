@@ -293,7 +293,7 @@ public class HorizCoordSys {
   public LatLonPoint getLatLon(int yindex, int xindex) {
     if (isProjection) {
       double x = xaxis.getCoordMidpoint(xindex);
-      double y = yaxis.getCoordMidpoint(xindex);
+      double y = yaxis.getCoordMidpoint(yindex);
       ProjectionImpl proj = transform.getProjection();
       return proj.projToLatLon(x, y);
     } else {
@@ -449,6 +449,19 @@ public class HorizCoordSys {
     public double xcoord, ycoord;
   }
 
+  /**
+   * Find the (x, y) index of the grid cell containing a lat/lon point.
+   * @param latlon the point
+   * @return the index and the coordinate values of that cell, or empty if not in the grid
+   */
+  public Optional<CoordReturn> findXYindexFromLatLon(LatLonPoint latlon) {
+    if (isProjection) {
+      ProjectionPoint pp = transform.getProjection().latLonToProj(latlon);
+      return findXYindexFromCoord(pp.getX(), pp.getY());
+    }
+    return findXYindexFromCoord(latlon.getLongitude(), latlon.getLatitude());
+  }
+
   public Optional<CoordReturn> findXYindexFromCoord(double x, double y) {
     CoordReturn result = new CoordReturn();
     if (isProjection) {
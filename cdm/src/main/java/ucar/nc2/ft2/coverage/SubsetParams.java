@@ -147,6 +147,13 @@ public class SubsetParams {
 
   private final Map<String, Object> req = new HashMap<>();
 
+  /** @return a shallow copy; the values themselves are shared */
+  public SubsetParams copy() {
+    SubsetParams result = new SubsetParams();
+    result.req.putAll(req);
+    return result;
+  }
+
   public Set<Map.Entry<String, Object>> getEntries() {
     return req.entrySet();
   }
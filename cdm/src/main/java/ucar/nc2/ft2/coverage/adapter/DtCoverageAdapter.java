@@ -43,6 +43,7 @@ import ucar.nc2.constants.FeatureType;
 import ucar.nc2.dataset.*;
 import ucar.nc2.ft2.coverage.*;
 import ucar.nc2.util.Misc;
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.util.Parameter;
 
 import java.io.IOException;
@@ -438,6 +439,92 @@ public class DtCoverageAdapter implements CoverageReader, CoordAxisReader {
     return new GeoReferencedArray(coverage.getName(), coverage.getDataType(), result, subsetCoordSys);
   }
 
+  // read one hyperslab containing all the points, unless it has more than this many grid cells per point
+  private static final int MAX_CELLS_PER_POINT = 100;
+
+  @Override
+  public List<GeoReferencedArray> readData(Coverage coverage, SubsetParams params, List<? extends LatLonPoint> points) throws IOException, InvalidRangeException {
+    DtCoverage grid = (DtCoverage) coverage.getUserObject();
+    CoverageCoordSys orgCoordSys = coverage.getCoordSys();
+    if (orgCoordSys.getHorizCoordSys().isLatLon2D())
+      return CoverageReader.super.readData(coverage, params, points);
+
+    ucar.nc2.util.Optional<List<CoverageCoordSys>> opt = orgCoordSys.subsetPoints(params, points, false, true);
+    if (!opt.isPresent())
+      throw new InvalidRangeException(opt.getErrorMessage());
+    List<CoverageCoordSys> pointCoordSys = opt.get();
+
+    // find the (y, x) index of each point, and the bounding box of all of them
+    int npts = points.size();
+    int[] yindex = new int[npts];
+    int[] xindex = new int[npts];
+    int ymin = Integer.MAX_VALUE, ymax = -1, xmin = Integer.MAX_VALUE, xmax = -1;
+    int count = 0;
+    List<Range> ranges = null;  // the non-horizontal ranges are the same for all points
+    for (int i = 0; i < npts; i++) {
+      CoverageCoordSys cs = pointCoordSys.get(i);
+      if (cs == null) continue;
+
+      List<RangeIterator> rangeIters = cs.getRanges();
+      if (ranges == null) {
+        ranges = new ArrayList<>();
+        for (RangeIterator ri : rangeIters) {
+          if (!(ri instanceof Range)) // RangeComposite
+            return CoverageReader.super.readData(coverage, params, points);
+          ranges.add((Range) ri);
+        }
+      }
+      int n = rangeIters.size();
+      yindex[i] = ((Range) rangeIters.get(n - 2)).first();
+      xindex[i] = ((Range) rangeIters.get(n - 1)).first();
+      ymin = Math.min(ymin, yindex[i]);
+      ymax = Math.max(ymax, yindex[i]);
+      xmin = Math.min(xmin, xindex[i]);
+      xmax = Math.max(xmax, xindex[i]);
+      count++;
+    }
+
+    List<GeoReferencedArray> result = new ArrayList<>(npts);
+    if (count == 0) {
+      for (int i = 0; i < npts; i++) result.add(null);
+      return result;
+    }
+
+    int n = ranges.size();
+    Range yRange = ranges.get(n - 2);
+    Range xRange = ranges.get(n - 1);
+    long bbSize = (long) (ymax - ymin + 1) * (xmax - xmin + 1);
+    Array bbData = null;
+    if (count > 1 && bbSize <= (long) count * MAX_CELLS_PER_POINT) {
+      ranges.set(n - 2, new Range(yRange.getName(), ymin, ymax));
+      ranges.set(n - 1, new Range(xRange.getName(), xmin, xmax));
+      bbData = grid.readDataSection(new Section(ranges), true);
+    }
+
+    for (int i = 0; i < npts; i++) {
+      CoverageCoordSys cs = pointCoordSys.get(i);
+      if (cs == null) {
+        result.add(null);
+        continue;
+      }
+
+      Array data;
+      if (bbData != null) { // extract the point from the hyperslab, canonical order so y, x are the last two
+        List<Range> pointRanges = new ArrayList<>(Collections.nCopies(n - 2, (Range) null));
+        pointRanges.add(new Range(yindex[i] - ymin, yindex[i] - ymin));
+        pointRanges.add(new Range(xindex[i] - xmin, xindex[i] - xmin));
+        data = bbData.sectionNoReduce(pointRanges).copy();
+      } else {
+        ranges.set(n - 2, new Range(yRange.getName(), yindex[i], yindex[i]));
+        ranges.set(n - 1, new Range(xRange.getName(), xindex[i], xindex[i]));
+        data = grid.readDataSection(new Section(ranges), true);
+      }
+      result.add(new GeoReferencedArray(coverage.getName(), coverage.getDataType(), data, cs));
+    }
+
+    return result;
+  }
+
 
   //////////////////////////////////////////////////////////////////////////////////////
   // CoordAxisReader
@@ -67,6 +67,17 @@ import ucar.nc2.stream.NcStreamReader;
  * @since 5/5/2015
  */
 public class CdmrCoverageReader implements CoverageReader, CoordAxisReader {
+  static private String compression = null;
+
+  /**
+   * Ask the server to compress data with this codec, eg "lz4" or "shuffle-lz4"; null to not ask.
+   *
+   * @see ucar.nc2.stream.NcStreamCodec
+   */
+  static public void setCompression(String codecName) {
+    compression = codecName;
+  }
+
   private Escaper urlParamEscaper = UrlEscapers.urlFormParameterEscaper();
 
   String endpoint;
@@ -97,6 +108,8 @@ public class CdmrCoverageReader implements CoverageReader, CoordAxisReader {
     Formatter f = new Formatter();
     f.format("%s?", endpoint);
     subset.encodeForCdmrfDataRequest(f, coverage.getName());
+    if (compression != null)
+      f.format("&compress=%s", compression);
 
     if (showRequest)
       System.out.printf("CdmrFeature data request for gridCoverage: %s%n url=%s", coverage.getName(), f);
@@ -44,6 +44,7 @@ import ucar.nc2.constants.AxisType;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.ft2.coverage.*;
 import ucar.nc2.stream.NcStream;
+import ucar.nc2.stream.NcStreamCodec;
 import ucar.nc2.stream.NcStreamProto;
 import ucar.nc2.time.Calendar;
 import ucar.nc2.time.CalendarDate;
@@ -448,7 +449,7 @@ message Coverage {
     repeated GeoReferencedArray geoArray = 4;
   }
    */
-  public CoverageDataResponse decodeDataResponse(CdmrFeatureProto.CoverageDataResponse dproto) {
+  public CoverageDataResponse decodeDataResponse(CdmrFeatureProto.CoverageDataResponse dproto) throws IOException {
     List<CoverageTransform> transforms = new ArrayList<>();
     for (CdmrFeatureProto.CoordTransform pt : dproto.getCoordTransformsList())
       transforms.add( decodeCoordTransform(pt));
@@ -485,17 +486,26 @@ message Coverage {
   }
    */
 
-  public GeoReferencedArray decodeGeoReferencedArray(CoverageDataResponse dataResponse, CdmrFeatureProto.GeoReferencedArray parray) {
+  public GeoReferencedArray decodeGeoReferencedArray(CoverageDataResponse dataResponse, CdmrFeatureProto.GeoReferencedArray parray) throws IOException {
     DataType dataType = NcStream.convertDataType(parray.getDataType());
     ByteOrder byteOrder = parray.getBigend() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
-    boolean deflate = parray.getCompress() == NcStreamProto.Compress.DEFLATE;
+    NcStreamProto.Compress compress = parray.getCompress();
     long uncompressedSize = parray.getUncompressedSize();
 
     int[] shape = new int[parray.getShapeCount()];
     for (int i=0; i< parray.getShapeCount(); i++)
       shape[i] = parray.getShape(i);
 
-    ByteBuffer bb = parray.getPrimdata().asReadOnlyByteBuffer();
+    ByteBuffer bb;
+    if (compress != NcStreamProto.Compress.NONE) {
+      NcStreamCodec codec = NcStreamCodec.find(compress);
+      if (codec == null)
+        throw new IOException("Unknown compression " + compress + " for " + parray.getCoverageName());
+      byte[] datab = parray.getPrimdata().toByteArray();
+      bb = ByteBuffer.wrap(codec.decode(datab, datab.length, (int) uncompressedSize, dataType.getSize()));
+    } else {
+      bb = parray.getPrimdata().asReadOnlyByteBuffer();
+    }
     bb.order(byteOrder);
     Array data = Array.factory(dataType, shape, bb);
 
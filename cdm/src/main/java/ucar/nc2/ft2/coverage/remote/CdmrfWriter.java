@@ -34,14 +34,12 @@
 package ucar.nc2.ft2.coverage.remote;
 
 import com.google.protobuf.ByteString;
-import ucar.ma2.Array;
-import ucar.ma2.InvalidRangeException;
 import ucar.nc2.*;
 import ucar.nc2.constants.AxisType;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.ft2.coverage.*;
-import ucar.nc2.iosp.IospHelper;
 import ucar.nc2.stream.NcStream;
+import ucar.nc2.stream.NcStreamCodec;
 import ucar.nc2.stream.NcStreamDataCol;
 import ucar.nc2.stream.NcStreamProto;
 import ucar.nc2.time.Calendar;
@@ -50,14 +48,12 @@ import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonRect;
 import ucar.unidata.geoloc.ProjectionRect;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
 import java.util.List;
-import java.util.zip.DeflaterOutputStream;
 
 /**
  * Server side for Cdmrf
@@ -417,7 +413,7 @@ public class CdmrfWriter {
    */
 
   public CdmrFeatureProto.CoverageDataResponse encodeDataResponse(Iterable<CoverageCoordAxis> axes,
-        Iterable<CoverageCoordSys> coordSys, Iterable<CoverageTransform> transforms, List<GeoReferencedArray> arrays, boolean deflate) {
+        Iterable<CoverageCoordSys> coordSys, Iterable<CoverageTransform> transforms, List<GeoReferencedArray> arrays, NcStreamCodec codec) throws IOException {
 
     CdmrFeatureProto.CoverageDataResponse.Builder builder = CdmrFeatureProto.CoverageDataResponse.newBuilder();
     for (CoverageCoordAxis axis : axes)
@@ -427,12 +423,13 @@ public class CdmrfWriter {
     for (CoverageTransform t : transforms)
       builder.addCoordTransforms(encodeCoordTransform(t));
     for (GeoReferencedArray array : arrays)
-      builder.addGeoArray(encodeGeoReferencedArray(array, deflate));
+      builder.addGeoArray(encodeGeoReferencedArray(array, codec));
 
     return builder.build();
   }
 
-  public CdmrFeatureProto.GeoReferencedArray.Builder encodeGeoReferencedArray(GeoReferencedArray geoArray, boolean deflate) {
+  // codec may be null for no compression
+  public CdmrFeatureProto.GeoReferencedArray.Builder encodeGeoReferencedArray(GeoReferencedArray geoArray, NcStreamCodec codec) throws IOException {
     CdmrFeatureProto.GeoReferencedArray.Builder builder = CdmrFeatureProto.GeoReferencedArray.newBuilder();
     builder.setCoverageName(geoArray.getCoverageName());
     builder.setDataType(NcStream.convertDataType(geoArray.getDataType()));
@@ -448,46 +445,21 @@ public class CdmrfWriter {
 
     builder.setCoordSysName(csys.getName());
 
-    if (deflate) {
-      builder.setCompress(NcStreamProto.Compress.DEFLATE);
-      long uncompressedSize = geoArray.getData().getSizeBytes();
-      builder.setUncompressedSize(uncompressedSize);
+    ByteString primdata = NcStreamDataCol.copyArrayToByteString( geoArray.getData());
+    if (codec != null) {
+      byte[] raw = primdata.toByteArray();
+      builder.setCompress(codec.getType());
+      builder.setUncompressedSize(raw.length);
+      builder.setPrimdata(ByteString.copyFrom(codec.encode(raw, raw.length, geoArray.getDataType().getSize())));
 
     } else {
-      builder.setPrimdata(NcStreamDataCol.copyArrayToByteString( geoArray.getData()));
+      builder.setPrimdata(primdata);
     }
 
 
     return builder;
   }
 
-  private long sendData(Array data, OutputStream out, boolean deflate) throws IOException, InvalidRangeException {
-
-    // length of data uncompressed
-    long uncompressedLength = data.getSizeBytes();
-    long size = 0;
-
-    if (deflate) {
-      // write to an internal buffer, so we can find out the size
-      ByteArrayOutputStream bout = new ByteArrayOutputStream();
-      DeflaterOutputStream dout = new DeflaterOutputStream(bout);
-      IospHelper.copyToOutputStream(data, dout);
-
-      // write internal buffer to output stream
-      dout.close();
-      int deflatedSize = bout.size();
-      size += NcStream.writeVInt(out, deflatedSize);
-      bout.writeTo(out);
-      size += deflatedSize;
-
-    } else {
-      size += NcStream.writeVInt(out, (int) uncompressedLength);
-      size += IospHelper.copyToOutputStream(data, out);
-    }
-
-    return size;
-  }
-
   private int writeBytes(OutputStream out, byte[] b) throws IOException {
     out.write(b);
     return b.length;
@@ -33,22 +33,31 @@
  */
 package ucar.nc2.ft2.coverage.writer;
 
+import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
 import ucar.ma2.Section;
 import ucar.nc2.*;
 import ucar.nc2.constants.*;
 import ucar.nc2.ft2.coverage.*;
+import ucar.nc2.iosp.netcdf3.N3iosp;
+import ucar.nc2.iosp.netcdf3.N3outputStreamWriter;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.util.Misc;
 import ucar.nc2.util.Optional;
 import ucar.unidata.geoloc.*;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.LongConsumer;
 
 /**
  * Write CF Compliant Grid file from a Coverage.
@@ -66,6 +75,7 @@ public class CFGridCoverageWriter2 {
 
   static private final String BOUNDS = "_bounds";
   static private final String BOUNDS_DIM = "bounds_dim"; // dimension of length 2, can be used by any bounds coordinate
+  static private final int STREAM_BUFFER_SIZE = 64 * 1000;
 
   /**
    * Write a netcdf/CF file from a CoverageDataset
@@ -114,6 +124,196 @@ public class CFGridCoverageWriter2 {
     boolean isLargeFile = isLargeFile(total_size);
     writer.setLargeFile(isLargeFile);
 
+    defineFile(subsetDataset, addLatLon, writer);
+
+    // finish define mode
+    writer.create();
+
+    // write the coordinate data
+    for (CoverageCoordAxis axis : subsetDataset.getCoordAxes()) {
+      Variable v = writer.findVariable(axis.getName());
+      if (v != null) {
+        if (show) System.out.printf("CFGridCoverageWriter2 write axis %s%n", v.getNameAndDimensions());
+        writer.write(v, axis.getCoordsAsArray());
+      } else {
+        logger.error("CFGridCoverageWriter2 No variable for %s%n", axis.getName());
+      }
+
+      if (axis.isInterval()) {
+        Variable vb = writer.findVariable(axis.getName() + BOUNDS);
+        writer.write(vb, axis.getCoordBoundsAsArray());
+      }
+    }
+
+    // write the grid data
+    for (Coverage grid : subsetDataset.getCoverages()) {
+      // we need to call readData on the original
+      Coverage gridOrg = gdsOrg.findCoverage(grid.getName());
+      GeoReferencedArray array = gridOrg.readData(subsetParams);
+
+      // test conform to whatever axis.getCoordsAsArray() returns
+      checkConformance(gridOrg, grid, array, gdsOrg.getName());
+
+      Variable v = writer.findVariable(grid.getName());
+      if (show) System.out.printf("CFGridCoverageWriter2 write grid %s%n", v.getNameAndDimensions());
+      writer.write(v, array.getData());
+    }
+
+    writer.close();
+
+    return Optional.of(total_size);
+  }
+
+  /**
+   * Write a netcdf-3/CF file from a CoverageDataset to a stream, without creating a file.
+   * The header is computed from the subsetted metadata, then the variables are written in file order.
+   * Cannot be used for large (64-bit offset) files; check the size with writeOrTestSize() and isLargeFile() first.
+   *
+   * @param gdsOrg    the CoverageDataset
+   * @param gridNames the list of coverage names to be written, or null for all
+   * @param subset    defines the requested subset
+   * @param addLatLon add 2D lat/lon coordinates if needed
+   * @param out       write to this stream; it is flushed but not closed
+   * @return total bytes of coverage data written
+   * @throws IOException
+   * @throws InvalidRangeException
+   */
+  public static ucar.nc2.util.Optional<Long> writeStream(CoverageCollection gdsOrg, List<String> gridNames,
+                               SubsetParams subset,
+                               boolean addLatLon,
+                               OutputStream out) throws IOException, InvalidRangeException {
+    return writeStream(gdsOrg, gridNames, subset, addLatLon, out, null);
+  }
+
+  /**
+   * Write a netcdf-3/CF file from a CoverageDataset to a stream, without creating a file.
+   * The first coverage is read before anything is written, so a dataset that cant be read fails before the stream is started.
+   *
+   * @param gdsOrg       the CoverageDataset
+   * @param gridNames    the list of coverage names to be written, or null for all
+   * @param subset       defines the requested subset
+   * @param addLatLon    add 2D lat/lon coordinates if needed
+   * @param out          write to this stream; it is flushed but not closed
+   * @param sizeListener if not null, called with the exact size of the stream in bytes before anything is written,
+   *                     eg to set the Content-Length of an HTTP response, so a client can tell if the stream was cut short
+   * @return total bytes of coverage data written
+   * @throws IOException
+   * @throws InvalidRangeException
+   */
+  public static ucar.nc2.util.Optional<Long> writeStream(CoverageCollection gdsOrg, List<String> gridNames,
+                               SubsetParams subset,
+                               boolean addLatLon,
+                               OutputStream out,
+                               LongConsumer sizeListener) throws IOException, InvalidRangeException {
+
+    CFGridCoverageWriter2 writer2 = new CFGridCoverageWriter2();
+    return writer2.streamFile(gdsOrg, gridNames, subset, addLatLon, out, sizeListener);
+  }
+
+  /**
+   * Is this too big for a netcdf-3 file with 32-bit offsets?
+   *
+   * @param total_size estimated size in bytes, eg from writeOrTestSize()
+   * @return true if a large (64-bit offset) file must be used
+   */
+  public static boolean isLargeFile(long total_size) {
+    boolean isLargeFile = false;
+    long maxSize = Integer.MAX_VALUE;
+    if (total_size > maxSize) {
+      logger.debug("Request size = {} Mbytes", total_size / 1000 / 1000);
+      isLargeFile = true;
+    }
+    return isLargeFile;
+  }
+
+  private ucar.nc2.util.Optional<Long> streamFile(CoverageCollection gdsOrg, List<String> gridNames, SubsetParams subsetParams,
+                              boolean addLatLon, OutputStream out, LongConsumer sizeListener) throws IOException, InvalidRangeException {
+
+    Optional<CoverageCollection> opt = CoverageSubsetter2.makeCoverageDatasetSubset(gdsOrg, gridNames, subsetParams);
+    if (!opt.isPresent())
+      return ucar.nc2.util.Optional.empty(opt.getErrorMessage());
+
+    CoverageCollection subsetDataset = opt.get();
+
+    long total_size = 0;
+    for (Coverage grid : subsetDataset.getCoverages()) {
+      total_size += grid.getSizeInBytes();
+    }
+
+    // the metadata is built the same way as for a file, but the file is never created
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, gdsOrg.getName(), null);
+    defineFile(subsetDataset, addLatLon, writer);
+    NetcdfFile ncfile = writer.createForStreaming();
+
+    long dataSize = 0;
+    for (Variable v : ncfile.getVariables())
+      dataSize += v.getSize() * v.getElementSize() + 3; // allow for padding
+    if (isLargeFile(dataSize))
+      throw new IllegalArgumentException("Request size = " + dataSize + " bytes is too large to stream as netcdf-3");
+
+    // the header is computed first, it gives the size of the stream
+    N3outputStreamWriter n3writer = new N3outputStreamWriter(ncfile);
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    n3writer.writeHeader(new DataOutputStream(header), 0);
+
+    // read the first coverage before anything is written
+    Variable first = null;
+    Array firstData = null;
+    for (Variable v : ncfile.getVariables()) {
+      if (subsetDataset.findCoverage(v.getShortName()) != null) {
+        first = v;
+        firstData = readVariable(v, gdsOrg, subsetDataset, subsetParams);
+        break;
+      }
+    }
+
+    if (sizeListener != null)
+      sizeListener.accept(n3writer.getNonRecordFileSize());
+
+    DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(out, STREAM_BUFFER_SIZE));
+    header.writeTo(stream);
+
+    // all variables are non-record, written in the order of the header
+    for (Variable v : ncfile.getVariables()) {
+      Array data = (v == first) ? firstData : readVariable(v, gdsOrg, subsetDataset, subsetParams);
+      if (show) System.out.printf("CFGridCoverageWriter2 stream %s%n", v.getNameAndDimensions());
+      n3writer.writeNonRecordData(v, stream, data);
+      if (v == first) firstData = null; // let it be garbage collected
+    }
+
+    stream.flush();
+    return Optional.of(total_size);
+  }
+
+  // the data of a variable in the streamed file
+  private Array readVariable(Variable v, CoverageCollection gdsOrg, CoverageCollection subsetDataset, SubsetParams subsetParams)
+          throws IOException, InvalidRangeException {
+    String name = v.getShortName();
+
+    CoverageCoordAxis axis = subsetDataset.findCoordAxis(name);
+    if (axis != null)
+      return axis.getCoordsAsArray();
+
+    if (name.endsWith(BOUNDS) && subsetDataset.findCoordAxis(name.substring(0, name.length() - BOUNDS.length())) != null)
+      return subsetDataset.findCoordAxis(name.substring(0, name.length() - BOUNDS.length())).getCoordBoundsAsArray();
+
+    Coverage grid = subsetDataset.findCoverage(name);
+    if (grid != null) {
+      // we need to call readData on the original
+      Coverage gridOrg = gdsOrg.findCoverage(name);
+      GeoReferencedArray array = gridOrg.readData(subsetParams);
+      checkConformance(gridOrg, grid, array, gdsOrg.getName());
+      return array.getData();
+    }
+
+    // coordinate transform container; reads as the default fill value, same as an unwritten variable
+    Array data = Array.factory(v.getDataType(), v.getShape());
+    MAMath.setDouble(data, N3iosp.getFillValueDefault(v.getDataType()).doubleValue());
+    return data;
+  }
+
+  // add the dimensions, variables and attributes, but not the data
+  private void defineFile(CoverageCollection subsetDataset, boolean addLatLon, NetcdfFileWriter writer) {
     addGlobalAttributes(subsetDataset, writer);
 
     // each independent coordinate is a dimension
@@ -177,53 +377,6 @@ public class CFGridCoverageWriter2 {
     }
 
     addCFAnnotations(subsetDataset, writer, addLatLon);
-
-    // finish define mode
-    writer.create();
-
-    // write the coordinate data
-    for (CoverageCoordAxis axis : subsetDataset.getCoordAxes()) {
-      Variable v = writer.findVariable(axis.getName());
-      if (v != null) {
-        if (show) System.out.printf("CFGridCoverageWriter2 write axis %s%n", v.getNameAndDimensions());
-        writer.write(v, axis.getCoordsAsArray());
-      } else {
-        logger.error("CFGridCoverageWriter2 No variable for %s%n", axis.getName());
-      }
-
-      if (axis.isInterval()) {
-        Variable vb = writer.findVariable(axis.getName() + BOUNDS);
-        writer.write(vb, axis.getCoordBoundsAsArray());
-      }
-    }
-
-    // write the grid data
-    for (Coverage grid : subsetDataset.getCoverages()) {
-      // we need to call readData on the original
-      Coverage gridOrg = gdsOrg.findCoverage(grid.getName());
-      GeoReferencedArray array = gridOrg.readData(subsetParams);
-
-      // test conform to whatever axis.getCoordsAsArray() returns
-      checkConformance(gridOrg, grid, array, gdsOrg.getName());
-
-      Variable v = writer.findVariable(grid.getName());
-      if (show) System.out.printf("CFGridCoverageWriter2 write grid %s%n", v.getNameAndDimensions());
-      writer.write(v, array.getData());
-    }
-
-    writer.close();
-
-    return Optional.of(total_size);
-  }
-
-  private boolean isLargeFile(long total_size) {
-    boolean isLargeFile = false;
-    long maxSize = Integer.MAX_VALUE;
-    if (total_size > maxSize) {
-      logger.debug("Request size = {} Mbytes", total_size / 1000 / 1000);
-      isLargeFile = true;
-    }
-    return isLargeFile;
   }
 
   private void addGlobalAttributes(CoverageCollection gds, NetcdfFileWriter writer) {
@@ -35,6 +35,7 @@ package ucar.nc2.ft2.coverage.writer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import javax.annotation.Nonnull;
 
@@ -80,19 +81,19 @@ public class CoverageAsPoint {
   private CoverageCollection gcd;
   private List<VarData> varData;
   private SubsetParams subset;
-  private LatLonPointImpl latLonPoint;
+  private List<LatLonPointImpl> points;
   private CalendarDateUnit dateUnit;
 
   private class VarData {
     Coverage cov;
-    GeoReferencedArray array;
+    List<GeoReferencedArray> arrays; // one for each point, null if the point is not in the grid
 
     public VarData(Coverage cov) throws IOException {
       this.cov = cov;
       try {
-        this.array = cov.readData(subset);
+        this.arrays = cov.readData(subset, points); // all the points at once
         if (debug)
-          System.out.printf(" Coverage %s data shape = %s%n", cov.getName(), Misc.showInts(array.getData().getShape()));
+          System.out.printf(" Coverage %s read %d points%n", cov.getName(), arrays.size());
       } catch (InvalidRangeException e) {
         e.printStackTrace();
       }
@@ -100,18 +101,31 @@ public class CoverageAsPoint {
   }
 
   public CoverageAsPoint(CoverageCollection gcd, List<String> varNames, SubsetParams subset) throws IOException {
+    this(gcd, varNames, subset, makePointList(subset));
+  }
+
+  /**
+   * Make a station feature collection, with one station for each of a list of points.
+   * Each variable is read for all of the points together.
+   *
+   * @param gcd the coverages
+   * @param varNames names of the coverages
+   * @param subset the non-horizontal subset
+   * @param points make a station at the grid point containing each of these; points not in the grid are skipped
+   * @throws IOException on read error
+   */
+  public CoverageAsPoint(CoverageCollection gcd, List<String> varNames, SubsetParams subset, List<LatLonPointImpl> points) throws IOException {
     this.gcd = gcd;
     this.subset = subset;
-
-    latLonPoint = (LatLonPointImpl) subset.get(SubsetParams.latlonPoint);
-    if (latLonPoint == null)
-      throw new IllegalArgumentException("No latlon point");
+    this.points = points;
 
     varData = new ArrayList<>(varNames.size());
     for (String varName : varNames) {
-      Coverage cov = gcd.findCoverage(varName); // LOOK we should read all at once if possible
+      Coverage cov = gcd.findCoverage(varName);
       if (cov != null) {
-        varData.add(new VarData(cov));
+        VarData vd = new VarData(cov);
+        if (vd.arrays == null) continue;
+        varData.add(vd);
 
         if (dateUnit == null) { // assume all have the same time unit, just use the first one
           CoverageCoordSys csys = cov.getCoordSys();
@@ -122,8 +136,15 @@ public class CoverageAsPoint {
     }
   }
 
+  private static List<LatLonPointImpl> makePointList(SubsetParams subset) {
+    LatLonPointImpl latLonPoint = (LatLonPointImpl) subset.get(SubsetParams.latlonPoint);
+    if (latLonPoint == null)
+      throw new IllegalArgumentException("No latlon point");
+    return Collections.singletonList(latLonPoint);
+  }
+
   public FeatureDatasetPoint asFeatureDatasetPoint() {
-    // for the moment, assume a single station, no vert coord, single lat/lon
+    // for the moment, assume no vert coord
     return new CoverageAsFeatureDatasetPoint(FeatureType.STATION);
   }
 
@@ -151,19 +172,31 @@ public class CoverageAsPoint {
     @Override
     protected StationHelper createStationHelper() throws IOException {
       StationHelper helper = new StationHelper();
-      String name = String.format("GridPointAt[%s]", latLonPoint.toString(3));
-      name = StringUtil2.replace(name.trim(), ' ', "_");
-      helper.addStation(new MyStationFeature(name, name, null, latLonPoint.getLatitude(), latLonPoint.getLongitude(), 0.0, dateUnit, null, -1));
+      for (int ptIndex = 0; ptIndex < points.size(); ptIndex++) {
+        if (!hasData(ptIndex)) continue;
+        LatLonPointImpl latLonPoint = points.get(ptIndex);
+        String name = String.format("GridPointAt[%s]", latLonPoint.toString(3));
+        name = StringUtil2.replace(name.trim(), ' ', "_");
+        helper.addStation(new MyStationFeature(name, name, null, latLonPoint.getLatitude(), latLonPoint.getLongitude(), 0.0, dateUnit, null, -1, ptIndex));
+      }
       return helper;
     }
 
+    private boolean hasData(int ptIndex) {
+      for (VarData vd : varData)
+        if (vd.arrays.get(ptIndex) == null) return false;
+      return true;
+    }
+
   }
 
   private class MyStationFeature extends StationTimeSeriesFeatureImpl {
+    private final int ptIndex; // index into points
 
-    public MyStationFeature(String name, String desc, String wmoId, double lat, double lon, double alt, CalendarDateUnit timeUnit, String altUnits, int npts) {
+    public MyStationFeature(String name, String desc, String wmoId, double lat, double lon, double alt, CalendarDateUnit timeUnit, String altUnits, int npts, int ptIndex) {
       // String name, String desc, String wmoId, double lat, double lon, double alt, DateUnit timeUnit, String altUnits, int npts
       super(name, desc, wmoId, lat, lon, alt, timeUnit, altUnits, npts, StructureData.EMPTY);
+      this.ptIndex = ptIndex;
     }
 
     @Nonnull
@@ -198,13 +231,14 @@ public class CoverageAsPoint {
       TimeseriesIterator() {
         varIters = new ArrayList<>();
         for (VarData vd : varData) {
-          Array data = vd.array.getData();
+          GeoReferencedArray array = vd.arrays.get(ptIndex);
+          Array data = array.getData();
           if (debug) System.out.printf("%s shape=%s%n", vd.cov.getName(), Misc.showInts(data.getShape()));
-          varIters.add(new VarIter(vd.cov, vd.array, data.getIndexIterator()));
+          varIters.add(new VarIter(vd.cov, array, data.getIndexIterator()));
           nvalues = (int) data.getSize();
 
           if (timeAxis == null) { // assume they are all the same (!)
-            CoverageCoordSys csys = vd.array.getCoordSysForData();
+            CoverageCoordSys csys = array.getCoordSysForData();
             timeAxis = (CoverageCoordAxis1D) csys.getTimeAxis();   // LOOK may not be right
           }
         }
@@ -41,6 +41,7 @@ import ucar.nc2.iosp.IospHelper;
 
 import java.util.List;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
@@ -112,6 +113,14 @@ public class N3outputStreamWriter extends N3streamWriter {
     }
   }
 
+  /**
+   * The size of the file when it has no record variables. Call writeHeader() first.
+   * @return size in bytes, including the header and padding
+   */
+  public long getNonRecordFileSize() {
+    return recStart;
+  }
+
   public void writeNonRecordData(Variable v, DataOutputStream stream, Array data) throws IOException {
     Vinfo vinfo = vinfoMap.get(v);
     if (debugWriteData)
@@ -154,42 +163,53 @@ public class N3outputStreamWriter extends N3streamWriter {
   /////////////////////////////////////////////
 
 
+  private static final int BUFFER_SIZE = 8 * 1024; // bytes; a multiple of 8
+
+  private byte[] buffer;
+
+  // values are encoded big-endian into a buffer, which is written in one call per chunk
   private long writeData(Variable v, DataOutputStream stream, Array values) throws java.io.IOException {
     DataType dataType = v.getDataType();
     IndexIterator ii = values.getIndexIterator();
 
-    if (dataType == DataType.BYTE) {
-      while (ii.hasNext())
-        stream.write(ii.getByteNext());
-      return values.getSize();
-
-    } else if (dataType == DataType.CHAR) {
-      while (ii.hasNext())
-        stream.write(ii.getByteNext());
+    if ((dataType == DataType.BYTE) || (dataType == DataType.CHAR)) {
+      if (buffer == null) buffer = new byte[BUFFER_SIZE];
+      int pos = 0;
+      while (ii.hasNext()) {
+        if (pos == BUFFER_SIZE) {
+          stream.write(buffer, 0, pos);
+          pos = 0;
+        }
+        buffer[pos++] = ii.getByteNext();
+      }
+      stream.write(buffer, 0, pos);
       return values.getSize();
-
-    } else if (dataType == DataType.SHORT) {
-      while (ii.hasNext())
-        stream.writeShort(ii.getShortNext());
-      return 2 * values.getSize();
-
-    } else if (dataType == DataType.INT) {
-      while (ii.hasNext())
-        stream.writeInt(ii.getIntNext());
-      return 4 * values.getSize();
-
-    } else if (dataType == DataType.FLOAT) {
-      while (ii.hasNext())
-        stream.writeFloat(ii.getFloatNext());
-      return 4 * values.getSize();
-
-    } else if (dataType == DataType.DOUBLE) {
-      while (ii.hasNext())
-        stream.writeDouble(ii.getDoubleNext());
-      return 8 * values.getSize();
     }
 
-    throw new IllegalStateException("dataType= " + dataType);
+    int elemSize;
+    if (dataType == DataType.SHORT) elemSize = 2;
+    else if ((dataType == DataType.INT) || (dataType == DataType.FLOAT)) elemSize = 4;
+    else if (dataType == DataType.DOUBLE) elemSize = 8;
+    else throw new IllegalStateException("dataType= " + dataType);
+
+    if (buffer == null) buffer = new byte[BUFFER_SIZE];
+    ByteBuffer bb = ByteBuffer.wrap(buffer); // big endian
+    while (ii.hasNext()) {
+      if (bb.remaining() < elemSize) {
+        stream.write(buffer, 0, bb.position());
+        bb.clear();
+      }
+      if (dataType == DataType.SHORT)
+        bb.putShort(ii.getShortNext());
+      else if (dataType == DataType.INT)
+        bb.putInt(ii.getIntNext());
+      else if (dataType == DataType.FLOAT)
+        bb.putFloat(ii.getFloatNext());
+      else
+        bb.putDouble(ii.getDoubleNext());
+    }
+    stream.write(buffer, 0, bb.position());
+    return elemSize * values.getSize();
   }
 
   private int writeDataFast(Variable v, DataOutputStream stream, Array values) throws java.io.IOException {
@@ -62,6 +62,7 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
   // static private org.slf4SCHEMEj.Logger logger = org.slf4j.LoggerFactory.getLogger(CdmRemote.class);
   static private boolean showRequest = true;
   static private boolean compress = false;
+  static private String compression = null;
 
   static public void setDebugFlags(ucar.nc2.util.DebugFlags debugFlag) {
     showRequest = debugFlag.isSet("CdmRemote/showRequest");
@@ -71,6 +72,16 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
     compress = b;
   }
 
+  /**
+   * Ask the server to compress data with this codec, eg "lz4" or "shuffle-lz4"; null to not ask.
+   * Takes precedence over setAllowCompression().
+   *
+   * @see NcStreamCodec
+   */
+  static public void setCompression(String codecName) {
+    compression = codecName;
+  }
+
 
   /**
    * Create the canonical form of the URL.
@@ -157,13 +168,18 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
 
     Formatter f = new Formatter();
     f.format("%s?req=data", remoteURI);
-    if (compress)
+    if (compression != null)
+      f.format("&compress=%s", compression);
+    else if (compress)
       f.format("&deflate=5");
     //f.format("&var=%s", v.getShortName());
     f.format("&var=%s", v.getFullNameEscaped());
     if ((section != null) && (section.computeSize() != v.getSize()) && (v.getDataType() != DataType.SEQUENCE)) {
       f.format("(%s)", section.toString());
     }
+    boolean isStructure = (v.getDataType() == DataType.STRUCTURE);
+    if (isStructure)
+      f.format("&chunk=true"); // large structures are sent in blocks
     String url = f.toString();
     // String escapedURI = f.toString();
     URI escapedURI;
@@ -191,7 +207,7 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
         int readLen = Integer.parseInt(s);
         if (showRequest)
           System.out.printf(" content-length = %d%n", readLen);
-        if (v.getDataType() != DataType.SEQUENCE) {
+        if (!isStructure && v.getDataType() != DataType.SEQUENCE) { // chunked and sequence data have no fixed size
           int wantSize = (int) (v.getElementSize() * (section == null ? v.getSize() : section.computeSize()));
           if (readLen != wantSize)
             throw new IOException("content-length= " + readLen + " not equal expected Size= " + wantSize); // LOOK
@@ -200,7 +216,7 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
 
       InputStream is = method.getResponseAsStream();  // Closed by HTTPMethod.close().
       NcStreamReader reader = new NcStreamReader();
-      NcStreamReader.DataResult result = reader.readData(is, this, remoteURI);
+      NcStreamReader.DataResult result = isStructure ? reader.readStructureChunks(is, this, remoteURI) : reader.readData(is, this, remoteURI);
 
       assert v.getFullNameEscaped().equals(result.varNameFullEsc);
       return result.data;
@@ -216,9 +232,9 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
 
   protected StructureDataIterator getStructureIterator(Structure s, int bufferSize) throws java.io.IOException {
     try {
-      InputStream is = sendQuery(httpClient, remoteURI, s.getFullNameEscaped());
+      InputStream is = sendQuery(httpClient, remoteURI, "req=data&var=" + s.getFullNameEscaped());
       NcStreamReader reader = new NcStreamReader();
-      return reader.getStructureIterator(is, this);
+      return reader.getStructureChunkIterator(is, this, remoteURI);
 
     } catch (Throwable e) {
       e.printStackTrace();
@@ -0,0 +1,233 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.stream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compress and decompress using the LZ4 block format.
+ * This is a simple greedy compressor, trading compression ratio for speed;
+ * the output can be decompressed by any LZ4 block decoder, and vice versa.
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format</a>
+ */
+public class Lz4Block {
+  static private final int MIN_MATCH = 4;
+  static private final int LAST_LITERALS = 5;   // the last 5 bytes are always literals
+  static private final int MF_LIMIT = 12;       // the last match must start at least 12 bytes before the end
+  static private final int MAX_DISTANCE = 65535;
+  static private final int HASH_LOG = 14;
+  static private final int SKIP_STRENGTH = 6;   // speed up on incompressible data
+
+  /**
+   * The largest size that len bytes can compress to.
+   */
+  static public int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  /**
+   * Compress src[srcOff, srcOff+srcLen) into dest, starting at destOff.
+   *
+   * @param dest must have room for maxCompressedLength(srcLen) bytes
+   * @return the number of bytes written to dest
+   */
+  static public int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff) {
+    int srcEnd = srcOff + srcLen;
+    int matchLimit = srcEnd - LAST_LITERALS;
+    int mfLimit = srcEnd - MF_LIMIT;
+    int anchor = srcOff;
+    int op = destOff;
+
+    if (srcLen > MF_LIMIT) {
+      int[] table = new int[1 << HASH_LOG]; // position - srcOff of the last occurrence of each hash
+      int ip = srcOff + 1;
+      int misses = 0;
+
+      while (ip < mfLimit) {
+        int seq = readInt(src, ip);
+        int h = hash(seq);
+        int ref = srcOff + table[h];
+        table[h] = ip - srcOff;
+
+        if (ref >= ip || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+          ip += 1 + (misses++ >> SKIP_STRENGTH);
+          continue;
+        }
+        misses = 0;
+
+        // extend the match backwards, then forwards
+        while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+          ip--;
+          ref--;
+        }
+        int matchLen = MIN_MATCH;
+        while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen])
+          matchLen++;
+
+        op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLen, dest, op);
+        ip += matchLen;
+        anchor = ip;
+        if (ip < mfLimit)
+          table[hash(readInt(src, ip - 2))] = ip - 2 - srcOff;
+      }
+    }
+
+    // last literals
+    int litLen = srcEnd - anchor;
+    op = writeLength(dest, op, litLen, Math.min(litLen, 15) << 4);
+    System.arraycopy(src, anchor, dest, op, litLen);
+    return op + litLen - destOff;
+  }
+
+  /**
+   * Compress all of src.
+   *
+   * @return the compressed bytes
+   */
+  static public byte[] compress(byte[] src, int len) {
+    byte[] dest = new byte[maxCompressedLength(len)];
+    int n = compress(src, 0, len, dest, 0);
+    return Arrays.copyOf(dest, n);
+  }
+
+  /**
+   * Decompress src[srcOff, srcOff+srcLen) into dest[destOff, destOff+destLen).
+   *
+   * @throws IOException if the input is corrupt or does not decompress to exactly destLen bytes
+   */
+  static public void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) throws IOException {
+    int ip = srcOff;
+    int srcEnd = srcOff + srcLen;
+    int op = destOff;
+    int destEnd = destOff + destLen;
+
+    while (ip < srcEnd) {
+      int token = src[ip++] & 0xff;
+
+      // literals
+      int litLen = token >>> 4;
+      if (litLen == 15) {
+        int b;
+        do {
+          if (ip >= srcEnd) throw new IOException("LZ4 data corrupted: truncated literal length");
+          b = src[ip++] & 0xff;
+          litLen += b;
+          // check as we go, so a long run of 255s cant overflow
+          if (litLen > srcEnd - ip || litLen > destEnd - op)
+            throw new IOException("LZ4 data corrupted: literals overflow");
+        } while (b == 255);
+      }
+      if (litLen > srcEnd - ip || litLen > destEnd - op)
+        throw new IOException("LZ4 data corrupted: literals overflow");
+      System.arraycopy(src, ip, dest, op, litLen);
+      ip += litLen;
+      op += litLen;
+      if (ip == srcEnd) break; // the last sequence has no match
+
+      // match
+      if (ip + 2 > srcEnd) throw new IOException("LZ4 data corrupted: truncated offset");
+      int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+      ip += 2;
+      if (offset == 0 || offset > op - destOff)
+        throw new IOException("LZ4 data corrupted: bad offset " + offset);
+      int matchLen = token & 15;
+      if (matchLen == 15) {
+        int b;
+        do {
+          if (ip >= srcEnd) throw new IOException("LZ4 data corrupted: truncated match length");
+          b = src[ip++] & 0xff;
+          matchLen += b;
+          if (matchLen + MIN_MATCH > destEnd - op)
+            throw new IOException("LZ4 data corrupted: match overflow");
+        } while (b == 255);
+      }
+      matchLen += MIN_MATCH;
+      if (matchLen > destEnd - op)
+        throw new IOException("LZ4 data corrupted: match overflow");
+
+      int ref = op - offset;
+      if (offset >= matchLen) {
+        System.arraycopy(dest, ref, dest, op, matchLen);
+        op += matchLen;
+      } else { // overlapping copy repeats the pattern
+        for (int i = 0; i < matchLen; i++)
+          dest[op++] = dest[ref++];
+      }
+    }
+
+    if (op != destEnd)
+      throw new IOException("LZ4 data corrupted: decompressed " + (op - destOff) + " bytes, expected " + destLen);
+  }
+
+  ////////////////////////////////////////////////////////////////
+
+  static private int writeSequence(byte[] src, int litStart, int litLen, int offset, int matchLen, byte[] dest, int op) {
+    int ml = matchLen - MIN_MATCH;
+    op = writeLength(dest, op, litLen, (Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+    System.arraycopy(src, litStart, dest, op, litLen);
+    op += litLen;
+    dest[op++] = (byte) offset;
+    dest[op++] = (byte) (offset >>> 8);
+    if (ml >= 15)
+      op = writeLengthBytes(dest, op, ml - 15);
+    return op;
+  }
+
+  // write the token, and the extra literal length bytes if needed
+  static private int writeLength(byte[] dest, int op, int litLen, int token) {
+    dest[op++] = (byte) token;
+    if (litLen >= 15)
+      op = writeLengthBytes(dest, op, litLen - 15);
+    return op;
+  }
+
+  static private int writeLengthBytes(byte[] dest, int op, int len) {
+    while (len >= 255) {
+      dest[op++] = (byte) 255;
+      len -= 255;
+    }
+    dest[op++] = (byte) len;
+    return op;
+  }
+
+  static private int readInt(byte[] b, int pos) {
+    return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+  }
+
+  static private int hash(int seq) {
+    return (seq * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+}
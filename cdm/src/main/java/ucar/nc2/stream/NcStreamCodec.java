@@ -0,0 +1,262 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.stream;
+
+import ucar.nc2.util.IO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses a block of data for ncstream and cdmremote.
+ * Each codec has a Compress type, which is recorded in the data message,
+ * and a name, which clients use to ask for it (eg "compress=lz4").
+ * <p>
+ * Codecs are found in a registry; register() replaces the codec for a Compress type,
+ * eg to use a native implementation.
+ */
+public abstract class NcStreamCodec {
+  static private final Map<NcStreamProto.Compress, NcStreamCodec> byType = new ConcurrentHashMap<>();
+  static private final Map<String, NcStreamCodec> byName = new ConcurrentHashMap<>();
+
+  static {
+    register(new Deflate(-1));
+    register(new Lz4());
+    register(new Shuffle(NcStreamProto.Compress.SHUFFLE_DEFLATE, new Deflate(-1)));
+    register(new Shuffle(NcStreamProto.Compress.SHUFFLE_LZ4, new Lz4()));
+  }
+
+  /**
+   * Register a codec, replacing any codec with the same Compress type.
+   */
+  static public void register(NcStreamCodec codec) {
+    NcStreamCodec old = byType.put(codec.getType(), codec);
+    if (old != null)
+      byName.remove(old.getName());
+    byName.put(codec.getName(), codec);
+  }
+
+  /**
+   * Find the codec for this Compress type.
+   *
+   * @return codec, or null if none is registered
+   */
+  static public NcStreamCodec find(NcStreamProto.Compress type) {
+    return (type == null || type == NcStreamProto.Compress.UNRECOGNIZED) ? null : byType.get(type);
+  }
+
+  /**
+   * Find the codec with this name, ignoring case.
+   *
+   * @return codec, or null if none is registered
+   */
+  static public NcStreamCodec find(String name) {
+    return (name == null) ? null : byName.get(name.toLowerCase());
+  }
+
+  /**
+   * @return the names of the registered codecs
+   */
+  static public List<String> getNames() {
+    return new ArrayList<>(byName.keySet());
+  }
+
+  /////////////////////////////////////////////////
+
+  /**
+   * The Compress type recorded in the data message.
+   */
+  public abstract NcStreamProto.Compress getType();
+
+  /**
+   * The name used to ask for this codec; lower case.
+   */
+  public abstract String getName();
+
+  /**
+   * Compress the first len bytes of data.
+   *
+   * @param elemSize size in bytes of one data element, used by filters like byte shuffle
+   * @return compressed bytes
+   */
+  public abstract byte[] encode(byte[] data, int len, int elemSize) throws IOException;
+
+  /**
+   * Decompress the first len bytes of data.
+   *
+   * @param uncompressedSize size of the original data, from the data message
+   * @param elemSize         size in bytes of one data element, must be the same as for encode()
+   * @return the original bytes
+   */
+  public abstract byte[] decode(byte[] data, int len, int uncompressedSize, int elemSize) throws IOException;
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+
+  /////////////////////////////////////////////////
+  // the standard codecs
+
+  static class Deflate extends NcStreamCodec {
+    private final int level;
+
+    Deflate(int level) {
+      this.level = Math.min(Math.max(level, -1), 9); // -1 is the default deflate setting
+    }
+
+    public NcStreamProto.Compress getType() {
+      return NcStreamProto.Compress.DEFLATE;
+    }
+
+    public String getName() {
+      return "deflate";
+    }
+
+    public byte[] encode(byte[] data, int len, int elemSize) throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(Math.max(len / 2, 32));
+      Deflater deflater = new Deflater(level);
+      try (DeflaterOutputStream dout = new DeflaterOutputStream(bout, deflater, 4 * 1024)) {
+        dout.write(data, 0, len);
+      } finally {
+        deflater.end();
+      }
+      return bout.toByteArray();
+    }
+
+    public byte[] decode(byte[] data, int len, int uncompressedSize, int elemSize) throws IOException {
+      InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data, 0, len));
+      if (uncompressedSize <= 0) { // size not recorded
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(len * 7);
+        IO.copy(in, bout);
+        return bout.toByteArray();
+      }
+      byte[] result = new byte[uncompressedSize];
+      NcStream.readFully(in, result);
+      return result;
+    }
+  }
+
+  static class Lz4 extends NcStreamCodec {
+    public NcStreamProto.Compress getType() {
+      return NcStreamProto.Compress.LZ4;
+    }
+
+    public String getName() {
+      return "lz4";
+    }
+
+    public byte[] encode(byte[] data, int len, int elemSize) {
+      return Lz4Block.compress(data, len);
+    }
+
+    public byte[] decode(byte[] data, int len, int uncompressedSize, int elemSize) throws IOException {
+      byte[] result = new byte[uncompressedSize];
+      Lz4Block.decompress(data, 0, len, result, 0, uncompressedSize);
+      return result;
+    }
+  }
+
+  /**
+   * Byte shuffle, then compress with another codec.
+   * Shuffling puts the first byte of every element together, then the second byte, etc.
+   * For float data, the sign and exponent bytes vary slowly, so they compress much better grouped together.
+   */
+  static class Shuffle extends NcStreamCodec {
+    private final NcStreamProto.Compress type;
+    private final NcStreamCodec codec;
+
+    Shuffle(NcStreamProto.Compress type, NcStreamCodec codec) {
+      this.type = type;
+      this.codec = codec;
+    }
+
+    public NcStreamProto.Compress getType() {
+      return type;
+    }
+
+    public String getName() {
+      return "shuffle-" + codec.getName();
+    }
+
+    public byte[] encode(byte[] data, int len, int elemSize) throws IOException {
+      return codec.encode(shuffle(data, len, elemSize), len, elemSize);
+    }
+
+    public byte[] decode(byte[] data, int len, int uncompressedSize, int elemSize) throws IOException {
+      byte[] shuffled = codec.decode(data, len, uncompressedSize, elemSize);
+      return unshuffle(shuffled, shuffled.length, elemSize);
+    }
+  }
+
+  /**
+   * Byte shuffle the first len bytes of data; any partial element at the end is left as is.
+   */
+  static public byte[] shuffle(byte[] data, int len, int elemSize) {
+    byte[] result = new byte[len];
+    int nelems = (elemSize > 1) ? len / elemSize : 0;
+    for (int b = 0; b < elemSize && nelems > 0; b++) {
+      int pos = b * nelems;
+      for (int i = 0, j = b; i < nelems; i++, j += elemSize)
+        result[pos + i] = data[j];
+    }
+    int done = nelems * elemSize;
+    System.arraycopy(data, done, result, done, len - done);
+    return result;
+  }
+
+  /**
+   * Undo shuffle().
+   */
+  static public byte[] unshuffle(byte[] data, int len, int elemSize) {
+    byte[] result = new byte[len];
+    int nelems = (elemSize > 1) ? len / elemSize : 0;
+    for (int b = 0; b < elemSize && nelems > 0; b++) {
+      int pos = b * nelems;
+      for (int i = 0, j = b; i < nelems; i++, j += elemSize)
+        result[j] = data[pos + i];
+    }
+    int done = nelems * elemSize;
+    System.arraycopy(data, done, result, done, len - done);
+    return result;
+  }
+
+}
@@ -45,6 +45,10 @@ public class NcStreamCompressedOutputStream extends DataOutputStream {
   private DeflaterOutputStream dout;
   private ByteArrayOutputStream buffer;
 
+  // block codecs compress the whole buffer at once
+  private NcStreamCodec codec;
+  private int elemSize;
+
   public NcStreamCompressedOutputStream(OutputStream out, int bufferSize, int level) {
     super(out);
 
@@ -63,8 +67,45 @@ public class NcStreamCompressedOutputStream extends DataOutputStream {
     this.out = new BufferedOutputStream(dout, 1024 * 1024);
   }
 
+  /**
+   * Compress with a block codec.
+   *
+   * @param bufferSize number of uncompressed bytes that will be written
+   * @param elemSize   size of one data element, passed to the codec
+   */
+  public NcStreamCompressedOutputStream(OutputStream out, int bufferSize, NcStreamCodec codec, int elemSize) {
+    super(out);
+    writer = out;
+    this.codec = codec;
+    this.elemSize = elemSize;
+
+    // uncompressed data is collected here
+    buffer = new RawBuffer(bufferSize);
+    this.out = buffer;
+  }
+
+  // gives access to the internal array, to avoid a copy
+  private static class RawBuffer extends ByteArrayOutputStream {
+    RawBuffer(int size) {
+      super(Math.max(size, 32));
+    }
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
   @Override
   public void flush() throws IOException {
+    if (codec != null) {
+      byte[] compressed = codec.encode(((RawBuffer) buffer).getBuffer(), buffer.size(), elemSize);
+      written = compressed.length;
+      written += NcStream.writeVInt(writer, compressed.length);
+      writer.write(compressed);
+      buffer.reset();
+      return;
+    }
+
     // Make sure we flush out our stream
     out.flush();
 
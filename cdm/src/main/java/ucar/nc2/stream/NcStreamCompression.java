@@ -64,11 +64,46 @@ public class NcStreamCompression {
         return new NcStreamCompression(NcStreamProto.Compress.DEFLATE, level);
     }
 
+    /**
+     * Compress with a registered codec.
+     *
+     * @param name codec name, eg "lz4" or "shuffle-lz4"; "none" means no compression
+     * @return null if there is no codec with that name
+     * @see NcStreamCodec
+     */
+    public static NcStreamCompression find(String name) {
+        if (name == null || name.equalsIgnoreCase("none"))
+            return none();
+        NcStreamCodec codec = NcStreamCodec.find(name);
+        if (codec == null)
+            return null;
+        if (codec.getType() == NcStreamProto.Compress.DEFLATE)
+            return deflate(); // use the streaming deflater
+        return new NcStreamCompression(codec.getType(), codec);
+    }
+
+    public NcStreamProto.Compress getType() {
+        return type;
+    }
+
     public OutputStream setupStream(OutputStream out, int size)
             throws IOException
+    {
+        return setupStream(out, size, 1);
+    }
+
+    /**
+     * Set up the stream that the data is written to.
+     * The compressed block is written to out when the returned stream is flushed.
+     *
+     * @param size     number of bytes of uncompressed data
+     * @param elemSize size of one data element, used by the shuffle filter
+     */
+    public OutputStream setupStream(OutputStream out, int size, int elemSize)
+            throws IOException
     {
         switch (type) {
-            // For compression (currently deflate) we compress the data, then
+            // For compression we compress the data, then
             // will write the block size, and then data, when the stream is closed.
             case DEFLATE:
                 // limit level to range [-1, 9], where -1 is default deflate setting.
@@ -76,6 +111,11 @@ public class NcStreamCompression {
                 int bufferSize = Math.min(size / 2, 512 * 1024 * 1024);
                 return new NcStreamCompressedOutputStream(out, bufferSize, level);
 
+            case LZ4:
+            case SHUFFLE_DEFLATE:
+            case SHUFFLE_LZ4:
+                return new NcStreamCompressedOutputStream(out, size, (NcStreamCodec) compressInfo, elemSize);
+
             default:
                 System.out.printf(" Unknown compression type %s. Defaulting to none.%n", type);
 
@@ -86,4 +126,9 @@ public class NcStreamCompression {
                 return out;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public String toString() {
+        return (compressInfo instanceof NcStreamCodec) ? compressInfo.toString() : type.toString().toLowerCase();
+    }
+}
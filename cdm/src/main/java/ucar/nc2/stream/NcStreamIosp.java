@@ -42,7 +42,6 @@ import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.List;
 import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayStructureBB;
 import ucar.ma2.ArrayStructureBBsection;
@@ -98,7 +97,8 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
     int size;
     long filePos;
     Section section;
-    boolean isVlen, isDeflate;
+    boolean isVlen;
+    NcStreamProto.Compress compress;
     ByteOrder bo;
     int nelems, uncompressedLen;
     NcStreamProto.StructureData sdata;
@@ -110,8 +110,8 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
       nelems = (int) section.computeSize();
       bo = NcStream.decodeDataByteOrder(dproto);
       isVlen = dproto.getVdata();
-      isDeflate = dproto.getCompress() == NcStreamProto.Compress.DEFLATE;
-      if (isDeflate)
+      compress = dproto.getCompress();
+      if (compress != NcStreamProto.Compress.NONE)
         uncompressedLen = dproto.getUncompressedSize();
     }
 
@@ -122,7 +122,7 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
               ", section=" + section +
               ", nelems=" + nelems +
               ", isVlen=" + isVlen +
-              ", isDeflate=" + isDeflate;
+              ", compress=" + compress;
     }
   }
 
@@ -144,13 +144,12 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
         byte[] data = new byte[dataStorage.size];
         raf.readFully(data);
 
-        if (dataStorage.isDeflate) {
-          ByteArrayInputStream bin = new ByteArrayInputStream(data);
-          InflaterInputStream in = new InflaterInputStream(bin);
-          ByteArrayOutputStream bout = new ByteArrayOutputStream(data.length * 7);
-          IO.copy(in, bout);
-          byte[] resultb = bout.toByteArray();
-          result = ByteBuffer.wrap(resultb); // look - an extra copy !! override ByteArrayOutputStream to fix
+        if (dataStorage.compress != NcStreamProto.Compress.NONE) {
+          NcStreamCodec codec = NcStreamCodec.find(dataStorage.compress);
+          if (codec == null)
+            throw new IOException("Unknown compression " + dataStorage.compress + " on " + raf.getLocation());
+          byte[] resultb = codec.decode(data, data.length, dataStorage.uncompressedLen, v.getDataType().getSize());
+          result = ByteBuffer.wrap(resultb);
           if (debug) System.out.printf(" uncompressedLen header=%d actual=%d%n", dataStorage.uncompressedLen , resultb.length);
           result.order(dataStorage.bo);
 
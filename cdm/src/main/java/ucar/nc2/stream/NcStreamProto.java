@@ -257,6 +257,30 @@ public final class NcStreamProto {
      * <code>DEFLATE = 1;</code>
      */
     DEFLATE(1, 1),
+    /**
+     * <code>LZ4 = 2;</code>
+     *
+     * <pre>
+     * LZ4 block format
+     * </pre>
+     */
+    LZ4(2, 2),
+    /**
+     * <code>SHUFFLE_DEFLATE = 3;</code>
+     *
+     * <pre>
+     * byte shuffle by element size, then deflate
+     * </pre>
+     */
+    SHUFFLE_DEFLATE(3, 3),
+    /**
+     * <code>SHUFFLE_LZ4 = 4;</code>
+     *
+     * <pre>
+     * byte shuffle by element size, then LZ4
+     * </pre>
+     */
+    SHUFFLE_LZ4(4, 4),
     UNRECOGNIZED(-1, -1),
     ;
 
@@ -268,6 +292,30 @@ public final class NcStreamProto {
      * <code>DEFLATE = 1;</code>
      */
     public static final int DEFLATE_VALUE = 1;
+    /**
+     * <code>LZ4 = 2;</code>
+     *
+     * <pre>
+     * LZ4 block format
+     * </pre>
+     */
+    public static final int LZ4_VALUE = 2;
+    /**
+     * <code>SHUFFLE_DEFLATE = 3;</code>
+     *
+     * <pre>
+     * byte shuffle by element size, then deflate
+     * </pre>
+     */
+    public static final int SHUFFLE_DEFLATE_VALUE = 3;
+    /**
+     * <code>SHUFFLE_LZ4 = 4;</code>
+     *
+     * <pre>
+     * byte shuffle by element size, then LZ4
+     * </pre>
+     */
+    public static final int SHUFFLE_LZ4_VALUE = 4;
 
 
     public final int getNumber() {
@@ -282,6 +330,9 @@ public final class NcStreamProto {
       switch (value) {
         case 0: return NONE;
         case 1: return DEFLATE;
+        case 2: return LZ4;
+        case 3: return SHUFFLE_DEFLATE;
+        case 4: return SHUFFLE_LZ4;
         default: return null;
       }
     }
@@ -23181,9 +23232,10 @@ public final class NcStreamProto {
       "OUBLE\020\006\022\n\n\006STRING\020\007\022\r\n\tSTRUCTURE\020\010\022\014\n\010SE" +
       "QUENCE\020\t\022\t\n\005ENUM1\020\n\022\t\n\005ENUM2\020\013\022\t\n\005ENUM4\020" +
       "\014\022\n\n\006OPAQUE\020\r\022\t\n\005UBYTE\020\016\022\n\n\006USHORT\020\017\022\010\n\004" +
-      "UINT\020\020\022\t\n\005ULONG\020\021*!\n\010Compress\022\010\n\004NONE\020\000\022" +
-      "\013\n\007DEFLATE\020\001B \n\017ucar.nc2.streamB\rNcStrea" +
-      "mProtob\006proto3"
+      "UINT\020\020\022\t\n\005ULONG\020\021*P\n\010Compress\022\010\n\004NONE\020\000\022" +
+      "\013\n\007DEFLATE\020\001\022\007\n\003LZ4\020\002\022\023\n\017SHUFFLE_DEFLATE" +
+      "\020\003\022\017\n\013SHUFFLE_LZ4\020\004B \n\017ucar.nc2.streamB\r" +
+      "NcStreamProtob\006proto3"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
         new com.google.protobuf.Descriptors.FileDescriptor.    InternalDescriptorAssigner() {
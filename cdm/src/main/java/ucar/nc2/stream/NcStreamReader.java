@@ -39,13 +39,13 @@ import ucar.nc2.NetcdfFileSubclass;
 import ucar.nc2.Structure;
 import ucar.ma2.*;
 
-import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.InputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.zip.InflaterInputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import ucar.nc2.constants.CDM;
@@ -151,7 +151,7 @@ public class NcStreamReader {
     byte[] dp = new byte[psize];
     NcStream.readFully(is, dp);
     NcStreamProto.Data dproto = NcStreamProto.Data.parseFrom(dp);
-    ByteOrder bo = NcStream.decodeDataByteOrder(dproto); // LOOK not using bo !!
+    ByteOrder bo = NcStream.decodeDataByteOrder(dproto); // LOOK only used for structures
 
     DataType dataType = NcStream.convertDataType(dproto.getDataType());
     Section section = (dataType == DataType.SEQUENCE) ? new Section() : NcStream.decodeSection(dproto.getSection());
@@ -193,14 +193,15 @@ public class NcStreamReader {
     if (dataType == DataType.STRUCTURE) {
       Structure s = (Structure) ncfile.findVariable(dproto.getVarName());
       StructureMembers members = s.makeStructureMembers();
+      ArrayStructureBB.setOffsets(members); // the writer uses canonical packing
 
-      if (dproto.getVersion() == 0) {
-        ArrayStructureBB.setOffsets(members); // not setting heap objects for version 0
-        ArrayStructureBB data = new ArrayStructureBB(members, section.getShape(), ByteBuffer.wrap(datab), 0);
+      if (dproto.getVersion() == 0) { // not setting heap objects for version 0
+        ArrayStructureBB data = new ArrayStructureBB(members, section.getShape(), ByteBuffer.wrap(datab).order(bo), 0);
         return new DataResult(dproto.getVarName(), data);
 
       } else { // version > 0 and < 3 uses a NcStreamProto.StructureData message
         ArrayStructureBB data = NcStream.decodeArrayStructure(members, section.getShape(), datab);
+        data.getByteBuffer().order(bo); // the writer sends its native byte order
         return new DataResult(dproto.getVarName(), data);
       }
     }
@@ -211,15 +212,15 @@ public class NcStreamReader {
     Array data;
     NcStreamProto.Compress compress = dproto.getCompress();
     int uncompressedSize = dproto.getUncompressedSize();
-    if (compress == NcStreamProto.Compress.DEFLATE) {
-      ByteArrayInputStream bin = new ByteArrayInputStream(datab);
-      InflaterInputStream in = new InflaterInputStream(bin);
-      byte[] resultb = new byte[uncompressedSize];
-      NcStream.readFully(in, resultb);
+    if (compress != NcStreamProto.Compress.NONE) {
+      NcStreamCodec codec = NcStreamCodec.find(compress);
+      if (codec == null)
+        throw new IOException("Unknown compression " + compress + " on " + ncfile.getLocation());
+      byte[] resultb = codec.decode(datab, dsize, uncompressedSize, dataType.getSize());
 
       data = Array.factory(dataType, section.getShape(), ByteBuffer.wrap(resultb)); // another copy, not sure can do anything
       if (showDeflate)
-        System.out.printf("Deflate = %d / %d = %f %n", uncompressedSize, dsize, ((float) uncompressedSize) / dsize);
+        System.out.printf("%s = %d / %d = %f %n", codec, uncompressedSize, dsize, ((float) uncompressedSize) / dsize);
       total_uncompressedSize += uncompressedSize;
       total_compressedSize += dsize;
 
@@ -244,6 +245,170 @@ public class NcStreamReader {
     return new DataResult(dproto.getName(), data);
   }
 
+  ////////////////////////////////////////////////////////////////////////////////////////
+  // Structure and Sequence data sent as a series of DataCol messages, see NcStreamWriter.sendData2()
+
+  /**
+   * Read Structure data sent as a series of DataCol messages ending with MAGIC_VEND.
+   * Each message is decoded as it arrives, and the blocks are joined along the outer dimension.
+   * A single message not followed by MAGIC_VEND, as sent by servers that dont chunk, is also accepted, including
+   * a version 1 Data message.
+   *
+   * @param is     read from input stream
+   * @param ncfile need the metadata from here to interpret version 1 structure data
+   * @param location for error messages
+   * @return DataResult
+   * @throws IOException on read error
+   */
+  public DataResult readStructureChunks(InputStream is, NetcdfFile ncfile, String location) throws IOException {
+    ChunkReader reader = new ChunkReader(is, ncfile, location);
+    String varName = null;
+    List<Array> chunks = new ArrayList<>();
+    Array chunk;
+    while ((chunk = reader.next()) != null) {
+      if (varName == null) varName = reader.varName;
+      chunks.add(chunk);
+    }
+    if (chunks.isEmpty())
+      throw new IOException("No data received on " + location);
+    return new DataResult(varName, concat(chunks));
+  }
+
+  /**
+   * Iterate over the records of Structure or Sequence data sent as a series of DataCol messages ending with MAGIC_VEND.
+   * Only one message is held in memory at a time. The input stream is closed when the iteration is done or closed.
+   *
+   * @param is     read from input stream
+   * @param ncfile need the metadata from here to interpret version 1 structure data
+   * @param location for error messages
+   * @return StructureDataIterator
+   */
+  public StructureDataIterator getStructureChunkIterator(InputStream is, NetcdfFile ncfile, String location) {
+    return new ChunkDataIterator(new ChunkReader(is, ncfile, location));
+  }
+
+  private class ChunkReader {
+    private final InputStream is;
+    private final NetcdfFile ncfile;
+    private final String location;
+    private String varName;
+    private boolean done;
+
+    ChunkReader(InputStream is, NetcdfFile ncfile, String location) {
+      this.is = is;
+      this.ncfile = ncfile;
+      this.location = location;
+    }
+
+    // return the next block, or null when done
+    Array next() throws IOException {
+      if (done) return null;
+      byte[] b = new byte[4];
+      int bytesRead = NcStream.readFully(is, b);
+      if (bytesRead < b.length || NcStream.test(b, NcStream.MAGIC_VEND)) {
+        done = true;
+        return null;
+      }
+      if (varName == null && NcStream.test(b, NcStream.MAGIC_DATA)) { // a version 1 server sends one Data message
+        DataResult result = readData1(is, ncfile);
+        varName = result.varNameFullEsc;
+        done = true;
+        return result.data;
+      }
+      if (!NcStream.test(b, NcStream.MAGIC_DATA2))
+        throw new IOException("Data transfer corrupted on " + location);
+
+      DataResult result = readData2(is);
+      if (varName == null)
+        varName = result.varNameFullEsc;
+      else if (!varName.equals(result.varNameFullEsc))
+        throw new IOException("Data for " + varName + " interrupted by " + result.varNameFullEsc + " on " + location);
+      return result.data;
+    }
+  }
+
+  private static class ChunkDataIterator implements StructureDataIterator {
+    private ChunkReader reader;
+    private ArrayStructure chunk;
+    private int chunkIndex;
+    private int count = 0;
+
+    ChunkDataIterator(ChunkReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      while (reader != null && (chunk == null || chunkIndex >= chunk.getSize())) {
+        chunk = (ArrayStructure) reader.next();
+        chunkIndex = 0;
+        if (chunk == null) close();
+      }
+      return (chunk != null);
+    }
+
+    @Override
+    public StructureData next() throws IOException {
+      count++;
+      return chunk.getStructureData(chunkIndex++);
+    }
+
+    @Override
+    public StructureDataIterator reset() {
+      return (count == 0) && (reader != null) ? this : null;
+    }
+
+    @Override
+    public int getCurrentRecno() {
+      return count;
+    }
+
+    @Override
+    public void close() {
+      if (reader != null) {
+        try {
+          reader.is.close();
+        } catch (IOException ioe) {
+          logger.error("NcStreamReader: Error closing input stream.");
+        }
+        reader = null;
+      }
+    }
+  }
+
+  // join the blocks along the outer dimension
+  static Array concat(List<Array> chunks) {
+    Array first = chunks.get(0);
+    if (chunks.size() == 1) return first;
+
+    int[] shape = first.getShape();
+    shape[0] = 0;
+    for (Array chunk : chunks)
+      shape[0] += chunk.getShape()[0];
+
+    if (first instanceof ArrayStructure) {
+      StructureMembers members = new StructureMembers(((ArrayStructure) first).getStructureMembers());
+      for (StructureMembers.Member m : members.getMembers()) {
+        List<Array> memberChunks = new ArrayList<>(chunks.size());
+        for (Array chunk : chunks)
+          memberChunks.add(((ArrayStructure) chunk).findMember(m.getName()).getDataArray());
+        m.setDataArray(concat(memberChunks));
+      }
+      return new ArrayStructureMA(members, shape);
+    }
+
+    Array result = (first instanceof ArrayObject) ?
+            new ArrayObject(first.getDataType(), first.getElementType(), first.isVlen(), shape) :
+            Array.factory(first.getDataType(), shape);
+    IndexIterator ii = result.getIndexIterator();
+    for (Array chunk : chunks) {
+      IndexIterator ci = chunk.getIndexIterator();
+      while (ci.hasNext())
+        ii.setObjectNext(ci.getObjectNext());
+    }
+    return result;
+  }
+
   ////////////////////////////////////////////////////////////////////////////////////////
   // LOOK
 
@@ -38,6 +38,8 @@ import ucar.nc2.constants.CDM;
 
 import java.io.*;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Write a NetcdfFile to an OutputStream using ncstream protocol
@@ -50,6 +52,21 @@ public class NcStreamWriter {
   static private final int sizeToCache = 100; // when to store a variable's data in the header, ie "immediate" mode
   static private final int currentVersion = 1;
 
+  // how sendData2() breaks up Structure and Sequence data
+  static private int chunkRows = 0; // max records in one data message; 0 = no limit
+  static private long chunkSize = maxChunk; // approx max bytes in one data message
+
+  /**
+   * Set how large Structure and Sequence data is broken into data messages by sendData2().
+   *
+   * @param maxRows max number of records in one message; 0 = no limit
+   * @param maxBytes approximate max number of bytes in one message; at least one record is always sent
+   */
+  static public void setStructureChunking(int maxRows, long maxBytes) {
+    chunkRows = maxRows;
+    chunkSize = maxBytes;
+  }
+
   private NetcdfFile ncfile;
   private NcStreamProto.Header header;
   private boolean show = false;
@@ -130,7 +147,7 @@ public class NcStreamWriter {
 
     // version < 3
     if (v.getDataType() == DataType.STRUCTURE) {
-      ArrayStructure abb = (ArrayStructure) v.read();   // read all - LOOK break this up into chunks if needed
+      ArrayStructure abb = (ArrayStructure) v.read(section);   // streamAll() breaks large structures into sections
       //coverity[FB.BC_UNCONFIRMED_CAST]
       size += NcStream.encodeArrayStructure(abb, bo, out);
       if (show) System.out.printf(" NcStreamWriter sent ArrayStructure bytes = %d%n", size);
@@ -138,7 +155,7 @@ public class NcStreamWriter {
     }
 
     // Writing the size of the block is handled for us.
-    out = compress.setupStream(out, (int)uncompressedLength);
+    out = compress.setupStream(out, (int)uncompressedLength, v.getDataType().getSize());
     size += v.readToStream(section, out);
     out.flush();
     return size;
@@ -146,7 +163,25 @@ public class NcStreamWriter {
 
   // LOOK compression not used
   public long sendData2(Variable v, Section section, OutputStream out, NcStreamCompression compress) throws IOException, InvalidRangeException {
-    if (show) System.out.printf(" %s section=%s%n", v.getFullName(), section);
+    return sendData2(v, section, out, compress, false);
+  }
+
+  /**
+   * Send the data in a DataCol message (version 3).
+   * A Sequence is always sent as a series of DataCol messages, each holding a block of records, followed by MAGIC_VEND.
+   * If chunk is true, a Structure is sent the same way, split along its outer dimension.
+   * Block sizes are set by setStructureChunking().
+   *
+   * @param chunk client can read a Structure as a series of messages; see NcStreamReader.readStructureChunks()
+   */
+  public long sendData2(Variable v, Section section, OutputStream out, NcStreamCompression compress, boolean chunk) throws IOException, InvalidRangeException {
+    if (show) System.out.printf(" %s section=%s chunk=%s%n", v.getFullName(), section, chunk);
+
+    if (v.getDataType() == DataType.SEQUENCE)
+      return sendSequenceChunks((Structure) v, out);
+
+    if (chunk && v.getDataType() == DataType.STRUCTURE && section.getRank() > 0 && section.computeSize() > 0)
+      return sendStructureChunks((Structure) v, section, out);
 
     boolean isVlen = v.isVariableLength(); //  && v.getRank() > 1;
     if (isVlen)
@@ -157,6 +192,69 @@ public class NcStreamWriter {
     // LOOK trap error, write error message ??
 
     // dataProto.writeDelimitedTo(out);
+    return writeDataCol(out, dataProto);
+  }
+
+  // read and send the section a block of rows at a time, so only one block is in memory
+  private long sendStructureChunks(Structure s, Section section, OutputStream out) throws IOException, InvalidRangeException {
+    Range outer = section.getRange(0);
+    long rowSize = (section.computeSize() / outer.length()) * s.getElementSize();
+    int rowsPerChunk = computeRowsPerChunk(rowSize);
+    NcStreamDataCol encoder = new NcStreamDataCol();
+
+    long size = 0;
+    int count = 0;
+    for (int start = 0; start < outer.length(); start += rowsPerChunk) {
+      int n = Math.min(rowsPerChunk, outer.length() - start);
+      Range chunkRange = new Range(outer.getName(), outer.element(start), outer.element(start + n - 1), outer.stride());
+      Section chunkSection = new Section(section.getRanges()).replaceRange(0, chunkRange);
+      size += writeDataCol(out, encoder.encodeData2(s.getFullName(), false, chunkSection, s.read(chunkSection)));
+      count++;
+    }
+    size += writeBytes(out, NcStream.MAGIC_VEND);
+    if (show) System.out.printf(" NcStreamWriter sent %s in %d chunks, bytes = %d%n", s.getFullName(), count, size);
+    return size;
+  }
+
+  private long sendSequenceChunks(Structure seq, OutputStream out) throws IOException, InvalidRangeException {
+    int rowsPerChunk = computeRowsPerChunk(seq.getElementSize());
+    NcStreamDataCol encoder = new NcStreamDataCol();
+    List<StructureData> rows = new ArrayList<>();
+
+    long size = 0;
+    int start = 0;
+    try (StructureDataIterator iter = seq.getStructureIterator(-1)) {
+      while (iter.hasNext()) {
+        rows.add(iter.next());
+        if (rows.size() == rowsPerChunk) {
+          size += sendRows(seq, start, rows, out, encoder);
+          start += rows.size();
+          rows.clear();
+        }
+      }
+    }
+    if (rows.size() > 0)
+      size += sendRows(seq, start, rows, out, encoder);
+    size += writeBytes(out, NcStream.MAGIC_VEND);
+    if (show) System.out.printf(" NcStreamWriter sent sequence %s nrows = %d, bytes = %d%n", seq.getFullName(), start + rows.size(), size);
+    return size;
+  }
+
+  private long sendRows(Structure seq, int start, List<StructureData> rows, OutputStream out, NcStreamDataCol encoder) throws IOException, InvalidRangeException {
+    int n = rows.size();
+    ArrayStructure as = new ArrayStructureW(rows.get(0).getStructureMembers(), new int[]{n}, rows.toArray(new StructureData[n]));
+    Section section = new Section(new int[]{start}, new int[]{n});
+    return writeDataCol(out, encoder.encodeData2(seq.getFullName(), false, section, as));
+  }
+
+  private int computeRowsPerChunk(long rowSize) {
+    long rows = Math.max(1, chunkSize / Math.max(1, rowSize));
+    if (chunkRows > 0)
+      rows = Math.min(rows, chunkRows);
+    return (int) Math.min(rows, Integer.MAX_VALUE);
+  }
+
+  private long writeDataCol(OutputStream out, NcStreamProto.DataCol dataProto) throws IOException {
     long size = 0;
     size += writeBytes(out, NcStream.MAGIC_DATA2); // data version 3
 
@@ -184,8 +282,11 @@ public class NcStreamWriter {
         if (compType.equalsIgnoreCase(CDM.COMPRESS_DEFLATE)) {
           compress = NcStreamCompression.deflate();
         } else {
-          if (show) System.out.printf(" Unknown compression type %s. Defaulting to none.%n", compType);
-          compress = NcStreamCompression.none();
+          compress = NcStreamCompression.find(compType);
+          if (compress == null) {
+            if (show) System.out.printf(" Unknown compression type %s. Defaulting to none.%n", compType);
+            compress = NcStreamCompression.none();
+          }
         }
       } else {
         compress = NcStreamCompression.none();
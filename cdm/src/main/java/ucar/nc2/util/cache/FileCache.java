@@ -606,6 +606,16 @@ public class FileCache implements FileCacheIF {
     format.format("  hits= %d miss= %d nfiles= %d elems= %d%n", hits.get(), miss.get(), files.size(), cache.values().size());
   }
 
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return miss.get();
+  }
+
   public void showTracking(Formatter format) {
     if (track == null) return;
     List<Tracker> all = new ArrayList<>(track.size());
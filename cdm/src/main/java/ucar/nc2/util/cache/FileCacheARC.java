@@ -624,6 +624,16 @@ public class FileCacheARC implements FileCacheIF {
     format.format("  hits= %d miss= %d nfiles= %d elems= %d shadow=%d%n", hits.get(), miss.get(), files.size(), cache.values().size(), shadowCache.size());
   }
 
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return miss.get();
+  }
+
   ///////////////////////////////////////////////////////////////
 
   public void showTracking(Formatter format) {
@@ -137,6 +137,16 @@ public class FileCacheGuava implements FileCacheIF {
     f.format("%s", stats);
   }
 
+  @Override
+  public long getHits() {
+    return cache.stats().hitCount();
+  }
+
+  @Override
+  public long getMisses() {
+    return cache.stats().missCount();
+  }
+
   @Override
   public List<String> showCache() {
     return null;
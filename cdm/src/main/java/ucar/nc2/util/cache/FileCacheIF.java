@@ -62,5 +62,14 @@ public interface FileCacheIF {
   void showTracking(Formatter format);
   void showCache(Formatter format);
   void showStats(Formatter format);
+
+  // monitoring, -1 if not kept
+  default long getHits() {
+    return -1;
+  }
+
+  default long getMisses() {
+    return -1;
+  }
   List<String> showCache();
 }
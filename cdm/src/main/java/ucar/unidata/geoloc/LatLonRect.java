@@ -210,6 +210,15 @@ public class LatLonRect {
     return crossDateline;
   }
 
+  /**
+   * Get whether the bounding box includes all longitudes
+   *
+   * @return true if all longitudes are included
+   */
+  public boolean isAllLongitude() {
+    return allLongitude;
+  }
+
   /**
    * determine whether two bounding boxes are equal in values
    *
@@ -48,6 +48,7 @@ import java.nio.ByteOrder;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.nio.channels.WritableByteChannel;
 
 
@@ -95,6 +96,8 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   static private AtomicInteger maxOpenFiles = new AtomicInteger();
   static private AtomicInteger debug_nseeks = new AtomicInteger();
   static private AtomicLong debug_nbytes = new AtomicLong();
+  static private final LongAdder totalBytesRead = new LongAdder();
+  static private final ThreadLocal<long[]> threadBytesRead = ThreadLocal.withInitial(() -> new long[1]);
 
   static protected boolean showOpen = false;
   static protected boolean showRead = false;
@@ -184,6 +187,30 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   }
 
 
+  /**
+   * Number of bytes read from files by all RandomAccessFiles, for monitoring.
+   *
+   * @return total number of bytes read
+   */
+  static public long getTotalBytesRead() {
+    return totalBytesRead.sum();
+  }
+
+  /**
+   * Number of bytes read from files by RandomAccessFiles in the calling thread, for monitoring.
+   * The difference of two calls is the number of bytes read in between.
+   *
+   * @return number of bytes read by this thread
+   */
+  static public long getThreadBytesRead() {
+    return threadBytesRead.get()[0];
+  }
+
+  static private void countBytesRead(long n) {
+    totalBytesRead.add(n);
+    threadBytesRead.get()[0] += n;
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////
   // internal File Caching. this allows a global pool of OS files.
   // note read only
@@ -744,6 +771,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
       need -= count;
       offset += count;
     }
+    countBytesRead(nbytes - need);
     return nbytes - need;
   }
 
@@ -762,6 +790,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
     file.seek(pos);
     int n = file.read(b, offset, len);
+    if (n > 0) countBytesRead(n);
     if (debugAccess) {
       if (showRead)
         System.out.println(" **read_ " + location + " = " + len + " bytes at " + pos + "; block = " + (pos / buffer.length));
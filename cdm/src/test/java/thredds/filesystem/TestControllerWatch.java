@@ -0,0 +1,178 @@
+package thredds.filesystem;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.inventory.CollectionConfig;
+import thredds.inventory.CollectionUpdateEvent;
+import thredds.inventory.MFile;
+import thredds.inventory.MFileFilter;
+import thredds.inventory.partition.DirectoryCollection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test that ControllerWatch keeps the inventory current and reports added and removed files.
+ */
+public class TestControllerWatch {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final LinkedBlockingQueue<CollectionUpdateEvent> events = new LinkedBlockingQueue<>();
+  private ControllerWatch controller;
+  private File top;
+
+  @Before
+  public void setup() throws IOException {
+    top = tempFolder.newFolder("top");
+    touch(new File(top, "a.nc"));
+    touch(new File(top, "b.nc"));
+    touch(new File(top, "skip.txt"));
+    File sub = new File(top, "sub");
+    Assert.assertTrue(sub.mkdir());
+    touch(new File(sub, "c.nc"));
+    controller = new ControllerWatch(events::add, 1, 0);
+  }
+
+  @After
+  public void cleanup() {
+    controller.close();
+  }
+
+  private void touch(File f) throws IOException {
+    Assert.assertTrue(f.createNewFile());
+  }
+
+  private CollectionConfig config(boolean wantSubdirs) {
+    MFileFilter filter = mfile -> mfile.isDirectory() || mfile.getName().endsWith(".nc");
+    return new CollectionConfig("test", top.getPath(), wantSubdirs, filter, null);
+  }
+
+  private List<String> names(Iterator<MFile> iter) {
+    List<String> result = new ArrayList<>();
+    while (iter.hasNext())
+      result.add(iter.next().getName());
+    return result;
+  }
+
+  private String path(File f) {
+    return f.getPath().replace('\\', '/');
+  }
+
+  // wait for the next event, skipping events with no files that may come from modified directories
+  private CollectionUpdateEvent nextEvent() throws InterruptedException {
+    while (true) {
+      CollectionUpdateEvent event = events.poll(30, TimeUnit.SECONDS);
+      Assert.assertNotNull("no event", event);
+      if (!event.getAdded().isEmpty() || !event.getRemoved().isEmpty())
+        return event;
+    }
+  }
+
+  @Test
+  public void testInventory() throws IOException {
+    Assert.assertEquals(Arrays.asList("a.nc", "b.nc"), names(controller.getInventoryTop(config(false), true)));
+    Assert.assertEquals(Arrays.asList("a.nc", "b.nc", "c.nc"), names(controller.getInventoryAll(config(true), true)));
+    Assert.assertEquals(Collections.singletonList("sub"), names(controller.getSubdirs(config(false), true)));
+    Assert.assertNull(controller.getInventoryTop(new CollectionConfig("none", new File(top, "none").getPath(), false, (MFileFilter) null, null), true));
+  }
+
+  @Test
+  public void testEvents() throws Exception {
+    CollectionConfig mc = config(true);
+    controller.addCollection("coll", mc);
+    Assert.assertEquals(3, names(controller.getInventoryAll(mc, false)).size());
+
+    File d = new File(top, "d.nc");
+    touch(d);
+    CollectionUpdateEvent event = nextEvent();
+    Assert.assertEquals("coll", event.getCollectionName());
+    Assert.assertEquals(Collections.singletonList(path(d)), event.getAdded());
+    Assert.assertEquals(Collections.emptyList(), event.getRemoved());
+    Assert.assertEquals(Arrays.asList("a.nc", "b.nc", "d.nc", "c.nc"), names(controller.getInventoryAll(mc, false)));
+
+    Assert.assertTrue(new File(top, "a.nc").delete());
+    event = nextEvent();
+    Assert.assertEquals(Collections.singletonList(path(new File(top, "a.nc"))), event.getRemoved());
+
+    // a new subdirectory is watched too
+    File sub2 = new File(top, "sub2");
+    Assert.assertTrue(sub2.mkdir());
+    Thread.sleep(500);
+    File e = new File(sub2, "e.nc");
+    touch(e);
+    Set<String> added = new TreeSet<>();
+    while (!added.contains(path(e)))
+      added.addAll(nextEvent().getAdded());
+    Assert.assertEquals(Arrays.asList("b.nc", "d.nc", "c.nc", "e.nc"), names(controller.getInventoryAll(mc, false)));
+  }
+
+  // GRIB partitions list their directories through DirectoryCollection
+  @Test
+  public void testDirectoryCollection() throws Exception {
+    Assert.assertEquals(Arrays.asList("a.nc", "b.nc", "skip.txt", "sub"), new ArrayList<>(controller.getDirectory("grib", top.toPath()).keySet()));
+
+    DirectoryCollection.setWatch(controller);
+    try (DirectoryCollection dcm = new DirectoryCollection("grib", top.toPath(), true, null, null)) {
+      List<String> files = new ArrayList<>();
+      dcm.iterateOverMFileCollection(mfile -> files.add(mfile.getName()));
+      Assert.assertEquals(Arrays.asList("a.nc", "b.nc", "skip.txt"), files);
+
+      File g = new File(top, "g.nc");
+      touch(g);
+      CollectionUpdateEvent event = nextEvent();
+      Assert.assertEquals("grib", event.getCollectionName());
+      Assert.assertEquals(Collections.singletonList(path(g)), event.getAdded());
+      Assert.assertTrue(names(dcm.getFileIterator()).contains("g.nc"));
+
+      // a new partition is a change too
+      Assert.assertTrue(new File(top, "sub2").mkdir());
+      event = events.poll(30, TimeUnit.SECONDS);
+      Assert.assertNotNull("no event", event);
+      Assert.assertEquals("grib", event.getCollectionName());
+    } finally {
+      DirectoryCollection.setWatch(null);
+    }
+  }
+
+  // files outside the collection filter, and index files, are not changes
+  @Test
+  public void testFilter() throws Exception {
+    controller.addCollection("coll", config(false));
+    File sub = new File(top, "sub");
+    controller.getDirectory("grib", sub.toPath());
+
+    touch(new File(top, "skip2.txt"));
+    touch(new File(top, "a.nc.gbx9"));
+    touch(new File(sub, "grib.ncx4"));
+    Assert.assertNull(events.poll(3, TimeUnit.SECONDS));
+
+    File f = new File(sub, "f.grib2");
+    touch(f);
+    CollectionUpdateEvent event = nextEvent();
+    Assert.assertEquals("grib", event.getCollectionName());
+    Assert.assertEquals(Collections.singletonList(path(f)), event.getAdded());
+  }
+
+  @Test
+  public void testNoQuietPeriod() throws Exception {
+    controller.close();
+    controller = new ControllerWatch(events::add, 0, 1);
+    CollectionConfig mc = config(false);
+    controller.addCollection("coll", mc);
+    Assert.assertEquals(2, names(controller.getInventoryTop(mc, false)).size());
+
+    File f = new File(top, "f.nc");
+    touch(f);
+    Assert.assertTrue(nextEvent().getAdded().contains(path(f)));
+  }
+
+}
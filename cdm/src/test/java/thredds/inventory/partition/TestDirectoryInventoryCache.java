@@ -0,0 +1,145 @@
+package thredds.inventory.partition;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.inventory.MFile;
+import ucar.nc2.util.CloseableIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test that DirectoryInventoryCache reuses listings of unchanged directories, and persists them.
+ */
+public class TestDirectoryInventoryCache {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void cleanup() {
+    DirectoryInventoryCache.setInstance(null);
+  }
+
+  private final long anHourAgo = (System.currentTimeMillis() / 1000 - 3600) * 1000; // whole seconds, for file systems that dont keep millisecs
+
+  private Path makeDir(String name, String... files) throws IOException {
+    File dir = tempFolder.newFolder(name);
+    for (String f : files)
+      Assert.assertTrue(new File(dir, f).createNewFile());
+    Files.setLastModifiedTime(dir.toPath(), FileTime.fromMillis(anHourAgo));
+    return dir.toPath();
+  }
+
+  private List<String> list(DirectoryCollection dc) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (CloseableIterator<MFile> iter = dc.getFileIterator()) {
+      while (iter.hasNext())
+        result.add(iter.next().getName());
+    }
+    return result;
+  }
+
+  private List<String> paths(DirectoryCollection dc) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (CloseableIterator<MFile> iter = dc.getFileIterator()) {
+      while (iter.hasNext())
+        result.add(iter.next().getPath());
+    }
+    return result;
+  }
+
+  @Test
+  public void testListing() throws IOException {
+    Path dir = makeDir("day1", "b.grib2", "a.grib2");
+    File store = new File(tempFolder.getRoot(), "inventory.dat");
+    DirectoryInventoryCache cache = new DirectoryInventoryCache(store);
+    DirectoryInventoryCache.setInstance(cache);
+
+    DirectoryCollection dc = new DirectoryCollection("test", dir, false, null, null);
+    Assert.assertEquals(Arrays.asList("a.grib2", "b.grib2"), list(dc));
+
+    // a new file that does not change the directory is not seen
+    Assert.assertTrue(new File(dir.toFile(), "c.grib2").createNewFile());
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(anHourAgo));
+    DirectoryInventoryCache.Listing listing = cache.getListing(dir);
+    Assert.assertEquals(2, listing.getEntries().size());
+
+    // it is seen once the directory changes
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(anHourAgo + 1000));
+    Assert.assertEquals(Arrays.asList("a.grib2", "b.grib2", "c.grib2"), list(dc));
+  }
+
+  @Test
+  public void testUpToDate() throws IOException {
+    Path dir = makeDir("day2", "a.grib2", "b.grib2", "c.txt");
+    File store = new File(tempFolder.getRoot(), "inventory.dat");
+    DirectoryInventoryCache.setInstance(new DirectoryInventoryCache(store));
+
+    DirectoryCollection dc = new DirectoryCollection("test", dir, false, null, null);
+    Assert.assertFalse(dc.isUpToDate(dc.getListing(), 1000));
+    dc.setUpToDate(dc.getListing(), 1000, paths(dc));
+    Assert.assertTrue(dc.isUpToDate(dc.getListing(), 1000));
+    Assert.assertFalse(dc.isUpToDate(dc.getListing(), 2000)); // index has changed
+
+    // a different filter is a different collection
+    dc.setStreamFilter(p -> p.toString().endsWith(".grib2"));
+    Assert.assertFalse(dc.isUpToDate(dc.getListing(), 1000));
+    dc.setUpToDate(dc.getListing(), 1000, paths(dc));
+
+    // persisted
+    DirectoryInventoryCache.getInstance().save();
+    Assert.assertTrue(store.exists());
+    DirectoryInventoryCache.setInstance(new DirectoryInventoryCache(store));
+    Assert.assertTrue(dc.isUpToDate(dc.getListing(), 1000));
+    Assert.assertEquals(Arrays.asList("a.grib2", "b.grib2"), list(dc));
+
+    // the directory changes
+    Assert.assertTrue(new File(dir.toFile(), "b.grib2").delete());
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(anHourAgo + 1000));
+    Assert.assertFalse(dc.isUpToDate(dc.getListing(), 1000));
+    Assert.assertEquals(Arrays.asList("a.grib2"), list(dc));
+
+    // the directory changes while the collection is being checked
+    DirectoryInventoryCache.Listing checked = dc.getListing();
+    List<String> checkedPaths = paths(dc);
+    Assert.assertTrue(new File(dir.toFile(), "d.grib2").createNewFile());
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(anHourAgo + 2000));
+    dc.setUpToDate(checked, 1000, checkedPaths);
+    Assert.assertFalse(dc.isUpToDate(dc.getListing(), 1000));
+  }
+
+  @Test
+  public void testChildren() throws IOException {
+    Path top = makeDir("top");
+    for (String name : new String[]{"2001", "2002"}) {
+      File sub = new File(top.toFile(), name);
+      Assert.assertTrue(sub.mkdir());
+      Assert.assertTrue(new File(sub, "a.grib2").createNewFile());
+    }
+    Files.setLastModifiedTime(top, FileTime.fromMillis(anHourAgo));
+    DirectoryInventoryCache.setInstance(new DirectoryInventoryCache(new File(tempFolder.getRoot(), "inventory.dat")));
+
+    DirectoryBuilder builder = new DirectoryBuilder("test", top.toString(), ".ncx3");
+    List<DirectoryBuilder> children = builder.constructChildren(null, thredds.inventory.CollectionUpdateType.test);
+    Assert.assertEquals(2, children.size());
+    Assert.assertEquals(top.resolve("2001"), children.get(0).getDir());
+    Assert.assertEquals(top.resolve("2002"), children.get(1).getDir());
+
+    // corrupt file is ignored
+    File bad = new File(tempFolder.getRoot(), "bad.dat");
+    Files.write(bad.toPath(), new byte[]{1, 2, 3});
+    DirectoryInventoryCache cache = new DirectoryInventoryCache(bad);
+    Assert.assertEquals(2, cache.getListing(top).getEntries().size());
+  }
+
+}
@@ -0,0 +1,105 @@
+package ucar.ma2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test Array.forEachDouble(), reduceDouble() and copyTo() against the IndexIterator, for contiguous and strided Arrays.
+ */
+public class TestArrayForEach {
+
+  private List<Array> makeArrays(DataType dataType) throws InvalidRangeException {
+    Array a = Array.factory(dataType, new int[]{4, 5, 6});
+    IndexIterator iter = a.getIndexIterator();
+    int count = 0;
+    while (iter.hasNext())
+      iter.setDoubleNext(count++ % 100);
+
+    List<Array> result = new ArrayList<>();
+    result.add(a);
+    result.add(a.section(new int[]{1, 0, 2}, new int[]{2, 5, 3}));
+    result.add(a.section(new Section("0:3:2,1:4:3,0:5:2").getRanges()));
+    result.add(a.flip(2));
+    result.add(a.transpose(0, 2));
+    result.add(a.slice(1, 3));
+    result.add(a.section(new int[]{2, 3, 4}, new int[]{1, 1, 1}).reduce());
+    result.add(Array.factoryConstant(dataType, new int[]{3, 4}, Array.factory(dataType, new int[]{1}).getStorage()));
+    result.add(Array.factory(dataType, new int[]{0}));
+    return result;
+  }
+
+  private double[] iterate(Array a) {
+    double[] result = new double[(int) a.getSize()];
+    IndexIterator iter = a.getIndexIterator();
+    for (int i = 0; i < result.length; i++)
+      result[i] = iter.getDoubleNext();
+    return result;
+  }
+
+  @Test
+  public void testForEach() throws InvalidRangeException {
+    for (DataType dataType : new DataType[]{DataType.DOUBLE, DataType.FLOAT, DataType.INT, DataType.SHORT, DataType.BYTE, DataType.LONG}) {
+      for (Array a : makeArrays(dataType)) {
+        String what = dataType + " " + a.getIndex().getClass().getSimpleName() + " " + a.getSize();
+        double[] want = iterate(a);
+
+        final List<Double> got = new ArrayList<>();
+        a.forEachDouble(got::add);
+        Assert.assertEquals(what, want.length, got.size());
+        for (int i = 0; i < want.length; i++)
+          Assert.assertEquals(what, want[i], got.get(i), 0.0);
+
+        double[] dest = new double[want.length + 2];
+        a.copyTo(dest, 2);
+        for (int i = 0; i < want.length; i++)
+          Assert.assertEquals(what, want[i], dest[i + 2], 0.0);
+
+        float[] fdest = new float[want.length + 1];
+        a.copyTo(fdest, 1);
+        for (int i = 0; i < want.length; i++)
+          Assert.assertEquals(what, (float) want[i], fdest[i + 1], 0.0);
+
+        double sum = 0;
+        for (double val : want)
+          sum += val;
+        Assert.assertEquals(what, sum, a.reduceDouble(0, (s, v) -> s + v), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testUnsigned() {
+    Array a = Array.factory(DataType.UBYTE, new int[]{3}, new byte[]{-1, 0, 1});
+    Assert.assertEquals(256.0, MAMath.sumDouble(a), 0.0);
+    Assert.assertEquals(255.0, MAMath.getMaximum(a), 0.0);
+  }
+
+  @Test
+  public void testMAMath() throws InvalidRangeException {
+    Array a = Array.factory(DataType.FLOAT, new int[]{2, 3}, new float[]{3, Float.NaN, -1, 7, -999, 2});
+    Assert.assertEquals(-999.0, MAMath.getMinimum(a), 0.0);
+    Assert.assertEquals(7.0, MAMath.getMaximum(a), 0.0);
+    MAMath.MinMax minmax = MAMath.getMinMaxSkipMissingData(a, -999.0);
+    Assert.assertEquals(-1.0, minmax.min, 0.0);
+    Assert.assertEquals(7.0, minmax.max, 0.0);
+    Assert.assertEquals(11.0, MAMath.sumDoubleSkipMissingData(a, -999.0), 0.0);
+    Assert.assertEquals(-1.0, MAMath.getMinimumSkipMissingData(a, -999.0), 0.0);
+
+    Array column = a.slice(1, 2);
+    Assert.assertEquals(-1.0, MAMath.getMinMax(column).min, 0.0);
+    Assert.assertEquals(2.0, MAMath.getMinMax(column).max, 0.0);
+
+    Array result = Array.factory(DataType.DOUBLE, new int[]{2});
+    MAMath.copyDouble(result, column);
+    Assert.assertEquals(-1.0, result.getDouble(0), 0.0);
+    Assert.assertEquals(2.0, result.getDouble(1), 0.0);
+
+    Array fresult = Array.factory(DataType.FLOAT, new int[]{3, 2});
+    MAMath.copyFloat(fresult, a.transpose(0, 1));
+    Assert.assertTrue(MAMath.equals(fresult, a.transpose(0, 1)));
+  }
+
+}
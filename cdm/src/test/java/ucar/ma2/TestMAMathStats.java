@@ -0,0 +1,108 @@
+package ucar.ma2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Test MAMath.getStats() and the MAMath reductions that use it on large arrays.
+ */
+public class TestMAMathStats {
+  private static final double MISSING = -9999.0;
+
+  private Array makeArray(int nrows, int ncols) {
+    Random random = new Random(17);
+    float[] data = new float[nrows * ncols];
+    for (int i = 0; i < data.length; i++) {
+      if (i % 1000 == 7)
+        data[i] = (float) MISSING;
+      else if (i % 1000 == 11)
+        data[i] = Float.NaN;
+      else
+        data[i] = 280.0f + 10.0f * (float) random.nextGaussian();
+    }
+    return Array.factory(DataType.FLOAT, new int[]{nrows, ncols}, data);
+  }
+
+  private void checkStats(Array a, MAMath.Stats stats) {
+    long count = 0;
+    double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum = 0;
+    IndexIterator iter = a.getIndexIterator();
+    while (iter.hasNext()) {
+      double val = iter.getDoubleNext();
+      if (val == MISSING || Double.isNaN(val)) continue;
+      count++;
+      sum += val;
+      min = Math.min(min, val);
+      max = Math.max(max, val);
+    }
+    double mean = sum / count;
+    double m2 = 0;
+    iter = a.getIndexIterator();
+    while (iter.hasNext()) {
+      double val = iter.getDoubleNext();
+      if (val == MISSING || Double.isNaN(val)) continue;
+      m2 += (val - mean) * (val - mean);
+    }
+
+    Assert.assertEquals(count, stats.getCount());
+    Assert.assertEquals(min, stats.getMin(), 0.0);
+    Assert.assertEquals(max, stats.getMax(), 0.0);
+    Assert.assertEquals(sum, stats.getSum(), Math.abs(sum) * 1.0e-9);
+    Assert.assertEquals(mean, stats.getMean(), 1.0e-9);
+    Assert.assertEquals(m2 / count, stats.getVariance(), 1.0e-6);
+  }
+
+  @Test
+  public void testStats() {
+    Array a = makeArray(1500, 1000); // above STATS_PARALLEL_SIZE
+    MAMath.Stats stats = MAMath.getStats(a, MISSING);
+    checkStats(a, stats);
+
+    // deterministic
+    MAMath.Stats again = MAMath.getStats(a, MISSING);
+    Assert.assertEquals(stats.getSum(), again.getSum(), 0.0);
+    Assert.assertEquals(stats.getVariance(), again.getVariance(), 0.0);
+
+    // strided
+    Array t = a.transpose(0, 1);
+    checkStats(t, MAMath.getStats(t, MISSING));
+    Array section = a.slice(1, 3);
+    checkStats(section, MAMath.getStats(section, MISSING));
+
+    // small, not parallel
+    Array small = makeArray(10, 100);
+    checkStats(small, MAMath.getStats(small, MISSING));
+  }
+
+  @Test
+  public void testReductions() {
+    Array a = makeArray(1200, 1000);
+    MAMath.Stats stats = MAMath.getStats(a, MISSING);
+
+    MAMath.MinMax minmax = MAMath.getMinMaxSkipMissingData(a, MISSING);
+    Assert.assertEquals(stats.getMin(), minmax.min, 0.0);
+    Assert.assertEquals(stats.getMax(), minmax.max, 0.0);
+    Assert.assertEquals(stats.getSum(), MAMath.sumDoubleSkipMissingData(a, MISSING), 0.0);
+
+    minmax = MAMath.getMinMax(a);
+    Assert.assertEquals(MISSING, minmax.min, 0.0);
+    Assert.assertEquals(stats.getMax(), minmax.max, 0.0);
+  }
+
+  @Test
+  public void testEmpty() {
+    Array a = Array.factory(DataType.DOUBLE, new int[]{3}, new double[]{MISSING, Double.NaN, MISSING});
+    MAMath.Stats stats = MAMath.getStats(a, MISSING);
+    Assert.assertEquals(0, stats.getCount());
+    Assert.assertTrue(Double.isNaN(stats.getMean()));
+    Assert.assertEquals(Double.MAX_VALUE, stats.getMin(), 0.0);
+
+    stats = MAMath.getStats(a, null);
+    Assert.assertEquals(2, stats.getCount());
+    Assert.assertEquals(MISSING, stats.getMean(), 0.0);
+    Assert.assertEquals(0.0, stats.getVariance(), 0.0);
+  }
+
+}
@@ -0,0 +1,90 @@
+package ucar.nc2.dataset;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.constants.CDM;
+
+/**
+ * Test that the array conversions of EnhanceScaleMissingImpl agree with the element by element ones.
+ */
+public class TestScaleOffsetConvert {
+
+  private EnhanceScaleMissingImpl makeEnhance(DataType dataType, boolean unsigned) {
+    NetcdfDataset ncd = new NetcdfDataset();
+    ncd.addDimension(null, new Dimension("x", 1000));
+    VariableDS v = new VariableDS(ncd, null, null, "packed", dataType, "x", null, null);
+    v.addAttribute(new Attribute(CDM.SCALE_FACTOR, 0.01));
+    v.addAttribute(new Attribute(CDM.ADD_OFFSET, 200.0f));
+    v.addAttribute(new Attribute(CDM.FILL_VALUE, 7));
+    v.addAttribute(new Attribute(CDM.MISSING_VALUE, 11));
+    v.addAttribute(new Attribute("valid_max", 100));
+    if (unsigned)
+      v.addAttribute(new Attribute(CDM.UNSIGNED, "true"));
+    return new EnhanceScaleMissingImpl(v, true, true, true, true);
+  }
+
+  private Array makePacked(DataType dataType) {
+    Array packed = Array.factory(dataType, new int[]{10, 100});
+    IndexIterator iter = packed.getIndexIterator();
+    int count = 0;
+    while (iter.hasNext())
+      iter.setIntNext((count++ % 300) - 150);
+    return packed;
+  }
+
+  private double expected(EnhanceScaleMissingImpl enhance, Array packed, int i) {
+    if (packed.getElementType() == byte.class)
+      return enhance.convertScaleOffsetMissing(packed.getByte(i));
+    else if (packed.getElementType() == short.class)
+      return enhance.convertScaleOffsetMissing(packed.getShort(i));
+    return enhance.convertScaleOffsetMissing(packed.getInt(i));
+  }
+
+  @Test
+  public void testConvert() {
+    for (DataType dataType : new DataType[]{DataType.BYTE, DataType.SHORT, DataType.INT}) {
+      for (boolean unsigned : new boolean[]{false, true}) {
+        String what = dataType + " unsigned=" + unsigned;
+        EnhanceScaleMissingImpl enhance = makeEnhance(dataType, unsigned);
+        Assert.assertTrue(what, enhance.hasScaleOffset());
+        Assert.assertTrue(what, enhance.hasMissing());
+
+        Array packed = makePacked(dataType);
+        Array result = enhance.convertScaleOffsetMissing(packed);
+        Assert.assertEquals(what, enhance.getConvertedDataType(), result.getDataType());
+
+        float[] fout = new float[(int) packed.getSize() + 3];
+        enhance.convertScaleOffsetMissing(packed, fout, 3);
+        double[] dout = new double[(int) packed.getSize()];
+        enhance.convertScaleOffsetMissing(packed, dout, 0);
+
+        int nmissing = 0;
+        for (int i = 0; i < packed.getSize(); i++) {
+          double want = expected(enhance, packed, i);
+          if (Double.isNaN(want)) nmissing++;
+          Assert.assertEquals(what + " " + i, (float) want, result.getFloat(i), 0.0);
+          Assert.assertEquals(what + " " + i, (float) want, fout[i + 3], 0.0);
+          Assert.assertEquals(what + " " + i, want, dout[i], 0.0);
+        }
+        Assert.assertTrue(what, nmissing > 0);
+
+        // strided input is copied to canonical order first
+        Array section = packed.transpose(0, 1);
+        dout = new double[(int) section.getSize()];
+        enhance.convertScaleOffsetMissing(section, dout, 0);
+        IndexIterator iter = section.getIndexIterator();
+        for (int i = 0; iter.hasNext(); i++) {
+          iter.next();
+          int[] counter = iter.getCurrentCounter();
+          Assert.assertEquals(what, expected(enhance, packed, counter[1] * 100 + counter[0]), dout[i], 0.0);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+package ucar.nc2.ft.point;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureCollection;
+import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.point.writer.CFPointWriter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test PointFeatureIterator.nextBatch() against one at a time iteration.
+ */
+public class TestPointFeatureBatch {
+  private static final List<String> expectedIds = Arrays.asList("AAA", "BBB", "CCC", "DDD", "EEE", "FFF");
+
+  @Test
+  public void testBatchMatchesIterator() throws Exception {
+    try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsToFilter.ncml")) {
+      PointFeatureCollection pfc = (PointFeatureCollection) fdPoint.getPointFeatureCollectionList().get(0);
+
+      List<PointFeature> expected = new ArrayList<>();
+      for (PointFeature pf : pfc)
+        expected.add(pf);
+      Assert.assertEquals(6, expected.size());
+
+      List<String> ids = new ArrayList<>();
+      int count = 0;
+      PointFeatureBatch batch = new PointFeatureBatch(4);
+      try (PointFeatureIterator iter = (PointFeatureIterator) pfc.iterator()) {
+        int n;
+        while ((n = iter.nextBatch(batch)) > 0) {
+          Assert.assertTrue(n <= 4);
+          for (int i = 0; i < n; i++) {
+            PointFeature pf = expected.get(count++);
+            Assert.assertEquals(pf.getObservationTime(), batch.getObservationTimes()[i], 0.0);
+            Assert.assertEquals(pf.getNominalTime(), batch.getNominalTimes()[i], 0.0);
+            Assert.assertEquals(pf.getLocation().getLatitude(), batch.getLatitudes()[i], 0.0);
+            Assert.assertEquals(pf.getLocation().getLongitude(), batch.getLongitudes()[i], 0.0);
+            Assert.assertEquals(pf.getLocation().getAltitude(), batch.getAltitudes()[i], 0.0);
+            Assert.assertTrue(PointTestUtil.equals(pf.getFeatureData(), batch.getStructureData(i)));
+          }
+          Array idData = batch.getMemberData("id");
+          Assert.assertEquals(n, idData.getSize());
+          for (int i = 0; i < n; i++)
+            ids.add((String) idData.getObject(i));
+        }
+      }
+      Assert.assertEquals(expected.size(), count);
+      Assert.assertEquals(expectedIds, ids);
+    }
+  }
+
+  @Test
+  public void testBatchAfterHasNext() throws Exception {
+    try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsToFilter.ncml")) {
+      PointFeatureCollection pfc = (PointFeatureCollection) fdPoint.getPointFeatureCollectionList().get(0);
+
+      try (PointFeatureIterator iter = (PointFeatureIterator) pfc.iterator()) {
+        Assert.assertTrue(iter.hasNext());
+        PointFeatureBatch batch = new PointFeatureBatch(100);
+        Assert.assertEquals(6, iter.nextBatch(batch)); // the one found by hasNext() is not lost
+        Assert.assertEquals(0, iter.nextBatch(batch));
+        Assert.assertFalse(iter.hasNext());
+      }
+    }
+  }
+
+  @Test
+  public void testWriteBatches() throws Exception {
+    File outFile = File.createTempFile("TestPointFeatureBatch", ".nc");
+    outFile.deleteOnExit();
+
+    try (FeatureDatasetPoint fdPoint = PointTestUtil.openPointDataset("pointsToFilter.ncml")) {
+      int count = CFPointWriter.writeFeatureCollection(fdPoint, outFile.getPath(), NetcdfFileWriter.Version.netcdf3);
+      Assert.assertEquals(6, count);
+    }
+
+    try (NetcdfFile ncfile = NetcdfFile.open(outFile.getPath())) {
+      Variable id = ncfile.findVariable("id");
+      Assert.assertNotNull(id);
+      Array data = id.read();
+      List<String> ids = new ArrayList<>();
+      ucar.ma2.ArrayChar.StringIterator iter = ((ucar.ma2.ArrayChar) data).getStringIterator();
+      while (iter.hasNext())
+        ids.add(iter.next());
+      Assert.assertEquals(expectedIds, ids);
+
+      Array time = ncfile.findVariable(CFPointWriter.timeName).read();
+      Assert.assertEquals(6, time.getSize());
+      Assert.assertEquals(150.0, time.getDouble(5), 0.0);
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+package ucar.nc2.ft.point;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare the StationHelper spatial index against a linear scan.
+ */
+public class TestStationHelper {
+  private static final int NSTATIONS = 5000;
+
+  private static StationHelper makeStations(long seed) {
+    Random r = new Random(seed);
+    StationHelper helper = new StationHelper();
+    for (int i = 0; i < NSTATIONS; i++) {
+      double lat, lon;
+      if (i % 2 == 0) { // cluster some of them
+        lat = 30 + 20 * r.nextDouble();
+        lon = -125 + 60 * r.nextDouble();
+      } else {
+        lat = -90 + 180 * r.nextDouble();
+        lon = -180 + 360 * r.nextDouble();
+      }
+      helper.addStation(new StationFeatureImpl("stn" + i, null, null, lat, lon, 0.0, 0, null));
+    }
+    // some odd ones, which the index doesnt bucket
+    helper.addStation(new StationFeatureImpl("east", null, null, 10.0, 200.0, 0.0, 0, null));
+    helper.addStation(new StationFeatureImpl("west", null, null, 10.0, -190.0, 0.0, 0, null));
+    helper.addStation(new StationFeatureImpl("missing", null, null, Double.NaN, Double.NaN, 0.0, 0, null));
+    return helper;
+  }
+
+  private static List<StationFeature> scan(StationHelper helper, LatLonRect bb) {
+    List<StationFeature> result = new ArrayList<>();
+    for (StationFeature s : helper.getStationFeatures()) {
+      if (bb.contains(s.getLatitude(), s.getLongitude()))
+        result.add(s);
+    }
+    return result;
+  }
+
+  private static StationFeature scanClosest(StationHelper helper, double lat, double lon) {
+    double cos = Math.cos(Math.toRadians(lat));
+    StationFeature min_station = null;
+    double min_dist = Double.MAX_VALUE;
+    for (StationFeature s : helper.getStationFeatures()) {
+      double lon1 = LatLonPointImpl.lonNormal(s.getLongitude(), lon);
+      double dy = lat - s.getLatitude();
+      double dx = cos * (lon - lon1);
+      double dist = dy * dy + dx * dx;
+      if (dist < min_dist) {
+        min_dist = dist;
+        min_station = s;
+      }
+    }
+    return min_station;
+  }
+
+  @Test
+  public void testBoundingBox() throws IOException {
+    StationHelper helper = makeStations(17);
+    Random r = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      LatLonPointImpl start = new LatLonPointImpl(-90 + 180 * r.nextDouble(), -180 + 360 * r.nextDouble());
+      LatLonRect bb = new LatLonRect(start, 60 * r.nextDouble() - 30, 200 * r.nextDouble() - 100);
+      Assert.assertEquals(bb.toString2(), scan(helper, bb), helper.getStationFeatures(bb));
+    }
+  }
+
+  @Test
+  public void testBoundingBoxDateline() throws IOException {
+    StationHelper helper = makeStations(18);
+    LatLonRect bb = new LatLonRect(new LatLonPointImpl(-20, 170), 40, 40);
+    Assert.assertTrue(bb.crossDateline());
+    List<StationFeature> result = helper.getStationFeatures(bb);
+    Assert.assertEquals(scan(helper, bb), result);
+    Assert.assertTrue(result.contains(helper.getStation("east")));
+
+    LatLonRect all = new LatLonRect(new LatLonPointImpl(-90, -180), 180, 360);
+    Assert.assertEquals(scan(helper, all), helper.getStationFeatures(all));
+  }
+
+  @Test
+  public void testClosest() throws IOException {
+    StationHelper helper = makeStations(19);
+    Random r = new Random(43);
+    for (int i = 0; i < 500; i++) {
+      double lat = -90 + 180 * r.nextDouble();
+      double lon = -180 + 360 * r.nextDouble();
+      List<StationFeature> closest = helper.getClosestStationFeatures(new LatLonPointImpl(lat, lon), 1);
+      Assert.assertEquals(1, closest.size());
+      Assert.assertEquals(lat + " " + lon, scanClosest(helper, lat, lon), closest.get(0));
+    }
+
+    // near the pole, and across the dateline
+    Assert.assertEquals(scanClosest(helper, 89.9, 10), helper.getClosestStationFeatures(new LatLonPointImpl(89.9, 10), 1).get(0));
+    Assert.assertEquals(helper.getStation("east"), helper.getClosestStationFeatures(new LatLonPointImpl(10.0, -160.0), 1).get(0));
+  }
+
+  @Test
+  public void testClosestN() throws IOException {
+    StationHelper helper = makeStations(20);
+    List<StationFeature> closest = helper.getClosestStationFeatures(new LatLonPointImpl(40, -100), 25);
+    Assert.assertEquals(25, closest.size());
+
+    double cos = Math.cos(Math.toRadians(40));
+    double last = -1;
+    for (StationFeature s : closest) {
+      double dy = 40 - s.getLatitude();
+      double dx = cos * (-100 - s.getLongitude());
+      double dist = dy * dy + dx * dx;
+      Assert.assertTrue(dist >= last);
+      last = dist;
+    }
+
+    // nothing outside the result is closer than the farthest one in it
+    for (StationFeature s : helper.getStationFeatures()) {
+      if (closest.contains(s) || Double.isNaN(s.getLatitude())) continue;
+      double dy = 40 - s.getLatitude();
+      double dx = cos * (-100 - LatLonPointImpl.lonNormal(s.getLongitude(), -100));
+      Assert.assertTrue(s.getName(), dy * dy + dx * dx >= last);
+    }
+
+    Assert.assertEquals(0, helper.getClosestStationFeatures(new LatLonPointImpl(40, -100), 0).size());
+    Assert.assertEquals(NSTATIONS + 2, helper.getClosestStationFeatures(new LatLonPointImpl(40, -100), NSTATIONS + 10).size());
+  }
+
+}
@@ -0,0 +1,102 @@
+package ucar.nc2.ft2.coverage;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.StationTimeSeriesFeature;
+import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
+import ucar.nc2.ft2.coverage.writer.CoverageAsPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.util.test.TestDir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test Coverage.readData() at a list of points against reading each point separately.
+ */
+public class TestCoverageReadPoints {
+  private static final String endpoint = TestDir.cdmLocalTestDataDir + "ncml/fmrc/GFS_Puerto_Rico_191km_20090730_0000.nc";
+  private static final String covName = "Temperature_isobaric";
+
+  private List<LatLonPointImpl> makePoints(HorizCoordSys hcs) {
+    List<LatLonPointImpl> points = new ArrayList<>();
+    points.add(new LatLonPointImpl(hcs.getLatLon(2, 3)));
+    points.add(new LatLonPointImpl(hcs.getLatLon(5, 1)));
+    points.add(new LatLonPointImpl(-80.0, 0.0)); // not in the grid
+    points.add(new LatLonPointImpl(hcs.getLatLon(2, 3))); // duplicate
+    points.add(new LatLonPointImpl(hcs.getLatLon(hcs.getYAxis().getNcoords() - 1, hcs.getXAxis().getNcoords() - 1)));
+    return points;
+  }
+
+  @Test
+  public void testReadPoints() throws Exception {
+    try (FeatureDatasetCoverage cc = CoverageDatasetFactory.open(endpoint)) {
+      Assert.assertNotNull(endpoint, cc);
+      CoverageCollection gcs = cc.findCoverageDataset(FeatureType.GRID);
+      Coverage cov = gcs.findCoverage(covName);
+      Assert.assertNotNull(covName, cov);
+
+      HorizCoordSys hcs = cov.getCoordSys().getHorizCoordSys();
+      HorizCoordSys.CoordReturn index = hcs.findXYindexFromLatLon(hcs.getLatLon(5, 1)).get();
+      Assert.assertEquals(5, index.y);
+      Assert.assertEquals(1, index.x);
+
+      List<LatLonPointImpl> points = makePoints(hcs);
+      List<GeoReferencedArray> result = cov.readData(new SubsetParams(), points);
+      Assert.assertEquals(points.size(), result.size());
+      Assert.assertNull(result.get(2));
+
+      for (int i = 0; i < points.size(); i++) {
+        if (i == 2) continue;
+        GeoReferencedArray geo = result.get(i);
+        Assert.assertNotNull(geo);
+
+        GeoReferencedArray expected = cov.readData(new SubsetParams().setLatLonPoint(points.get(i)));
+        Array data = geo.getData();
+        Array expectedData = expected.getData();
+        Assert.assertArrayEquals(expectedData.getShape(), data.getShape());
+        Assert.assertArrayEquals(expected.getCoordSysForData().getShape(), geo.getCoordSysForData().getShape());
+        for (int j = 0; j < data.getSize(); j++)
+          Assert.assertEquals(expectedData.getDouble(j), data.getDouble(j), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testCoverageAsPoint() throws Exception {
+    try (FeatureDatasetCoverage cc = CoverageDatasetFactory.open(endpoint)) {
+      Assert.assertNotNull(endpoint, cc);
+      CoverageCollection gcs = cc.findCoverageDataset(FeatureType.GRID);
+      Coverage cov = gcs.findCoverage(covName);
+      HorizCoordSys hcs = cov.getCoordSys().getHorizCoordSys();
+      List<LatLonPointImpl> points = makePoints(hcs);
+      points.remove(3);
+
+      // CoverageAsPoint only handles time series, so pick a single level
+      SubsetParams subset = new SubsetParams().setVertCoord(((CoverageCoordAxis1D) cov.getCoordSys().getZAxis()).getCoordMidpoint(0));
+      CoverageAsPoint asPoint = new CoverageAsPoint(gcs, Arrays.asList(covName), subset, points);
+      FeatureDatasetPoint fdp = asPoint.asFeatureDatasetPoint();
+      StationTimeSeriesFeatureCollection stations = (StationTimeSeriesFeatureCollection) fdp.getPointFeatureCollectionList().get(0);
+      Assert.assertEquals(3, stations.getStationFeatures().size()); // one is not in the grid
+
+      long nvalues = cov.readData(subset.copy().setLatLonPoint(points.get(0))).getData().getSize();
+      Assert.assertEquals(cov.getCoordSys().getTimeAxis().getNcoords(), nvalues);
+      for (StationTimeSeriesFeature stn : stations) {
+        int count = 0;
+        try (PointFeatureIterator iter = stn.getPointFeatureIterator()) {
+          while (iter.hasNext()) {
+            iter.next();
+            count++;
+          }
+        }
+        Assert.assertEquals(stn.getName(), nvalues, count);
+      }
+    }
+  }
+
+}
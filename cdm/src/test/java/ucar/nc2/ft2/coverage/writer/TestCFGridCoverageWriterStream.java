@@ -0,0 +1,88 @@
+package ucar.nc2.ft2.coverage.writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft2.coverage.CoverageCollection;
+import ucar.nc2.ft2.coverage.CoverageDatasetFactory;
+import ucar.nc2.ft2.coverage.FeatureDatasetCoverage;
+import ucar.nc2.ft2.coverage.SubsetParams;
+import ucar.nc2.util.Optional;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compare CFGridCoverageWriter2.writeStream() against writing the file.
+ */
+public class TestCFGridCoverageWriterStream {
+
+  @Test
+  public void testStreamMatchesFile() throws Exception {
+    String endpoint = TestDir.cdmLocalTestDataDir + "ncml/fmrc/GFS_Puerto_Rico_191km_20090730_0000.nc";
+    List<String> covList = Arrays.asList("Temperature_isobaric");
+    File fileOut = File.createTempFile("TestCFGridCoverageWriterStream", ".nc");
+    fileOut.deleteOnExit();
+    File streamOut = File.createTempFile("TestCFGridCoverageWriterStream", ".stream.nc");
+    streamOut.deleteOnExit();
+
+    try (FeatureDatasetCoverage cc = CoverageDatasetFactory.open(endpoint)) {
+      Assert.assertNotNull(endpoint, cc);
+      CoverageCollection gcs = cc.findCoverageDataset(FeatureType.GRID);
+
+      NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, fileOut.getPath(), null);
+      Optional<Long> fileSize = CFGridCoverageWriter2.writeOrTestSize(gcs, covList, new SubsetParams(), false, false, writer);
+      Assert.assertTrue(fileSize.isPresent());
+
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      AtomicLong contentLength = new AtomicLong(-1);
+      Optional<Long> streamSize = CFGridCoverageWriter2.writeStream(gcs, covList, new SubsetParams(), false, bout, size -> {
+        Assert.assertEquals(0, bout.size()); // called before anything is written
+        contentLength.set(size);
+      });
+      Assert.assertTrue(streamSize.isPresent());
+      Assert.assertEquals(fileSize.get(), streamSize.get());
+      Assert.assertEquals(bout.size(), contentLength.get());
+
+      try (FileOutputStream fout = new FileOutputStream(streamOut)) {
+        bout.writeTo(fout);
+      }
+    }
+
+    try (NetcdfFile ncfile = NetcdfFile.open(fileOut.getPath());
+         NetcdfFile ncstream = NetcdfFile.open(streamOut.getPath())) {
+
+      Assert.assertEquals(ncfile.getDimensions().size(), ncstream.getDimensions().size());
+      for (Attribute att : ncfile.getGlobalAttributes()) {
+        if (att.getShortName().equals("History")) continue; // has the translation date
+        Assert.assertEquals(att, ncstream.findGlobalAttribute(att.getShortName()));
+      }
+
+      Assert.assertEquals(ncfile.getVariables().size(), ncstream.getVariables().size());
+      for (Variable v : ncfile.getVariables()) {
+        Variable vs = ncstream.findVariable(v.getFullNameEscaped());
+        Assert.assertNotNull(v.getFullName(), vs);
+        Assert.assertEquals(v.getNameAndDimensions(), vs.getNameAndDimensions());
+        Assert.assertEquals(v.getAttributes(), vs.getAttributes());
+
+        Array data = v.read();
+        Array sdata = vs.read();
+        Assert.assertEquals(v.getFullName(), data.getSize(), sdata.getSize());
+        Assert.assertArrayEquals(v.getFullName(), data.getShape(), sdata.getShape());
+        for (int i = 0; i < data.getSize(); i++)
+          Assert.assertEquals(v.getFullName(), data.getDouble(i), sdata.getDouble(i), 0.0);
+      }
+    }
+  }
+
+}
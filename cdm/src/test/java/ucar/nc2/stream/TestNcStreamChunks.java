@@ -0,0 +1,157 @@
+package ucar.nc2.stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.*;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Sequence;
+import ucar.nc2.Structure;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Test sending Structure and Sequence data as a series of DataCol messages.
+ */
+public class TestNcStreamChunks {
+  private static final String filename = TestDir.cdmLocalTestDataDir + "testWriteRecord.nc";
+
+  @After
+  public void cleanup() {
+    NcStreamWriter.setStructureChunking(0, 1000 * 1000);
+  }
+
+  private NetcdfFile open() throws Exception {
+    NetcdfFile ncfile = NetcdfFile.open(filename);
+    ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+    return ncfile;
+  }
+
+  private int countMessages(byte[] bytes) {
+    int count = 0;
+    for (int i = 0; i + 4 <= bytes.length; i++) {
+      if (bytes[i] == NcStream.MAGIC_DATA2[0] && bytes[i + 1] == NcStream.MAGIC_DATA2[1] &&
+              bytes[i + 2] == NcStream.MAGIC_DATA2[2] && bytes[i + 3] == NcStream.MAGIC_DATA2[3])
+        count++;
+    }
+    return count;
+  }
+
+  private void compare(ArrayStructure expected, ArrayStructure result) throws Exception {
+    Assert.assertArrayEquals(expected.getShape(), result.getShape());
+    for (int i = 0; i < expected.getSize(); i++)
+      compare(expected.getStructureData(i), result.getStructureData(i));
+  }
+
+  private void compare(StructureData expected, StructureData result) throws Exception {
+    for (StructureMembers.Member m : expected.getMembers()) {
+      Array want = expected.getArray(m);
+      Array got = result.getArray(m.getName());
+      Assert.assertNotNull(m.getName(), got);
+      Assert.assertEquals(m.getName(), want.getSize(), got.getSize());
+      IndexIterator wantIter = want.getIndexIterator();
+      IndexIterator gotIter = got.getIndexIterator();
+      while (wantIter.hasNext())
+        Assert.assertEquals(m.getName(), wantIter.getObjectNext(), gotIter.getObjectNext());
+    }
+  }
+
+  @Test
+  public void testStructureChunks() throws Exception {
+    try (NetcdfFile ncfile = open()) {
+      Structure record = (Structure) ncfile.findVariable("record");
+      Assert.assertNotNull(record);
+      ArrayStructure expected = (ArrayStructure) record.read();
+      Assert.assertTrue(expected.getSize() > 1);
+
+      NcStreamWriter.setStructureChunking(1, 1000 * 1000);
+      NcStreamWriter writer = new NcStreamWriter(ncfile, null);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writer.sendData2(record, record.getShapeAsSection(), out, NcStreamCompression.none(), true);
+      byte[] bytes = out.toByteArray();
+      Assert.assertEquals(expected.getSize(), countMessages(bytes));
+
+      NcStreamReader.DataResult result = new NcStreamReader().readStructureChunks(new ByteArrayInputStream(bytes), ncfile, filename);
+      Assert.assertEquals(record.getFullNameEscaped(), result.varNameFullEsc);
+      compare(expected, (ArrayStructure) result.data);
+
+      // a section: the blocks keep their place in the variable
+      Section section = new Section("1:" + (expected.getSize() - 1));
+      out = new ByteArrayOutputStream();
+      writer.sendData2(record, section, out, NcStreamCompression.none(), true);
+      result = new NcStreamReader().readStructureChunks(new ByteArrayInputStream(out.toByteArray()), ncfile, filename);
+      compare((ArrayStructure) record.read(section), (ArrayStructure) result.data);
+    }
+  }
+
+  @Test
+  public void testUnchunked() throws Exception {
+    try (NetcdfFile ncfile = open()) {
+      Structure record = (Structure) ncfile.findVariable("record");
+      ArrayStructure expected = (ArrayStructure) record.read();
+
+      NcStreamWriter.setStructureChunking(2, 1000 * 1000);
+      NcStreamWriter writer = new NcStreamWriter(ncfile, null);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writer.sendData2(record, record.getShapeAsSection(), out, NcStreamCompression.none());
+      byte[] bytes = out.toByteArray();
+      Assert.assertEquals(1, countMessages(bytes));
+
+      // the chunk reader accepts a single message without MAGIC_VEND
+      NcStreamReader.DataResult result = new NcStreamReader().readStructureChunks(new ByteArrayInputStream(bytes), ncfile, filename);
+      compare(expected, (ArrayStructure) result.data);
+    }
+  }
+
+  // servers that ignore chunk=true send a version 1 Data message
+  @Test
+  public void testVersion1() throws Exception {
+    try (NetcdfFile ncfile = open()) {
+      Structure record = (Structure) ncfile.findVariable("record");
+      ArrayStructure expected = (ArrayStructure) record.read();
+
+      NcStreamWriter writer = new NcStreamWriter(ncfile, null);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writer.sendData(record, record.getShapeAsSection(), out, NcStreamCompression.none());
+      byte[] bytes = out.toByteArray();
+      Assert.assertEquals(0, countMessages(bytes));
+
+      NcStreamReader.DataResult result = new NcStreamReader().readStructureChunks(new ByteArrayInputStream(bytes), ncfile, filename);
+      Assert.assertEquals(record.getFullNameEscaped(), result.varNameFullEsc);
+      compare(expected, (ArrayStructure) result.data);
+    }
+  }
+
+  @Test
+  public void testSequenceChunks() throws Exception {
+    try (NetcdfFile ncfile = open()) {
+      final Structure record = (Structure) ncfile.findVariable("record");
+      ArrayStructure expected = (ArrayStructure) record.read();
+      Sequence seq = new Sequence(ncfile, ncfile.getRootGroup(), null, "seq") {
+        @Override
+        public StructureDataIterator getStructureIterator(int bufferSize) throws java.io.IOException {
+          return record.getStructureIterator(bufferSize);
+        }
+      };
+
+      NcStreamWriter.setStructureChunking(0, 1); // one record per message
+      NcStreamWriter writer = new NcStreamWriter(ncfile, null);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writer.sendData2(seq, new Section(), out, NcStreamCompression.none(), false);
+      byte[] bytes = out.toByteArray();
+      Assert.assertEquals(expected.getSize(), countMessages(bytes));
+
+      int count = 0;
+      try (StructureDataIterator iter = new NcStreamReader().getStructureChunkIterator(new ByteArrayInputStream(bytes), ncfile, filename)) {
+        while (iter.hasNext()) {
+          compare(expected.getStructureData(count), iter.next());
+          count++;
+        }
+      }
+      Assert.assertEquals(expected.getSize(), count);
+    }
+  }
+
+}
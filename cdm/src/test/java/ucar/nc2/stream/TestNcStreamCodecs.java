@@ -0,0 +1,129 @@
+package ucar.nc2.stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.MAMath;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the ncstream compression codecs and the LZ4 block format.
+ */
+public class TestNcStreamCodecs {
+
+  private byte[] randomBytes(int n) {
+    byte[] b = new byte[n];
+    new Random(42).nextBytes(b);
+    return b;
+  }
+
+  private byte[] floatBytes(int n) {
+    ByteBuffer bb = ByteBuffer.allocate(n * 4);
+    for (int i = 0; i < n; i++)
+      bb.putFloat(273.15f + (float) Math.sin(i / 100.0));
+    return bb.array();
+  }
+
+  private void lz4RoundTrip(byte[] data) throws IOException {
+    byte[] compressed = Lz4Block.compress(data, data.length);
+    Assert.assertTrue(compressed.length <= Lz4Block.maxCompressedLength(data.length));
+    byte[] result = new byte[data.length];
+    Lz4Block.decompress(compressed, 0, compressed.length, result, 0, result.length);
+    Assert.assertArrayEquals(data, result);
+  }
+
+  @Test
+  public void testLz4() throws IOException {
+    lz4RoundTrip(new byte[0]);
+    for (int n = 1; n < 20; n++)
+      lz4RoundTrip(randomBytes(n));
+    lz4RoundTrip(randomBytes(100 * 1000));
+    lz4RoundTrip(floatBytes(50 * 1000));
+
+    byte[] zeros = new byte[100 * 1000];
+    lz4RoundTrip(zeros);
+    Assert.assertTrue(Lz4Block.compress(zeros, zeros.length).length < 1000);
+
+    byte[] pattern = new byte[10 * 1000];
+    for (int i = 0; i < pattern.length; i++)
+      pattern[i] = (byte) (i % 7);
+    lz4RoundTrip(pattern);
+  }
+
+  @Test(expected = IOException.class)
+  public void testLz4Corrupt() throws IOException {
+    byte[] compressed = Lz4Block.compress(floatBytes(1000), 4000);
+    Lz4Block.decompress(compressed, 0, compressed.length / 2, new byte[4000], 0, 4000);
+  }
+
+  // a literal length of 255s that would overflow an int
+  @Test(expected = IOException.class)
+  public void testLz4LengthOverflow() throws IOException {
+    byte[] corrupt = new byte[10 * 1000 * 1000];
+    Arrays.fill(corrupt, 0, 9 * 1000 * 1000, (byte) 255);
+    Lz4Block.decompress(corrupt, 0, corrupt.length, new byte[4000], 0, 4000);
+  }
+
+  @Test
+  public void testShuffle() {
+    byte[] data = randomBytes(4 * 25 + 3); // partial element at the end
+    for (int elemSize : new int[]{1, 2, 4, 8}) {
+      byte[] shuffled = NcStreamCodec.shuffle(data, data.length, elemSize);
+      Assert.assertArrayEquals(data, NcStreamCodec.unshuffle(shuffled, shuffled.length, elemSize));
+    }
+    byte[] shuffled = NcStreamCodec.shuffle(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, 8, 4);
+    Assert.assertArrayEquals(new byte[]{1, 5, 2, 6, 3, 7, 4, 8}, shuffled);
+  }
+
+  @Test
+  public void testCodecs() throws IOException {
+    byte[] data = floatBytes(10 * 1000);
+    for (String name : new String[]{"deflate", "lz4", "shuffle-deflate", "SHUFFLE-LZ4"}) {
+      NcStreamCodec codec = NcStreamCodec.find(name);
+      Assert.assertNotNull(name, codec);
+      Assert.assertSame(codec, NcStreamCodec.find(codec.getType()));
+      byte[] encoded = codec.encode(data, data.length, 4);
+      Assert.assertTrue(name, encoded.length < data.length);
+      Assert.assertArrayEquals(name, data, codec.decode(encoded, encoded.length, data.length, 4));
+    }
+    Assert.assertNull(NcStreamCodec.find("bogus"));
+    Assert.assertNull(NcStreamCodec.find(NcStreamProto.Compress.NONE));
+    Assert.assertEquals("LZ4", NcStreamProto.Compress.LZ4.getValueDescriptor().getName());
+    Assert.assertEquals(NcStreamProto.Compress.SHUFFLE_LZ4, NcStreamProto.Compress.valueOf("SHUFFLE_LZ4"));
+  }
+
+  @Test
+  public void testSendData() throws Exception {
+    String filename = TestDir.cdmLocalTestDataDir + "testWriteRecord.nc";
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      NcStreamWriter writer = new NcStreamWriter(ncfile, null);
+      int count = 0;
+      for (Variable v : ncfile.getVariables()) {
+        if (!v.getDataType().isNumeric()) continue;
+        Array expected = v.read();
+        for (String name : new String[]{"none", "deflate", "lz4", "shuffle-lz4", "shuffle-deflate"}) {
+          NcStreamCompression compress = NcStreamCompression.find(name);
+          Assert.assertNotNull(name, compress);
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          writer.sendData(v, v.getShapeAsSection(), out, compress);
+          NcStreamReader.DataResult result = new NcStreamReader().readData(new ByteArrayInputStream(out.toByteArray()), ncfile, filename);
+          Assert.assertEquals(v.getFullNameEscaped(), result.varNameFullEsc);
+          Assert.assertTrue(v.getFullName() + " " + name, Arrays.equals(expected.getShape(), result.data.getShape()));
+          Assert.assertTrue(v.getFullName() + " " + name, MAMath.equals(expected, result.data));
+        }
+        count++;
+      }
+      Assert.assertTrue(count > 0);
+    }
+  }
+
+}
@@ -8,6 +8,7 @@ import dap4.core.data.DataAtomic;
 import dap4.core.data.DataException;
 import dap4.core.dmr.AtomicType;
 import dap4.core.dmr.DapAtomicVariable;
+import dap4.core.dmr.DapDimension;
 import dap4.core.dmr.DapType;
 import dap4.core.dmr.DapVariable;
 import dap4.core.util.*;
@@ -86,9 +87,32 @@ public class CDMDataAtomic extends AbstractDataVariable
         Class elementclass = CDMUtil.cdmElementClass(datatype);
         if(elementclass == null)
             throw new DataException("Attempt to read non-atomic value of type: " + datatype);
-        Object content = array.get1DJavaArray(elementclass); // not very efficient
+        Object content = array.get1DJavaArray(elementclass); // the storage itself, unless array is a view
         try {
-            Odometer odom = Odometer.factory(slices, ((DapVariable) this.getTemplate()).getDimensions(), false);
+            List<DapDimension> dims = ((DapVariable) this.getTemplate()).getDimensions();
+            int rank = dims.size();
+            if(rank > 0 && slices.size() == rank && !hasMulti(slices)) {
+                Slice last = slices.get(rank - 1);
+                last.setMaxSize(dims.get(rank - 1).getSize());
+                last.finish();
+                if(last.getStride() == 1) { // copy whole runs along the last dimension
+                    int runlength = (int) last.getCount();
+                    if(rank == 1) {
+                        System.arraycopy(content, (int) last.getFirst(), data, (int) offset, runlength);
+                        return;
+                    }
+                    long lastsize = dims.get(rank - 1).getSize();
+                    Odometer odom = Odometer.factory(slices.subList(0, rank - 1), dims.subList(0, rank - 1), false);
+                    while(odom.hasNext()) {
+                        long index = odom.next() * lastsize + last.getFirst();
+                        System.arraycopy(content, (int) index, data, (int) offset, runlength);
+                        offset += runlength;
+                    }
+                    return;
+                }
+            }
+
+            Odometer odom = Odometer.factory(slices, dims, false);
             while(odom.hasNext()) {
                 long index = odom.next();
                 System.arraycopy(content, (int) index, data, (int) offset, 1);
@@ -206,6 +230,16 @@ public class CDMDataAtomic extends AbstractDataVariable
     //////////////////////////////////////////////////
     // Utilities
 
+    static protected boolean
+    hasMulti(List<Slice> slices)
+    {
+        for(Slice slice : slices) {
+            if(slice.getSort() == Slice.Sort.Multi)
+                return true;
+        }
+        return false;
+    }
+
     protected DapSort
     computesort(Array array)
             throws DataException
@@ -10,6 +10,7 @@ import dap4.core.util.*;
 import dap4.servlet.DapSerializer;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A Constraint is a structure
@@ -250,7 +251,7 @@ public class CEConstraint implements Constraint
     //////////////////////////////////////////////////
     // class variables and methods
 
-    static protected Map<DapDataset, CEConstraint> universals = new HashMap<>();
+    static protected Map<DapDataset, CEConstraint> universals = new ConcurrentHashMap<>();
 
 
     static public CEConstraint
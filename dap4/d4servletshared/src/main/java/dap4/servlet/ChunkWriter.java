@@ -380,6 +380,11 @@ public class ChunkWriter extends OutputStream
             throw new DapException("Attempt to write too much data: limit=%d");
         if(chunk == null) chunk = ByteBuffer.allocate(maxbuffersize).order(getOrder());
         if(state == State.DMR) {
+            // the DMR must precede any data chunk written out below
+            if(dmr8 != null) {
+                sendDXR(dmr8);
+                dmr8 = null;
+            }
             chunk.clear(); // reset
             state = State.DATA;
         }
@@ -396,7 +401,8 @@ public class ChunkWriter extends OutputStream
                     avail = chunk.remaining();
                 }
                 int towrite = (left < avail ? left : avail);
-                chunk.put(b, off, towrite);
+                chunk.put(b, offset, towrite);
+                offset += towrite;
                 left -= towrite;
                 avail -= towrite;
             } while(left > 0);
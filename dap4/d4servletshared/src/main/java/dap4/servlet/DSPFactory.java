@@ -119,13 +119,18 @@ abstract public class DSPFactory
      * @return DSP object that can process this path
      * @throws DapException
      */
-    synchronized public DSP
+    public DSP
     create(String path)
         throws DapException
     {
-        for(int i = 0;i < dspRegistry.size();i++) {
+        // Not synchronized, so that DapCache can open several paths at once
+        List<Class> registry;
+        synchronized (this) {
+            registry = new ArrayList<Class>(dspRegistry);
+        }
+        for(int i = 0;i < registry.size();i++) {
             try {
-                Class testclass = dspRegistry.get(i);
+                Class testclass = registry.get(i);
                 Method match = testclass.getMethod("match", String.class, DapContext.class);
                 boolean ismatch = (Boolean) match.invoke(null, path, (DapContext) null);
                 if(ismatch) {
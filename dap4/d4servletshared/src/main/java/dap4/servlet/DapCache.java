@@ -4,21 +4,33 @@
 package dap4.servlet;
 
 import dap4.ce.CEConstraint;
+import dap4.core.dmr.DapDataset;
 import dap4.core.util.DapException;
 import dap4.dap4shared.DSP;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
- * Provide an LRU cache of DSPs.
- * The cache key is assumed to be the DSP object.
- * The cache is synchronized to avoid race conditions.
- * Note that we do not have to release because Java
- * uses garbage collection and entries will be purged
- * if the LRU cache is full.
+ * Provide a concurrent LRU cache of DSPs, keyed by path.
+ * <p>
+ * Every successful open(path) must be matched by a release(dsp)
+ * once the caller is done with the DSP; a DSP is only closed
+ * after it has been evicted and all its users have released it.
+ * Concurrent opens of the same path share a single load.
+ * Unused entries are evicted, oldest first, when there are more
+ * than maxFiles entries or when they have been idle for longer
+ * than maxIdle milliseconds.
  */
 
 abstract public class DapCache
@@ -29,13 +41,145 @@ abstract public class DapCache
 
     static final int MAXFILES = 100; // size of the cache
 
+    static final long MAXIDLE = 30 * 60 * 1000; // msec; 0 => no idle limit
+
+    static final long SWEEPINTERVAL = 60 * 1000; // msec; max time between idle sweeps
+
+    //////////////////////////////////////////////////
+    // Type Decls
+
+    /**
+     * Metrics hooks; all methods are called without holding any cache lock.
+     */
+    static public interface Listener
+    {
+        /**
+         * The path was found in the cache, or was being loaded by another request.
+         */
+        public void hit(String path);
+
+        /**
+         * The path was not in the cache and was loaded.
+         *
+         * @param nanos time spent in DSPFactory.create()
+         */
+        public void loaded(String path, long nanos);
+
+        /**
+         * Loading the path failed.
+         */
+        public void failed(String path, Throwable t);
+
+        /**
+         * The DSP for the path was removed from the cache.
+         */
+        public void evicted(String path);
+    }
+
+    static protected class Entry
+    {
+        final String path;
+        final FutureTask<DSP> loader;
+        volatile long lastused;
+        int refcount = 0; // guarded by this
+        boolean evicted = false; // guarded by this
+
+        Entry(final String path)
+        {
+            this.path = path;
+            this.loader = new FutureTask<DSP>(() -> {
+                DSP dsp = factory.create(path);
+                owners.put(dsp, this);
+                return dsp;
+            });
+            this.lastused = System.currentTimeMillis();
+        }
+
+        /**
+         * @return false if this entry has been evicted and must not be used.
+         */
+        synchronized boolean
+        acquire()
+        {
+            if(evicted)
+                return false;
+            refcount++;
+            return true;
+        }
+
+        /**
+         * @return true if the caller must now close the DSP.
+         */
+        synchronized boolean
+        release()
+        {
+            refcount--;
+            lastused = System.currentTimeMillis();
+            return evicted && refcount == 0;
+        }
+
+        /**
+         * Mark this entry as evicted.
+         *
+         * @param force evict even if the entry is in use
+         * @return null if the entry could not be evicted,
+         * else whether the caller must now close the DSP.
+         */
+        synchronized Boolean
+        evict(boolean force)
+        {
+            if(evicted || (refcount > 0 && !force))
+                return null;
+            evicted = true;
+            return refcount == 0;
+        }
+
+        DSP
+        get()
+                throws IOException
+        {
+            try {
+                return loader.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while opening " + path);
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if(cause instanceof IOException)
+                    throw (IOException) cause;
+                if(cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new DapException(cause);
+            }
+        }
+    }
+
     //////////////////////////////////////////////////
     // Instance variables
 
     /**
-     * Define an lru cache of known DSP objects: oldest first.
+     * Map of path to cache entry.
+     */
+    static protected ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Map of open DSP to its entry; used by release().
+     * DSPs do not override equals(), so this is an identity map.
      */
-    static protected List<DSP> lru = new ArrayList<DSP>();
+    static protected ConcurrentHashMap<DSP, Entry> owners = new ConcurrentHashMap<>();
+
+    static protected int maxfiles = MAXFILES;
+    static protected long maxidle = MAXIDLE;
+
+    static protected volatile long nextsweep = 0;
+    static protected AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    static protected volatile Listener listener = null;
+
+    static protected AtomicLong hits = new AtomicLong();
+    static protected AtomicLong misses = new AtomicLong();
+    static protected AtomicLong failures = new AtomicLong();
+    static protected AtomicLong evictions = new AtomicLong();
 
     // This should be set by any subclass
     static protected DSPFactory factory = null;
@@ -50,45 +194,207 @@ abstract public class DapCache
         return factory;
     }
 
+    /**
+     * Set the cache limits.
+     *
+     * @param maxfiles max number of DSPs to keep open; DSPs in use are never closed
+     * @param maxidle  max msecs an unused DSP is kept open; 0 => no limit
+     */
+    static public void setLimits(int maxfiles, long maxidle)
+    {
+        DapCache.maxfiles = maxfiles;
+        DapCache.maxidle = maxidle;
+        nextsweep = 0;
+    }
+
+    static public void setListener(Listener l)
+    {
+        listener = l;
+    }
+
     //////////////////////////////////////////////////
 
-    static public synchronized DSP open(String path)
+    /**
+     * Get the DSP for a path, creating it if necessary.
+     * The caller must call release() when done with it.
+     *
+     * @param path of the dataset
+     * @return DSP for the path
+     * @throws IOException if the DSP cannot be created
+     */
+    static public DSP open(String path)
             throws IOException
     {
-        int lrusize = lru.size();
-        for(int i = lrusize - 1; i >= 0; i--) {
-            DSP dsp = lru.get(i);
-            String dsppath = dsp.getPath();
-            if(dsppath.equals(path)) {
-                // move to the front of the queue to maintain LRU property
-                lru.remove(i);
-                lru.add(dsp);
-                return dsp;
+        for(; ; ) {
+            Entry entry = cache.get(path);
+            boolean isloader = false;
+            if(entry == null) {
+                Entry newentry = new Entry(path);
+                entry = cache.putIfAbsent(path, newentry);
+                if(entry == null) {
+                    entry = newentry;
+                    isloader = true;
+                }
             }
+            if(!entry.acquire()) {
+                cache.remove(path, entry); // evicted in the meantime; try again
+                continue;
+            }
+            long start = System.nanoTime();
+            DSP dsp;
+            try {
+                if(isloader)
+                    entry.loader.run();
+                dsp = entry.get();
+            } catch (IOException | RuntimeException e) {
+                entry.release();
+                if(cache.remove(path, entry)) {
+                    failures.incrementAndGet();
+                    Listener l = listener;
+                    if(l != null) l.failed(path, e);
+                }
+                throw e;
+            }
+            entry.lastused = System.currentTimeMillis();
+            Listener l = listener;
+            if(isloader) {
+                misses.incrementAndGet();
+                if(l != null) l.loaded(path, System.nanoTime() - start);
+            } else {
+                hits.incrementAndGet();
+                if(l != null) l.hit(path);
+            }
+            cleanup();
+            return dsp;
         }
-        // No match found, create and initialize it.
-        // If cache is full, remove oldest entry
-        if(lrusize == MAXFILES) {
-            // make room
-            lru.remove(0);
-            CEConstraint.release(lru.get(0).getDMR());
-        }
-        // Find dsp that can process this path
-        DSP dsp = factory.create(path);
-        lru.add(dsp);
-        return dsp;
     }
 
-    static synchronized public void flush() // for testing
+    /**
+     * Release a DSP obtained from open().
+     * If it has been evicted and this was its last user, it is closed.
+     *
+     * @param dsp from open(); null is ignored
+     */
+    static public void release(DSP dsp)
+    {
+        if(dsp == null)
+            return;
+        Entry entry = owners.get(dsp);
+        if(entry == null)
+            return; // already closed
+        if(entry.release())
+            close(entry, dsp);
+    }
+
+    static public void flush() // for testing
             throws Exception
     {
-        while(lru.size() > 0) {
-            DSP dsp = lru.get(0);
-            CEConstraint.release(dsp.getDMR());
-            dsp.close();
-            lru.remove(0);
+        for(Entry entry : new ArrayList<Entry>(cache.values())) {
+            evict(entry, true);
+        }
+    }
+
+    //////////////////////////////////////////////////
+    // Statistics
+
+    static public int getNumberOfEntries()
+    {
+        return cache.size();
+    }
+
+    static public long getHits()
+    {
+        return hits.get();
+    }
+
+    static public long getMisses()
+    {
+        return misses.get();
+    }
+
+    static public long getFailures()
+    {
+        return failures.get();
+    }
+
+    static public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    //////////////////////////////////////////////////
+    // Utilities
+
+    /**
+     * Evict unused entries until there are at most maxfiles of them,
+     * along with any that have been idle too long.
+     * Only one thread sweeps at a time; others just skip it.
+     */
+    static protected void cleanup()
+    {
+        long now = System.currentTimeMillis();
+        if(cache.size() <= maxfiles && now < nextsweep)
+            return;
+        if(!sweeping.compareAndSet(false, true))
+            return;
+        try {
+            nextsweep = now + (maxidle > 0 ? Math.min(maxidle, SWEEPINTERVAL) : SWEEPINTERVAL);
+            List<Entry> entries = new ArrayList<Entry>(cache.values());
+            Collections.sort(entries, new Comparator<Entry>()
+            {
+                public int compare(Entry e1, Entry e2)
+                {
+                    return Long.compare(e1.lastused, e2.lastused);
+                }
+            });
+            int excess = entries.size() - maxfiles;
+            for(Entry entry : entries) {
+                boolean idle = (maxidle > 0 && now - entry.lastused > maxidle);
+                if(excess <= 0 && !idle)
+                    break; // sorted oldest first, so the rest are newer
+                if(!entry.loader.isDone())
+                    continue; // still loading
+                if(evict(entry, false))
+                    excess--;
+            }
+        } finally {
+            sweeping.set(false);
         }
     }
 
+    /**
+     * @return true if the entry was evicted
+     */
+    static protected boolean evict(Entry entry, boolean force)
+    {
+        Boolean mustclose = entry.evict(force);
+        if(mustclose == null)
+            return false;
+        cache.remove(entry.path, entry);
+        evictions.incrementAndGet();
+        Listener l = listener;
+        if(l != null) l.evicted(entry.path);
+        if(mustclose && entry.loader.isDone()) {
+            try {
+                close(entry, entry.get());
+            } catch (IOException | RuntimeException e) {
+                // load failed; nothing to close
+            }
+        }
+        return true;
+    }
+
+    static protected void close(Entry entry, DSP dsp)
+    {
+        owners.remove(dsp, entry);
+        try {
+            DapDataset dmr = dsp.getDMR();
+            if(dmr != null)
+                CEConstraint.release(dmr);
+            dsp.close();
+        } catch (IOException ioe) {
+            DapLog.warn("DapCache: close failed for " + entry.path + ": " + ioe.getMessage());
+        }
+    }
 
 } // DapCache
@@ -45,6 +45,9 @@ public class SerialWriter
 
     static final int COUNTSIZE = 8;
 
+    // Size of the buffer used to encode arrays; a multiple of all the fixed type sizes
+    static final int BLOCKSIZE = 64 * 1024;
+
     //////////////////////////////////////////////////
     // Instance variables
 
@@ -58,6 +61,7 @@ public class SerialWriter
     protected StringBuilder lastchecksum = new StringBuilder(); // checksum from last variable
 
     protected ByteBuffer longbuffer = null;
+    protected ByteBuffer blockbuffer = null; // reused by writeArray; created on first use
 
     //////////////////////////////////////////////////
     // Constructor(s)
@@ -131,30 +135,17 @@ public class SerialWriter
         ByteBuffer buf = ByteBuffer.allocate(total).order(order);
         switch (atomtype) {
         case Char:
-            byte b = (byte) (0xFFL & (long) ((Character) value).charValue());
-            buf.put(b);
-            break;
         case UInt8:
         case Int8:
-            buf.put((byte) (Byte) value);
-            break;
         case Int16:
         case UInt16:
-            buf.putShort((Short) value);
-            break;
         case Int32:
         case UInt32:
-            buf.putInt(((Number) value).intValue());
-            break;
         case Int64:
         case UInt64:
-            buf.putLong(((Number) value).longValue());
-            break;
         case Float32:
-            buf.putFloat(((Number) value).floatValue());
-            break;
         case Float64:
-            buf.putDouble(((Number) value).doubleValue());
+            encodeFixed(atomtype, value, buf);
             break;
 
         case URL:
@@ -362,7 +353,15 @@ public class SerialWriter
     writeObject(DapType daptype, Object value)
             throws IOException
     {
-        ByteBuffer buf = encodeObject(daptype, value);
+        ByteBuffer buf;
+        AtomicType atomtype = daptype.getPrimitiveType();
+        if(AtomicType.getSize(atomtype) > 0) {
+            // fixed size, so encode into the scratch buffer rather than allocating one
+            buf = this.longbuffer;
+            buf.clear();
+            encodeFixed(atomtype, value, buf);
+        } else
+            buf = encodeObject(daptype, value);
         byte[] bytes = buf.array();
         int len = buf.position();
         if(checksumming)
@@ -380,6 +379,40 @@ public class SerialWriter
         }
     }
 
+    static protected void
+    encodeFixed(AtomicType atomtype, Object value, ByteBuffer buf)
+    {
+        switch (atomtype) {
+        case Char:
+            buf.put((byte) (0xFFL & (long) ((Character) value).charValue()));
+            break;
+        case UInt8:
+        case Int8:
+            buf.put((Byte) value);
+            break;
+        case Int16:
+        case UInt16:
+            buf.putShort((Short) value);
+            break;
+        case Int32:
+        case UInt32:
+            buf.putInt(((Number) value).intValue());
+            break;
+        case Int64:
+        case UInt64:
+            buf.putLong(((Number) value).longValue());
+            break;
+        case Float32:
+            buf.putFloat(((Number) value).floatValue());
+            break;
+        case Float64:
+            buf.putDouble(((Number) value).doubleValue());
+            break;
+        default:
+            assert false : "Not a fixed size type: " + atomtype;
+        }
+    }
+
     /**
      * Write out a prefix count
      *
@@ -401,16 +434,102 @@ public class SerialWriter
     }
 
     /**
-     * Write out an array of values
+     * Write out an array of values.
+     * The values are encoded a block at a time into a reused buffer,
+     * rather than into one buffer holding the whole encoded array.
      *
      * @param daptype the type of the object
+     * @param values  the java array of values
      * @throws IOException
      */
     public void
     writeArray(DapType daptype, Object values)
             throws IOException
     {
-        ByteBuffer buf = encodeArray(daptype, values);
+        writeArray(daptype, values, 0, Array.getLength(values));
+    }
+
+    /**
+     * Write out part of an array of values.
+     *
+     * @param daptype the type of the object
+     * @param values  the java array of values
+     * @param start   index of the first value to write
+     * @param count   number of values to write
+     * @throws IOException
+     */
+    public void
+    writeArray(DapType daptype, Object values, int start, int count)
+            throws IOException
+    {
+        AtomicType atomtype = daptype.getPrimitiveType();
+        if(blockbuffer == null)
+            blockbuffer = ByteBuffer.allocate(BLOCKSIZE).order(order);
+        ByteBuffer buf = blockbuffer;
+        int elemsize = AtomicType.getSize(atomtype);
+        if(elemsize == 0) { // variable length; encode each value, then block them up
+            buf.clear();
+            for(int i = start; i < start + count; i++) {
+                ByteBuffer value = encodeObject(daptype, Array.get(values, i));
+                if(value.position() > buf.remaining()) {
+                    writeBlock(daptype, buf);
+                    if(value.position() > buf.remaining()) { // too big for the block
+                        writeBlock(daptype, value);
+                        continue;
+                    }
+                }
+                value.flip();
+                buf.put(value);
+            }
+            writeBlock(daptype, buf);
+            return;
+        }
+
+        int blockcount = BLOCKSIZE / elemsize;
+        for(int pos = start; pos < start + count; pos += blockcount) {
+            int n = Math.min(blockcount, start + count - pos);
+            buf.clear();
+            switch (atomtype) {
+            case Char:
+                char[] datac = (char[]) values;
+                for(int i = pos; i < pos + n; i++)
+                    buf.put((byte) (0xFFL & (long) (datac[i])));
+                break;
+            case UInt8:
+            case Int8:
+                buf.put((byte[]) values, pos, n);
+                break;
+            case Int16:
+            case UInt16:
+                buf.asShortBuffer().put((short[]) values, pos, n);
+                break;
+            case Int32:
+            case UInt32:
+                buf.asIntBuffer().put((int[]) values, pos, n);
+                break;
+            case Int64:
+            case UInt64:
+                buf.asLongBuffer().put((long[]) values, pos, n);
+                break;
+            case Float32:
+                buf.asFloatBuffer().put((float[]) values, pos, n);
+                break;
+            case Float64:
+                buf.asDoubleBuffer().put((double[]) values, pos, n);
+                break;
+            default:
+                throw new DapException("Unknown type: " + daptype.getTypeName());
+            }
+            buf.position(n * elemsize); // because we may be using asXXXBuffer
+            writeBlock(daptype, buf);
+        }
+    }
+
+    // write the bytes in buf up to its position, then clear it
+    protected void
+    writeBlock(DapType daptype, ByteBuffer buf)
+            throws IOException
+    {
         byte[] bytes = buf.array();
         int len = buf.position();
         if(checksumming)
@@ -424,6 +543,7 @@ public class SerialWriter
             }
             System.err.println();
         }
+        buf.clear();
     }
 
     /**
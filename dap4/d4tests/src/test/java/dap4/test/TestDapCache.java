@@ -0,0 +1,191 @@
+package dap4.test;
+
+import dap4.core.data.DataDataset;
+import dap4.core.util.DapContext;
+import dap4.core.util.DapException;
+import dap4.dap4shared.AbstractDSP;
+import dap4.dap4shared.DSP;
+import dap4.servlet.DSPFactory;
+import dap4.servlet.DapCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the reference counting, eviction and single-flight loading of DapCache.
+ */
+public class TestDapCache
+{
+    static class TestDSP extends AbstractDSP
+    {
+        boolean closed = false;
+
+        public DSP open(String path, DapContext context)
+                throws DapException
+        {
+            setPath(path);
+            return this;
+        }
+
+        public DataDataset getDataDataset()
+        {
+            return null;
+        }
+
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
+    static class TestFactory extends DSPFactory
+    {
+        AtomicInteger creates = new AtomicInteger();
+        CountDownLatch gate = null;
+
+        public DSP create(String path)
+                throws DapException
+        {
+            creates.incrementAndGet();
+            try {
+                if(gate != null)
+                    gate.await();
+            } catch (InterruptedException e) {
+                throw new DapException(e);
+            }
+            if(path.startsWith("bad"))
+                throw new DapException("Cannot open " + path);
+            return new TestDSP().open(path);
+        }
+    }
+
+    protected DSPFactory saved = null;
+    protected TestFactory factory = null;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        DapCache.flush();
+        saved = DapCache.getFactory();
+        factory = new TestFactory();
+        DapCache.setFactory(factory);
+    }
+
+    @After
+    public void cleanup()
+            throws Exception
+    {
+        DapCache.flush();
+        DapCache.setFactory(saved);
+        DapCache.setLimits(100, 30 * 60 * 1000);
+    }
+
+    @Test
+    public void testInUseNotClosed()
+            throws Exception
+    {
+        DapCache.setLimits(1, 0);
+        TestDSP a = (TestDSP) DapCache.open("a");
+        TestDSP b = (TestDSP) DapCache.open("b");
+        Assert.assertSame(a, DapCache.open("a"));
+        DapCache.release(a);
+        DapCache.release(b);
+        Assert.assertFalse(a.closed);
+        Assert.assertFalse(b.closed);
+
+        // b is the only unused entry
+        TestDSP c = (TestDSP) DapCache.open("c");
+        Assert.assertTrue(b.closed);
+        Assert.assertFalse(a.closed);
+        Assert.assertFalse(c.closed);
+
+        DapCache.release(a);
+        DapCache.release(c);
+        TestDSP d = (TestDSP) DapCache.open("d");
+        Assert.assertTrue(a.closed);
+        Assert.assertTrue(c.closed);
+        Assert.assertEquals(1, DapCache.getNumberOfEntries());
+
+        // flushed while in use: closed on release
+        DapCache.flush();
+        Assert.assertFalse(d.closed);
+        DapCache.release(d);
+        Assert.assertTrue(d.closed);
+        Assert.assertEquals(0, DapCache.getNumberOfEntries());
+    }
+
+    @Test
+    public void testIdle()
+            throws Exception
+    {
+        DapCache.setLimits(100, 1);
+        TestDSP a = (TestDSP) DapCache.open("a");
+        DapCache.release(a);
+        Thread.sleep(20);
+        TestDSP b = (TestDSP) DapCache.open("b");
+        Assert.assertTrue(a.closed);
+        Assert.assertFalse(b.closed);
+        DapCache.release(b);
+    }
+
+    @Test
+    public void testFailure()
+            throws Exception
+    {
+        long failures = DapCache.getFailures();
+        try {
+            DapCache.open("bad");
+            Assert.fail("expected DapException");
+        } catch (DapException e) {
+            // expected
+        }
+        Assert.assertEquals(failures + 1, DapCache.getFailures());
+        Assert.assertEquals(0, DapCache.getNumberOfEntries());
+    }
+
+    @Test
+    public void testSingleLoad()
+            throws Exception
+    {
+        final int nthreads = 8;
+        factory.gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+        try {
+            List<Future<DSP>> results = new ArrayList<>();
+            for(int i = 0; i < nthreads; i++) {
+                results.add(executor.submit(new Callable<DSP>()
+                {
+                    public DSP call()
+                            throws IOException
+                    {
+                        return DapCache.open("shared");
+                    }
+                }));
+            }
+            Thread.sleep(100); // let them all block on the one load
+            factory.gate.countDown();
+            DSP first = results.get(0).get();
+            for(Future<DSP> result : results) {
+                DSP dsp = result.get();
+                Assert.assertSame(first, dsp);
+                DapCache.release(dsp);
+            }
+            Assert.assertEquals(1, factory.creates.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
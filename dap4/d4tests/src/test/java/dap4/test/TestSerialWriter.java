@@ -0,0 +1,132 @@
+package dap4.test;
+
+import dap4.core.dmr.DapType;
+import dap4.core.util.DapUtil;
+import dap4.dap4shared.RequestMode;
+import dap4.servlet.ChunkWriter;
+import dap4.servlet.SerialWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Test the block encoding in SerialWriter.writeArray() against SerialWriter.encodeArray(),
+ * and that ChunkWriter splits large writes into chunks correctly.
+ */
+public class TestSerialWriter
+{
+    protected byte[] expected(SerialWriter writer, DapType type, Object values, ByteOrder order)
+            throws Exception
+    {
+        ByteBuffer buf = writer.encodeArray(type, values);
+        byte[] bytes = Arrays.copyOf(buf.array(), buf.position());
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer csum = ByteBuffer.allocate(8).order(order);
+        csum.putLong(crc.getValue());
+        byte[] result = Arrays.copyOf(bytes, bytes.length + DapUtil.CHECKSUMSIZE);
+        System.arraycopy(csum.array(), 0, result, bytes.length, DapUtil.CHECKSUMSIZE);
+        return result;
+    }
+
+    protected byte[] write(DapType type, Object values, ByteOrder order)
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerialWriter writer = new SerialWriter(out, order);
+        writer.startVariable();
+        writer.writeArray(type, values);
+        writer.endVariable();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testFixedSize()
+            throws Exception
+    {
+        float[] floats = new float[100 * 1000]; // bigger than one block
+        double[] doubles = new double[50 * 1000 + 3];
+        for(int i = 0; i < floats.length; i++)
+            floats[i] = i * 1.5f;
+        for(int i = 0; i < doubles.length; i++)
+            doubles[i] = -i / 7.0;
+
+        for(ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            SerialWriter writer = new SerialWriter(new ByteArrayOutputStream(), order);
+            Assert.assertArrayEquals(expected(writer, DapType.FLOAT32, floats, order), write(DapType.FLOAT32, floats, order));
+            Assert.assertArrayEquals(expected(writer, DapType.FLOAT64, doubles, order), write(DapType.FLOAT64, doubles, order));
+        }
+    }
+
+    @Test
+    public void testStrings()
+            throws Exception
+    {
+        char[] big = new char[100 * 1000];
+        Arrays.fill(big, 'x');
+        String[] strings = new String[]{"a", "", new String(big), "été", "last"};
+
+        ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+        SerialWriter writer = new SerialWriter(new ByteArrayOutputStream(), order);
+        Assert.assertArrayEquals(expected(writer, DapType.STRING, strings, order), write(DapType.STRING, strings, order));
+    }
+
+    @Test
+    public void testPartialArray()
+            throws Exception
+    {
+        int[] ints = new int[]{1, 2, 3, 4, 5};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerialWriter writer = new SerialWriter(out, ByteOrder.BIG_ENDIAN);
+        writer.computeChecksums(false);
+        writer.writeArray(DapType.INT32, ints, 1, 3);
+        ByteBuffer result = ByteBuffer.wrap(out.toByteArray());
+        Assert.assertEquals(12, result.remaining());
+        Assert.assertEquals(2, result.getInt());
+        Assert.assertEquals(3, result.getInt());
+        Assert.assertEquals(4, result.getInt());
+    }
+
+    @Test
+    public void testChunks()
+            throws Exception
+    {
+        String dmr = "<Dataset name=\"test\"/>";
+        byte[] data = new byte[2500];
+        for(int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkWriter cw = new ChunkWriter(out, RequestMode.DAP, ByteOrder.BIG_ENDIAN);
+        cw.setBufferSize(1000);
+        cw.writeDMR(dmr);
+        cw.write(data, 0, data.length);
+        cw.close();
+
+        // the DMR chunk comes first, then the data chunks in order
+        ByteBuffer stream = ByteBuffer.wrap(out.toByteArray());
+        int hdr = stream.getInt();
+        byte[] dmr8 = new byte[hdr & 0xFFFFFF];
+        stream.get(dmr8);
+        Assert.assertEquals(dmr + DapUtil.CRLF, new String(dmr8, DapUtil.UTF8));
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        int flags = 0;
+        while(stream.hasRemaining()) {
+            hdr = stream.getInt();
+            flags = hdr >>> 24;
+            byte[] chunk = new byte[hdr & 0xFFFFFF];
+            Assert.assertTrue(chunk.length <= 1000);
+            stream.get(chunk);
+            payload.write(chunk);
+        }
+        Assert.assertEquals(DapUtil.CHUNK_END, flags & DapUtil.CHUNK_END);
+        Assert.assertArrayEquals(data, payload.toByteArray());
+    }
+
+}
@@ -350,6 +350,15 @@ public class GribCdmIndex implements IndexReader {
       }
     }
 
+    DirectoryInventoryCache inventoryCache = DirectoryInventoryCache.getInstance();
+    if (inventoryCache != null) {
+      try {
+        inventoryCache.save();
+      } catch (IOException ioe) {
+        logger.warn("updateGribCollection {} failed to save {}", config.collectionName, inventoryCache, ioe);
+      }
+    }
+
     long took = System.currentTimeMillis() - start;
     logger.info("updateGribCollection {} changed {} took {} msecs", config.collectionName, changed, took);
     return changed;
@@ -39,6 +39,8 @@ import thredds.inventory.CollectionManager;
 import thredds.inventory.CollectionUpdateType;
 import thredds.inventory.MCollection;
 import thredds.inventory.MFile;
+import thredds.inventory.partition.DirectoryCollection;
+import thredds.inventory.partition.DirectoryInventoryCache;
 import thredds.inventory.partition.PartitionManager;
 import thredds.inventory.partition.PartitionManagerFromIndexList;
 import ucar.coord.Coordinate;
@@ -100,6 +102,9 @@ abstract class GribCollectionBuilder {
 
   private boolean needsUpdate(CollectionUpdateType ff, File collectionIndexFile) throws IOException {
     long collectionLastModified = collectionIndexFile.lastModified();
+    DirectoryCollection dc = (dcm instanceof DirectoryCollection) ? (DirectoryCollection) dcm : null;
+    DirectoryInventoryCache.Listing listing = (dc != null) ? dc.getListing() : null; // the listing that gets verified
+    if (dc != null && dc.isUpToDate(listing, collectionLastModified)) return false;  // directory unchanged since last check
     Set<String> newFileSet = new HashSet<>();
 
     CollectionManager.ChangeChecker cc = GribIndex.getChangeChecker();
@@ -129,6 +134,7 @@ abstract class GribCollectionBuilder {
         return true;              // got added - must recreate the index
     }
 
+    if (dc != null) dc.setUpToDate(listing, collectionLastModified, newFileSet);
     return false;
   }
 
@@ -194,13 +194,32 @@ public abstract class GribDataReader {
   // Coordinate based subsetting for Coverage
 
   public Array readData2(CoordsSet want, RangeIterator yRange, RangeIterator xRange) throws IOException, InvalidRangeException {
+    DataReceiverIF dataReceiver = new DataReceiver(want.getShape(yRange, xRange), yRange, xRange);
+    readData2(want, dataReceiver);
+    return dataReceiver.getArray();
+  }
+
+  /**
+   * Read the data at a list of grid points. Each record is read and decoded once, for all of the points.
+   * @param want the non-horizontal coordinates
+   * @param yindex y index of each point
+   * @param xindex x index of each point
+   * @return Array of shape [npts, want.getShape(), 1, 1]
+   */
+  public Array readData2(CoordsSet want, int[] yindex, int[] xindex) throws IOException, InvalidRangeException {
+    DataReceiverIF dataReceiver = new PointsDataReceiver(want.getShape(), yindex, xindex);
+    readData2(want, dataReceiver);
+    return dataReceiver.getArray();
+  }
+
+  private void readData2(CoordsSet want, DataReceiverIF dataReceiver) throws IOException, InvalidRangeException {
     if (vindex instanceof PartitionCollectionImmutable.VariableIndexPartitioned)
-      return readDataFromPartition2((PartitionCollectionImmutable.VariableIndexPartitioned) vindex, want, yRange, xRange);
+      readDataFromPartition2((PartitionCollectionImmutable.VariableIndexPartitioned) vindex, want, dataReceiver);
     else
-      return readDataFromCollection2(vindex, want, yRange, xRange);
+      readDataFromCollection2(vindex, want, dataReceiver);
   }
 
-  private Array readDataFromCollection2(GribCollectionImmutable.VariableIndex vindex, CoordsSet want, RangeIterator yRange, RangeIterator xRange) throws IOException, InvalidRangeException {
+  private void readDataFromCollection2(GribCollectionImmutable.VariableIndex vindex, CoordsSet want, DataReceiverIF dataReceiver) throws IOException, InvalidRangeException {
     // first time, read records and keep in memory
     vindex.readRecords();
 
@@ -216,12 +235,10 @@ public abstract class GribDataReader {
       resultIndex++;
     }
 
-    DataReceiverIF dataReceiver = new DataReceiver(want.getShape(yRange, xRange), yRange, xRange );
     read(dataReceiver);
-    return dataReceiver.getArray();
   }
 
-  private Array readDataFromPartition2(PartitionCollectionImmutable.VariableIndexPartitioned vindexP, CoordsSet want, RangeIterator yRange, RangeIterator xRange) throws IOException, InvalidRangeException {
+  private void readDataFromPartition2(PartitionCollectionImmutable.VariableIndexPartitioned vindexP, CoordsSet want, DataReceiverIF dataReceiver) throws IOException, InvalidRangeException {
 
     // collect all the records that need to be read
     int resultPos = 0;
@@ -235,10 +252,7 @@ public abstract class GribDataReader {
     }
 
     // sort by file and position, then read
-    DataReceiverIF dataReceiver = new DataReceiver(want.getShape(yRange, xRange), yRange, xRange );
     readPartitioned(dataReceiver);
-
-    return dataReceiver.getArray();
   }
 
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -430,6 +444,51 @@ public abstract class GribDataReader {
     }
   }
 
+  // extract a list of (y, x) points from each record
+  public static class PointsDataReceiver implements DataReceiverIF {
+    private Array dataArray;
+    private float[] store;
+    private int[] yindex, xindex;
+    private int recordSize;
+
+    public PointsDataReceiver(int[] shape, int[] yindex, int[] xindex) {
+      this.yindex = yindex;
+      this.xindex = xindex;
+      this.recordSize = (int) Section.computeSize(shape);
+
+      int[] resultShape = new int[shape.length + 3]; // npts, shape, 1, 1
+      resultShape[0] = yindex.length;
+      System.arraycopy(shape, 0, resultShape, 1, shape.length);
+      resultShape[shape.length + 1] = 1;
+      resultShape[shape.length + 2] = 1;
+
+      long len = (long) yindex.length * recordSize;
+      if (len > 100 * 1000 * 1000) { // LOOK make configurable
+        logger.debug("Len greater that 100M shape={}", Misc.showInts(resultShape));
+        throw new IllegalArgumentException("RequestTooLarge: Len greater that 100M ");
+      }
+      store = new float[(int) len];
+      Arrays.fill(store, Float.NaN); // prefill primitive array
+      dataArray = Array.factory(DataType.FLOAT, resultShape, store);
+    }
+
+    @Override
+    public void addData(float[] data, int resultIndex, int nx) throws IOException {
+      for (int pt = 0; pt < yindex.length; pt++)
+        store[pt * recordSize + resultIndex] = data[yindex[pt] * nx + xindex[pt]];
+    }
+
+    @Override
+    public void setDataToZero() {
+      Arrays.fill(store, 0.0f);
+    }
+
+    @Override
+    public Array getArray() {
+      return dataArray;
+    }
+  }
+
     /* public static class ChannelReceiver implements DataReceiverIF {
     private WritableByteChannel channel;
     private DataOutputStream outStream;
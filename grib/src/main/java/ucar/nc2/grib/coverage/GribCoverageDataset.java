@@ -77,6 +77,7 @@ import ucar.nc2.grib.grib2.Grib2Utils;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.units.SimpleUnit;
 import ucar.nc2.util.Optional;
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.util.Parameter;
 
@@ -1167,7 +1168,76 @@ public class GribCoverageDataset implements CoverageReader, CoordAxisReader {
       throw new InvalidRangeException(opt.getErrorMessage());
 
     CoverageCoordSys subsetCoordSys = opt.get();
-    List<CoverageCoordAxis> coordsSetAxes = new ArrayList<>(); // for CoordsSet.factory()
+    List<CoverageCoordAxis> coordsSetAxes = getCoordsSetAxes(vindex, subsetCoordSys); // for CoordsSet.factory()
+
+    /* debugging
+    boolean hasruntime = false;
+    for (CoverageCoordAxis axis : coordsSetAxes)
+      if (axis.getAxisType() == AxisType.RunTime) hasruntime = true;
+    if (!hasruntime)
+      logger.warn("HEYA no runtime " + gribCollection.getName()); */
+
+    List<CoverageCoordAxis> geoArrayAxes = new ArrayList<>(coordsSetAxes);  // for GeoReferencedArray
+    geoArrayAxes.add(subsetCoordSys.getYAxis());
+    geoArrayAxes.add(subsetCoordSys.getXAxis());
+    List<RangeIterator> yxRange = subsetCoordSys.getHorizCoordSys().getRanges(); // may be 2D
+
+    // iterator over all except x, y
+    CoordsSet coordIter = CoordsSet.factory(subsetCoordSys.isConstantForecast(), coordsSetAxes);
+
+    GribDataReader dataReader = GribDataReader.factory(gribCollection, vindex);
+    Array data = dataReader.readData2(coordIter, yxRange.get(0), yxRange.get(1));
+
+    return new GeoReferencedArray(coverage.getName(), coverage.getDataType(), data, subsetCoordSys);
+  }
+
+  @Override
+  public List<GeoReferencedArray> readData(Coverage coverage, SubsetParams params, List<? extends LatLonPoint> points) throws IOException, InvalidRangeException {
+    GribCollectionImmutable.VariableIndex vindex = (GribCollectionImmutable.VariableIndex) coverage.getUserObject();
+    CoverageCoordSys orgCoordSys = coverage.getCoordSys();
+    if (orgCoordSys.getHorizCoordSys().isLatLon2D())
+      return CoverageReader.super.readData(coverage, params, points);
+
+    ucar.nc2.util.Optional<List<CoverageCoordSys>> opt = orgCoordSys.subsetPoints(params, points, false, true);
+    if (!opt.isPresent())
+      throw new InvalidRangeException(opt.getErrorMessage());
+    List<CoverageCoordSys> pointCoordSys = opt.get();
+
+    // the (y, x) index of the points in the grid
+    List<Integer> inGrid = new ArrayList<>();
+    for (int i = 0; i < pointCoordSys.size(); i++)
+      if (pointCoordSys.get(i) != null) inGrid.add(i);
+
+    List<GeoReferencedArray> result = new ArrayList<>(points.size());
+    for (int i = 0; i < points.size(); i++) result.add(null);
+    if (inGrid.isEmpty()) return result;
+
+    int[] yindex = new int[inGrid.size()];
+    int[] xindex = new int[inGrid.size()];
+    for (int i = 0; i < inGrid.size(); i++) {
+      List<RangeIterator> yxRange = pointCoordSys.get(inGrid.get(i)).getHorizCoordSys().getRanges();
+      yindex[i] = ((Range) yxRange.get(0)).first();
+      xindex[i] = ((Range) yxRange.get(1)).first();
+    }
+
+    // the non-horizontal coordinates are the same for all the points, so one pass through the records reads them all
+    CoverageCoordSys subsetCoordSys = pointCoordSys.get(inGrid.get(0));
+    CoordsSet coordIter = CoordsSet.factory(subsetCoordSys.isConstantForecast(), getCoordsSetAxes(vindex, subsetCoordSys));
+
+    GribDataReader dataReader = GribDataReader.factory(gribCollection, vindex);
+    Array data = dataReader.readData2(coordIter, yindex, xindex);
+
+    for (int i = 0; i < inGrid.size(); i++) {
+      int ptIndex = inGrid.get(i);
+      Array ptData = data.slice(0, i).copy();
+      result.set(ptIndex, new GeoReferencedArray(coverage.getName(), coverage.getDataType(), ptData, pointCoordSys.get(ptIndex)));
+    }
+    return result;
+  }
+
+  // the non-horizontal axes, ordered by the grib coordinates, which also orders the iterator in CoordsSet
+  private List<CoverageCoordAxis> getCoordsSetAxes(GribCollectionImmutable.VariableIndex vindex, CoverageCoordSys subsetCoordSys) {
+    List<CoverageCoordAxis> coordsSetAxes = new ArrayList<>();
 
     // this orders the coords based on the grib coords, which also orders the iterator in CoordsSet. could be different i think
     for (Coordinate gribCoord : vindex.getCoordinates()) {
@@ -1207,25 +1277,7 @@ public class GribCoverageDataset implements CoverageReader, CoordAxisReader {
       }
     }
 
-    /* debugging
-    boolean hasruntime = false;
-    for (CoverageCoordAxis axis : coordsSetAxes)
-      if (axis.getAxisType() == AxisType.RunTime) hasruntime = true;
-    if (!hasruntime)
-      logger.warn("HEYA no runtime " + gribCollection.getName()); */
-
-    List<CoverageCoordAxis> geoArrayAxes = new ArrayList<>(coordsSetAxes);  // for GeoReferencedArray
-    geoArrayAxes.add(subsetCoordSys.getYAxis());
-    geoArrayAxes.add(subsetCoordSys.getXAxis());
-    List<RangeIterator> yxRange = subsetCoordSys.getHorizCoordSys().getRanges(); // may be 2D
-
-    // iterator over all except x, y
-    CoordsSet coordIter = CoordsSet.factory(subsetCoordSys.isConstantForecast(), coordsSetAxes);
-
-    GribDataReader dataReader = GribDataReader.factory(gribCollection, vindex);
-    Array data = dataReader.readData2(coordIter, yxRange.get(0), yxRange.get(1));
-
-    return new GeoReferencedArray(coverage.getName(), coverage.getDataType(), data, subsetCoordSys);
+    return coordsSetAxes;
   }
 
   // LOOK dependent axis could get added multiple times
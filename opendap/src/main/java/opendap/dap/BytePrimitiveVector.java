@@ -165,24 +165,8 @@ public class BytePrimitiveVector extends PrimitiveVector
                                          StatusUI statusUI)
             throws IOException, EOFException, DataReadException {
 
-        int modFour = vals.length % 4;
-        // number of bytes to pad
-        int pad = (modFour != 0) ? (4 - modFour) : 0;
-
-        for (int i = 0; i < vals.length; i++) {
-            vals[i] = source.readByte();
-            if (statusUI != null) {
-                statusUI.incrementByteCount(1);
-                if (statusUI.userCancelled())
-                    throw new DataReadException("User cancelled");
-            }
-        }
-        // pad out to a multiple of four bytes
-        byte unused;
-        for (int i = 0; i < pad; i++)
-            unused = source.readByte();
-        if (statusUI != null)
-            statusUI.incrementByteCount(pad);
+        // pads out to a multiple of four bytes
+        XdrArrayReader.read(source, vals, statusUI);
     }
 
     /**
@@ -195,16 +179,8 @@ public class BytePrimitiveVector extends PrimitiveVector
      *                     exception.
      */
     public void externalize(DataOutputStream sink) throws IOException {
-        int modFour = vals.length % 4;
-        // number of bytes to pad
-        int pad = (modFour != 0) ? (4 - modFour) : 0;
-
-        for (int i = 0; i < vals.length; i++) {
-            sink.writeByte(vals[i]);
-        }
-        // pad out to a multiple of four bytes
-        for (int i = 0; i < pad; i++)
-            sink.writeByte(0);
+        // writes the bytes, padded out to a multiple of four
+        XdrArrayWriter.write(sink, vals);
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 1998 - 2010. University Corporation for Atmospheric Research/Unidata
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package opendap.dap;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read arrays of XDR (big-endian) values in bulk, the inverse of XdrArrayWriter.
+ * The values are read into a reusable per-thread buffer with readFully()
+ * and converted a block at a time, instead of one DataInputStream.readXXX()
+ * call per value. The StatusUI, if any, is updated and checked once per block.
+ */
+public class XdrArrayReader {
+  static final int BUFSIZE = 64 * 1024; // bytes
+
+  static private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocate(BUFSIZE); // big-endian, as XDR
+    }
+  };
+
+  /**
+   * Read bytes, then skip the padding out to a multiple of 4.
+   */
+  static public void read(DataInputStream source, byte[] vals, StatusUI statusUI)
+          throws IOException, DataReadException {
+    int blocksize = BUFSIZE;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      source.readFully(vals, start, n);
+      progress(statusUI, n);
+    }
+    int modFour = vals.length % 4;
+    int pad = (modFour != 0) ? (4 - modFour) : 0;
+    for (int i = 0; i < pad; i++)
+      source.readByte();
+    if (statusUI != null)
+      statusUI.incrementByteCount(pad);
+  }
+
+  /**
+   * Read shorts, which are sent as 4-byte ints.
+   */
+  static public void read(DataInputStream source, short[] vals, StatusUI statusUI)
+          throws IOException, DataReadException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 4;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      fill(source, bb, n * 4);
+      for (int i = start; i < start + n; i++)
+        vals[i] = (short) bb.getInt();
+      progress(statusUI, n * 4);
+    }
+  }
+
+  static public void read(DataInputStream source, int[] vals, StatusUI statusUI)
+          throws IOException, DataReadException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 4;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      fill(source, bb, n * 4);
+      bb.asIntBuffer().get(vals, start, n);
+      progress(statusUI, n * 4);
+    }
+  }
+
+  static public void read(DataInputStream source, float[] vals, StatusUI statusUI)
+          throws IOException, DataReadException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 4;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      fill(source, bb, n * 4);
+      bb.asFloatBuffer().get(vals, start, n);
+      progress(statusUI, n * 4);
+    }
+  }
+
+  static public void read(DataInputStream source, double[] vals, StatusUI statusUI)
+          throws IOException, DataReadException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 8;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      fill(source, bb, n * 8);
+      bb.asDoubleBuffer().get(vals, start, n);
+      progress(statusUI, n * 8);
+    }
+  }
+
+  static private void fill(DataInputStream source, ByteBuffer bb, int nbytes) throws IOException {
+    bb.clear();
+    source.readFully(bb.array(), 0, nbytes);
+    bb.limit(nbytes);
+  }
+
+  static private void progress(StatusUI statusUI, int nbytes) throws DataReadException {
+    if (statusUI != null) {
+      statusUI.incrementByteCount(nbytes);
+      if (statusUI.userCancelled())
+        throw new DataReadException("User cancelled");
+    }
+  }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 1998 - 2010. University Corporation for Atmospheric Research/Unidata
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package opendap.dap;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Write arrays of primitives as XDR (big-endian) values in bulk,
+ * instead of one DataOutputStream.writeXXX() call per value.
+ * Values are converted through a reusable per-thread buffer.
+ * As in the PrimitiveVector.externalize() methods, shorts are
+ * widened to 4-byte ints and bytes are padded to a multiple of 4.
+ * Only the values are written; the caller writes any lengths.
+ */
+public class XdrArrayWriter {
+  static final int BUFSIZE = 64 * 1024; // bytes
+
+  static private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocate(BUFSIZE); // big-endian, as XDR
+    }
+  };
+
+  /**
+   * Can writeArray() handle this type?
+   *
+   * @param dt data type of the Array
+   * @return true for byte, short, int, float and double, signed or unsigned
+   */
+  static public boolean canWrite(DataType dt) {
+    switch (dt) {
+      case BYTE:
+      case UBYTE:
+      case SHORT:
+      case USHORT:
+      case INT:
+      case UINT:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Write the values of an Array in canonical order.
+   * No copy is made if the Array is already in canonical order.
+   *
+   * @param sink write to here
+   * @param data must be one of the types accepted by canWrite()
+   * @throws IOException on write error
+   */
+  static public void writeArray(DataOutputStream sink, Array data) throws IOException {
+    if (!canWrite(data.getDataType()))
+      throw new IllegalArgumentException("XdrArrayWriter cannot write " + data.getDataType());
+    writeValues(sink, data.get1DJavaArray(data.getDataType()));
+  }
+
+  /**
+   * Write a java array of primitives.
+   *
+   * @param sink   write to here
+   * @param values byte[], short[], int[], float[] or double[]
+   * @throws IOException on write error
+   */
+  static public void writeValues(DataOutputStream sink, Object values) throws IOException {
+    if (values instanceof byte[])
+      write(sink, (byte[]) values);
+    else if (values instanceof short[])
+      write(sink, (short[]) values);
+    else if (values instanceof int[])
+      write(sink, (int[]) values);
+    else if (values instanceof float[])
+      write(sink, (float[]) values);
+    else if (values instanceof double[])
+      write(sink, (double[]) values);
+    else
+      throw new IllegalArgumentException("XdrArrayWriter cannot write " + values.getClass().getName());
+  }
+
+  static public void write(DataOutputStream sink, byte[] vals) throws IOException {
+    sink.write(vals, 0, vals.length);
+    int modFour = vals.length % 4;
+    int pad = (modFour != 0) ? (4 - modFour) : 0;
+    for (int i = 0; i < pad; i++)
+      sink.writeByte(0);
+  }
+
+  static public void write(DataOutputStream sink, short[] vals) throws IOException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 4;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      bb.clear();
+      for (int i = start; i < start + n; i++)
+        bb.putInt(vals[i]); // sign extended, like Int16PrimitiveVector
+      sink.write(bb.array(), 0, n * 4);
+    }
+  }
+
+  static public void write(DataOutputStream sink, int[] vals) throws IOException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 4;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      bb.clear();
+      bb.asIntBuffer().put(vals, start, n);
+      sink.write(bb.array(), 0, n * 4);
+    }
+  }
+
+  static public void write(DataOutputStream sink, float[] vals) throws IOException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 4;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      bb.clear();
+      bb.asFloatBuffer().put(vals, start, n);
+      sink.write(bb.array(), 0, n * 4);
+    }
+  }
+
+  static public void write(DataOutputStream sink, double[] vals) throws IOException {
+    ByteBuffer bb = buffers.get();
+    int blocksize = bb.capacity() / 8;
+    for (int start = 0; start < vals.length; start += blocksize) {
+      int n = Math.min(blocksize, vals.length - start);
+      bb.clear();
+      bb.asDoubleBuffer().put(vals, start, n);
+      sink.write(bb.array(), 0, n * 8);
+    }
+  }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 1998 - 2011. University Corporation for Atmospheric Research/Unidata
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package opendap.test;
+
+import opendap.dap.DFloat32;
+import opendap.dap.DataReadException;
+import opendap.dap.Float32PrimitiveVector;
+import opendap.dap.StatusUI;
+import opendap.dap.XdrArrayReader;
+import opendap.dap.XdrArrayWriter;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.Section;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compare the bulk XDR encoding and decoding of arrays against writing and
+ * reading each value with DataOutputStream and DataInputStream.
+ */
+public class TestXdrArrays
+{
+    static protected Array makeArray(DataType dt, int n)
+    {
+        Array a = Array.factory(dt, new int[]{n});
+        for(int i = 0; i < n; i++)
+            a.setDouble(i, (i % 2 == 0 ? i : -i) * 1.25);
+        return a;
+    }
+
+    // the way the PrimitiveVector.externalize() methods used to write values
+    static protected byte[] writeEach(Array a)
+            throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream sink = new DataOutputStream(bos);
+        IndexIterator ii = a.getIndexIterator();
+        while(ii.hasNext()) {
+            switch (a.getDataType()) {
+            case BYTE:
+            case UBYTE:
+                sink.writeByte(ii.getByteNext());
+                break;
+            case SHORT:
+            case USHORT:
+                sink.writeInt((int) ii.getShortNext());
+                break;
+            case INT:
+            case UINT:
+                sink.writeInt(ii.getIntNext());
+                break;
+            case FLOAT:
+                sink.writeFloat(ii.getFloatNext());
+                break;
+            case DOUBLE:
+                sink.writeDouble(ii.getDoubleNext());
+                break;
+            }
+        }
+        while(a.getElementType() == byte.class && sink.size() % 4 != 0)
+            sink.writeByte(0);
+        return bos.toByteArray();
+    }
+
+    static protected byte[] writeBulk(Array a)
+            throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XdrArrayWriter.writeArray(new DataOutputStream(bos), a);
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testWrite()
+            throws Exception
+    {
+        DataType[] types = {DataType.BYTE, DataType.SHORT, DataType.USHORT, DataType.INT, DataType.FLOAT, DataType.DOUBLE};
+        int[] sizes = {0, 1, 5, 20003}; // 20003 doubles span several buffers
+        for(DataType dt : types) {
+            for(int n : sizes) {
+                Array a = makeArray(dt, n);
+                Assert.assertArrayEquals(dt + " " + n, writeEach(a), writeBulk(a));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteSection()
+            throws Exception
+    {
+        Array a = makeArray(DataType.FLOAT, 1000).section(new Section("3:997:7").getRanges());
+        Assert.assertArrayEquals(writeEach(a), writeBulk(a));
+    }
+
+    @Test
+    public void testCanWrite()
+    {
+        Assert.assertTrue(XdrArrayWriter.canWrite(DataType.UBYTE));
+        Assert.assertFalse(XdrArrayWriter.canWrite(DataType.LONG));
+        Assert.assertFalse(XdrArrayWriter.canWrite(DataType.STRING));
+        Assert.assertFalse(XdrArrayWriter.canWrite(DataType.STRUCTURE));
+    }
+
+    static protected DataInputStream input(Array a)
+            throws IOException
+    {
+        return new DataInputStream(new ByteArrayInputStream(writeEach(a)));
+    }
+
+    @Test
+    public void testRead()
+            throws Exception
+    {
+        int n = 20003;
+        for(int len : new int[]{0, 5, n}) {
+            Array bytes = makeArray(DataType.BYTE, len);
+            byte[] bvals = new byte[len];
+            DataInputStream source = input(bytes);
+            XdrArrayReader.read(source, bvals, null);
+            Assert.assertEquals(0, source.available()); // padding was consumed
+            Assert.assertArrayEquals((byte[]) bytes.getStorage(), bvals);
+        }
+
+        Array shorts = makeArray(DataType.SHORT, n);
+        short[] svals = new short[n];
+        XdrArrayReader.read(input(shorts), svals, null);
+        Assert.assertArrayEquals((short[]) shorts.getStorage(), svals);
+
+        Array ints = makeArray(DataType.INT, n);
+        int[] ivals = new int[n];
+        XdrArrayReader.read(input(ints), ivals, null);
+        Assert.assertArrayEquals((int[]) ints.getStorage(), ivals);
+
+        Array doubles = makeArray(DataType.DOUBLE, n);
+        double[] dvals = new double[n];
+        XdrArrayReader.read(input(doubles), dvals, null);
+        Assert.assertArrayEquals((double[]) doubles.getStorage(), dvals, 0.0);
+    }
+
+    static class CountingStatus implements StatusUI
+    {
+        long count = 0;
+        boolean cancel = false;
+
+        public void incrementByteCount(int bytes)
+        {
+            count += bytes;
+        }
+
+        public boolean userCancelled()
+        {
+            return cancel;
+        }
+
+        public void finished()
+        {
+        }
+    }
+
+    @Test
+    public void testDeserialize()
+            throws Exception
+    {
+        int n = 50000;
+        Array floats = makeArray(DataType.FLOAT, n);
+        Float32PrimitiveVector pv = new Float32PrimitiveVector(new DFloat32());
+        pv.setLength(n);
+        CountingStatus status = new CountingStatus();
+        pv.deserialize(input(floats), null, status);
+        Assert.assertArrayEquals((float[]) floats.getStorage(), (float[]) pv.getInternalStorage(), 0.0f);
+        Assert.assertEquals(4 * n, status.count);
+
+        status.cancel = true;
+        try {
+            pv.deserialize(input(floats), null, status);
+            Assert.fail("expected DataReadException");
+        } catch (DataReadException e) {
+            // expected
+        }
+    }
+
+}
@@ -35,6 +35,7 @@ package thredds.server.catalog;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.DependsOn;
@@ -107,6 +108,10 @@ public class ConfigCatalogCache implements CatalogReader {
     cache.invalidateAll();
   }
 
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
   public ConfigCatalog getFromAbsolutePath(String catalogFullPath) throws IOException {
     catalogFullPath = StringUtil2.substitute(catalogFullPath, "\\", "/"); // nasty microsnot
     if (catalogFullPath.startsWith(rootPath)) {
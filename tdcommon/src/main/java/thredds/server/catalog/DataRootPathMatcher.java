@@ -8,33 +8,39 @@ import thredds.client.catalog.Dataset;
 import thredds.server.catalog.tracker.DataRootExt;
 import thredds.server.catalog.tracker.DataRootTracker;
 import ucar.nc2.util.AliasTranslator;
-import ucar.unidata.util.StringUtil2;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Find the dataRoot path from the request, by getting the longest match.
- * Use a TreeSet for minimum in-memory use.
+ * The paths are kept in a trie whose edges are path segments, so a lookup takes time proportional to the request path,
+ * whatever the number of dataRoots. Lookups take no locks. A catalog reread builds a new DataRootPathMatcher,
+ * which replaces this one when complete.
  * Keep the objects in a seperate map that could be off-heap and persistent.
  *
  * @author caron
  * @since 4/1/2015
  */
+@ThreadSafe
 public class DataRootPathMatcher {
   static private final Logger logger = LoggerFactory.getLogger(DataRootPathMatcher.class);
   static private org.slf4j.Logger logCatalogInit = org.slf4j.LoggerFactory.getLogger("catalogInit");
-  static private final boolean debug = false;
   static private final String ERROR = "*** ERROR: ";
   static private boolean skipTestDataDir = true;
 
-  private static class PathComparator implements Comparator<String> {
-    public int compare(String s1, String s2) {
-      int compare = s2.compareTo( s1); // reverse sort
-      if (debug) System.out.println(" compare "+s1+" to "+s2+" = "+compare);
-      return compare;
+  // A node is reached by the path segments from the root. Nodes are never removed, and a new node is complete
+  // before it is added to its parent's map, so readers can walk the trie while a writer adds to it.
+  private static class Node {
+    final Map<String, Node> children = new ConcurrentHashMap<>(4);
+    volatile String path; // the dataRoot path ending here, or null
+
+    Node child(String segment) {
+      return children.get(segment);
     }
   }
 
@@ -43,8 +49,8 @@ public class DataRootPathMatcher {
   private ConfigCatalogCache ccc;
   private DataRootTracker tracker;
 
-  private final TreeSet<String> treeSet = new TreeSet<>( new PathComparator());    // this should be in-memory for speed
-  private final Map<String, DataRootExt> map = new HashMap<>();         // this could be turned into an off-heap cache if needed, with persistence.
+  private final Node root = new Node();                                         // this should be in-memory for speed
+  private final Map<String, DataRootExt> map = new ConcurrentHashMap<>();       // this could be turned into an off-heap cache if needed, with persistence.
 
   public DataRootPathMatcher(ConfigCatalogCache ccc, DataRootTracker tracker) {
     this.ccc = ccc;
@@ -59,9 +65,29 @@ public class DataRootPathMatcher {
    * Add a dataRootExt to in-memory tree.
    * @return true if not already exist
    */
-  private boolean put(DataRootExt dateRootExt) {
-    map.put(dateRootExt.getPath(), dateRootExt);
-    return treeSet.add(dateRootExt.getPath());
+  private synchronized boolean put(DataRootExt dateRootExt) {
+    String path = dateRootExt.getPath();
+    boolean isNew = (map.put(path, dateRootExt) == null);
+
+    // a trailing "/" doesnt make a new segment
+    int end = path.endsWith("/") ? path.length() - 1 : path.length();
+    Node node = root;
+    int start = 0;
+    while (start < end) {
+      int pos = path.indexOf('/', start);
+      if (pos < 0 || pos > end) pos = end;
+      String segment = path.substring(start, pos);
+      Node child = node.child(segment);
+      if (child == null) {
+        child = new Node();
+        node.children.put(segment, child);
+      }
+      node = child;
+      start = pos + 1;
+    }
+    if (node.path == null || path.length() < node.path.length()) // prefer "a" to "a/", it matches more
+      node.path = path;
+    return isNew;
   }
 
   /**
@@ -70,7 +96,7 @@ public class DataRootPathMatcher {
    * @return true if already contains the key
    */
   public boolean contains(String  path) {
-    return treeSet.contains(path);
+    return map.containsKey(path);
   }
 
   public DataRootExt get(String  path) {
@@ -86,28 +112,28 @@ public class DataRootPathMatcher {
   }
 
   /**
-   * Find the longest path match.
+   * Find the longest path match. The match must end at a "/" in reqPath, or at its end,
+   * so the dataRoot "test" matches "test/data.nc" but not "tester/data.nc".
    * @param reqPath find object with longest match where reqPath.startsWith( key)
    * @return the value whose key is the longest that matches path, or null if none
    */
   public String findLongestPathMatch( String reqPath) {
-    SortedSet<String> tail = treeSet.tailSet(reqPath);
-    if (tail.isEmpty()) return null;
-    String after = tail.first();
-    if (reqPath.startsWith( after)) // common case
-      return tail.first();
-
-    // have to check more, until no common starting chars
-    for (String key : tail) {
-      if (reqPath.startsWith(key))
-        return key;
-
-      // terminate when there's no match at all.
-      if (StringUtil2.match(reqPath, key) == 0)
-        break;
+    String result = (root.path != null && reqPath.startsWith(root.path)) ? root.path : null;
+    Node node = root;
+    int start = 0;
+    int len = reqPath.length();
+    while (start < len) {
+      int pos = reqPath.indexOf('/', start);
+      if (pos < 0) pos = len;
+      node = node.child(reqPath.substring(start, pos));
+      if (node == null) break;
+
+      String path = node.path;
+      if (path != null && (path.length() <= pos || pos < len)) // a path with a trailing "/" needs it in reqPath
+        result = path;
+      start = pos + 1;
     }
-
-    return null;
+    return result;
   }
 
   /**
@@ -137,7 +163,7 @@ public class DataRootPathMatcher {
     return dataRoot;
   }
 
-  private @Nonnull DataRoot readDataRootFromCatalog( DataRootExt dataRootExt) {
+  private synchronized @Nonnull DataRoot readDataRootFromCatalog( DataRootExt dataRootExt) {
     try {
       ConfigCatalog cat = ccc.get(dataRootExt.getCatLocation());
       extractDataRoots(dataRootExt.getCatLocation(), cat.getDatasetsLocal(), false, null);  // will create a new DataRootExt and replace this one in the map
@@ -316,7 +342,7 @@ public class DataRootPathMatcher {
     return true;
   }
 
-  private void putRoot(DataRoot droot, String catalogRelPath) {
+  private synchronized void putRoot(DataRoot droot, String catalogRelPath) {
     DataRootExt drootExt = new DataRootExt(droot, catalogRelPath);
     put(drootExt);
     tracker.trackDataRoot(drootExt);
@@ -38,7 +38,6 @@ import thredds.client.catalog.builder.AccessBuilder;
 import thredds.client.catalog.builder.CatalogBuilder;
 import thredds.client.catalog.builder.CatalogRefBuilder;
 import thredds.client.catalog.builder.DatasetBuilder;
-import thredds.filesystem.MFileOS7;
 import thredds.inventory.MFile;
 import thredds.inventory.MFileFilter;
 import thredds.inventory.filter.*;
@@ -46,16 +45,13 @@ import ucar.nc2.time.CalendarDate;
 import ucar.nc2.units.DateRange;
 import ucar.nc2.units.DateType;
 import ucar.nc2.units.TimeDuration;
-import ucar.nc2.util.CloseableIterator;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 /**
@@ -70,6 +66,7 @@ public class DatasetScan extends CatalogRef {
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DatasetScan.class);
   static private Service latestService, fileService;
   static private AllowedServicesIF allowedServices;
+  static private volatile DirectoryListingCache listingCache;
 
   static public void setSpecialServices(Service _latestService, Service _fileService) {
     if (latestService != null && !latestService.equals(_latestService)) // mocking framework sets multiple times
@@ -82,11 +79,23 @@ public class DatasetScan extends CatalogRef {
     allowedServices = _allowedServices;
   }
 
+  /**
+   * Keep directory listings in this cache; null to read the directory on every request.
+   */
+  static public void setListingCache(DirectoryListingCache _listingCache) {
+    listingCache = _listingCache;
+  }
+
+  static public DirectoryListingCache getListingCache() {
+    return listingCache;
+  }
+
   private final DatasetScanConfig config;
   private final AddTimeCoverageEnhancer addTimeCoverage;
   private final List<RegExpNamer> namers;
   private final CompositeMFileFilter fileFilters;
   private final CompositeMFileFilter dirFilters;
+  private final boolean useLastModified;  // filters on last modified time, so cached listings must have current times
 
   public DatasetScan(DatasetNode parent, String name, String xlink, Map<String, Object> flds, List<AccessBuilder> accessBuilders,
                      List<DatasetBuilder> datasetBuilders, DatasetScanConfig config) {
@@ -116,6 +125,13 @@ public class DatasetScan extends CatalogRef {
       dirFilters = null;
     }
 
+    boolean lastModFilter = config.addLatest != null && config.addLatest.lastModLimit > 0;
+    if (config.filters != null) {
+      for (DatasetScanConfig.Filter cfilter : config.filters)
+        if (cfilter.lastModLimitAttVal > 0) lastModFilter = true;
+    }
+    useLastModified = lastModFilter;
+
   }
 
   private void makeFilter(DatasetScanConfig.Filter cfilter) {
@@ -274,84 +290,31 @@ public class DatasetScan extends CatalogRef {
   ///////////////////////
   // Scan and sort
 
-  private List<MFile> getSortedFiles(Path p, final boolean isSortIncreasing) throws IOException {
-
-    // scan the directory
-    List<MFile> mfiles = new ArrayList<>();
-    try (DatasetScanMFileIterator iter = new DatasetScanMFileIterator(p)) {
-      while (iter.hasNext())
-        mfiles.add(iter.next());
-    }
-
-    // sort them
-    Collections.sort(mfiles, new Comparator<MFile>() {
-      public int compare(MFile o1, MFile o2) {
-        if (o1.isDirectory() != o2.isDirectory())
-          return o1.isDirectory() ? 1 : -1;
-
-        if (isSortIncreasing)
-          return o1.getName().compareTo(o2.getName());
-        else
-          return o2.getName().compareTo(o1.getName());
-      }
-    });
-
-    return mfiles;
-  }
-
-  private class DatasetScanMFileIterator implements CloseableIterator<MFile> {
-    DirectoryStream<Path> dirStream;
-    Iterator<Path> dirStreamIterator;
-    MFile nextMFile;
-    //long now;
-
-    DatasetScanMFileIterator(Path p) throws IOException {
-      dirStream = Files.newDirectoryStream(p);
-      dirStreamIterator = dirStream.iterator();
-      //now = System.currentTimeMillis();
-    }
-
-    public boolean hasNext() {
+  private List<MFile> getSortedFiles(Path p, boolean isSortIncreasing) throws IOException {
 
-      while (true) {
-        if (!dirStreamIterator.hasNext()) {
-          nextMFile = null;
-          return false;
-        }
-
-        try {
-          Path nextPath = dirStreamIterator.next();
-          BasicFileAttributes attr = Files.readAttributes(nextPath, BasicFileAttributes.class);
-          nextMFile = new MFileOS7(nextPath, attr);
-          if (accept(nextMFile))
-            return true;
+    // scan the directory, or use the cached listing; either way sorted by name
+    DirectoryListingCache cache = listingCache;
+    List<MFile> listing = (cache != null) ? cache.getListing(p, useLastModified) : DirectoryListingCache.scan(p);
 
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
+    // filter, with files before directories
+    List<MFile> files = new ArrayList<>();
+    List<MFile> dirs = new ArrayList<>();
+    for (MFile mfile : listing) {
+      if (mfile.isDirectory()) {
+        if (dirFilters == null || dirFilters.accept(mfile))
+          dirs.add(mfile);
+      } else {
+        if (fileFilters == null || fileFilters.accept(mfile))
+          files.add(mfile);
       }
     }
 
-    private boolean accept(MFile mfile) {
-      if (mfile.isDirectory())
-        return dirFilters == null || dirFilters.accept(mfile);
-      return fileFilters == null || fileFilters.accept(mfile);
-    }
-
-    public MFile next() {
-      if (nextMFile == null) throw new NoSuchElementException();
-      return nextMFile;
-    }
-
-    public void remove() {
-      throw new UnsupportedOperationException();
-    }
-
-    // better alternative is for caller to send in callback (Visitor pattern)
-    // then we could use the try-with-resource
-    public void close() throws IOException {
-      dirStream.close();
+    if (!isSortIncreasing) {
+      Collections.reverse(files);
+      Collections.reverse(dirs);
     }
+    files.addAll(dirs);
+    return files;
   }
 
   ////////////////////////////////////////////////
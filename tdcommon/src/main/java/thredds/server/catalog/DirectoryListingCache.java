@@ -0,0 +1,308 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.catalog;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import net.jcip.annotations.ThreadSafe;
+import thredds.filesystem.MFileOS7;
+import thredds.inventory.MFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keep the listings of directories scanned by DatasetScan, so that catalog requests do not read the directory
+ * and the attributes of every file in it each time.
+ * <p>
+ * A listing is every entry of one directory, sorted by name, before any DatasetScan filters are applied.
+ * It is dropped when the WatchService reports a change in the directory. Because not every file system delivers
+ * watch events (eg NFS), the directory's last modified time is also rechecked every recheckSecs, and a listing is
+ * never kept longer than maxAgeSecs. Memory is bounded by the total number of entries kept.
+ * <p>
+ * Writing to a file does not change its directory's last modified time, so without watch events the cached
+ * size and last modified time of a file can be stale. Callers that filter on last modified time ask for fresh
+ * times, and then directories that are not watched are read every time.
+ */
+@ThreadSafe
+public class DirectoryListingCache implements Closeable {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DirectoryListingCache.class);
+
+  private static class Listing {
+    final List<MFile> files;
+    final FileTime dirLastModified;
+    volatile long checked;
+
+    Listing(List<MFile> files, FileTime dirLastModified, long checked) {
+      this.files = files;
+      this.dirLastModified = dirLastModified;
+      this.checked = checked;
+    }
+  }
+
+  private final Cache<Path, Listing> cache;
+  private final long recheckMsecs;
+  private final WatchService watcher; // null if not available
+  private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+  private final Map<Path, WatchKey> watched = new ConcurrentHashMap<>();
+  private final Thread watchThread;
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maxFiles    maximum total number of directory entries to keep
+   * @param recheckSecs recheck the directory's last modified time if the listing is older than this
+   * @param maxAgeSecs  drop listings older than this; 0 means no limit
+   * @param useWatcher  use a WatchService to drop changed listings right away
+   */
+  public DirectoryListingCache(long maxFiles, int recheckSecs, int maxAgeSecs, boolean useWatcher) {
+    this.recheckMsecs = 1000L * recheckSecs;
+
+    CacheBuilder<Path, Listing> builder = CacheBuilder.newBuilder()
+            .maximumWeight(maxFiles)
+            .weigher(new Weigher<Path, Listing>() {
+              public int weigh(Path key, Listing value) {
+                return Math.max(1, value.files.size());
+              }
+            })
+            .removalListener((RemovalListener<Path, Listing>) notification -> unwatch(notification.getKey()))
+            .recordStats();
+    if (maxAgeSecs > 0)
+      builder.expireAfterWrite(maxAgeSecs, TimeUnit.SECONDS);
+    this.cache = builder.build();
+
+    WatchService ws = null;
+    if (useWatcher) {
+      try {
+        ws = FileSystems.getDefault().newWatchService();
+      } catch (IOException | UnsupportedOperationException e) {
+        logger.warn("DirectoryListingCache: no WatchService, will only recheck last modified times", e);
+      }
+    }
+    this.watcher = ws;
+
+    if (watcher != null) {
+      watchThread = new Thread(this::processEvents, "DirectoryListingCache");
+      watchThread.setDaemon(true);
+      watchThread.start();
+    } else {
+      watchThread = null;
+    }
+  }
+
+  /**
+   * Get the entries of a directory, sorted by name.
+   *
+   * @param dir the directory
+   * @return unmodifiable list of MFiles, shared between callers
+   * @throws IOException on read error
+   */
+  public List<MFile> getListing(final Path dir) throws IOException {
+    return getListing(dir, false);
+  }
+
+  /**
+   * Get the entries of a directory, sorted by name.
+   *
+   * @param dir        the directory
+   * @param freshTimes the file sizes and last modified times must be current, not just the names
+   * @return unmodifiable list of MFiles
+   * @throws IOException on read error
+   */
+  public List<MFile> getListing(final Path dir, boolean freshTimes) throws IOException {
+    if (freshTimes && watcher == null)
+      return scan(dir);  // only watch events report files written in place
+
+    Listing listing = cache.getIfPresent(dir);
+    if (listing != null) {
+      if (freshTimes && !watched.containsKey(dir))
+        return scan(dir);  // the cached times may be stale
+      long now = System.currentTimeMillis();
+      if (now - listing.checked < recheckMsecs)
+        return listing.files;
+      if (Files.getLastModifiedTime(dir).equals(listing.dirLastModified)) {
+        listing.checked = now;
+        return listing.files;
+      }
+      invalidate(dir);
+    }
+
+    final boolean[] loaded = new boolean[1];
+    try {
+      listing = cache.get(dir, () -> {
+        loaded[0] = true;
+        watch(dir);  // before the scan, so no change is missed
+        FileTime lastModified = Files.getLastModifiedTime(dir);
+        return new Listing(scan(dir), lastModified, System.currentTimeMillis());
+      });
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      throw new IOException(cause);
+    }
+    if (freshTimes && !loaded[0] && !watched.containsKey(dir))
+      return scan(dir);  // loaded by another thread, maybe a while ago
+    return listing.files;
+  }
+
+  /**
+   * Drop the listing of this directory, if any.
+   */
+  public void invalidate(Path dir) {
+    if (cache.getIfPresent(dir) != null) {
+      invalidations.incrementAndGet();
+      cache.invalidate(dir);
+    }
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Read the entries of a directory, sorted by name.
+   * Entries that disappear while the directory is being read are skipped.
+   *
+   * @param dir the directory
+   * @return unmodifiable list of MFiles
+   * @throws IOException on read error
+   */
+  static public List<MFile> scan(Path dir) throws IOException {
+    List<MFile> mfiles = new ArrayList<>();
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path p : dirStream) {
+        try {
+          BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
+          mfiles.add(new MFileOS7(p, attr));
+        } catch (NoSuchFileException e) {
+          // deleted since the directory was read
+        }
+      }
+    }
+    Collections.sort(mfiles, new Comparator<MFile>() {
+      public int compare(MFile o1, MFile o2) {
+        return o1.getName().compareTo(o2.getName());
+      }
+    });
+    return Collections.unmodifiableList(mfiles);
+  }
+
+  ////////////////////////////////////////////////
+  // WatchService
+
+  private void watch(Path dir) {
+    if (watcher == null || watched.containsKey(dir)) return;
+    try {
+      WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      keys.put(key, dir);
+      watched.put(dir, key);
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.debug("DirectoryListingCache: cannot watch {}: {}", dir, e.getMessage()); // rely on the recheck
+    }
+  }
+
+  // stop watching directories that are no longer in the cache, since watches are a limited resource
+  private void unwatch(Path dir) {
+    WatchKey key = watched.remove(dir);
+    if (key != null) {
+      key.cancel();
+      keys.remove(key);
+    }
+  }
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watcher.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      key.pollEvents(); // any event, including OVERFLOW, means the listing has changed
+      Path dir = keys.get(key);
+      if (dir != null)
+        invalidate(dir);
+
+      if (!key.reset() && dir != null)
+        unwatch(dir);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (watcher != null) {
+      watcher.close();
+      watchThread.interrupt();
+    }
+    cache.invalidateAll();
+  }
+
+  ////////////////////////////////////////////////
+  // metrics
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public long getNumberOfDirectories() {
+    return cache.size();
+  }
+
+  public void showCache(Formatter f) {
+    long nfiles = 0;
+    for (Listing listing : cache.asMap().values())
+      nfiles += listing.files.size();
+    f.format("DirectoryListingCache: %d directories, %d files, %d watched, %d invalidated%n  %s%n",
+            cache.size(), nfiles, watched.size(), invalidations.get(), cache.stats());
+  }
+
+}
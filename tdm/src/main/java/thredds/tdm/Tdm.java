@@ -48,7 +48,10 @@ import org.springframework.core.io.Resource;
 import thredds.featurecollection.CollectionUpdater;
 import thredds.featurecollection.FeatureCollectionConfig;
 import thredds.featurecollection.FeatureCollectionType;
+import thredds.filesystem.ControllerWatch;
 import thredds.inventory.*;
+import thredds.inventory.partition.DirectoryCollection;
+import thredds.inventory.partition.DirectoryInventoryCache;
 import thredds.util.*;
 import ucar.httpservices.*;
 import ucar.nc2.constants.CDM;
@@ -219,6 +222,21 @@ public class Tdm {
     gribCache.setAlwaysUseCache(gribIndexAlwaysUse);
     gribCache.setNeverUseCache(gribIndexNeverUse);
     GribIndexCache.setDiskCache2(gribCache);
+
+    // persistent listings of partition directories, so unchanged directories are not rescanned
+    if (reader.getBoolean("GribIndex.directoryInventory", false)) {
+      DirectoryInventoryCache inventoryCache = new DirectoryInventoryCache(new File(gribIndexDir, "directoryInventory-tdm.dat"));
+      DirectoryInventoryCache.setInstance(inventoryCache);
+      tdmLogger.info("TDM using {}", inventoryCache);
+    }
+
+    // keep partition directories current with a WatchService, and index a collection as soon as its files change
+    if (reader.getBoolean("FeatureCollection.watch", false)) {
+      int quietSecs = reader.getSeconds("FeatureCollection.watchQuiet", 10);
+      int reconcileSecs = reader.getSeconds("FeatureCollection.watchReconcile", 60 * 60);
+      DirectoryCollection.setWatch(new ControllerWatch(eventBus::post, quietSecs, reconcileSecs));
+      tdmLogger.info("TDM watching directories, quiet= {} secs reconcile= {} secs", quietSecs, reconcileSecs);
+    }
     tdmLogger.info("TDM initialized {}", gribCache);
 
     return true;
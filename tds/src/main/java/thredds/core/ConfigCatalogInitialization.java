@@ -56,6 +56,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Reads in the Config catalogs on startup, and if triggered.
@@ -111,6 +115,7 @@ public class ConfigCatalogInitialization {
   private String contextPath;      // thredds
   private String trackerDir;       // the tracker "databases" are kept in this directory
   private long maxDatasets;        // chronicle limit
+  private int nthreads = Runtime.getRuntime().availableProcessors(); // parse catalogs in parallel if > 1
 
    // on reread, construct new objects, so cant be spring beans
   private DataRootPathMatcher dataRootPathMatcher;
@@ -122,6 +127,8 @@ public class ConfigCatalogInitialization {
   private Set<String> catPathMap;          // Hash of paths, to look for duplicate catalogs
   private Map<String, String> fcNameMap;   // Hash of featureCollection ids, to look for duplicates
   private List<String> rootCatalogKeys;    // needed ??
+  private Prefetcher prefetcher;           // null if reading on one thread
+  private int countCatalogs;
 
   // track stats
   private DatasetTracker.Callback callback;
@@ -137,6 +144,13 @@ public class ConfigCatalogInitialization {
     this.maxDatasets = maxDatasets;
   }
 
+  /**
+   * Set the number of threads used to parse the config catalogs. If 1, the catalogs are read on the calling thread.
+   */
+  public synchronized void setNumberOfThreads(int nthreads) {
+    this.nthreads = Math.max(1, nthreads);
+  }
+
   // called from TdsInit on spring-managed auto-wired bean
   public synchronized void init(ReadMode readMode, PreferencesExt prefs) {
     if (readMode == null)
@@ -160,6 +174,7 @@ public class ConfigCatalogInitialization {
                     "ConfigCatalogInitialization readMode={} isStartup={}", readMode, isStartup);
     catPathMap = new HashSet<>();
     fcNameMap = new HashMap<>();
+    countCatalogs = 0;
     if (ccc != null) ccc.invalidateAll(); // remove anything in cache
     if (fcCache != null) fcCache.invalidateAll(); // remove anything in cache
 
@@ -179,29 +194,39 @@ public class ConfigCatalogInitialization {
     // going to reread global services
     allowedServices.clearGlobalServices();
 
-    switch (readMode) {
-      case always:
-        if (databaseAlreadyExists) this.datasetTracker.reinit();
-        this.catalogTracker = new CatalogTracker(trackerDir, true, numberCatalogs, nextCatId);
-        this.dataRootTracker = new DataRootTracker(trackerDir, true, callback);
-        this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);  // starting over
-        readRootCatalogs(readMode);
-        break;
-
-      case check:
-        this.catalogTracker = new CatalogTracker(trackerDir, false, numberCatalogs, nextCatId);        // use existing catalog list
-        this.dataRootTracker = new DataRootTracker(trackerDir, false, callback);      // use existing data roots
-        this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);
-        readRootCatalogs(readMode);           // read just roots to get global services
-        checkExistingCatalogs(readMode);
-        break;
-
-      case triggerOnly:
-        this.catalogTracker = new CatalogTracker(trackerDir, false, numberCatalogs, nextCatId);               // use existing catalog list
-        this.dataRootTracker = new DataRootTracker(trackerDir, false, callback);             // use existing data roots
-        this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);
-        readRootCatalogs(readMode);           // read just roots to get global services
-        break;
+    try {
+      switch (readMode) {
+        case always:
+          if (databaseAlreadyExists) this.datasetTracker.reinit();
+          this.catalogTracker = new CatalogTracker(trackerDir, true, numberCatalogs, nextCatId);
+          this.dataRootTracker = new DataRootTracker(trackerDir, true, callback);
+          this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);  // starting over
+          startPrefetch(readMode);
+          readRootCatalogs(readMode);
+          break;
+
+        case check:
+          this.catalogTracker = new CatalogTracker(trackerDir, false, numberCatalogs, nextCatId);        // use existing catalog list
+          this.dataRootTracker = new DataRootTracker(trackerDir, false, callback);      // use existing data roots
+          this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);
+          startPrefetch(readMode);
+          readRootCatalogs(readMode);           // read just roots to get global services
+          checkExistingCatalogs(readMode);
+          break;
+
+        case triggerOnly:
+          this.catalogTracker = new CatalogTracker(trackerDir, false, numberCatalogs, nextCatId);               // use existing catalog list
+          this.dataRootTracker = new DataRootTracker(trackerDir, false, callback);             // use existing data roots
+          this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);
+          readRootCatalogs(readMode);           // read just roots to get global services
+          break;
+      }
+    } finally {
+      if (prefetcher != null) {
+        logCatalogInit.info("ConfigCatalogInitializion {}", prefetcher);
+        prefetcher.shutdown();
+        prefetcher = null;
+      }
     }
 
     numberCatalogs = catalogTracker.size();
@@ -235,7 +260,7 @@ public class ConfigCatalogInitialization {
     }
 
     long took = System.currentTimeMillis() - readNow;
-    logCatalogInit.info("ConfigCatalogInitializion finished took={} msecs", took);
+    logCatalogInit.info("ConfigCatalogInitializion finished took={} msecs catalogs={} threads={}", took, countCatalogs, nthreads);
 
     // cleanup
     catPathMap = null;
@@ -252,6 +277,10 @@ public class ConfigCatalogInitialization {
     for (String location : ThreddsConfig.getRootList("catalogRoot"))
       rootCatalogKeys.add( location );
     logCatalogInit.info("ConfigCatalogInit: initializing " + rootCatalogKeys.size() + " root catalogs.");
+    if (prefetcher != null) {
+      for (String pathname : rootCatalogKeys)
+        prefetcher.submit(pathname, true);
+    }
 
     // all root catalogs are checked
     for (String pathname : rootCatalogKeys) {
@@ -266,6 +295,11 @@ public class ConfigCatalogInitialization {
   }
 
   private void checkExistingCatalogs(ReadMode readMode) {
+    if (prefetcher != null) {
+      for (CatalogExt catalogExt : catalogTracker.getCatalogs())
+        if (!catalogExt.isRoot()) prefetcher.submit(catalogExt.getCatRelLocation(), false);
+    }
+
     for (CatalogExt catalogExt : catalogTracker.getCatalogs()) {
       if (catalogExt.isRoot()) continue; // already read in
 
@@ -308,7 +342,7 @@ public class ConfigCatalogInitialization {
     // if (logCatalogInit.isDebugEnabled()) logCatalogInit.debug("initCatalog {} -> {}", path, f.getAbsolutePath());
 
     // read it
-    ConfigCatalog cat = readCatalog(catalogRelPath, catalogFile.getPath());
+    ConfigCatalog cat = getCatalog(catalogRelPath, catalogFile.getPath());
     if (cat == null) {
       logCatalogInit.error(ERROR + "initCatalog(): failed to read catalog <" + catalogFile.getPath() + ">.");
       return;
@@ -353,6 +387,17 @@ public class ConfigCatalogInitialization {
     }
   }
 
+  // take the catalog from the prefetcher if it has been parsed already
+  private ConfigCatalog getCatalog(String catalogRelPath, String catalogFullPath) {
+    Prefetcher.Parsed parsed = (prefetcher == null) ? null : prefetcher.take(catalogRelPath);
+    ConfigCatalog cat = (parsed != null) ? parsed.cat : readCatalog(catalogRelPath, catalogFullPath);
+
+    countCatalogs++;
+    if (countCatalogs % 1000 == 0)
+      logCatalogInit.info("ConfigCatalogInitializion read {} catalogs in {} secs", countCatalogs, (System.currentTimeMillis() - readNow) / 1000);
+    return cat;
+  }
+
   /**
    * Does the actual work of reading a catalog.
    *
@@ -373,8 +418,9 @@ public class ConfigCatalogInitialization {
     ConfigCatalogBuilder builder = new ConfigCatalogBuilder();
     try {
       // read the catalog
-      logCatalogInit.info("-------readCatalog(): path=" + catalogRelPath);
+      long start = System.nanoTime();
       ConfigCatalog cat = (ConfigCatalog) builder.buildFromLocation(catalogFullPath, uri);
+      logCatalogInit.info("-------readCatalog(): path={} took={} msecs", catalogRelPath, (System.nanoTime() - start) / 1000 / 1000);
       if (builder.hasFatalError()) {
         logCatalogInit.error(ERROR + "   invalid catalog -- " + builder.getErrorMessage());
         return null;
@@ -419,22 +465,12 @@ public class ConfigCatalogInitialization {
 
         // Check that catRef is relative
         if (!href.startsWith("http:")) {
-          // Clean up relative URLs that start with "./"
-          if (href.startsWith("./")) {
-            href = href.substring(2);
-          }
-
-          String path;
-          String contextPathPlus = this.contextPath + "/";
-          if (href.startsWith(contextPathPlus)) {
-            path = href.substring(contextPathPlus.length()); // absolute starting from content root
-          } else if (href.startsWith("/")) {
+          String path = getCatalogRefPath(href, dirPath);
+          if (path == null) {
             // Drop the catRef because it points to a non-TDS served catalog.
-            logCatalogInit.error(ERROR + "Skipping catalogRef <xlink:href=" + href + ">. Reference is relative to the server outside the context path [" + contextPathPlus + "]. " +
+            logCatalogInit.error(ERROR + "Skipping catalogRef <xlink:href=" + href + ">. Reference is relative to the server outside the context path [" + this.contextPath + "/]. " +
                     "Parent catalog info: Name=\"" + catref.getParentCatalog().getName() + "\"; Base URI=\"" + catref.getParentCatalog().getUriString() + "\"; dirPath=\"" + dirPath + "\".");
             continue;
-          } else {
-            path = dirPath + href;  // reletive starting from current directory
           }
 
           CatalogExt ext = catalogTracker.get(path);
@@ -449,6 +485,23 @@ public class ConfigCatalogInitialization {
     }
   }
 
+  // path of a relative catalogRef, starting from the content root; null if it points outside the context path
+  private String getCatalogRefPath(String href, String dirPath) {
+    // Clean up relative URLs that start with "./"
+    if (href.startsWith("./")) {
+      href = href.substring(2);
+    }
+
+    String contextPathPlus = this.contextPath + "/";
+    if (href.startsWith(contextPathPlus)) {
+      return href.substring(contextPathPlus.length()); // absolute starting from content root
+    } else if (href.startsWith("/")) {
+      return null;
+    } else {
+      return dirPath + href;  // reletive starting from current directory
+    }
+  }
+
   // dirPath is the directory relative to rootDir, directory is absolute
   private void readCatsInDirectory(ReadMode readMode, String dirPath, Path directory) throws IOException {
     if (exceedLimit) return;
@@ -479,6 +532,137 @@ public class ConfigCatalogInitialization {
      }
    }
 
+  ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // Parsing the catalogs is the slow part of initialization. The Prefetcher parses catalogs on a work-stealing
+  // pool, following catalogRefs and catalogScans as soon as their parent is parsed. The tree is still walked on one
+  // thread in the same order as before, taking the parsed catalogs as they are needed, so catalog ids, data roots,
+  // tracked datasets and duplicate checks come out exactly as if everything were read serially.
+
+  private void startPrefetch(ReadMode readMode) {
+    if (nthreads > 1)
+      prefetcher = new Prefetcher(readMode, nthreads);
+  }
+
+  private class Prefetcher {
+    private final ReadMode readMode;
+    private final ForkJoinPool pool;
+    private final Map<String, Long> lastRead = new HashMap<>();   // as of the start, read only
+    private final Map<String, ForkJoinTask<Parsed>> tasks = new ConcurrentHashMap<>();
+    private final ForkJoinTask<Parsed> taken = ForkJoinTask.adapt(() -> (Parsed) null); // marker, never run
+    private final AtomicInteger nparsed = new AtomicInteger();
+    private int nused;
+
+    class Parsed {
+      final ConfigCatalog cat; // null if it failed to parse
+      Parsed(ConfigCatalog cat) {
+        this.cat = cat;
+      }
+    }
+
+    Prefetcher(ReadMode readMode, int nthreads) {
+      this.readMode = readMode;
+      this.pool = new ForkJoinPool(nthreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+      for (CatalogExt catalogExt : catalogTracker.getCatalogs())
+        lastRead.put(catalogExt.getCatRelLocation(), catalogExt.getLastRead());
+    }
+
+    void submit(String catalogRelPath, boolean isRoot) {
+      String path = StringUtils.cleanPath(catalogRelPath);
+      if (tasks.containsKey(path)) return;
+      ForkJoinTask<Parsed> task = ForkJoinTask.adapt(() -> parse(path, isRoot));
+      if (tasks.putIfAbsent(path, task) != null) return;
+      if (ForkJoinTask.getPool() == pool)
+        task.fork();
+      else
+        pool.execute(task);
+    }
+
+    // return null if the catalog was not prefetched
+    Parsed take(String catalogRelPath) {
+      ForkJoinTask<Parsed> task = tasks.put(StringUtils.cleanPath(catalogRelPath), taken);
+      if (task == null || task == taken) return null;
+      try {
+        Parsed parsed = task.join();
+        if (parsed != null) nused++;
+        return parsed;
+      } catch (Throwable t) {
+        return null;
+      }
+    }
+
+    // the same checks as checkCatalogToRead, so we dont parse catalogs that wont be used
+    private Parsed parse(String catalogRelPath, boolean isRoot) {
+      File catalogFile = new File(contentRootPath, catalogRelPath);
+      if (!catalogFile.exists()) return null;
+      Long lastReadTime = lastRead.get(catalogRelPath);
+      if (!isRoot && readMode != ReadMode.always && catalogFile.lastModified() < (lastReadTime == null ? 0 : lastReadTime)) return null;
+
+      ConfigCatalog cat = readCatalog(catalogRelPath, catalogFile.getPath());
+      nparsed.incrementAndGet();
+      if (cat == null) return new Parsed(null);
+
+      int pos = catalogRelPath.lastIndexOf("/");
+      String dirPath = (pos > 0) ? catalogRelPath.substring(0, pos + 1) : "";
+      submitCatalogRefs(dirPath, cat.getDatasetsLocal());
+
+      for (CatalogScan catScan : cat.getCatalogScans()) {
+        Path relLocation = Paths.get(dirPath, catScan.getLocation());
+        Path absLocation = Paths.get(catalogFile.getParent(), catScan.getLocation());
+        try {
+          submitCatsInDirectory(relLocation.toString(), absLocation);
+        } catch (IOException | DirectoryIteratorException e) {
+          logCatalogInit.debug("Prefetcher: cant read directory {}: {}", absLocation, e.getMessage()); // reported by the serial pass
+        }
+      }
+      return new Parsed(cat);
+    }
+
+    // follows processDatasets
+    private void submitCatalogRefs(String dirPath, List<Dataset> datasets) {
+      for (Dataset ds : datasets) {
+        if ((ds instanceof DatasetScan) || (ds instanceof FeatureCollectionRef)) continue;
+        if (ds instanceof CatalogScan) continue;
+
+        if (ds instanceof CatalogRef) {
+          String href = ((CatalogRef) ds).getXlinkHref();
+          if (href.startsWith("http:")) continue;
+          String path = getCatalogRefPath(href, dirPath);
+          if (path != null) submit(path, false);
+        } else {
+          submitCatalogRefs(dirPath, ds.getDatasetsLocal());
+        }
+      }
+    }
+
+    // follows readCatsInDirectory
+    private void submitCatsInDirectory(String dirPath, Path directory) throws IOException {
+      try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*.xml")) {
+        for (Path p : ds) {
+          if (!Files.isDirectory(p)) {
+            String filename = p.getFileName().toString();
+            submit(dirPath.length() == 0 ? filename : dirPath + "/" + filename, false);
+          }
+        }
+      }
+
+      try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+        for (Path dir : ds) {
+          if (Files.isDirectory(dir))
+            submitCatsInDirectory(dirPath + "/" + dir.getFileName().toString(), dir);
+        }
+      }
+    }
+
+    void shutdown() {
+      pool.shutdownNow(); // anything still queued was not needed
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Prefetcher threads=%d parsed=%d used=%d", pool.getParallelism(), nparsed.get(), nused);
+    }
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
   public void makeDebugActions() {
@@ -17,7 +17,9 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.springframework.web.servlet.ModelAndView;
 import thredds.server.exception.RequestTooLargeException;
+import thredds.server.exception.ResponseAbortedException;
 import thredds.server.exception.ServiceNotAllowed;
+import thredds.server.exception.ServiceUnavailableException;
 import thredds.server.ncss.exception.NcssException;
 
 import javax.servlet.http.HttpServletRequest;
@@ -30,6 +32,8 @@ import java.util.List;
 /**
  * Global Exception handling
  *   ServiceNotAllowed                      FORBIDDEN
+ *   ServiceUnavailableException            SERVICE_UNAVAILABLE
+ *   ResponseAbortedException               rethrown, the container aborts the connection
  *   FileNotFoundException                  NOT_FOUND
  *   IOException                            INTERNAL_SERVER_ERROR
  *   UnsupportedOperationException          BAD_REQUEST
@@ -60,6 +64,21 @@ public class TdsErrorHandling implements HandlerExceptionResolver {
     return new ResponseEntity<>("Request Too Large: " + ex.getMessage(), responseHeaders, HttpStatus.FORBIDDEN);
   }
 
+  @ExceptionHandler(ServiceUnavailableException.class)
+  public ResponseEntity<String> handle(ServiceUnavailableException ex) {
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.TEXT_PLAIN);
+    responseHeaders.set("Retry-After", Integer.toString(ex.getRetryAfter()));
+    return new ResponseEntity<>("Service Unavailable: " + ex.getMessage(), responseHeaders, HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
+  // the response was committed when it failed: rethrow, so the servlet container aborts the connection.
+  // finishing the response normally would make a truncated body look complete
+  @ExceptionHandler(ResponseAbortedException.class)
+  public ResponseEntity<String> handle(ResponseAbortedException ex) {
+    throw ex;
+  }
+
   @ExceptionHandler(FileNotFoundException.class)
   public ResponseEntity<String> handle(FileNotFoundException ex) {
     HttpHeaders responseHeaders = new HttpHeaders();
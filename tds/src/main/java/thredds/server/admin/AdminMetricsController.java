@@ -0,0 +1,108 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.admin;
+
+import com.google.common.cache.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import thredds.server.catalog.ConfigCatalogCache;
+import thredds.server.wms.WmsTileCache;
+import thredds.servlet.RequestAdmission;
+import thredds.servlet.RequestMetrics;
+import thredds.util.ContentType;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.grib.collection.GribCdmIndex;
+import ucar.nc2.util.cache.FileCacheIF;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.util.Formatter;
+
+/**
+ * Request and cache metrics in the Prometheus text format, at /admin/metrics.
+ */
+@Controller
+@RequestMapping(value = "/admin/metrics", method = RequestMethod.GET)
+public class AdminMetricsController {
+  static private final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  @Autowired
+  private ConfigCatalogCache ccc;
+
+  @RequestMapping
+  protected ResponseEntity<String> showMetrics() {
+    Formatter f = new Formatter();
+    RequestMetrics.writePrometheus(f);
+    RequestAdmission.writePrometheus(f);
+
+    f.format("# HELP thredds_file_read_bytes_total Bytes read from files, by requests and background tasks.%n");
+    f.format("# TYPE thredds_file_read_bytes_total counter%n");
+    f.format("thredds_file_read_bytes_total %d%n", RandomAccessFile.getTotalBytesRead());
+
+    f.format("# HELP thredds_cache_hits_total Cache hits.%n");
+    f.format("# TYPE thredds_cache_hits_total counter%n");
+    writeCache(f, "thredds_cache_hits_total", "RandomAccessFile", RandomAccessFile.getGlobalFileCache(), true);
+    writeCache(f, "thredds_cache_hits_total", "NetcdfFile", NetcdfDataset.getNetcdfFileCache(), true);
+    writeCache(f, "thredds_cache_hits_total", "GribCollection", GribCdmIndex.gribCollectionCache, true);
+    CacheStats catalogStats = ccc.getStats();
+    f.format("thredds_cache_hits_total{cache=\"ConfigCatalog\"} %d%n", catalogStats.hitCount());
+    WmsTileCache tileCache = WmsTileCache.getInstance();
+    if (tileCache != null)
+      f.format("thredds_cache_hits_total{cache=\"WmsTile\"} %d%n", tileCache.getHits());
+
+    f.format("# HELP thredds_cache_misses_total Cache misses.%n");
+    f.format("# TYPE thredds_cache_misses_total counter%n");
+    writeCache(f, "thredds_cache_misses_total", "RandomAccessFile", RandomAccessFile.getGlobalFileCache(), false);
+    writeCache(f, "thredds_cache_misses_total", "NetcdfFile", NetcdfDataset.getNetcdfFileCache(), false);
+    writeCache(f, "thredds_cache_misses_total", "GribCollection", GribCdmIndex.gribCollectionCache, false);
+    f.format("thredds_cache_misses_total{cache=\"ConfigCatalog\"} %d%n", catalogStats.missCount());
+    if (tileCache != null)
+      f.format("thredds_cache_misses_total{cache=\"WmsTile\"} %d%n", tileCache.getMisses());
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.set(ContentType.HEADER, PROMETHEUS_CONTENT_TYPE);
+    return new ResponseEntity<>(f.toString(), responseHeaders, HttpStatus.OK);
+  }
+
+  private void writeCache(Formatter f, String metric, String name, FileCacheIF cache, boolean hits) {
+    if (cache == null) return;
+    long count = hits ? cache.getHits() : cache.getMisses();
+    if (count >= 0)
+      f.format("%s{cache=\"%s\"} %d%n", metric, name, count);
+  }
+
+}
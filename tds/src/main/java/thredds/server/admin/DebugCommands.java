@@ -36,6 +36,8 @@ package thredds.server.admin;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import thredds.server.catalog.DatasetScan;
+import thredds.server.catalog.DirectoryListingCache;
 import thredds.server.config.TdsContext;
 import thredds.servlet.ServletUtil;
 import ucar.nc2.dataset.NetcdfDataset;
@@ -163,6 +165,13 @@ public class DebugCommands {
           fc.showCache(f);
         }
 
+        DirectoryListingCache listingCache = DatasetScan.getListingCache();
+        if (listingCache == null) f.format("%nDirectoryListingCache : turned off%n");
+        else {
+          f.format("%n%n");
+          listingCache.showCache(f);
+        }
+
         e.pw.flush();
       }
     };
@@ -174,6 +183,8 @@ public class DebugCommands {
          RandomAccessFile.getGlobalFileCache().clearCache(false);
          FileCacheIF fc = GribCdmIndex.gribCollectionCache;
          if (fc != null) fc.clearCache(false);
+         DirectoryListingCache listingCache = DatasetScan.getListingCache();
+         if (listingCache != null) listingCache.invalidateAll();
          e.pw.println("  ClearCache ok");
        }
      };
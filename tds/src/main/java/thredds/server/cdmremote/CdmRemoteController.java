@@ -57,19 +57,25 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.springframework.web.servlet.mvc.LastModified;
 import thredds.server.config.TdsContext;
+import thredds.servlet.AsyncStreaming;
 import thredds.servlet.ServletUtil;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 
+import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
+import ucar.nc2.stream.NcStreamProto;
 import ucar.nc2.stream.NcStreamWriter;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.ParsedSectionSpec;
+import ucar.nc2.Variable;
 
 /**
  * Spring controller for CdmRemote service.
@@ -226,13 +232,13 @@ public class CdmRemoteController implements LastModified {
       System.out.printf(" path=%s%n query=%s%n", datasetPath, request.getQueryString());
     long start = System.currentTimeMillis();
 
-    try (NetcdfFile ncfile = TdsRequestedDataset.getNetcdfFile(request, response, datasetPath)) {
-      if (ncfile == null) return;
-
+    NetcdfFile ncfile = TdsRequestedDataset.getNetcdfFile(request, response, datasetPath);
+    if (ncfile == null) return;
+    boolean closeFile = true;
+    try {
       response.setContentType(ContentType.binary.getContentHeader());
       response.setHeader("Content-Description", "ncstream");
 
-      long size = 0;
       //WritableByteChannel wbc = Channels.newChannel(out);
       NcStreamWriter ncWriter = new NcStreamWriter(ncfile, ServletUtil.getRequestBase(request));
       String query;
@@ -247,22 +253,58 @@ public class CdmRemoteController implements LastModified {
       }
 
       // query = EscapeStrings.unescapeURLQuery(query);
+      List<ParsedSectionSpec> sections = new ArrayList<>();
+      long estimatedSize = 0;
       StringTokenizer stoke = new StringTokenizer(query, ";"); // need UTF/%decode
       while (stoke.hasMoreTokens()) {
         ParsedSectionSpec cer = ParsedSectionSpec.parseVariableSection(ncfile, stoke.nextToken());
-        // size += ncWriter.sendData(cer.v, cer.section, out, qb.getCompression());
-        size += ncWriter.sendData2(cer.v, cer.section, out, qb.getCompression());
-        // size += ncWriter.sendData3(cer.v, cer.section, out, qb.getCompression());
+        sections.add(cer);
+        estimatedSize += cer.section.computeSize() * cer.v.getElementSize();
       }
+
+      // large responses are written in the AsyncStreaming pool, which then closes the file
+      if (AsyncStreaming.useAsync(request, estimatedSize)) {
+        AsyncStreaming.write(request, response, absPath, asyncOut -> {
+          try {
+            sendData(ncWriter, sections, qb, asyncOut);
+          } finally {
+            ncfile.close();
+          }
+        });
+        closeFile = false;
+        return;
+      }
+
+      long size = sendData(ncWriter, sections, qb, out);
       out.flush();
 
       if (debug)
         System.out.printf("CdmRemoteController data ok, size=%s took=%d%n", size, System.currentTimeMillis() - start);
 
-    } //catch (IllegalArgumentException | InvalidRangeException e) { // ParsedSectionSpec failed
-     // response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
-    // }
+    } finally {
+      if (closeFile) ncfile.close();
+    }
+
+  }
+
+  private long sendData(NcStreamWriter ncWriter, List<ParsedSectionSpec> sections, CdmRemoteQueryBean qb, OutputStream out)
+          throws IOException, InvalidRangeException {
+    long size = 0;
+    for (ParsedSectionSpec cer : sections) {
+      // size += ncWriter.sendData(cer.v, cer.section, out, qb.getCompression());
+      if (qb.getCompression().getType() != NcStreamProto.Compress.NONE && isCompressible(cer.v))
+        size += ncWriter.sendData(cer.v, cer.section, out, qb.getCompression()); // Data message records the compression
+      else
+        size += ncWriter.sendData2(cer.v, cer.section, out, qb.getCompression(), qb.getChunk());
+      // size += ncWriter.sendData3(cer.v, cer.section, out, qb.getCompression());
+    }
+    return size;
+  }
 
+  // only fixed size primitive data is compressed
+  private boolean isCompressible(Variable v) {
+    DataType dt = v.getDataType();
+    return !v.isVariableLength() && (dt.isNumeric() || dt == DataType.CHAR || dt == DataType.BOOLEAN);
   }
 
   private String getAbsolutePath(HttpServletRequest req) {
@@ -55,6 +55,8 @@ public class CdmRemoteQueryBean {
   private String req;
   private String var;
   private int deflate = -1;
+  private boolean chunk = false; // client can read structure data sent in blocks
+  private String compress; // name of an NcStreamCodec
 
   // type of compression
   private NcStreamCompression compressType = NcStreamCompression.none(); // default
@@ -98,6 +100,26 @@ public class CdmRemoteQueryBean {
     compressType = NcStreamCompression.deflate(level);
   }
 
+  public String getCompress() {
+    return compress;
+  }
+
+  public void setCompress(String compress) {
+    this.compress = compress;
+  }
+
+  void setCompression(NcStreamCompression compressType) {
+    this.compressType = compressType;
+  }
+
+  public boolean getChunk() {
+    return chunk;
+  }
+
+  public void setChunk(boolean chunk) {
+    this.chunk = chunk;
+  }
+
   private List<String> errs;
   public void addError(String mess) {
     if (errs == null) errs = new ArrayList<>();
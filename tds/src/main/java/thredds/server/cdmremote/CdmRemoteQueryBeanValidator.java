@@ -35,6 +35,8 @@ package thredds.server.cdmremote;
 import org.springframework.validation.Errors;
 import org.springframework.validation.ValidationUtils;
 import org.springframework.validation.Validator;
+import ucar.nc2.stream.NcStreamCodec;
+import ucar.nc2.stream.NcStreamCompression;
 
 /**
  * CdmRemoteQueryBean Validator
@@ -71,6 +73,15 @@ public class CdmRemoteQueryBeanValidator implements Validator {
     int deflateLevel = bean.getDeflate();
     if (deflateLevel >= 0)
       bean.setDeflate(deflateLevel);
+
+    String compress = bean.getCompress();
+    if (compress != null) {
+      NcStreamCompression compression = NcStreamCompression.find(compress);
+      if (compression == null)
+        errors.rejectValue("compress", "compress.unknown", "unknown compression '" + compress + "', must be one of " + NcStreamCodec.getNames());
+      else
+        bean.setCompression(compression);
+    }
   }
 
 }
@@ -61,8 +61,8 @@ import ucar.nc2.Variable;
 import ucar.nc2.ft2.coverage.*;
 import ucar.nc2.ft2.coverage.remote.CdmrFeatureProto;
 import ucar.nc2.ft2.coverage.remote.CdmrfWriter;
-import ucar.nc2.iosp.IospHelper;
 import ucar.nc2.stream.NcStream;
+import ucar.nc2.stream.NcStreamCodec;
 import ucar.nc2.stream.NcStreamCompression;
 import ucar.nc2.stream.NcStreamDataCol;
 import ucar.nc2.stream.NcStreamProto;
@@ -70,7 +70,6 @@ import ucar.nc2.stream.NcStreamProto;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -78,7 +77,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.zip.DeflaterOutputStream;
 
 /**
  * Controller for CdmrFeature service.
@@ -237,6 +235,13 @@ public class CdmrGridController implements LastModified {
     if (validationResult.hasErrors())
       throw new BindException(validationResult);
 
+    String compress = request.getParameter("compress");
+    NcStreamCodec codec = (compress == null) ? null : NcStreamCodec.find(compress);
+    if (compress != null && codec == null) {
+      validationResult.reject("compress.unknown", "unknown compression '" + compress + "', must be one of " + NcStreamCodec.getNames());
+      throw new BindException(validationResult);
+    }
+
     String datasetPath = TdsPathUtils.extractPath(request, StandardService.cdmrFeatureGrid.getBase());
 
     try (CoverageCollection gridCoverageDataset = TdsRequestedDataset.getCoverageCollection(request, response, datasetPath)) {
@@ -253,7 +258,7 @@ public class CdmrGridController implements LastModified {
         GeoReferencedArray array = grid.readData(params);
         arrays.add(array);
       }
-      sendDataResponse(arrays, out, false); // LOOK deflate ??
+      sendDataResponse(arrays, out, codec);
       out.flush();
 
     } catch (Throwable t) {
@@ -264,7 +269,7 @@ public class CdmrGridController implements LastModified {
        System.out.printf(" that took %d msecs%n", System.currentTimeMillis() - start);
   }
 
-  private long sendDataResponse(List<GeoReferencedArray> arrays, OutputStream out, boolean deflate) throws IOException, InvalidRangeException {
+  private long sendDataResponse(List<GeoReferencedArray> arrays, OutputStream out, NcStreamCodec codec) throws IOException, InvalidRangeException {
 
     // turns List into a Set
     Set<CoverageCoordSys> sysSet = arrays.stream().map(GeoReferencedArray::getCoordSysForData).collect(Collectors.toSet());
@@ -279,56 +284,11 @@ public class CdmrGridController implements LastModified {
     CdmrfWriter cdmrfWriter = new CdmrfWriter();
     long size = 0;
     size += writeBytes(out, NcStream.MAGIC_DATACOV);
-    CdmrFeatureProto.CoverageDataResponse dataProto = cdmrfWriter.encodeDataResponse(axisSet, sysSet, transformSet, arrays, deflate);
+    CdmrFeatureProto.CoverageDataResponse dataProto = cdmrfWriter.encodeDataResponse(axisSet, sysSet, transformSet, arrays, codec);
     byte[] datab = dataProto.toByteArray();
     size += NcStream.writeVInt(out, datab.length); // dataProto len
     size += writeBytes(out, datab); // dataProto
 
-    /* float ratio = ((float) uncompressedLength) / deflatedSize;
-    if (showRes)
-      System.out.printf("  org/compress= %d/%d = %f%n", uncompressedLength, deflatedSize, ratio); */
-
-
-    /*
-    size += NcStream.writeVInt(out, arrays.size()); // lenn
-
-    for (GeoReferencedArray array : arrays) {
-      long dataMessageLen = sendData(array.getData(), out, deflate);
-      if (showRes) System.out.printf(" CdmrGridController.sendData grid='%s' data message len=%d%n", array.getCoverageName(), dataMessageLen);
-      size += dataMessageLen;
-    } */
-
-    return size;
-  }
-
-  private long sendData(Array data, OutputStream out, boolean deflate) throws IOException, InvalidRangeException {
-
-    // length of data uncompressed
-    long uncompressedLength = data.getSizeBytes();
-    long size = 0;
-
-
-    if (deflate) {
-      // write to an internal buffer, so we can find out the size
-      ByteArrayOutputStream bout = new ByteArrayOutputStream();
-      DeflaterOutputStream dout = new DeflaterOutputStream(bout);
-      IospHelper.copyToOutputStream(data, dout);
-
-      // write internal buffer to output stream
-      dout.close();
-      int deflatedSize = bout.size();
-      size += NcStream.writeVInt(out, deflatedSize);
-      bout.writeTo(out);
-      size += deflatedSize;
-      float ratio = ((float) uncompressedLength) / deflatedSize;
-      if (showRes)
-        System.out.printf("  org/compress= %d/%d = %f%n", uncompressedLength, deflatedSize, ratio);
-
-    } else {
-      size += NcStream.writeVInt(out, (int) uncompressedLength);
-      size += IospHelper.copyToOutputStream(data, out);
-    }
-
     return size;
   }
 
@@ -33,6 +33,8 @@
 
 package thredds.server.config;
 
+import com.google.common.eventbus.EventBus;
+import dap4.servlet.DapCache;
 import org.slf4j.Logger;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.DisposableBean;
@@ -47,13 +49,23 @@ import thredds.core.AllowedServices;
 import thredds.core.ConfigCatalogInitialization;
 import thredds.core.DatasetManager;
 import thredds.core.StandardService;
+import thredds.filesystem.ControllerWatch;
 import thredds.featurecollection.CollectionUpdater;
 import thredds.featurecollection.InvDatasetFeatureCollection;
+import thredds.inventory.MFileCollectionManager;
+import thredds.inventory.partition.DirectoryInventoryCache;
 import thredds.server.catalog.ConfigCatalogCache;
 import thredds.server.catalog.DatasetScan;
+import thredds.server.catalog.DirectoryListingCache;
 import thredds.server.ncss.controller.NcssDiskCache;
+import thredds.server.ncss.controller.NcssResponseCache;
 import thredds.server.ncss.format.FormatsAvailabilityService;
 import thredds.server.ncss.format.SupportedFormat;
+import thredds.server.wms.WmsOverviews;
+import thredds.server.wms.WmsTileCache;
+import thredds.servlet.AsyncStreaming;
+import thredds.servlet.RequestAdmission;
+import thredds.servlet.RequestMetrics;
 import thredds.util.LoggerFactorySpecial;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.dataset.NetcdfDataset;
@@ -61,6 +73,7 @@ import ucar.nc2.grib.GribIndexCache;
 import ucar.nc2.grib.collection.GribCdmIndex;
 import ucar.nc2.jni.netcdf.Nc4Iosp;
 import ucar.nc2.ncml.Aggregation;
+import ucar.nc2.stream.NcStreamWriter;
 import ucar.nc2.util.DiskCache;
 import ucar.nc2.util.DiskCache2;
 import ucar.nc2.util.cache.FileCache;
@@ -115,13 +128,21 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
   @Qualifier("fcTriggerExecutor")
   private ExecutorService executor;  // need this so we can shut it down
 
+  @Autowired
+  @Qualifier("fcTriggerEventBus")
+  private EventBus eventBus;
+
   @Autowired
   private AllowedServices allowedServices;
 
   @Autowired
   private NcssDiskCache ncssDiskCache;
 
+  @Autowired
+  private NcssResponseCache ncssResponseCache;
+
   private Timer cdmDiskCacheTimer;
+  private ControllerWatch fcWatch;
   private boolean wasInitialized;
 
   private XMLStore store;
@@ -254,13 +275,61 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     LoggerFactory fac = new LoggerFactorySpecial(maxFileSize, maxBackupIndex, level);
     InvDatasetFeatureCollection.setLoggerFactory(fac);
 
+    // feature collections: keep inventories current with a WatchService instead of rescanning; default off
+    if (ThreddsConfig.getBoolean("FeatureCollection.watch", false)) {
+      int quietSecs = ThreddsConfig.getSeconds("FeatureCollection.watchQuiet", 10);
+      int reconcileSecs = ThreddsConfig.getSeconds("FeatureCollection.watchReconcile", 60 * 60);
+      fcWatch = new ControllerWatch(eventBus::post, quietSecs, reconcileSecs);
+      MFileCollectionManager.setController(fcWatch);
+      startupLog.info("TdsInit: FeatureCollection watch quiet= {} secs reconcile= {} secs", quietSecs, reconcileSecs);
+    }
+
     allowedServices.finish(); // finish when we know everything is wired
     InvDatasetFeatureCollection.setAllowedServices(allowedServices);
     DatasetScan.setSpecialServices(allowedServices.getStandardService(StandardService.resolver),
               allowedServices.getStandardService(StandardService.httpServer));
     DatasetScan.setAllowedServices(allowedServices);
+
+    // DatasetScan directory listings: default keep 1 million entries, recheck after 15 secs, drop after 10 minutes
+    int listingMaxFiles = ThreddsConfig.getInt("DatasetScanCache.maxFiles", 1000 * 1000);
+    if (listingMaxFiles > 0) {
+      int recheckSecs = ThreddsConfig.getSeconds("DatasetScanCache.recheck", 15);
+      int maxAgeSecs = ThreddsConfig.getSeconds("DatasetScanCache.maxAge", 10 * 60);
+      boolean watch = ThreddsConfig.getBoolean("DatasetScanCache.watch", true);
+      DatasetScan.setListingCache(new DirectoryListingCache(listingMaxFiles, recheckSecs, maxAgeSecs, watch));
+      startupLog.info("TdsInit: DatasetScanCache maxFiles = " + listingMaxFiles + " recheck = " + recheckSecs + " maxAge = " + maxAgeSecs + " watch = " + watch);
+    }
     allowedServices.makeDebugActions();
 
+    // admission control: no limits unless a service has maxConcurrent or largeRequest
+    int retryAfterSecs = ThreddsConfig.getSeconds("RequestAdmission.retryAfter", 10);
+    RequestAdmission.setRetryAfter(retryAfterSecs);
+    int maxQueued = ThreddsConfig.getInt("RequestAdmission.maxQueued", 20); // waiting requests hold Tomcat threads
+    RequestAdmission.setMaxQueued(maxQueued);
+    for (RequestMetrics.Service service : RequestMetrics.getServices()) {
+      String prefix = "RequestAdmission." + service.getName() + ".";
+      int maxConcurrent = ThreddsConfig.getInt(prefix + "maxConcurrent", 0);
+      long largeRequest = ThreddsConfig.getBytes(prefix + "largeRequest", 0L);
+      if (maxConcurrent <= 0 && largeRequest <= 0) continue;
+      int maxQueue = ThreddsConfig.getInt(prefix + "maxQueue", 10);
+      int maxWaitSecs = ThreddsConfig.getSeconds(prefix + "maxWait", 30);
+      int maxLarge = ThreddsConfig.getInt(prefix + "maxLarge", 1);
+      RequestAdmission.setLimits(service.getName(), maxConcurrent, maxQueue, maxWaitSecs, largeRequest, maxLarge);
+      startupLog.info("TdsInit: RequestAdmission {} maxConcurrent = {} maxQueue = {} maxWait = {} largeRequest = {} maxLarge = {} retryAfter = {} maxQueued = {}",
+              service.getName(), maxConcurrent, maxQueue, maxWaitSecs, largeRequest, maxLarge, retryAfterSecs, maxQueued);
+    }
+
+    // async streaming of large responses: off unless threads > 0
+    int asyncThreads = ThreddsConfig.getInt("AsyncStreaming.threads", 0);
+    if (asyncThreads > 0) {
+      long asyncBufferSize = ThreddsConfig.getBytes("AsyncStreaming.bufferSize", 1000 * 1000);
+      long asyncMinSize = ThreddsConfig.getBytes("AsyncStreaming.minSize", 10 * 1000 * 1000);
+      int asyncTimeoutSecs = ThreddsConfig.getSeconds("AsyncStreaming.timeout", 30 * 60);
+      AsyncStreaming.init(asyncThreads, (int) Math.min(asyncBufferSize, Integer.MAX_VALUE), asyncMinSize, asyncTimeoutSecs);
+      startupLog.info("TdsInit: AsyncStreaming threads = {} bufferSize = {} minSize = {} timeout = {}",
+              asyncThreads, asyncBufferSize, asyncMinSize, asyncTimeoutSecs);
+    }
+
     /*
       <Netcdf4Clibrary>
         <libraryPath>/usr/local/lib</libraryPath>
@@ -344,8 +413,31 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     GribIndexCache.setDiskCache2(gribCache);
     startupLog.info("TdsInit: GribIndex=" + gribCache);
 
+    // persistent listings of partition directories, so unchanged directories are not rescanned; default off
+    if (ThreddsConfig.getBoolean("GribIndex.directoryInventory", false)) {
+      DirectoryInventoryCache inventoryCache = new DirectoryInventoryCache(new File(gribIndexDir, "directoryInventory-tds.dat"));
+      DirectoryInventoryCache.setInstance(inventoryCache);
+      startupLog.info("TdsInit: " + inventoryCache);
+    }
+
     // LOOK just create the diskCache here and send it in
     ncssDiskCache.init();
+    ncssResponseCache.init();
+
+    // WMS: default keep 50 Mbytes of rendered tiles in memory and 1 Gbyte on disk, overviews of 512 x 512
+    long tileMaxMemory = ThreddsConfig.getBytes("WMS.tileCache.maxMemory", 50L * 1000 * 1000);
+    long tileMaxSize = ThreddsConfig.getBytes("WMS.tileCache.maxSize", 1000L * 1000 * 1000);
+    if (tileMaxMemory > 0 || tileMaxSize > 0) {
+      String tileDir = ThreddsConfig.get("WMS.tileCache.dir", new File(tdsContext.getThreddsDirectory(), "/cache/wmsTiles/").getPath());
+      long tileMaxEntrySize = ThreddsConfig.getBytes("WMS.tileCache.maxEntrySize", 1000L * 1000);
+      WmsTileCache tileCache = new WmsTileCache(tileDir, tileMaxMemory, tileMaxSize, tileMaxEntrySize);
+      WmsTileCache.setInstance(tileCache);
+      startupLog.info("TdsInit: " + tileCache);
+    }
+    int overviewSize = ThreddsConfig.getInt("WMS.overview.maxSize", 512);
+    long overviewCells = ThreddsConfig.getLong("WMS.overview.maxCells", 4L * 1000 * 1000);
+    WmsOverviews.setLimits(overviewSize, overviewCells);
+    startupLog.info("TdsInit: WMS overview maxSize = " + overviewSize + " maxCells = " + overviewCells);
 
     // LOOK is this used ??
     // 4.3.16
@@ -413,6 +505,18 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       startupLog.info("TdsInit: GribCdmIndex.initDefaultCollectionCache= [" + min + "," + max + "] scour = " + secs);
     }
 
+    // DAP4 DSPs: default is keep 100 open, close after 30 minutes unused
+    max = ThreddsConfig.getInt("Dap4Cache.maxFiles", 100);
+    secs = ThreddsConfig.getSeconds("Dap4Cache.maxIdle", 30 * 60);
+    DapCache.setLimits(max, (long) 1000 * secs);
+    startupLog.info("TdsInit: DapCache maxFiles = " + max + " maxIdle = " + secs);
+
+    // cdmremote: default is send structure data in blocks of about 1 Mbyte
+    int chunkRows = ThreddsConfig.getInt("CdmRemote.chunkRows", 0);
+    long chunkSize = ThreddsConfig.getBytes("CdmRemote.chunkSize", 1000 * 1000);
+    NcStreamWriter.setStructureChunking(chunkRows, chunkSize);
+    startupLog.info("TdsInit: CdmRemote chunkRows = " + chunkRows + " chunkSize = " + chunkSize);
+
     //RandomAccessFile.enableDefaultGlobalFileCache();
     //RandomAccessFile.setDebugLeaks(true);
 
@@ -431,6 +535,9 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     }
     configCatalogInitializer.setTrackerDir(trackerDir);
     configCatalogInitializer.setMaxDatasetToTrack(trackerMax);
+    int initThreads = ThreddsConfig.getInt("ConfigCatalog.initThreads", Runtime.getRuntime().availableProcessors());
+    configCatalogInitializer.setNumberOfThreads(initThreads);
+    startupLog.info("TdsInit: ConfigCatalog initThreads = " + initThreads);
   }
 
   static private class CacheScourTask extends TimerTask {
@@ -471,6 +578,9 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     DiskCache2.exit();                // this handles background threads for all instances of DiskCache2
     thredds.inventory.bdb.MetadataManager.closeAll();
     executor.shutdownNow();
+    AsyncStreaming.shutdown();
+    if (fcWatch != null)
+      fcWatch.close();
 
     /* try {
       catalogWatcher.close();
@@ -479,11 +589,34 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       startupLog.error("catalogWatcher close failed", ioe);
     } */
 
-    // open file caches
+    // open file caches; DAP4 DSPs hold files from the NetcdfFile cache
+    try {
+      DapCache.flush();
+    } catch (Exception e) {
+      startupLog.error("TdsInit: DapCache flush failed", e);
+    }
     RandomAccessFile.shutdown();
     NetcdfDataset.shutdown();
 
     // memory caches
+    DirectoryListingCache listingCache = DatasetScan.getListingCache();
+    if (listingCache != null) {
+      try {
+        listingCache.close();
+      } catch (IOException ioe) {
+        startupLog.error("TdsInit: DirectoryListingCache close failed", ioe);
+      }
+      DatasetScan.setListingCache(null);
+    }
+    DirectoryInventoryCache inventoryCache = DirectoryInventoryCache.getInstance();
+    if (inventoryCache != null) {
+      try {
+        inventoryCache.save();
+      } catch (IOException ioe) {
+        startupLog.error("TdsInit: DirectoryInventoryCache save failed", ioe);
+      }
+      DirectoryInventoryCache.setInstance(null);
+    }
     GribCdmIndex.shutdown();
     datasetManager.setDatasetTracker(null); // closes the existing tracker
 
@@ -35,8 +35,11 @@ package thredds.server.dap4;
 
 import dap4.core.util.*;
 import dap4.cdm.CDMDSP;
+import dap4.dap4shared.DSP;
 import thredds.core.TdsRequestedDataset;
 import ucar.nc2.*;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.util.CancelTask;
 
 /**
@@ -73,7 +76,21 @@ public class ThreddsDSP extends CDMDSP
 
 
     //////////////////////////////////////////////////
+    // DSP Interface
 
+    @Override
+    public DSP open(String path, DapContext context) throws DapException
+    {
+        return new ThreddsDSP(path, context);
+    }
+
+    //////////////////////////////////////////////////
+
+    /**
+     * DSPs opened through dap4.servlet.DapCache are shared between requests,
+     * so they have no request; their file is acquired from the NetcdfFile cache
+     * and is released back to it when DapCache closes the DSP.
+     */
     @Override
     protected NetcdfFile
     createNetcdfFile(String location, CancelTask canceltask)
@@ -81,7 +98,11 @@ public class ThreddsDSP extends CDMDSP
     {
         try {
             path = DapUtil.canonicalpath(location);
-            NetcdfFile ncfile = TdsRequestedDataset.getNetcdfFile(this.request, this.response, null);
+            NetcdfFile ncfile;
+            if(this.request != null)
+                ncfile = TdsRequestedDataset.getNetcdfFile(this.request, this.response, null);
+            else
+                ncfile = NetcdfDataset.acquireFile(DatasetUrl.findDatasetUrl(location), canceltask);
 //            NetcdfFile ncfile = DatasetHandler.getNetcdfFile(this.request, this.response,location);
             return ncfile;
         } catch (Exception e) {
@@ -44,6 +44,7 @@ import thredds.core.StandardService;
 import thredds.core.TdsRequestedDataset;
 import thredds.server.config.ThreddsConfig;
 import thredds.server.exception.RequestTooLargeException;
+import thredds.server.exception.ResponseAbortedException;
 import thredds.server.exception.ServiceNotAllowed;
 import thredds.server.ncss.exception.*;
 import thredds.server.ncss.format.SupportedFormat;
@@ -51,6 +52,8 @@ import thredds.server.ncss.format.SupportedOperation;
 import thredds.server.ncss.params.NcssGridParamsBean;
 import thredds.server.ncss.view.dsg.DsgSubsetWriter;
 import thredds.server.ncss.view.dsg.DsgSubsetWriterFactory;
+import thredds.servlet.AsyncStreaming;
+import thredds.servlet.RequestAdmission;
 import thredds.util.Constants;
 import thredds.util.ContentType;
 import thredds.util.TdsPathUtils;
@@ -67,7 +70,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Formatter;
@@ -89,6 +94,9 @@ public class NcssGridController extends AbstractNcssController {
   @Autowired
   private AllowedServices allowedServices;
 
+  @Autowired
+  private NcssResponseCache ncssResponseCache;
+
   protected String getBase() {
     return StandardService.netcdfSubsetGrid.getBase();
   }
@@ -104,9 +112,18 @@ public class NcssGridController extends AbstractNcssController {
       throw new BindException(validationResult);
 
     String datasetPath = getDatasetPath(req);
-    try (CoverageCollection gcd = TdsRequestedDataset.getCoverageCollection(req, res, datasetPath)) {
-      if (gcd == null) return;
 
+    // repeated grid requests are answered from the response cache, without opening the dataset
+    String cacheKey = params.hasLatLonPoint() ? null : makeCacheKey(datasetPath, params);
+    if (cacheKey != null) {
+      if (!TdsRequestedDataset.resourceControlOk(req, res, datasetPath)) return;
+      if (sendCachedResponse(req, res, params, datasetPath, cacheKey)) return;
+    }
+
+    CoverageCollection gcd = TdsRequestedDataset.getCoverageCollection(req, res, datasetPath);
+    if (gcd == null) return;
+    boolean closeGcd = true;
+    try {
       Formatter errs = new Formatter();
       if (!params.intersectsTime(gcd.getCalendarDateRange(), errs)) {
         handleValidationErrorMessage(res, HttpServletResponse.SC_BAD_REQUEST, errs.toString());
@@ -119,17 +136,20 @@ public class NcssGridController extends AbstractNcssController {
       if (params.hasLatLonPoint()) {
         handleRequestGridAsPoint(res, params, datasetPath, gcd);
       } else {
-        handleRequestGrid(res, params, datasetPath, gcd);
+        closeGcd = !handleRequestGrid(req, res, params, datasetPath, gcd, cacheKey);
       }
+    } finally {
+      if (closeGcd) gcd.close();
     }
   }
 
-  private void handleRequestGrid(HttpServletResponse res, NcssGridParamsBean params, String datasetPath, CoverageCollection gcd)
+  // return true if the response is sent asynchronously, which then closes gcd
+  private boolean handleRequestGrid(HttpServletRequest req, HttpServletResponse res, NcssGridParamsBean params, String datasetPath, CoverageCollection gcd, String cacheKey)
           throws IOException, NcssException, ParseException, InvalidRangeException {
 
     // Supported formats are netcdf3 (default) and netcdf4 (if available)
     SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
-    NetcdfFileWriter.Version version = (sf == SupportedFormat.NETCDF3) ? NetcdfFileWriter.Version.netcdf3 : NetcdfFileWriter.Version.netcdf4;
+    NetcdfFileWriter.Version version = getVersion(sf);
 
     // all variables have to have the same vertical axis if a vertical coordinate was set. LOOK can we relax this ?
     if (params.getVertCoord() != null && !checkVarsHaveSameVertAxis(gcd, params) ) {
@@ -137,11 +157,99 @@ public class NcssGridController extends AbstractNcssController {
                 " have different vertical levels. Grid requests with vertCoord must have variables with same vertical levels.");
       }
 
-    String responseFile = getResponseFileName(datasetPath, version);
-    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
+    SubsetParams subset = params.makeSubset(gcd);
+    long estimatedSize = testFileSize(req, gcd, params, subset, version);
+
+    HttpHeaders httpHeaders = makeHttpHeaders(datasetPath, sf, cacheKey);
+
+    // netcdf3 is written directly to the response, unless it needs 64-bit offsets
+    if (version == NetcdfFileWriter.Version.netcdf3 && !CFGridCoverageWriter2.isLargeFile(estimatedSize)) {
+      setResponseHeaders(res, httpHeaders);
+
+      // large responses are written in the AsyncStreaming pool
+      if (AsyncStreaming.useAsync(req, estimatedSize)) {
+        AsyncStreaming.write(req, res, datasetPath, out -> {
+          try {
+            writeStream(gcd, params, subset, cacheKey, res, out);
+          } finally {
+            gcd.close();
+          }
+        });
+        return true;
+      }
+      try {
+        writeStream(gcd, params, subset, cacheKey, res, res.getOutputStream());
+      } catch (IOException | InvalidRangeException | RuntimeException e) {
+        String eName = e.getClass().getName(); // dont want compile time dependency on ClientAbortException
+        if (res.isCommitted() && !eName.equals("org.apache.catalina.connector.ClientAbortException"))
+          throw new ResponseAbortedException("NCSS failed while streaming " + datasetPath, e);
+        if (!res.isCommitted())
+          res.resetBuffer(); // the error handlers send the error
+        throw e;
+      }
+
+    } else {
+      String responseFile = (cacheKey == null) ? getResponseFileName(datasetPath, version) : ncssResponseCache.makeTempFile(cacheKey).getPath();
+      File netcdfResult;
+      try {
+        netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, subset, version);
+      } catch (IOException | InvalidRangeException | RuntimeException e) {
+        if (cacheKey != null) ncssResponseCache.abort(new File(responseFile));
+        throw e;
+      }
+
+      setResponseHeaders(res, httpHeaders);
+      if (AsyncStreaming.useAsync(req, netcdfResult.length())) {
+        AsyncStreaming.Source source = AsyncStreaming.fileSource(netcdfResult); // open before it is moved into the cache
+        if (cacheKey != null) ncssResponseCache.commit(cacheKey, netcdfResult);
+        AsyncStreaming.read(req, res, datasetPath, source);
+        return false;
+      }
+      try {
+        IO.copyFileB(netcdfResult, res.getOutputStream(), 60000);
+      } finally {
+        if (cacheKey != null) ncssResponseCache.commit(cacheKey, netcdfResult); // the file is complete even if the client went away
+      }
+    }
+
+    res.flushBuffer();
+    res.getOutputStream().close();
+    res.setStatus(HttpServletResponse.SC_OK);
+    return false;
+  }
+
+  // write netcdf3 to out, and keep a copy in the response cache if cacheKey is not null.
+  // the Content-Length is set, so a client can tell if the stream is cut short
+  private void writeStream(CoverageCollection gcd, NcssGridParamsBean params, SubsetParams subset, String cacheKey,
+                           HttpServletResponse res, OutputStream out) throws IOException, InvalidRangeException {
+    if (cacheKey == null) {
+      Optional<Long> sizeo = CFGridCoverageWriter2.writeStream(gcd, params.getVar(), subset, params.isAddLatLon(), out, res::setContentLengthLong);
+      if (!sizeo.isPresent())
+        throw new InvalidRangeException("Request contains no data: " + sizeo.getErrorMessage());
+      return;
+    }
+
+    File tempFile = ncssResponseCache.makeTempFile(cacheKey);
+    boolean ok = false;
+    try (OutputStream fileOut = new FileOutputStream(tempFile)) {
+      Optional<Long> sizeo = CFGridCoverageWriter2.writeStream(gcd, params.getVar(), subset, params.isAddLatLon(), new TeeOutputStream(out, fileOut),
+              res::setContentLengthLong);
+      if (!sizeo.isPresent())
+        throw new InvalidRangeException("Request contains no data: " + sizeo.getErrorMessage());
+      ok = true;
+    } finally {
+      if (ok) ncssResponseCache.commit(cacheKey, tempFile);
+      else ncssResponseCache.abort(tempFile);
+    }
+  }
+
+  private NetcdfFileWriter.Version getVersion(SupportedFormat sf) {
+    return (sf == SupportedFormat.NETCDF3) ? NetcdfFileWriter.Version.netcdf3 : NetcdfFileWriter.Version.netcdf4;
+  }
 
+  private HttpHeaders makeHttpHeaders(String datasetPath, SupportedFormat sf, String cacheKey) {
     // filename download attachment
-    String suffix = version.getSuffix();
+    String suffix = getVersion(sf).getSuffix();
     int pos = datasetPath.lastIndexOf("/");
     String filename = (pos >= 0) ? datasetPath.substring(pos + 1) : datasetPath;
     if (!filename.endsWith(suffix)) {
@@ -152,34 +260,104 @@ public class NcssGridController extends AbstractNcssController {
     HttpHeaders httpHeaders = new HttpHeaders();
     httpHeaders.set(ContentType.HEADER, sf.getMimeType());
     httpHeaders.set(Constants.Content_Disposition, Constants.setContentDispositionValue(filename));
-    setResponseHeaders(res, httpHeaders);
+    if (cacheKey != null)
+      httpHeaders.setETag(NcssResponseCache.getETag(cacheKey));
+    return httpHeaders;
+  }
+
+  ///////////////////////////////////////////////////////////////
+  // response cache
 
-    IO.copyFileB(netcdfResult, res.getOutputStream(), 60000);
+  // return null if the response should not be cached
+  private String makeCacheKey(String datasetPath, NcssGridParamsBean params) throws UnsupportedResponseFormatException {
+    if (!ncssResponseCache.isEnabled() || params.isTimeDependent())
+      return null;
+
+    SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
+    long lastModified = TdsRequestedDataset.getLastModified(datasetPath); // only for datasets that are files
+    return ncssResponseCache.makeKey(datasetPath, lastModified, sf.name(), params.toCanonicalString());
+  }
+
+  // return true if the response was sent
+  private boolean sendCachedResponse(HttpServletRequest req, HttpServletResponse res, NcssGridParamsBean params, String datasetPath,
+                                     String cacheKey) throws IOException, UnsupportedResponseFormatException {
+
+    String etag = NcssResponseCache.getETag(cacheKey);
+    if (NcssResponseCache.matches(req.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+      res.setHeader(HttpHeaders.ETAG, etag);
+      res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return true;
+    }
+
+    File cached = ncssResponseCache.get(cacheKey);
+    if (cached == null)
+      return false;
+
+    SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
+    setResponseHeaders(res, makeHttpHeaders(datasetPath, sf, cacheKey));
+    res.setContentLengthLong(cached.length());
+    IO.copyFileB(cached, res.getOutputStream(), 60000);
     res.flushBuffer();
     res.getOutputStream().close();
     res.setStatus(HttpServletResponse.SC_OK);
+    return true;
   }
 
-  File makeCFNetcdfFile(CoverageCollection gcd, String responseFilename, NcssGridParamsBean params, NetcdfFileWriter.Version version)
-          throws NcssException, InvalidRangeException, ParseException, IOException {
+  // write to two streams; used to keep a copy of a streamed response
+  private static class TeeOutputStream extends OutputStream {
+    private final OutputStream out1, out2;
 
-    NetcdfFileWriter writer = NetcdfFileWriter.createNew(version, responseFilename, null); // default chunking - let user control at some point
-    SubsetParams subset = params.makeSubset(gcd);
+    TeeOutputStream(OutputStream out1, OutputStream out2) {
+      this.out1 = out1;
+      this.out2 = out2;
+    }
 
-    // Test maxFileDownloadSize
+    @Override
+    public void write(int b) throws IOException {
+      out1.write(b);
+      out2.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out1.write(b, off, len);
+      out2.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out1.flush();
+      out2.flush();
+    }
+  }
+
+  // return the estimated size, check it against maxFileDownloadSize and admit it
+  private long testFileSize(HttpServletRequest req, CoverageCollection gcd, NcssGridParamsBean params, SubsetParams subset, NetcdfFileWriter.Version version)
+          throws InvalidRangeException, IOException {
+
+    Optional<Long> estimatedSizeo = CFGridCoverageWriter2.writeOrTestSize(gcd, params.getVar(), subset, params.isAddLatLon(), true, null);
+    if (!estimatedSizeo.isPresent())
+      throw new InvalidRangeException("Request contains no data: " + estimatedSizeo.getErrorMessage());
+
+    long estimatedSize = estimatedSizeo.get();
     long maxFileDownloadSize = ThreddsConfig.getBytes("NetcdfSubsetService.maxFileDownloadSize", -1L);
     if (maxFileDownloadSize > 0) {
-      Optional<Long> estimatedSizeo = CFGridCoverageWriter2.writeOrTestSize(gcd, params.getVar(), subset, params.isAddLatLon(), true, writer);
-      if (!estimatedSizeo.isPresent())
-        throw new InvalidRangeException("Request contains no data: " + estimatedSizeo.getErrorMessage());
-
-      long estimatedSize = estimatedSizeo.get();
+      long testSize = estimatedSize;
       if (version == NetcdfFileWriter.Version.netcdf4)
-        estimatedSize /= ESTIMATED_COMPRESION_RATE;
+        testSize /= ESTIMATED_COMPRESION_RATE;
 
-      if (estimatedSize > maxFileDownloadSize)
-        throw new RequestTooLargeException("NCSS response too large = " + estimatedSize + " max = " + maxFileDownloadSize);
+      if (testSize > maxFileDownloadSize)
+        throw new RequestTooLargeException("NCSS response too large = " + testSize + " max = " + maxFileDownloadSize);
     }
+    RequestAdmission.admitCost(req, estimatedSize);
+
+    return estimatedSize;
+  }
+
+  File makeCFNetcdfFile(CoverageCollection gcd, String responseFilename, NcssGridParamsBean params, SubsetParams subset,
+                        NetcdfFileWriter.Version version) throws InvalidRangeException, IOException {
+
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(version, responseFilename, null); // default chunking - let user control at some point
 
     // write the file
     Optional<Long> estimatedSizeo = CFGridCoverageWriter2.writeOrTestSize(gcd, params.getVar(), subset, params.isAddLatLon(), false, writer);
@@ -0,0 +1,325 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package thredds.server.ncss.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import thredds.server.config.TdsContext;
+import thredds.server.config.ThreddsConfig;
+import thredds.servlet.ServletUtil;
+import ucar.nc2.constants.CDM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache of NCSS responses, so that repeated identical requests are served from a file.
+ * The key is a hash of the dataset path, the dataset last modified time, the response format and the canonical
+ * request parameters, and is also used as the ETag of the response.
+ * Total size is bounded; least recently used responses are removed first.
+ * Off unless threddsConfig.xml sets NetcdfSubsetService.responseCache.maxSize: only the file last modified time is in
+ * the key, so a change to the NcML or the aggregation of a dataset is not seen until its file changes.
+ * <p>
+ * Entries are added by writing to a temporary file from makeTempFile(), then calling commit().
+ */
+@Component
+@DependsOn("TdsContext")
+public class NcssResponseCache {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(NcssResponseCache.class);
+  static private final String SUFFIX = ".ncss";
+  static private final String TEMP_SUFFIX = ".tmp";
+
+  @Autowired
+  private TdsContext tdsContext;
+
+  private File cacheDir;
+  private long maxSize;      // total bytes
+  private long maxEntrySize; // larger responses are not cached
+
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(100, 0.75f, true); // key -> file size, in LRU order
+  private long totalSize;
+  private final AtomicLong tempCount = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public NcssResponseCache() {
+  }
+
+  // for unit tests
+  public NcssResponseCache(String cachePath, long maxSize, long maxEntrySize) {
+    init(cachePath, maxSize, maxEntrySize);
+  }
+
+  public void init() {
+    String defaultPath = new File(tdsContext.getThreddsDirectory(), "/cache/ncssResponse/").getPath();
+    String cachePath = ThreddsConfig.get("NetcdfSubsetService.responseCache.dir", defaultPath);
+    long maxSize = ThreddsConfig.getBytes("NetcdfSubsetService.responseCache.maxSize", 0);
+    long maxEntrySize = ThreddsConfig.getBytes("NetcdfSubsetService.responseCache.maxEntrySize", maxSize / 10);
+    init(cachePath, maxSize, maxEntrySize);
+    ServletUtil.logServerStartup.info(getClass().getName() + " Ncss.ResponseCache= " + cachePath + " maxSize = " + maxSize +
+            " maxEntrySize = " + maxEntrySize + " entries = " + entries.size());
+  }
+
+  private void init(String cachePath, long maxSize, long maxEntrySize) {
+    this.maxSize = maxSize;
+    this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+    if (maxSize <= 0) return; // disabled
+
+    this.cacheDir = new File(cachePath);
+    if (!cacheDir.exists()) {
+      if (!cacheDir.mkdirs()) {
+        logger.error("Cant make cache directory " + cachePath);
+        this.maxSize = 0;
+        return;
+      }
+    }
+
+    // pick up what was left from before, oldest first; leftover temp files are from aborted responses
+    File[] files = cacheDir.listFiles();
+    if (files == null) return;
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File o1, File o2) {
+        return Long.compare(o1.lastModified(), o2.lastModified());
+      }
+    });
+    synchronized (entries) {
+      for (File f : files) {
+        String name = f.getName();
+        if (name.endsWith(SUFFIX)) {
+          long size = f.length();
+          entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+          totalSize += size;
+        } else if (name.endsWith(TEMP_SUFFIX)) {
+          delete(f);
+        }
+      }
+      evict();
+    }
+  }
+
+  public boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /**
+   * Make the cache key of a request.
+   *
+   * @param datasetPath     the dataset request path
+   * @param lastModified    last modified time of the dataset; must be > 0, else the dataset cant be cached
+   * @param format          the response format
+   * @param canonicalParams the request parameters, in canonical form
+   * @return the key, or null if this request cannot be cached
+   */
+  public String makeKey(String datasetPath, long lastModified, String format, String canonicalParams) {
+    if (!isEnabled() || lastModified <= 0 || canonicalParams == null) return null;
+    String id = datasetPath + "\n" + lastModified + "\n" + format + "\n" + canonicalParams;
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] digest = md.digest(id.getBytes(CDM.utf8Charset));
+      StringBuilder sb = new StringBuilder(2 * digest.length);
+      for (byte b : digest)
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM has SHA-256
+    }
+  }
+
+  /**
+   * The ETag of the response with this key.
+   * @param key from makeKey()
+   * @return quoted ETag value
+   */
+  public static String getETag(String key) {
+    return "\"" + key + "\"";
+  }
+
+  /**
+   * Does an If-None-Match header match this ETag?
+   *
+   * @param ifNoneMatch value of the If-None-Match request header, may be null
+   * @param etag        from getETag()
+   * @return true if the client already has this response
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) return false;
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) tag = tag.substring(2); // weak comparison is fine for a GET
+      if (tag.equals("*") || tag.equals(etag)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Find a cached response.
+   * @param key from makeKey()
+   * @return the file holding the response, or null if not in the cache
+   */
+  public File get(String key) {
+    synchronized (entries) {
+      if (entries.get(key) == null) {
+        misses.incrementAndGet();
+        return null;
+      }
+    }
+    File f = getFile(key);
+    if (!f.exists()) { // removed behind our back
+      remove(key);
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return f;
+  }
+
+  /**
+   * Make a new temporary file to write a response into. Then call commit() if successful, otherwise abort().
+   * @param key from makeKey()
+   * @return unique temporary file in the cache directory
+   */
+  public File makeTempFile(String key) {
+    return new File(cacheDir, key + "." + tempCount.incrementAndGet() + TEMP_SUFFIX);
+  }
+
+  /**
+   * Add a completed response to the cache.
+   *
+   * @param key      from makeKey()
+   * @param tempFile from makeTempFile(), it is moved into the cache or deleted.
+   * @return the cached file, or null if the response was too big to cache
+   */
+  public File commit(String key, File tempFile) {
+    long size = tempFile.length();
+    if (size > maxEntrySize) {
+      delete(tempFile);
+      return null;
+    }
+
+    File f = getFile(key);
+    synchronized (entries) {
+      try {
+        Files.move(tempFile.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        logger.warn("NcssResponseCache failed to commit " + f.getPath(), e);
+        delete(tempFile);
+        return null;
+      }
+      Long old = entries.put(key, size);
+      if (old != null) totalSize -= old;
+      totalSize += size;
+      evict();
+    }
+    return f;
+  }
+
+  /**
+   * Discard an unfinished response.
+   * @param tempFile from makeTempFile()
+   */
+  public void abort(File tempFile) {
+    delete(tempFile);
+  }
+
+  public void remove(String key) {
+    synchronized (entries) {
+      Long size = entries.remove(key);
+      if (size != null) totalSize -= size;
+    }
+    delete(getFile(key));
+  }
+
+  // must hold lock on entries
+  private void evict() {
+    List<String> removed = new ArrayList<>();
+    Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+    while (totalSize > maxSize && iter.hasNext()) {
+      Map.Entry<String, Long> entry = iter.next();
+      totalSize -= entry.getValue();
+      removed.add(entry.getKey());
+      iter.remove();
+    }
+    // LOOK on windows, a file being sent cant be deleted; it will be picked up at the next restart
+    for (String key : removed)
+      delete(getFile(key));
+  }
+
+  private File getFile(String key) {
+    return new File(cacheDir, key + SUFFIX);
+  }
+
+  private void delete(File f) {
+    if (f.exists() && !f.delete())
+      logger.warn("NcssResponseCache failed to delete " + f.getPath());
+  }
+
+  public int getNumberOfEntries() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getTotalSize() {
+    synchronized (entries) {
+      return totalSize;
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public String toString() {
+    return "NcssResponseCache{dir=" + cacheDir + ", maxSize=" + maxSize + ", entries=" + getNumberOfEntries() +
+            ", totalSize=" + getTotalSize() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+  }
+
+}
@@ -44,6 +44,8 @@ import ucar.nc2.time.CalendarDateRange;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.ProjectionRect;
 
+import java.util.Formatter;
+
 /**
  * Parameters specific to ncss grid
  *
@@ -209,6 +211,33 @@ public class NcssGridParamsBean extends NcssParamsBean {
 
   ///////////////////////////////
 
+  @Override
+  public boolean isTimeDependent() {
+    if (super.isTimeDependent()) return true;
+    if (runtime != null && runtime.equalsIgnoreCase("present")) return true;
+
+    // with no time or runtime parameters, the present time or latest runtime is used
+    return time == null && temporal == null && time_start == null && time_end == null && time_duration == null &&
+            runtime == null && timeOffset == null;
+  }
+
+  /**
+   * A string that identifies the request, for use as a cache key. Equivalent parameter values, such as "40" and "40.0",
+   * or the default strides, give the same string.
+   *
+   * @return canonical form of the parameters, not including the response format.
+   */
+  public String toCanonicalString() {
+    Formatter f = new Formatter();
+    canonicalize(f);
+    f.format("minx=%s;maxx=%s;miny=%s;maxy=%s;", minx, maxx, miny, maxy);
+    f.format("addLatLon=%s;", addLatLon);
+    f.format("horizStride=%d;timeStride=%d;", (horizStride == null) ? 1 : horizStride, (timeStride == null) ? 1 : timeStride);
+    f.format("vertCoord=%s;ensCoord=%s;", vertCoord, ensCoord);
+    f.format("runtime=%s;timeOffset=%s;", lower(runtime), lower(timeOffset));
+    return f.toString();
+  }
+
   public SubsetParams makeSubset(CoverageCollection gcd) {
     Calendar cal = gcd.getCalendar();
     boolean isFmrc = gcd.getCoverageType() == FeatureType.FMRC;
@@ -335,6 +335,39 @@ public class NcssParamsBean {
     return true;
   }
 
+  //////////////////////////////////////////////////
+  // request identity, for caching responses
+
+  /**
+   * Does the response depend on when the request is made, eg time=present ?
+   * @return true if the response should not be cached
+   */
+  public boolean isTimeDependent() {
+    return isPresentTime() || isPresent(time_start) || isPresent(time_end);
+  }
+
+  private boolean isPresent(String s) {
+    return s != null && s.equalsIgnoreCase("present");
+  }
+
+  /**
+   * Append the common request parameters in a fixed order and format, so that equivalent requests give the same string.
+   * The variable order is kept, since it is the order in the response.
+   * @param f append to this
+   */
+  protected void canonicalize(Formatter f) {
+    f.format("var=%s;", var);
+    f.format("time=%s;", isAllTimes() ? "all" : lower(time));
+    f.format("time_start=%s;time_end=%s;time_duration=%s;time_window=%s;", lower(time_start), lower(time_end),
+            time_duration, time_window);
+    f.format("north=%s;south=%s;east=%s;west=%s;", north, south, east, west);
+    f.format("latitude=%s;longitude=%s;", latitude, longitude);
+  }
+
+  protected static String lower(String s) {
+    return (s == null) ? null : s.trim().toLowerCase();
+  }
+
   public TimeDuration parseTimeDuration() throws NcssException {
     if (getTime_duration() == null) return null;
     try {
@@ -55,7 +55,6 @@ import ucar.nc2.ft2.coverage.SubsetParams;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.unidata.geoloc.LatLonPoint;
-import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.LatLonRect;
 import ucar.unidata.geoloc.Station;
 
@@ -222,7 +221,8 @@ public abstract class AbstractStationSubsetWriter extends DsgSubsetWriter {
     } else if (ncssParams.getLatLonPoint() != null) {
       Station closestStation = findClosestStation(stationFeatCol, ncssParams.getLatLonPoint());
       List<String> stnList = new ArrayList<>();
-      stnList.add(closestStation.getName());
+      if (closestStation != null)
+        stnList.add(closestStation.getName());
       wantedStations = stationFeatCol.getStationFeatures(stnList);
 
     } else { // Want all.
@@ -238,29 +238,12 @@ public abstract class AbstractStationSubsetWriter extends DsgSubsetWriter {
    *
    * @param lat latitude value
    * @param lon longitude value
-   * @return name of station closest to the specified point
+   * @return station closest to the specified point, or null if there are no stations
    * @throws IOException if read error
    */
   public static Station findClosestStation(StationTimeSeriesFeatureCollection stationFeatCol, LatLonPoint pt)
           throws IOException {
-    double lat = pt.getLatitude();
-    double lon = pt.getLongitude();
-    double cos = Math.cos(Math.toRadians(lat));
-    List<StationFeature> stations = stationFeatCol.getStationFeatures();
-    Station min_station = stations.get(0);
-    double min_dist = Double.MAX_VALUE;
-
-    for (Station s : stations) {
-      double lat1 = s.getLatitude();
-      double lon1 = LatLonPointImpl.lonNormal(s.getLongitude(), lon);
-      double dy = Math.toRadians(lat - lat1);
-      double dx = cos * Math.toRadians(lon - lon1);
-      double dist = dy * dy + dx * dx;
-      if (dist < min_dist) {
-        min_dist = dist;
-        min_station = s;
-      }
-    }
-    return min_station;
+    List<StationFeature> closest = stationFeatCol.findClosestStationFeatures(pt, 1);
+    return closest.isEmpty() ? null : closest.get(0);
   }
 }
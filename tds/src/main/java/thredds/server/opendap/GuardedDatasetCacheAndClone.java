@@ -32,23 +32,30 @@
  */
 package thredds.server.opendap;
 
-import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
 import opendap.servlet.GuardedDataset;
 import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
 
 import java.io.IOException;
 
 /**
- * This creates and caches DDS, DAS, then clones them when they are needed.
+ * This creates the DDS and DAS when they are first needed.
+ * Without a session, the dataset is used by a single request, so the DDS and DAS are handed out as is.
+ * With a session, they are kept as templates and cloned for each request,
+ * since constraint evaluation marks the projections on the DDS.
  */
-@Immutable
+@ThreadSafe
 public class GuardedDatasetCacheAndClone implements GuardedDataset {
   static protected org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(GuardedDataset.class);
 
   private final boolean hasSession;
   private final NetcdfFile org_file;
-  private final NcDDS dds;
-  private final NcDAS das;
+  private final String reqPath;
+  private NcDDS dds;          // guarded by this
+  private NcDAS das;          // guarded by this
+  private boolean ddsUsed;    // guarded by this; dds was handed out without a clone
+  private boolean dasUsed;    // guarded by this; das was handed out without a clone
 
   public void release() {
     if (!hasSession)
@@ -65,21 +72,53 @@ public class GuardedDatasetCacheAndClone implements GuardedDataset {
 
   public GuardedDatasetCacheAndClone(String reqPath, NetcdfFile ncfile, boolean hasSession) {
     this.org_file = ncfile;
-    this.dds = new NcDDS(reqPath, ncfile);
-    this.das = new NcDAS(ncfile);
+    this.reqPath = reqPath;
     this.hasSession = hasSession;
   }
 
-  public opendap.servers.ServerDDS getDDS() {
-    return (opendap.servers.ServerDDS) dds.clone();
+  public synchronized opendap.servers.ServerDDS getDDS() {
+    if (dds == null || ddsUsed) {
+      dds = new NcDDS(reqPath, org_file);
+      ddsUsed = false;
+    }
+    if (hasSession)
+      return (opendap.servers.ServerDDS) dds.clone();
+    ddsUsed = true;
+    return dds;
   }
 
-  public opendap.dap.DAS getDAS() {
-    return (opendap.dap.DAS) das.clone();
+  public synchronized opendap.dap.DAS getDAS() {
+    if (das == null || dasUsed) {
+      das = new NcDAS(org_file);
+      dasUsed = false;
+    }
+    if (hasSession)
+      return (opendap.dap.DAS) das.clone();
+    dasUsed = true;
+    return das;
+  }
+
+  /**
+   * Make a key for caching a rendered response of this dataset, see OpendapTextCache.
+   *
+   * @param kind type of response, eg "dds"
+   * @return key, or null if the dataset has no last modified time of its own and so should not be cached
+   */
+  public String getCacheKey(String kind) {
+    if (org_file instanceof NetcdfDataset) {
+      // NcML and aggregations report the last modified time of the underlying files, not of the NcML
+      NetcdfDataset ncd = (NetcdfDataset) org_file;
+      NetcdfFile ref = ncd.getReferencedFile();
+      if (ncd.getAggregation() != null || ref == null || ref.getLocation() == null || !ref.getLocation().equals(ncd.getLocation()))
+        return null;
+    }
+    long lastModified = org_file.getLastModified();
+    if (lastModified <= 0) return null;
+    return kind + ":" + lastModified + ":" + reqPath;
   }
 
   public String toString() {
     String name = org_file.getLocation();
     return name == null ? org_file.getCacheName() : name;
   }
-}
\ No newline at end of file
+}
@@ -40,7 +40,9 @@ import ucar.nc2.*;
 import opendap.servers.*;
 import opendap.dap.BaseType;
 import opendap.dap.DArrayDimension;
+import opendap.dap.NoSuchVariableException;
 import opendap.dap.PrimitiveVector;
+import opendap.dap.XdrArrayWriter;
 
 import java.io.IOException;
 import java.io.EOFException;
@@ -60,6 +62,7 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
 
   private static final boolean debug = false, debugRead = false;
   private Variable ncVar = null;
+  private Array data = null; // last data read, shares storage with the PrimitiveVector
   //ignore protected BaseType elemType;
 
   /**
@@ -161,6 +164,7 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
   }
 
   public void setData(Array data) {
+    this.data = data;
     PrimitiveVector pv = getPrimitiveVector();
     if (debugRead)
       System.out.println(" PrimitiveVector type = " + pv.getTemplate() +
@@ -202,11 +206,34 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
     setRead(true);
   }
 
+  /**
+   * Write the data read by read() directly from the netcdf Array, for numeric types.
+   * Other types are written through the PrimitiveVector.
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+          throws NoSuchVariableException, DAP2ServerSideException, IOException {
+    if (!isRead())
+      read(dataset, specialO);
+
+    if (data == null || !XdrArrayWriter.canWrite(data.getDataType())) {
+      super.serialize(dataset, sink, ce, specialO);
+      return;
+    }
+    if (ce.evalClauses(specialO))
+      writeXdr(sink, data);
+  }
+
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException {
     long tstart = System.currentTimeMillis();
 
-    setData(sdata.getArray(m));
-    externalize(sink);
+    Array memberData = sdata.getArray(m);
+    if (XdrArrayWriter.canWrite(memberData.getDataType())) {
+      writeXdr(sink, memberData);
+    } else {
+      setData(memberData);
+      externalize(sink);
+    }
 
     if (log.isDebugEnabled()) {
       long tookTime = System.currentTimeMillis() - tstart;
@@ -214,4 +241,12 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
     }
   }
 
+  // same as DVector.externalize(): XDR and DAP2 both read the length, so write it twice
+  private void writeXdr(DataOutputStream sink, Array values) throws IOException {
+    int length = (int) values.getSize();
+    sink.writeInt(length);
+    sink.writeInt(length);
+    XdrArrayWriter.writeArray(sink, values);
+  }
+
 }
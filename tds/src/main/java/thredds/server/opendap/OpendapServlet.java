@@ -38,7 +38,6 @@ import opendap.servers.*;
 import opendap.dap.parsers.ParseException;
 
 import javax.annotation.PostConstruct;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
@@ -57,6 +56,7 @@ import thredds.core.TdsRequestedDataset;
 import thredds.server.config.TdsContext;
 import thredds.server.config.ThreddsConfig;
 import thredds.server.exception.RequestTooLargeException;
+import thredds.server.exception.ServiceUnavailableException;
 import thredds.servlet.*;
 import thredds.servlet.filter.CookieFilter;
 import thredds.util.TdsPathUtils;
@@ -96,6 +96,8 @@ public class OpendapServlet extends AbstractServlet {
 
   private boolean debugSession = false;
 
+  private OpendapTextCache textCache = null; // rendered DDS and DAS responses
+
   @PostConstruct
   public void init() throws javax.servlet.ServletException {
     // super.init();
@@ -108,6 +110,11 @@ public class OpendapServlet extends AbstractServlet {
     this.odapVersionString = ThreddsConfig.get("Opendap.serverVersion", odapVersionString);
     logServerStartup.info(getClass().getName() + " version= " + odapVersionString + " ascLimit = " + ascLimit + " binLimit = " + binLimit);
 
+    long textCacheSize = ThreddsConfig.getBytes("Opendap.metadataCacheSize", 20 * 1000 * 1000);
+    if (textCacheSize > 0)
+      this.textCache = new OpendapTextCache(textCacheSize);
+    logServerStartup.info(getClass().getName() + " metadataCacheSize = " + textCacheSize);
+
     if (tdsContext != null) // LOOK not set in mock testing enviro ?
       setRootpath(tdsContext.getServletRootDirectory().getPath());
 
@@ -238,6 +245,11 @@ public class OpendapServlet extends AbstractServlet {
     } catch (RequestTooLargeException e) {
       sendErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, e.getMessage());
 
+      // 503 - too many large requests
+    } catch (ServiceUnavailableException e) {
+      response.setHeader("Retry-After", Integer.toString(e.getRetryAfter()));
+      sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+
     } catch (java.net.SocketException e) {
       log.info("SocketException: " + e.getMessage(), e);
 
@@ -277,7 +289,7 @@ public class OpendapServlet extends AbstractServlet {
       ServerDDS dds = ds.getDDS();
       CEEvaluator ce = new CEEvaluator(dds);
       ce.parseConstraint(rs);
-      checkSize(dds, true);
+      checkSize(rs, dds, true);
 
       PrintWriter pw = response.getWriter();
       dds.printConstrained(pw);
@@ -312,8 +324,17 @@ public class OpendapServlet extends AbstractServlet {
 
       OutputStream Out = new BufferedOutputStream(response.getOutputStream());
 
-      DAS myDAS = ds.getDAS();
-      myDAS.print(Out);
+      String key = getCacheKey("das", ds);
+      byte[] text = (textCache == null) ? null : textCache.get(key);
+      if (text == null) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DAS myDAS = ds.getDAS();
+        myDAS.print(bout);
+        text = bout.toByteArray();
+        if (textCache != null) textCache.put(key, text);
+      }
+      Out.write(text);
+      Out.flush();
 
     } finally { // release lock if needed
       if (ds != null) ds.release();
@@ -334,14 +355,24 @@ public class OpendapServlet extends AbstractServlet {
       response.setHeader("Content-Description", "dods-dds");
 
       OutputStream out = new BufferedOutputStream(response.getOutputStream());
-      ServerDDS myDDS = ds.getDDS();
 
       if (rs.getConstraintExpression().equals("")) { // No Constraint Expression?
         // Send the whole DDS
-        myDDS.print(out);
+        String key = getCacheKey("dds", ds);
+        byte[] text = (textCache == null) ? null : textCache.get(key);
+        if (text == null) {
+          ByteArrayOutputStream bout = new ByteArrayOutputStream();
+          ServerDDS myDDS = ds.getDDS();
+          myDDS.print(bout);
+          text = bout.toByteArray();
+          if (textCache != null) textCache.put(key, text);
+        }
+        out.write(text);
         out.flush();
 
       } else { // Otherwise, send the constrained DDS
+        ServerDDS myDDS = ds.getDDS();
+
         // Instantiate the CEEvaluator and parse the constraint expression
         CEEvaluator ce = new CEEvaluator(myDDS);
         ce.parseConstraint(rs);
@@ -397,48 +428,7 @@ public class OpendapServlet extends AbstractServlet {
   }
 
   public void doGetBLOB(ReqState rs) throws Exception {
-    HttpServletResponse response = rs.getResponse();
-
-    GuardedDataset ds = null;
-    try {
-      ds = getDataset(rs);
-      if (null == ds) return;
-
-      response.setContentType("application/octet-stream");
-      response.setHeader("XDODS-Server", getServerVersion());
-      response.setHeader("Content-Description", "dods-blob");
-
-      ServletOutputStream sOut = response.getOutputStream();
-      OutputStream bOut;
-      DeflaterOutputStream dOut = null;
-      if (rs.getAcceptsCompressed() && allowDeflate) {
-        response.setHeader("Content-Encoding", "deflate");
-        dOut = new DeflaterOutputStream(sOut);
-        bOut = new BufferedOutputStream(dOut);
-      } else {
-        bOut = new BufferedOutputStream(sOut);
-      }
-
-      ServerDDS myDDS = ds.getDDS();
-      CEEvaluator ce = new CEEvaluator(myDDS);
-      ce.parseConstraint(rs);
-      checkSize(myDDS, false);
-
-      // Send the binary data back to the client
-      DataOutputStream sink = new DataOutputStream(bOut);
-      ce.send(myDDS.getEncodedName(), sink, ds);
-      sink.flush();
-
-      // Finish up sending the compressed stuff, but don't
-      // close the stream (who knows what the Servlet may expect!)
-      if (null != dOut)
-        dOut.finish();
-      bOut.flush();
-
-    } finally {  // release lock if needed
-      if (ds != null) ds.release();
-    }
-
+    doGetBinary(rs, "dods-blob", false);
   }
 
   private void doClose(ReqState rs) throws Exception {
@@ -461,6 +451,12 @@ public class OpendapServlet extends AbstractServlet {
   }
 
   public void doGetDAP2Data(ReqState rs) throws Exception {
+    doGetBinary(rs, "dods-data", true);
+  }
+
+  // the data, with the constrained DDS in front if sendDDS
+  private void doGetBinary(ReqState rs, String description, boolean sendDDS) throws Exception {
+    HttpServletRequest request = rs.getRequest();
     HttpServletResponse response = rs.getResponse();
 
     GuardedDataset ds = null;
@@ -470,25 +466,50 @@ public class OpendapServlet extends AbstractServlet {
 
       response.setContentType("application/octet-stream");
       response.setHeader("XDODS-Server", getServerVersion());
-      response.setHeader("Content-Description", "dods-data");
+      response.setHeader("Content-Description", description);
+
+      ServerDDS myDDS = ds.getDDS();
+      CEEvaluator ce = new CEEvaluator(myDDS);
+      ce.parseConstraint(rs);
+      long size = checkSize(rs, myDDS, false);
 
-      ServletOutputStream sOut = response.getOutputStream();
-      OutputStream bOut;
-      DeflaterOutputStream dOut = null;
-      if (rs.getAcceptsCompressed() && allowDeflate) {
+      boolean deflate = rs.getAcceptsCompressed() && allowDeflate;
+      if (deflate)
         response.setHeader("Content-Encoding", "deflate");
-        dOut = new DeflaterOutputStream(sOut);
-        bOut = new BufferedOutputStream(dOut);
 
-      } else {
-        bOut = new BufferedOutputStream(sOut);
+      // large responses are written in the AsyncStreaming pool, which then releases the dataset
+      if (AsyncStreaming.useAsync(request, size)) {
+        GuardedDataset asyncDs = ds;
+        AsyncStreaming.write(request, response, rs.toString(), out -> {
+          try {
+            sendBinary(out, myDDS, ce, asyncDs, deflate, sendDDS);
+          } finally {
+            asyncDs.release();
+          }
+        });
+        ds = null;
+        return;
       }
 
-      ServerDDS myDDS = ds.getDDS();
-      CEEvaluator ce = new CEEvaluator(myDDS);
-      ce.parseConstraint(rs);
-      checkSize(myDDS, false);
+      sendBinary(response.getOutputStream(), myDDS, ce, ds, deflate, sendDDS);
+
+    } finally {  // release lock if needed
+      if (ds != null) ds.release();
+    }
+  }
+
+  private void sendBinary(OutputStream sOut, ServerDDS myDDS, CEEvaluator ce, GuardedDataset ds, boolean deflate, boolean sendDDS)
+          throws Exception {
+    OutputStream bOut;
+    DeflaterOutputStream dOut = null;
+    if (deflate) {
+      dOut = new DeflaterOutputStream(sOut);
+      bOut = new BufferedOutputStream(dOut);
+    } else {
+      bOut = new BufferedOutputStream(sOut);
+    }
 
+    if (sendDDS) {
       // Send the constrained DDS back to the client
       PrintWriter pw = new PrintWriter(new OutputStreamWriter(bOut, CDM.utf8Charset));
       myDDS.printConstrained(pw);
@@ -497,21 +518,18 @@ public class OpendapServlet extends AbstractServlet {
       pw.flush();
       bOut.write("\nData:\n".getBytes(CDM.utf8Charset));
       bOut.flush();
+    }
 
-      // Send the binary data back to the client
-      DataOutputStream sink = new DataOutputStream(bOut);
-      ce.send(myDDS.getEncodedName(), sink, ds);
-      sink.flush();
+    // Send the binary data back to the client
+    DataOutputStream sink = new DataOutputStream(bOut);
+    ce.send(myDDS.getEncodedName(), sink, ds);
+    sink.flush();
 
-      // Finish up sending the compressed stuff, but don't
-      // close the stream (who knows what the Servlet may expect!)
-      if (null != dOut)
-        dOut.finish();
-      bOut.flush();
-
-    } finally {  // release lock if needed
-      if (ds != null) ds.release();
-    }
+    // Finish up sending the compressed stuff, but don't
+    // close the stream (who knows what the Servlet may expect!)
+    if (null != dOut)
+      dOut.finish();
+    bOut.flush();
   }
 
   public void doGetVER(ReqState rs) throws Exception {
@@ -744,8 +762,9 @@ public class OpendapServlet extends AbstractServlet {
     return rs;
   }
 
-  private void
-  checkSize(ServerDDS dds, boolean isAscii)
+  // return the size of the response
+  private long
+  checkSize(ReqState rs, ServerDDS dds, boolean isAscii)
           throws Exception {
     long size = computeSize(dds, isAscii);
     //System.err.printf("total (constrained) size=%s\n", size);
@@ -756,6 +775,8 @@ public class OpendapServlet extends AbstractServlet {
       log.info("Reject request size = {} Mbytes", dsize);
       throw new RequestTooLargeException(dsize + " Mbytes, max=" + maxSize);
     }
+    RequestAdmission.admitCost(rs.getRequest(), size);
+    return size;
   }
 
   private static final boolean debugSize = false;
@@ -862,6 +883,12 @@ public class OpendapServlet extends AbstractServlet {
    * *********************** dataset caching ***********************************************
    */
 
+  // key for the rendered response cache, or null if this dataset's responses can't be cached
+  private String getCacheKey(String kind, GuardedDataset ds) {
+    if (!(ds instanceof GuardedDatasetCacheAndClone)) return null;
+    return ((GuardedDatasetCacheAndClone) ds).getCacheKey(kind);
+  }
+
   // any time the server needs access to the dataset, it gets a "GuardedDataset" which allows us to add caching
   // optionally, a session may be established, which allows us to reserve the dataset for that session.
   protected GuardedDataset getDataset(ReqState preq) throws Exception {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package thredds.server.opendap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Cache the rendered text of unconstrained DDS and DAS responses, so that
+ * repeated metadata requests don't rebuild the NcDDS / NcDAS trees.
+ * Keys come from GuardedDatasetCacheAndClone.getCacheKey(), which includes
+ * the dataset's last modified time, so a changed dataset gets a new key
+ * and the stale text is eventually evicted.
+ */
+public class OpendapTextCache {
+  private final Cache<String, byte[]> cache;
+
+  /**
+   * @param maxBytes total size of the cached responses
+   */
+  public OpendapTextCache(long maxBytes) {
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher(new Weigher<String, byte[]>() {
+              public int weigh(String key, byte[] value) {
+                return key.length() + value.length;
+              }
+            })
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * @param key from GuardedDatasetCacheAndClone.getCacheKey(); may be null
+   * @return the cached response, or null
+   */
+  public byte[] get(String key) {
+    return (key == null) ? null : cache.getIfPresent(key);
+  }
+
+  /**
+   * @param key   from GuardedDatasetCacheAndClone.getCacheKey(); if null, nothing is cached
+   * @param value the complete response
+   */
+  public void put(String key, byte[] value) {
+    if (key != null)
+      cache.put(key, value);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+}
@@ -42,6 +42,7 @@ import uk.ac.rdg.resc.edal.dataset.cdm.CdmGridDatasetFactory;
 import uk.ac.rdg.resc.edal.domain.Extent;
 import uk.ac.rdg.resc.edal.exceptions.EdalException;
 import uk.ac.rdg.resc.edal.feature.DiscreteFeature;
+import uk.ac.rdg.resc.edal.feature.MapFeature;
 import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
 import uk.ac.rdg.resc.edal.graphics.style.util.*;
 import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
@@ -61,13 +62,9 @@ import uk.ac.rdg.resc.edal.wms.util.ServerInfo;
  * This {@link WmsCatalogue} provides access to a SINGLE dataset. As such, each
  * different dataset requested will have a new instance of this class.
  * 
- * NB - No caching is implemented in this {@link WmsCatalogue}. I would
- * recommend a cache which is shared amongst all {@link WmsCatalogue}s, passed
- * in on object construction, and which performs the caching/retrieval in the
- * {@link WmsCatalogue#getFeaturesForLayer(String, PlottingDomainParams)}
- * method. The cache keys will be a pair of the layerName and the
- * {@link PlottingDomainParams}, and the cached values will be
- * {@link Collection}s of {@link DiscreteFeature}s.
+ * Zoomed out map features are sampled from the decimated overviews in
+ * {@link WmsOverviews}, which are shared amongst all {@link WmsCatalogue}s.
+ * Rendered images are cached by {@link ThreddsWmsServlet}.
  *
  * @author Guy Griffiths
  */
@@ -98,6 +95,12 @@ public class ThreddsWmsCatalogue implements WmsCatalogue {
      */
     private Dataset dataset;
 
+    /*
+     * Identifies the dataset and its version, for the overview cache
+     */
+    private final String datasetKey;
+    private final long lastModified;
+
     /*
      * A StyleCatalogue allows us to support different styles for different
      * layer types.
@@ -106,19 +109,35 @@ public class ThreddsWmsCatalogue implements WmsCatalogue {
      */
     private static final StyleCatalogue styleCatalogue =  SldTemplateStyleCatalogue.getStyleCatalogue();
 
-    public ThreddsWmsCatalogue(String id, String location) throws IOException, EdalException {
+    public ThreddsWmsCatalogue(String id, String location, long lastModified) throws IOException, EdalException {
         dataset = datasetFactory.createDataset(id, location);
+        // overviews are cached only for datasets with a real last modified time
+        this.datasetKey = (lastModified > 0) ? id + "\n" + lastModified : null;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return last modified time of the dataset file when this catalogue was made, or <= 0 if not known
+     */
+    public long getLastModified() {
+        return lastModified;
     }
 
     @Override
     public FeaturesAndMemberName getFeaturesForLayer(String layerName, PlottingDomainParams params)
             throws EdalException {
+        /*
+         * Zoomed out requests are sampled from an overview of the field, if
+         * overviews are enabled.
+         */
+        MapFeature overviewFeature = WmsOverviews.getMapFeature(datasetKey, dataset, layerName, params);
+        if (overviewFeature != null) {
+            return new FeaturesAndMemberName(overviewFeature, layerName);
+        }
+
         /*
          * This uses the method on GriddedDataset to extract the appropriate
          * features.
-         * 
-         * Caching of individual features (i.e. 2d plottable map features) can
-         * go here if caching is desired for the TDS WMS.
          */
         List<? extends DiscreteFeature<?, ?>> extractedFeatures = dataset.extractMapFeatures(
                 CollectionUtils.setOf(layerName), params);
@@ -28,14 +28,20 @@
 
 package thredds.server.wms;
 
-import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import thredds.core.TdsRequestedDataset;
 
+import thredds.servlet.filter.TdsServletResponseWrapper;
 import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
 import uk.ac.rdg.resc.edal.wms.RequestParams;
 import uk.ac.rdg.resc.edal.wms.WmsCatalogue;
@@ -46,15 +52,15 @@ import uk.ac.rdg.resc.edal.wms.WmsServlet;
  * data.
  * 
  * This is example is well commented and demonstrates how to properly integrate
- * the EDAL WMS into the THREDDS catalogue. It doesn't show how to implement
- * caching, or WMS-specific configuration, but these things are recommended in
- * the final version.
+ * the EDAL WMS into the THREDDS catalogue. Catalogues are cached per dataset
+ * and remade when the dataset file changes. GetMap images are cached in the
+ * {@link WmsTileCache}, if one is configured.
  *
  * @author Guy Griffiths
  */
 @SuppressWarnings("serial")
 public class ThreddsWmsServlet extends WmsServlet {
-    private Map<String, WmsCatalogue> catalogueCache = new HashMap<>();
+    private Map<String, ThreddsWmsCatalogue> catalogueCache = new ConcurrentHashMap<>();
 
     @Override
     protected void dispatchWmsRequest(String request, RequestParams params,
@@ -64,9 +70,9 @@ public class ThreddsWmsServlet extends WmsServlet {
          * The super implementation of this gets called with a servlet-wide
          * catalogue, which "should" have been injected with the
          * WmsServlet.setCatalogue() method. Since we want one catalogue per
-         * dataset, we never call setCatalogue(), but instead we generate a
-         * WmsCatalogue (or more likely in a final version, retrieve a cached
-         * one) on each request, and pass that to the super implementation.
+         * dataset, we never call setCatalogue(), but instead we retrieve a
+         * cached WmsCatalogue (or generate one) on each request, and pass that
+         * to the super implementation.
          */
 
         /*
@@ -75,37 +81,124 @@ public class ThreddsWmsServlet extends WmsServlet {
         // Look - is setting this to null the right thing to do??
         String removePrefix = null;
         TdsRequestedDataset tdsDataset = new TdsRequestedDataset(httpServletRequest, removePrefix);
-        if(catalogueCache.containsKey(tdsDataset.getPath())) {
-            catalogue = catalogueCache.get(tdsDataset.getPath());
-        } else {
+        long lastModified = TdsRequestedDataset.getLastModified(tdsDataset.getPath()); // only for datasets that are files
+        ThreddsWmsCatalogue threddsCatalogue = catalogueCache.get(tdsDataset.getPath());
+        if (threddsCatalogue == null || threddsCatalogue.getLastModified() != lastModified) {
             String netcdfFilePath = tdsDataset.getNetcdfFile(httpServletRequest, httpServletResponse,
                     tdsDataset.getPath()).getLocation();
     
             /*
              * Generate a new catalogue for the given dataset
-             * 
-             * In the full system, we should keep a cache of these
-             * ThreddsWmsCatalogues, but in this example we just create each new one
-             * on the fly.
-             * 
-             * If a feature cache is required on the WMS (a Good Idea), I recommend
-             * a single cache in this servlet which gets passed to each WmsCatalogue
-             * upon construction (i.e. HERE). That's a TDS implementation detail
-             * though, hence not in this example.
              */
             if (netcdfFilePath == null) {
                 throw new EdalLayerNotFoundException(
                         "The requested dataset is not available on this server");
             }
-            catalogue = new ThreddsWmsCatalogue(tdsDataset.getPath(), netcdfFilePath);
-            catalogueCache.put(tdsDataset.getPath(), catalogue);
+            threddsCatalogue = new ThreddsWmsCatalogue(tdsDataset.getPath(), netcdfFilePath, lastModified);
+            catalogueCache.put(tdsDataset.getPath(), threddsCatalogue);
         }
 
         /*
-         * Now that we've got a WmsCatalogue, we can pass this request to the
-         * super implementation which will handle things from here.
+         * Rendered tiles are served from the cache. Others are rendered by the
+         * super implementation, and kept if they are images.
          */
-        super.dispatchWmsRequest(request, params, httpServletRequest, httpServletResponse,
-                catalogue);
+        WmsTileCache tileCache = WmsTileCache.getInstance();
+        String key = null;
+        if (tileCache != null && "GetMap".equalsIgnoreCase(request)) {
+            key = WmsTileCache.makeKey(tdsDataset.getPath(), lastModified, httpServletRequest.getParameterMap());
+        }
+        if (key == null) {
+            super.dispatchWmsRequest(request, params, httpServletRequest, httpServletResponse,
+                    threddsCatalogue);
+            return;
+        }
+
+        WmsTileCache.Tile tile = tileCache.get(key);
+        if (tile != null) {
+            httpServletResponse.setContentType(tile.getContentType());
+            httpServletResponse.setContentLength(tile.getData().length);
+            httpServletResponse.getOutputStream().write(tile.getData());
+            return;
+        }
+
+        CapturingResponse capture = new CapturingResponse(httpServletResponse, tileCache.getMaxEntrySize());
+        super.dispatchWmsRequest(request, params, httpServletRequest, capture, threddsCatalogue);
+        String contentType = capture.getContentType();
+        byte[] data = capture.getCaptured();
+        if (capture.getHttpStatusCode() == HttpServletResponse.SC_OK && data != null && data.length > 0
+                && contentType != null && contentType.startsWith("image/")) {
+            tileCache.put(key, new WmsTileCache.Tile(contentType, data));
+        }
+    }
+
+    /**
+     * Keeps a copy of what is written to the output stream, up to a maximum size.
+     */
+    static class CapturingResponse extends TdsServletResponseWrapper {
+        private final long maxSize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();  // null once too big
+        private ServletOutputStream out;
+
+        CapturingResponse(HttpServletResponse response, long maxSize) {
+            super(response);
+            this.maxSize = maxSize;
+        }
+
+        /** @return what was written, or null if too big or not written to the output stream */
+        byte[] getCaptured() {
+            return (copy == null) ? null : copy.toByteArray();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                final ServletOutputStream wrapped = super.getOutputStream();
+                out = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        wrapped.write(b);
+                        if (copy != null) {
+                            copy.write(b);
+                            checkSize();
+                        }
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        wrapped.write(b, off, len);
+                        if (copy != null) {
+                            copy.write(b, off, len);
+                            checkSize();
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        wrapped.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return wrapped.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        wrapped.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return out;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            copy = null;  // not an image
+            return super.getWriter();
+        }
+
+        private void checkSize() {
+            if (copy.size() > maxSize) copy = null;
+        }
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.wms;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.opengis.metadata.extent.GeographicBoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+import uk.ac.rdg.resc.edal.domain.MapDomain;
+import uk.ac.rdg.resc.edal.domain.MapDomainImpl;
+import uk.ac.rdg.resc.edal.exceptions.EdalException;
+import uk.ac.rdg.resc.edal.feature.DiscreteFeature;
+import uk.ac.rdg.resc.edal.feature.MapFeature;
+import uk.ac.rdg.resc.edal.geometry.BoundingBox;
+import uk.ac.rdg.resc.edal.geometry.BoundingBoxImpl;
+import uk.ac.rdg.resc.edal.grid.GridCell2D;
+import uk.ac.rdg.resc.edal.grid.HorizontalGrid;
+import uk.ac.rdg.resc.edal.grid.RegularGrid;
+import uk.ac.rdg.resc.edal.grid.RegularGridImpl;
+import uk.ac.rdg.resc.edal.metadata.GridVariableMetadata;
+import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
+import uk.ac.rdg.resc.edal.position.HorizontalPosition;
+import uk.ac.rdg.resc.edal.util.Array2D;
+import uk.ac.rdg.resc.edal.util.CollectionUtils;
+import uk.ac.rdg.resc.edal.util.GISUtils;
+import uk.ac.rdg.resc.edal.util.GridCoordinates2D;
+import uk.ac.rdg.resc.edal.util.PlottingDomainParams;
+import uk.ac.rdg.resc.edal.util.ValuesArray2D;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decimated overviews of gridded WMS layers, so that zoomed out GetMap requests do not read the whole field.
+ * <p>
+ * An overview is a map feature of a layer at one time and elevation, on a lat/lon grid at most maxSize cells on a
+ * side. It is extracted once, the first time a zoomed out tile of that field is requested. A tile whose pixels are
+ * each at least as large as an overview cell is then sampled from the overview instead of from the dataset.
+ * Overviews are shared by all datasets, and bounded in the total number of cells.
+ */
+public class WmsOverviews {
+    static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(WmsOverviews.class);
+    static private final CoordinateReferenceSystem WGS84 = BoundingBoxImpl.global().getCoordinateReferenceSystem();
+
+    static private volatile int maxSize;  // 0 = no overviews
+    static private volatile Cache<String, MapFeature> cache;
+
+    /**
+     * Enable overviews.
+     * @param maxSize maximum number of cells on each side of an overview; 0 means no overviews
+     * @param maxCells maximum total number of cells in all overviews
+     */
+    static public void setLimits(int maxSize, long maxCells) {
+        if (maxSize <= 0 || maxCells <= 0) {
+            WmsOverviews.maxSize = 0;
+            cache = null;
+            return;
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCells)
+                .weigher(new Weigher<String, MapFeature>() {
+                    public int weigh(String key, MapFeature feature) {
+                        return (int) feature.getDomain().size() * Math.max(1, feature.getParameterIds().size());
+                    }
+                })
+                .build();
+        WmsOverviews.maxSize = maxSize;
+    }
+
+    /**
+     * Get a map feature for a GetMap request, sampled from the overview of the field.
+     *
+     * @param datasetKey   identifies the dataset and its version; null if the dataset has no real last modified time
+     * @param dataset      the dataset
+     * @param layerName    the layer (variable) requested
+     * @param params       the requested image grid, time and elevation
+     * @return the feature on the image grid, or null if the request is not zoomed out far enough to use an overview,
+     *   or the dataset cant be versioned
+     * @throws EdalException on read error
+     */
+    static public MapFeature getMapFeature(String datasetKey, Dataset dataset, String layerName, PlottingDomainParams params)
+            throws EdalException {
+        int size = maxSize;
+        Cache<String, MapFeature> overviews = cache;
+        if (size <= 0 || overviews == null || datasetKey == null) return null;
+
+        RegularGrid imageGrid = params.getImageGrid();
+        if (imageGrid == null) return null;
+        VariableMetadata metadata;
+        try {
+            metadata = dataset.getVariableMetadata(layerName);
+        } catch (EdalException e) {
+            return null;  // let the dataset report it
+        }
+        if (!(metadata instanceof GridVariableMetadata)) return null;
+
+        // the overview grid
+        HorizontalGrid sourceGrid = ((GridVariableMetadata) metadata).getHorizontalDomain();
+        int factor = (Math.max(sourceGrid.getXSize(), sourceGrid.getYSize()) + size - 1) / size;
+        if (factor < 2) return null;   // field is already small
+        GeographicBoundingBox gbb = sourceGrid.getGeographicBoundingBox();
+        int nx = (sourceGrid.getXSize() + factor - 1) / factor;
+        int ny = (sourceGrid.getYSize() + factor - 1) / factor;
+        double cellWidth = (gbb.getEastBoundLongitude() - gbb.getWestBoundLongitude()) / nx;
+        double cellHeight = (gbb.getNorthBoundLatitude() - gbb.getSouthBoundLatitude()) / ny;
+        if (cellWidth <= 0 || cellHeight <= 0) return null;
+
+        // use the overview only if each pixel is at least as big as an overview cell
+        BoundingBox bbox = imageGrid.getBoundingBox();
+        HorizontalPosition lower = toLonLat(bbox.getLowerCorner());
+        HorizontalPosition upper = toLonLat(bbox.getUpperCorner());
+        if (lower == null || upper == null) return null;
+        double width = upper.getX() - lower.getX();
+        if (width <= 0) width += 360;
+        double pixelWidth = width / imageGrid.getXSize();
+        double pixelHeight = (upper.getY() - lower.getY()) / imageGrid.getYSize();
+        if (pixelWidth < cellWidth || pixelHeight < cellHeight) return null;
+
+        String key = datasetKey + "\n" + layerName + "\n" + params.getTargetZ() + "\n" + params.getTargetT() + "\n" +
+                params.getZExtent() + "\n" + params.getTExtent();
+        MapFeature overview;
+        try {
+            overview = overviews.get(key, () -> {
+                RegularGrid overviewGrid = new RegularGridImpl(gbb.getWestBoundLongitude(), gbb.getSouthBoundLatitude(),
+                        gbb.getEastBoundLongitude(), gbb.getNorthBoundLatitude(), WGS84, nx, ny);
+                PlottingDomainParams overviewParams = new PlottingDomainParams(overviewGrid, params.getZExtent(),
+                        params.getTExtent(), null, params.getTargetZ(), params.getTargetT());
+                List<? extends DiscreteFeature<?, ?>> features = dataset.extractMapFeatures(CollectionUtils.setOf(layerName), overviewParams);
+                if (features.size() != 1 || !(features.get(0) instanceof MapFeature))
+                    throw new IllegalStateException("no map feature for " + layerName);
+                logger.debug("Made overview of {} {} x {}", layerName, nx, ny);
+                return (MapFeature) features.get(0);
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EdalException) throw (EdalException) e.getCause();
+            logger.debug("No overview for {}: {}", layerName, e.getCause().getMessage());
+            return null;
+        } catch (RuntimeException e) {  // unchecked exception thrown while making the overview
+            logger.debug("No overview for {}: {}", layerName, e.getMessage());
+            return null;
+        }
+
+        return sample(overview, imageGrid, gbb.getWestBoundLongitude());
+    }
+
+    // nearest neighbour from the overview, at the centre of each cell of the image grid
+    static MapFeature sample(MapFeature overview, RegularGrid imageGrid, double west) {
+        MapDomain overviewDomain = overview.getDomain();
+        int nx = imageGrid.getXSize();
+        int ny = imageGrid.getYSize();
+
+        // find the overview cell of each image cell once, for all members
+        int[] xIndex = new int[nx * ny];
+        int[] yIndex = new int[nx * ny];
+        Array2D<GridCell2D> cells = imageGrid.getDomainObjects();
+        for (int j = 0; j < ny; j++) {
+            for (int i = 0; i < nx; i++) {
+                int n = j * nx + i;
+                xIndex[n] = -1;
+                HorizontalPosition pos = toLonLat(cells.get(j, i).getCentre());
+                if (pos == null) continue;
+                GridCoordinates2D index = overviewDomain.findIndexOf(pos);
+                if (index == null) // try the other way round the world
+                    index = overviewDomain.findIndexOf(new HorizontalPosition(GISUtils.getNextEquivalentLongitude(west, pos.getX()), pos.getY(), WGS84));
+                if (index == null) continue;
+                xIndex[n] = index.getX();
+                yIndex[n] = index.getY();
+            }
+        }
+
+        Map<String, Array2D<Number>> values = new HashMap<>();
+        for (String member : overview.getParameterIds()) {
+            Array2D<Number> source = overview.getValues(member);
+            ValuesArray2D result = new ValuesArray2D(ny, nx);
+            for (int j = 0; j < ny; j++) {
+                for (int i = 0; i < nx; i++) {
+                    int n = j * nx + i;
+                    if (xIndex[n] >= 0)
+                        result.set(source.get(yIndex[n], xIndex[n]), j, i);
+                }
+            }
+            values.put(member, result);
+        }
+
+        MapDomain domain = new MapDomainImpl(imageGrid, overviewDomain.getZ(), overviewDomain.getVerticalCrs(), overviewDomain.getTime());
+        return new MapFeature(overview.getId(), overview.getName(), overview.getDescription(), domain, overview.getParameterMap(), values);
+    }
+
+    static private HorizontalPosition toLonLat(HorizontalPosition pos) {
+        if (pos.getCoordinateReferenceSystem() == null || GISUtils.isWgs84LonLat(pos.getCoordinateReferenceSystem()))
+            return pos;
+        try {
+            return GISUtils.transformPosition(pos, WGS84);
+        } catch (RuntimeException e) {  // outside the domain of the projection
+            return null;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.server.wms;
+
+import ucar.nc2.constants.CDM;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of rendered WMS GetMap images, so that the tiles that map clients request over and over are only
+ * rendered once. The key is a hash of the dataset path, its last modified time and the canonical request
+ * parameters (layer, time, elevation, style, bbox, size, etc.).
+ * <p>
+ * Recently used tiles are kept in memory, and all tiles are also written to a directory on disk.
+ * Both are bounded in total bytes; least recently used tiles are removed first.
+ */
+public class WmsTileCache {
+    static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(WmsTileCache.class);
+    static private final String SUFFIX = ".tile";
+    static private final String TEMP_SUFFIX = ".tmp";
+
+    static private volatile WmsTileCache instance; // null = no cache
+
+    static public WmsTileCache getInstance() {
+        return instance;
+    }
+
+    static public void setInstance(WmsTileCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * A rendered image.
+     */
+    static public class Tile {
+        private final String contentType;
+        private final byte[] data;
+
+        public Tile(String contentType, byte[] data) {
+            this.contentType = contentType;
+            this.data = data;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private final File cacheDir;    // null = memory only
+    private final long maxMemory;   // total bytes in memory
+    private final long maxSize;     // total bytes on disk
+    private final long maxEntrySize;
+
+    private final LinkedHashMap<String, Tile> memory = new LinkedHashMap<>(100, 0.75f, true); // in LRU order
+    private long memorySize;
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(100, 0.75f, true);   // key -> file size, in LRU order
+    private long diskSize;
+    private final AtomicLong tempCount = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param cachePath directory for tiles on disk, or null for memory only
+     * @param maxMemory maximum total bytes of tiles kept in memory
+     * @param maxSize maximum total bytes of tiles kept on disk
+     * @param maxEntrySize larger tiles are not cached
+     */
+    public WmsTileCache(String cachePath, long maxMemory, long maxSize, long maxEntrySize) {
+        this.maxMemory = maxMemory;
+        this.maxEntrySize = maxEntrySize;
+
+        File dir = null;
+        if (cachePath != null && maxSize > 0) {
+            dir = new File(cachePath);
+            if (!dir.exists() && !dir.mkdirs()) {
+                logger.error("Cant make cache directory " + cachePath);
+                dir = null;
+            }
+        }
+        this.cacheDir = dir;
+        this.maxSize = (dir == null) ? 0 : maxSize;
+        if (cacheDir == null) return;
+
+        // pick up what was left from before, oldest first; leftover temp files are from failed writes
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        synchronized (disk) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.endsWith(SUFFIX)) {
+                    long size = f.length();
+                    disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                    diskSize += size;
+                } else if (name.endsWith(TEMP_SUFFIX)) {
+                    delete(f);
+                }
+            }
+            evictDisk();
+        }
+    }
+
+    /**
+     * Make the cache key of a GetMap request.
+     *
+     * @param datasetPath  the dataset request path
+     * @param lastModified last modified time of the dataset; must be > 0, else the tile cant be cached
+     * @param params       the request parameters
+     * @return the key, or null if this request cannot be cached
+     */
+    static public String makeKey(String datasetPath, long lastModified, Map<String, String[]> params) {
+        if (lastModified <= 0) return null;
+
+        // WMS parameter names are case insensitive
+        SortedMap<String, String[]> sorted = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : params.entrySet())
+            sorted.put(entry.getKey().toLowerCase(), entry.getValue());
+
+        StringBuilder id = new StringBuilder();
+        id.append(datasetPath).append('\n').append(lastModified);
+        for (Map.Entry<String, String[]> entry : sorted.entrySet()) {
+            id.append('\n').append(entry.getKey());
+            for (String value : entry.getValue())
+                id.append('=').append(value);
+        }
+
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(id.toString().getBytes(CDM.utf8Charset));
+            StringBuilder sb = new StringBuilder(2 * digest.length);
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Find a cached tile, in memory or on disk.
+     * @param key from makeKey()
+     * @return the tile, or null if not in the cache
+     */
+    public Tile get(String key) {
+        synchronized (memory) {
+            Tile tile = memory.get(key);
+            if (tile != null) {
+                hits.incrementAndGet();
+                return tile;
+            }
+        }
+
+        Tile tile = readFromDisk(key);
+        if (tile == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        putInMemory(key, tile);
+        hits.incrementAndGet();
+        return tile;
+    }
+
+    /**
+     * Add a rendered tile.
+     * @param key from makeKey()
+     * @param tile the tile; ignored if larger than maxEntrySize
+     */
+    public void put(String key, Tile tile) {
+        if (tile.data.length > maxEntrySize) return;
+        putInMemory(key, tile);
+        writeToDisk(key, tile);
+    }
+
+    private void putInMemory(String key, Tile tile) {
+        if (tile.data.length > maxMemory) return;
+        synchronized (memory) {
+            Tile old = memory.put(key, tile);
+            if (old != null) memorySize -= old.data.length;
+            memorySize += tile.data.length;
+            Iterator<Tile> iter = memory.values().iterator();
+            while (memorySize > maxMemory && iter.hasNext()) {
+                memorySize -= iter.next().data.length;
+                iter.remove();
+            }
+        }
+    }
+
+    private Tile readFromDisk(String key) {
+        if (cacheDir == null) return null;
+        synchronized (disk) {
+            if (disk.get(key) == null) return null; // also moves it to the end of the LRU order
+        }
+
+        File f = getFile(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            String contentType = in.readUTF();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Tile(contentType, data);
+
+        } catch (IOException e) { // removed behind our back, or a bad file
+            logger.debug("WmsTileCache failed to read " + f.getPath() + ": " + e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Tile tile) {
+        if (cacheDir == null) return;
+        File tempFile = new File(cacheDir, key + "." + tempCount.incrementAndGet() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeUTF(tile.contentType);
+            out.writeInt(tile.data.length);
+            out.write(tile.data);
+        } catch (IOException e) {
+            logger.warn("WmsTileCache failed to write " + tempFile.getPath(), e);
+            delete(tempFile);
+            return;
+        }
+
+        long size = tempFile.length();
+        File f = getFile(key);
+        synchronized (disk) {
+            try {
+                Files.move(tempFile.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("WmsTileCache failed to commit " + f.getPath(), e);
+                delete(tempFile);
+                return;
+            }
+            Long old = disk.put(key, size);
+            if (old != null) diskSize -= old;
+            diskSize += size;
+            evictDisk();
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (disk) {
+            Long size = disk.remove(key);
+            if (size != null) diskSize -= size;
+        }
+        delete(getFile(key));
+    }
+
+    // must hold lock on disk
+    private void evictDisk() {
+        Iterator<Map.Entry<String, Long>> iter = disk.entrySet().iterator();
+        while (diskSize > maxSize && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            diskSize -= entry.getValue();
+            delete(getFile(entry.getKey()));
+            iter.remove();
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(cacheDir, key + SUFFIX);
+    }
+
+    private void delete(File f) {
+        if (f.exists() && !f.delete())
+            logger.warn("WmsTileCache failed to delete " + f.getPath());
+    }
+
+    public long getMemorySize() {
+        synchronized (memory) {
+            return memorySize;
+        }
+    }
+
+    public long getDiskSize() {
+        synchronized (disk) {
+            return diskSize;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String toString() {
+        return "WmsTileCache{dir=" + cacheDir + ", maxMemory=" + maxMemory + ", maxSize=" + maxSize +
+                ", maxEntrySize=" + maxEntrySize + ", memorySize=" + getMemorySize() + ", diskSize=" + getDiskSize() + "}";
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package thredds.servlet;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends large responses with Servlet 3.1 async I/O, so a slow client does not hold a request thread.
+ * A small pool reads the data into a bounded buffer for each connection, and a WriteListener sends it to the
+ * client as fast as the client takes it.
+ * Off unless threddsConfig.xml sets AsyncStreaming.threads.
+ * <p>
+ * A Source is read a chunk at a time, only when there is room in the buffer, so it never blocks a pool thread.
+ * A Producer writes to an OutputStream, and blocks its pool thread while the buffer is full.
+ */
+public class AsyncStreaming {
+  static private final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AsyncStreaming.class);
+  static private final int CHUNK_SIZE = 64 * 1000;
+
+  static private ExecutorService pool;                  // null means async streaming is off
+  static private int maxBuffered = 1000 * 1000;         // per connection
+  static private long minSize = 10 * 1000 * 1000;       // smaller responses are sent on the request thread
+  static private long timeoutMsecs = 30 * 60 * 1000;
+
+  /**
+   * Turn on async streaming.
+   *
+   * @param nthreads    size of the pool that reads the data; 0 turns async streaming off
+   * @param bufferSize  max bytes buffered for each connection
+   * @param minBytes    only responses of at least this size are sent asynchronously
+   * @param timeoutSecs a response that is not finished in this time is aborted
+   */
+  static public synchronized void init(int nthreads, int bufferSize, long minBytes, int timeoutSecs) {
+    shutdown();
+    if (nthreads <= 0) return;
+    maxBuffered = Math.max(bufferSize, CHUNK_SIZE);
+    minSize = minBytes;
+    timeoutMsecs = timeoutSecs * 1000L;
+    AtomicInteger count = new AtomicInteger();
+    pool = Executors.newFixedThreadPool(nthreads, r -> {
+      Thread t = new Thread(r, "AsyncStreaming-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  static public synchronized void shutdown() {
+    if (pool != null)
+      pool.shutdownNow();
+    pool = null;
+  }
+
+  /**
+   * Should this response be sent asynchronously?
+   *
+   * @param req  the request
+   * @param size estimated size of the response in bytes
+   * @return true if async streaming is on, the response is large, and the container allows async for this request.
+   *  Never for HEAD, whose response stream (HttpHeadFilter) has no WriteListener.
+   */
+  static public boolean useAsync(HttpServletRequest req, long size) {
+    return pool != null && size >= minSize && req.isAsyncSupported() && !req.isAsyncStarted()
+            && !"HEAD".equalsIgnoreCase(req.getMethod());
+  }
+
+  /**
+   * Writes the response body.
+   */
+  public interface Producer {
+    void write(OutputStream out) throws Exception;
+  }
+
+  /**
+   * Reads the response body, a chunk at a time.
+   */
+  public interface Source extends Closeable {
+    /**
+     * Read the next chunk.
+     *
+     * @param buff read into this
+     * @return number of bytes read, or -1 at the end
+     * @throws IOException on read error
+     */
+    int read(byte[] buff) throws IOException;
+  }
+
+  /**
+   * Start async processing of the request, and send what the producer writes.
+   * The producer is called in the pool after this returns, and must release its own resources.
+   * Headers must be set before calling this.
+   *
+   * @param req      the request
+   * @param res      the response
+   * @param what     describes the request, for logging
+   * @param producer writes the response body
+   * @throws IOException if the response cant be written
+   */
+  static public void write(HttpServletRequest req, HttpServletResponse res, String what, Producer producer) throws IOException {
+    Connection conn = new Connection(req, res, what, null);
+    PipeStream pipe = new PipeStream(conn);
+    Runnable task = () -> {
+      try {
+        producer.write(pipe);
+        pipe.close();
+      } catch (Throwable t) {
+        conn.fail(t);
+      }
+    };
+    try {
+      conn.pool.execute(task);
+    } catch (RejectedExecutionException e) {
+      conn.fail(e);
+      task.run(); // connection is closed, so this only lets the producer clean up
+    }
+  }
+
+  /**
+   * Start async processing of the request, and send what is read from the source.
+   * The source is closed when the response is finished. Headers must be set before calling this.
+   *
+   * @param req    the request
+   * @param res    the response
+   * @param what   describes the request, for logging
+   * @param source reads the response body
+   * @throws IOException if the response cant be written
+   */
+  static public void read(HttpServletRequest req, HttpServletResponse res, String what, Source source) throws IOException {
+    try {
+      new Connection(req, res, what, source);
+    } catch (IOException | RuntimeException e) {
+      source.close();
+      throw e;
+    }
+  }
+
+  /**
+   * A Source that reads the whole file.
+   *
+   * @param file read this file
+   * @return Source, must be passed to read() or closed
+   * @throws IOException if the file cant be opened
+   */
+  static public Source fileSource(File file) throws IOException {
+    long size = file.length();
+    List<ServletUtil.ByteRange> all = Collections.singletonList(new ServletUtil.ByteRange(0, size));
+    return new ServletUtil.FileRangesSource(file, all, null, null, size);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////
+
+  // buffers the data for one response, and writes it when the client is ready
+  static private class Connection implements WriteListener, AsyncListener {
+    private final String what;
+    private final HttpServletResponse res;
+    private final AsyncContext ctx;
+    private final ServletOutputStream out;
+    private final Source source;         // null when a Producer writes the data
+    private final ExecutorService pool;
+    private final int maxBuffered;
+
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private long buffered;
+    private boolean finished;   // no more data will be added
+    private boolean done;       // completed or failed
+    private boolean idle;       // the writer ran out of data and must be restarted
+    private boolean reading;    // a read of the source is scheduled
+    private boolean closed;     // the source has been closed, or is left to the caller
+
+    Connection(HttpServletRequest req, HttpServletResponse res, String what, Source source) throws IOException {
+      synchronized (AsyncStreaming.class) {
+        this.pool = AsyncStreaming.pool;
+        this.maxBuffered = AsyncStreaming.maxBuffered;
+      }
+      if (pool == null)
+        throw new IllegalStateException("AsyncStreaming is not enabled");
+      this.what = what;
+      this.res = res;
+      this.source = source;
+
+      // use the request and response that were passed in, so the filters see what is written
+      this.ctx = req.startAsync(req, res);
+      try {
+        ctx.setTimeout(timeoutMsecs);
+        ctx.addListener(this);
+        this.out = res.getOutputStream();
+        out.setWriteListener(this); // the container calls onWritePossible() when the client is ready
+      } catch (IOException | RuntimeException e) {
+        // dont leave the request waiting for the async timeout; the caller closes the source
+        synchronized (this) {
+          done = true;
+          closed = true;
+        }
+        ctx.complete();
+        throw e;
+      }
+    }
+
+    // WriteListener
+
+    @Override
+    public void onWritePossible() throws IOException {
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      fail(t);
+    }
+
+    // AsyncListener
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+      close();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      fail(new IOException("AsyncStreaming timed out after " + timeoutMsecs + " msecs"));
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+      fail(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+    // write buffered data while the client takes it
+    private synchronized void drain() throws IOException {
+      if (done) return;
+      idle = false;
+      while (out.isReady()) {
+        byte[] chunk = chunks.poll();
+        if (chunk == null) {
+          if (finished) {
+            done = true;
+            ctx.complete();
+            return;
+          }
+          idle = true;
+          break;
+        }
+        buffered -= chunk.length;
+        notifyAll();
+        out.write(chunk);
+      }
+      scheduleRead();
+    }
+
+    // restart the writer on a container thread
+    private void resume() {
+      idle = false;
+      ctx.start(() -> {
+        try {
+          drain();
+        } catch (Throwable t) {
+          fail(t);
+        }
+      });
+    }
+
+    // called by a Producer, blocks while the buffer is full
+    synchronized void add(byte[] chunk) throws IOException {
+      while (!done && buffered >= maxBuffered) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("AsyncStreaming interrupted");
+        }
+      }
+      if (done)
+        throw new IOException("AsyncStreaming connection closed: " + what);
+      chunks.add(chunk);
+      buffered += chunk.length;
+      if (idle) resume();
+    }
+
+    // called by a Producer when it is done
+    synchronized void finish() {
+      finished = true;
+      if (idle && !done) resume();
+    }
+
+    private synchronized void scheduleRead() {
+      if (source == null || reading || finished || done || buffered >= maxBuffered)
+        return;
+      reading = true;
+      try {
+        pool.execute(this::readChunk);
+      } catch (RejectedExecutionException e) {
+        reading = false;
+        fail(e);
+      }
+    }
+
+    // runs in the pool
+    private void readChunk() {
+      try {
+        byte[] buff = new byte[CHUNK_SIZE];
+        int n = source.read(buff);
+        synchronized (this) {
+          reading = false;
+          if (done) return;
+          if (n < 0) {
+            finished = true;
+          } else if (n > 0) {
+            chunks.add(n < buff.length ? Arrays.copyOf(buff, n) : buff);
+            buffered += n;
+          }
+          if (idle) resume();
+          scheduleRead();
+        }
+      } catch (Throwable t) {
+        fail(t);
+      }
+    }
+
+    void fail(Throwable t) {
+      synchronized (this) {
+        if (done) return;
+        done = true;
+        chunks.clear();
+        buffered = 0;
+        notifyAll();
+      }
+
+      String eName = (t == null) ? "" : t.getClass().getName(); // dont want compile time dependency on ClientAbortException
+      if (eName.equals("org.apache.catalina.connector.ClientAbortException") || t instanceof java.net.SocketException)
+        log.debug("AsyncStreaming client went away: {} {}", what, t.getMessage());
+      else
+        log.error("AsyncStreaming failed: " + what, t);
+
+      try {
+        if (!res.isCommitted())
+          res.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      } catch (IOException | IllegalStateException e) {
+        log.debug("AsyncStreaming sendError failed: {}", e.getMessage());
+      }
+      try {
+        ctx.complete();
+      } catch (IllegalStateException e) {
+        // already completed
+      }
+      close();
+    }
+
+    private void close() {
+      synchronized (this) {
+        done = true;
+        notifyAll();
+        if (closed) return;
+        closed = true;
+      }
+      if (source != null) {
+        try {
+          source.close();
+        } catch (IOException e) {
+          log.warn("AsyncStreaming failed to close " + what, e);
+        }
+      }
+    }
+  }
+
+  // what a Producer writes, in chunks
+  static private class PipeStream extends OutputStream {
+    private final Connection conn;
+    private byte[] buff = new byte[CHUNK_SIZE];
+    private int count;
+    private boolean closed;
+
+    PipeStream(Connection conn) {
+      this.conn = conn;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buff.length) flushBuffer();
+      buff[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (count == buff.length) flushBuffer();
+        int n = Math.min(len, buff.length - count);
+        System.arraycopy(b, off, buff, count, n);
+        count += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    // flush() is a no-op, the data is sent as soon as a chunk is full
+
+    private void flushBuffer() throws IOException {
+      if (closed)
+        throw new IOException("stream is closed");
+      if (count == 0) return;
+      conn.add(count < buff.length ? Arrays.copyOf(buff, count) : buff);
+      buff = new byte[CHUNK_SIZE];
+      count = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      flushBuffer();
+      closed = true;
+      conn.finish();
+    }
+  }
+
+}
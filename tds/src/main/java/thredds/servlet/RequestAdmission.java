@@ -0,0 +1,240 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.servlet;
+
+import thredds.server.exception.ServiceUnavailableException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for each service (as named by RequestMetrics).
+ * A service may limit the number of requests it runs at once, and separately the number of large requests,
+ * as estimated by the service before it does the work. Requests over the limit wait in a bounded queue;
+ * when the queue is full, or they have waited too long, they are rejected with 503 and a Retry-After header.
+ * A waiting request holds its container thread, so the total number waiting, over all services, is also bounded,
+ * and should be well below the number of connector threads.
+ * <p>
+ * RequestAdmissionFilter calls admit() and release() around each request; the services call admitCost()
+ * once they know the size of the response.
+ */
+public class RequestAdmission {
+  static private final String ADMISSION_ATTRIBUTE = RequestAdmission.class.getName();
+
+  static private final Map<String, Limits> limits = new ConcurrentHashMap<>();
+  static private volatile int retryAfterSecs = 10;
+  static private volatile int maxQueuedAll = 20;
+  static private final AtomicInteger queuedAll = new AtomicInteger();
+
+  /**
+   * Set the limits for a service.
+   * @param service service name, see RequestMetrics
+   * @param maxConcurrent maximum number of requests run at once, 0 = no limit
+   * @param maxQueue maximum number of requests waiting to run
+   * @param maxWaitSecs maximum time a request waits to run
+   * @param largeRequest estimated size in bytes of a large request, 0 = no limit on large requests
+   * @param maxLarge maximum number of large requests run at once
+   */
+  static public void setLimits(String service, int maxConcurrent, int maxQueue, int maxWaitSecs, long largeRequest, int maxLarge) {
+    if (maxConcurrent <= 0 && largeRequest <= 0)
+      limits.remove(service);
+    else
+      limits.put(service, new Limits(service, maxConcurrent, maxQueue, maxWaitSecs, largeRequest, maxLarge));
+  }
+
+  static public void setRetryAfter(int secs) {
+    retryAfterSecs = secs;
+  }
+
+  static public int getRetryAfter() {
+    return retryAfterSecs;
+  }
+
+  /**
+   * Set the maximum number of requests waiting to run, over all services. Past this, requests are rejected at once.
+   * @param max maximum number of waiting requests
+   */
+  static public void setMaxQueued(int max) {
+    maxQueuedAll = max;
+  }
+
+  /**
+   * Admit a request, waiting in the queue of its service if needed.
+   * @param req the request
+   * @return the Admission, to be released when the request is done, or null if the service has no limits
+   * @throws ServiceUnavailableException if the queue is full, or the request waited too long
+   */
+  static public Admission admit(HttpServletRequest req) {
+    Limits lim = limits.get(RequestMetrics.getService(req).getName());
+    if (lim == null) return null;
+    if (lim.requests != null && !lim.requests.acquire())
+      throw new ServiceUnavailableException(lim.service + " is busy", retryAfterSecs);
+
+    Admission admission = new Admission(lim);
+    req.setAttribute(ADMISSION_ATTRIBUTE, admission);
+    return admission;
+  }
+
+  /**
+   * Admit the work of an admitted request, once its size has been estimated.
+   * A large request waits for one of the large request slots of its service, which replaces its general slot: that is
+   * given back first, so a waiting large request doesnt hold a slot that small requests could use.
+   * Does nothing if the request did not go through admit(), or has already been admitted as large.
+   * @param req the request
+   * @param estimatedBytes estimated size of the response
+   * @throws ServiceUnavailableException if the queue is full, or the request waited too long
+   */
+  static public void admitCost(HttpServletRequest req, long estimatedBytes) {
+    Object att = req.getAttribute(ADMISSION_ATTRIBUTE);
+    if (!(att instanceof Admission)) return;
+    Admission admission = (Admission) att;
+    Limits lim = admission.limits;
+    if (lim.large == null || estimatedBytes < lim.largeRequest || admission.large) return;
+
+    admission.releaseRequestSlot();
+    if (!lim.large.acquire())
+      throw new ServiceUnavailableException(lim.service + " is busy with large requests, request size = " + estimatedBytes, retryAfterSecs);
+    admission.large = true;
+  }
+
+  /**
+   * Write the admission counts in the Prometheus text format.
+   * @param f write to this
+   */
+  static public void writePrometheus(Formatter f) {
+    f.format("# HELP thredds_requests_queued Requests waiting to be admitted.%n");
+    f.format("# TYPE thredds_requests_queued gauge%n");
+    for (Limits lim : limits.values()) {
+      if (lim.requests != null) f.format("thredds_requests_queued{service=\"%s\",class=\"all\"} %d%n", lim.service, lim.requests.queued.get());
+      if (lim.large != null) f.format("thredds_requests_queued{service=\"%s\",class=\"large\"} %d%n", lim.service, lim.large.queued.get());
+    }
+    f.format("# HELP thredds_requests_shed_total Requests rejected with 503 by admission control.%n");
+    f.format("# TYPE thredds_requests_shed_total counter%n");
+    for (Limits lim : limits.values()) {
+      if (lim.requests != null) f.format("thredds_requests_shed_total{service=\"%s\",class=\"all\"} %d%n", lim.service, lim.requests.shed.sum());
+      if (lim.large != null) f.format("thredds_requests_shed_total{service=\"%s\",class=\"large\"} %d%n", lim.service, lim.large.shed.sum());
+    }
+  }
+
+  /**
+   * The slots held by an admitted request.
+   */
+  static public class Admission {
+    private final Limits limits;
+    private volatile boolean large;
+    private boolean holdsRequestSlot; // guarded by this
+    private boolean released;         // guarded by this
+
+    private Admission(Limits limits) {
+      this.limits = limits;
+      this.holdsRequestSlot = (limits.requests != null);
+    }
+
+    private synchronized void releaseRequestSlot() {
+      if (holdsRequestSlot) limits.requests.release();
+      holdsRequestSlot = false;
+    }
+
+    public boolean isLarge() {
+      return large;
+    }
+
+    /** Give back the slots. Only the first call does anything. */
+    public synchronized void release() {
+      if (released) return;
+      released = true;
+      if (large) limits.large.release();
+      releaseRequestSlot();
+    }
+  }
+
+  static private class Limits {
+    private final String service;
+    private final Gate requests;  // null = no limit
+    private final Gate large;     // null = no limit
+    private final long largeRequest;
+
+    Limits(String service, int maxConcurrent, int maxQueue, int maxWaitSecs, long largeRequest, int maxLarge) {
+      this.service = service;
+      this.requests = (maxConcurrent > 0) ? new Gate(maxConcurrent, maxQueue, maxWaitSecs) : null;
+      this.large = (largeRequest > 0) ? new Gate(Math.max(maxLarge, 1), maxQueue, maxWaitSecs) : null;
+      this.largeRequest = largeRequest;
+    }
+  }
+
+  /**
+   * A fixed number of slots, with a bounded queue of waiters. The waiters of all Gates are bounded by maxQueuedAll.
+   */
+  static private class Gate {
+    private final Semaphore slots;
+    private final int maxQueue;
+    private final long maxWaitMsecs;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder shed = new LongAdder();
+
+    Gate(int maxConcurrent, int maxQueue, int maxWaitSecs) {
+      this.slots = new Semaphore(maxConcurrent, true);
+      this.maxQueue = maxQueue;
+      this.maxWaitMsecs = 1000L * maxWaitSecs;
+    }
+
+    boolean acquire() {
+      try {
+        if (slots.tryAcquire(0, TimeUnit.MILLISECONDS)) return true;  // unlike tryAcquire(), respects the waiters
+
+        boolean room = queued.incrementAndGet() <= maxQueue;
+        room &= queuedAll.incrementAndGet() <= maxQueuedAll;
+        try {
+          if (room && slots.tryAcquire(maxWaitMsecs, TimeUnit.MILLISECONDS)) return true;
+        } finally {
+          queued.decrementAndGet();
+          queuedAll.decrementAndGet();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      shed.increment();
+      return false;
+    }
+
+    void release() {
+      slots.release();
+    }
+  }
+}
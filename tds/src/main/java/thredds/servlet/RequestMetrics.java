@@ -0,0 +1,207 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.servlet;
+
+import net.jcip.annotations.ThreadSafe;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests to each TDS service: latency, bytes read from files and sent to the client, and requests in progress.
+ * Filled in by RequestMetricsFilter, written in the Prometheus text format by AdminMetricsController.
+ */
+@ThreadSafe
+public class RequestMetrics {
+  // upper bounds of the latency histogram buckets, in seconds
+  static private final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+  // first path segment -> service name
+  static private final Map<String, String> pathToService = new HashMap<>();
+  static private final Map<String, Service> services = new LinkedHashMap<>(); // fixed after static init
+  static private final Service other;
+
+  static {
+    addService("opendap", "dodsC");
+    addService("dap4", "dap4");
+    addService("ncss", "ncss");
+    addService("wms", "wms");
+    addService("cdmremote", "cdmremote");
+    addService("fileServer", "fileServer");
+    addService("catalog", "catalog");
+    addService("admin", "admin");
+    other = new Service("other");
+    services.put(other.name, other);
+  }
+
+  static private void addService(String name, String path) {
+    services.put(name, new Service(name));
+    pathToService.put(path, name);
+  }
+
+  /**
+   * Find the service a request is for, from the first segment of its path.
+   * @param req the request
+   * @return its Service, "other" if not one of the known services
+   */
+  static public Service getService(HttpServletRequest req) {
+    String path = req.getRequestURI();
+    String context = req.getContextPath();
+    if (path == null) return other;
+    if (context != null && path.startsWith(context)) path = path.substring(context.length());
+
+    int start = path.startsWith("/") ? 1 : 0;
+    int end = path.indexOf('/', start);
+    String first = (end < 0) ? path.substring(start) : path.substring(start, end);
+    String name = pathToService.get(first);
+    return (name == null) ? other : services.get(name);
+  }
+
+  static public Collection<Service> getServices() {
+    return Collections.unmodifiableCollection(services.values());
+  }
+
+  /**
+   * The counts for one service.
+   */
+  static public class Service {
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1]; // last is +Inf
+    private final LongAdder[] statusCounts = new LongAdder[6];             // 0 = unknown, 1 = 1xx ... 5 = 5xx
+    private final DoubleAdder sumSeconds = new DoubleAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    Service(String name) {
+      this.name = name;
+      for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+      for (int i = 0; i < statusCounts.length; i++) statusCounts[i] = new LongAdder();
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** A request for this service has started. Must be followed by finish(). */
+    public void start() {
+      inProgress.incrementAndGet();
+    }
+
+    /**
+     * A request for this service has finished.
+     * @param nanos how long it took
+     * @param status HTTP status code
+     * @param read bytes read from files
+     * @param sent bytes sent to the client
+     */
+    public void finish(long nanos, int status, long read, long sent) {
+      inProgress.decrementAndGet();
+      double secs = nanos / 1.0e9;
+      int bucket = Arrays.binarySearch(BUCKETS, secs);
+      if (bucket < 0) bucket = -bucket - 1;  // the first upper bound >= secs
+      buckets[bucket].increment();
+      sumSeconds.add(secs);
+      int statusClass = status / 100;
+      statusCounts[(statusClass >= 1 && statusClass <= 5) ? statusClass : 0].increment();
+      if (read > 0) bytesRead.add(read);
+      if (sent > 0) bytesSent.add(sent);
+    }
+
+    public int getInProgress() {
+      return inProgress.get();
+    }
+
+    public long getCount() {
+      long count = 0;
+      for (LongAdder b : buckets) count += b.sum();
+      return count;
+    }
+
+    public long getBytesRead() {
+      return bytesRead.sum();
+    }
+
+    public long getBytesSent() {
+      return bytesSent.sum();
+    }
+  }
+
+  /**
+   * Write the request metrics of all services in the Prometheus text format.
+   * @param f write to this
+   */
+  static public void writePrometheus(Formatter f) {
+    f.format("# HELP thredds_requests_in_progress Requests being handled.%n");
+    f.format("# TYPE thredds_requests_in_progress gauge%n");
+    for (Service s : services.values())
+      f.format("thredds_requests_in_progress{service=\"%s\"} %d%n", s.name, s.inProgress.get());
+
+    f.format("# HELP thredds_requests_total Requests handled, by HTTP status class.%n");
+    f.format("# TYPE thredds_requests_total counter%n");
+    for (Service s : services.values()) {
+      for (int i = 0; i < s.statusCounts.length; i++) {
+        long count = s.statusCounts[i].sum();
+        if (count > 0)
+          f.format("thredds_requests_total{service=\"%s\",status=\"%s\"} %d%n", s.name, (i == 0) ? "unknown" : i + "xx", count);
+      }
+    }
+
+    f.format("# HELP thredds_request_duration_seconds Time to handle a request.%n");
+    f.format("# TYPE thredds_request_duration_seconds histogram%n");
+    for (Service s : services.values()) {
+      long cumulative = 0;
+      for (int i = 0; i < s.buckets.length; i++) {
+        cumulative += s.buckets[i].sum();
+        String le = (i < BUCKETS.length) ? Double.toString(BUCKETS[i]) : "+Inf";
+        f.format("thredds_request_duration_seconds_bucket{service=\"%s\",le=\"%s\"} %d%n", s.name, le, cumulative);
+      }
+      f.format("thredds_request_duration_seconds_sum{service=\"%s\"} %s%n", s.name, Double.toString(s.sumSeconds.sum()));
+      f.format("thredds_request_duration_seconds_count{service=\"%s\"} %d%n", s.name, cumulative);
+    }
+
+    f.format("# HELP thredds_request_read_bytes_total Bytes read from files while handling requests.%n");
+    f.format("# TYPE thredds_request_read_bytes_total counter%n");
+    for (Service s : services.values())
+      f.format("thredds_request_read_bytes_total{service=\"%s\"} %d%n", s.name, s.bytesRead.sum());
+
+    f.format("# HELP thredds_response_bytes_total Bytes sent to clients.%n");
+    f.format("# TYPE thredds_response_bytes_total counter%n");
+    for (Service s : services.values())
+      f.format("thredds_response_bytes_total{service=\"%s\"} %d%n", s.name, s.bytesSent.sum());
+  }
+
+}
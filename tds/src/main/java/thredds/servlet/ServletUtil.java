@@ -34,6 +34,10 @@
 package thredds.servlet;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -46,7 +50,6 @@ import ucar.nc2.constants.CDM;
 import ucar.nc2.util.IO;
 import thredds.util.RequestForwardUtils;
 import ucar.nc2.util.EscapeStrings;
-import ucar.unidata.io.RandomAccessFile;
 
 public class ServletUtil {
   public static final org.slf4j.Logger logServerStartup = org.slf4j.LoggerFactory.getLogger("serverStartup");
@@ -169,7 +172,10 @@ public class ServletUtil {
   }
 
   /**
-   * Write a file to the response stream. Handles Range requests.
+   * Write a file to the response stream. Handles Range requests, including multiple ranges, which are
+   * sent as multipart/byteranges, and the If-None-Match and If-Range headers.
+   * The file is sent with sendfile() when the servlet container supports it, otherwise with FileChannel.transferTo(),
+   * or with AsyncStreaming when it is on and the response is large.
    *
    * @param req         request
    * @param res         response
@@ -181,31 +187,45 @@ public class ServletUtil {
     res.setContentType(contentType);
     // res.setHeader("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
 
-    // see if its a Range Request
-    boolean isRangeRequest = false;
-    long startPos = 0, endPos = Long.MAX_VALUE;
+    long fileSize = file.length();
+    long lastModified = file.lastModified();
+    String etag = makeETag(fileSize, lastModified);
+    res.setHeader("ETag", etag);
+    if (!res.containsHeader("Last-Modified"))
+      res.setDateHeader("Last-Modified", lastModified);
+    // indicate we allow Range Requests
+    res.addHeader("Accept-Ranges", "bytes");
+
+    String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch != null && matchETag(ifNoneMatch, etag, false)) {
+      res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    // see if its a Range Request; null means send the whole file
+    List<ByteRange> ranges = null;
     String rangeRequest = req.getHeader("Range");
-    if (rangeRequest != null) { // bytes=12-34 or bytes=12-
-      int pos = rangeRequest.indexOf("=");
-      if (pos > 0) {
-        int pos2 = rangeRequest.indexOf("-");
-        if (pos2 > 0) {
-          String startString = rangeRequest.substring(pos + 1, pos2);
-          String endString = rangeRequest.substring(pos2 + 1);
-          startPos = Long.parseLong(startString);
-          if (endString.length() > 0)
-            endPos = Long.parseLong(endString) + 1;
-          isRangeRequest = true;
-        }
-      }
+    if (rangeRequest != null && isIfRangeOk(req, etag, lastModified))
+      ranges = parseRange(rangeRequest, fileSize);
+
+    if (ranges != null && ranges.isEmpty()) {
+      res.setHeader("Content-Range", "bytes */" + fileSize);
+      res.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
     }
 
     // set content length
-    long fileSize = file.length();
     long contentLength = fileSize;
-    if (isRangeRequest) {
-      endPos = Math.min(endPos, fileSize);
-      contentLength = endPos - startPos;
+    String boundary = null;
+    if (ranges != null && ranges.size() == 1) {
+      contentLength = ranges.get(0).length();
+    } else if (ranges != null) {
+      boundary = "THREDDS_" + Long.toHexString(System.nanoTime()) + Long.toHexString(Double.doubleToLongBits(Math.random()));
+      contentLength = 0;
+      for (ByteRange range : ranges)
+        contentLength += range.partHeader(boundary, contentType, fileSize).length + range.length();
+      contentLength += multipartEnd(boundary).length;
+      res.setContentType("multipart/byteranges; boundary=" + boundary);
     }
 
     // when compression is turned on, ContentLength has to be overridden
@@ -215,34 +235,49 @@ public class ServletUtil {
     else
       res.setContentLength((int) contentLength);
 
-    String filename = file.getPath();
-    // indicate we allow Range Requests
-    res.addHeader("Accept-Ranges", "bytes");
+    if (ranges != null) {
+      // set before content is sent
+      if (boundary == null)
+        res.addHeader("Content-Range", ranges.get(0).contentRange(fileSize));
+      res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    }
 
     if (req.getMethod().equals("HEAD")) {
       return;
     }
 
+    String filename = file.getPath();
     try {
 
-      if (isRangeRequest) {
-        // set before content is sent
-        res.addHeader("Content-Range", "bytes " + startPos + "-" + (endPos - 1) + "/" + fileSize);
-        res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-
-        try (RandomAccessFile craf = RandomAccessFile.acquire(filename)) {
-          IO.copyRafB(craf, startPos, contentLength, res.getOutputStream(), new byte[60000]);
+      if (boundary != null) {
+        if (AsyncStreaming.useAsync(req, contentLength)) {
+          AsyncStreaming.read(req, res, filename, new FileRangesSource(file, ranges, boundary, contentType, fileSize));
           return;
         }
+        ServletOutputStream out = res.getOutputStream();
+        WritableByteChannel cOut = Channels.newChannel(out);
+        try (FileChannel in = new FileInputStream(file).getChannel()) {
+          for (ByteRange range : ranges) {
+            out.write(range.partHeader(boundary, contentType, fileSize));
+            transfer(in, range.start, range.length(), cOut);
+          }
+        }
+        out.write(multipartEnd(boundary));
+        return;
       }
 
-      // Return the file
-      ServletOutputStream out = res.getOutputStream();
-      IO.copyFileB(file, out, 60 * 1000);
-      /* try (WritableByteChannel cOut = Channels.newChannel(out)) {
-        IO.copyFileWithChannels(file, cOut);
-        res.flushBuffer();
-      } */
+      // Return the file, or the one range
+      long start = (ranges == null) ? 0 : ranges.get(0).start;
+      if (useSendfile(req, file, start, contentLength))
+        return;
+      if (AsyncStreaming.useAsync(req, contentLength)) {
+        List<ByteRange> one = Collections.singletonList(new ByteRange(start, start + contentLength));
+        AsyncStreaming.read(req, res, filename, new FileRangesSource(file, one, null, contentType, fileSize));
+        return;
+      }
+      try (FileChannel in = new FileInputStream(file).getChannel()) {
+        transfer(in, start, contentLength, Channels.newChannel(res.getOutputStream()));
+      }
     }
 
     // @todo Split up this exception handling: those from file access vs those from dealing with response
@@ -270,6 +305,206 @@ public class ServletUtil {
     }
   }
 
+  // accept at most this many ranges; a request with more is answered with the whole file
+  static private final int MAX_RANGES = 100;
+  // use sendfile() for at least this many bytes, the same as the Tomcat default servlet
+  static private final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+  // a range of bytes in the file, end is exclusive
+  static class ByteRange {
+    final long start, end;
+
+    ByteRange(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    long length() {
+      return end - start;
+    }
+
+    String contentRange(long fileSize) {
+      return "bytes " + start + "-" + (end - 1) + "/" + fileSize;
+    }
+
+    byte[] partHeader(String boundary, String contentType, long fileSize) {
+      String header = "\r\n--" + boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: " + contentRange(fileSize) + "\r\n\r\n";
+      return header.getBytes(CDM.utf8Charset);
+    }
+  }
+
+  static private byte[] multipartEnd(String boundary) {
+    return ("\r\n--" + boundary + "--\r\n").getBytes(CDM.utf8Charset);
+  }
+
+  /**
+   * Parse a Range header, eg "bytes=0-499", "bytes=500-", "bytes=-500" or "bytes=0-99,200-299".
+   *
+   * @param rangeRequest value of the Range header
+   * @param fileSize     size of the file
+   * @return the ranges that can be satisfied, in the order requested; empty if none; null if the header is malformed
+   * or asks for too many ranges, meaning it should be ignored
+   */
+  static List<ByteRange> parseRange(String rangeRequest, long fileSize) {
+    if (!rangeRequest.startsWith("bytes=")) return null;
+
+    List<ByteRange> result = new ArrayList<>();
+    String[] specs = rangeRequest.substring(6).split(",");
+    if (specs.length > MAX_RANGES) return null;
+    for (String spec : specs) {
+      spec = spec.trim();
+      int pos = spec.indexOf('-');
+      if (pos < 0) return null;
+      long start, end;
+      try {
+        if (pos == 0) { // the last n bytes
+          long n = Long.parseLong(spec.substring(1));
+          start = Math.max(0, fileSize - n);
+          end = fileSize;
+        } else {
+          start = Long.parseLong(spec.substring(0, pos));
+          String endString = spec.substring(pos + 1);
+          if (endString.length() == 0) {
+            end = fileSize;
+          } else {
+            long last = Long.parseLong(endString);
+            if (last < start) return null;
+            end = Math.min(last, fileSize - 1) + 1;
+          }
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (start < end) // otherwise cant be satisfied
+        result.add(new ByteRange(start, end));
+    }
+    return result;
+  }
+
+  // changes when the file is modified
+  static private String makeETag(long fileSize, long lastModified) {
+    return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(fileSize) + "\"";
+  }
+
+  // does the If-None-Match or If-Range header value match the etag; strong comparison doesnt match weak tags
+  static private boolean matchETag(String header, String etag, boolean strong) {
+    for (String tag : header.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*")) return !strong;
+      if (tag.startsWith("W/")) {
+        if (strong) continue;
+        tag = tag.substring(2);
+      }
+      if (tag.equals(etag)) return true;
+    }
+    return false;
+  }
+
+  // If-Range is an etag or a date; if it doesnt match the file has changed, and the whole file is sent
+  static private boolean isIfRangeOk(HttpServletRequest req, String etag, long lastModified) {
+    String ifRange = req.getHeader("If-Range");
+    if (ifRange == null) return true;
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+      return matchETag(ifRange, etag, true);
+    try {
+      long date = req.getDateHeader("If-Range");
+      return date / 1000 == lastModified / 1000; // HTTP dates have a resolution of seconds
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  // let the servlet container send the file from the kernel, see the Tomcat NIO and APR connectors
+  static private boolean useSendfile(HttpServletRequest req, File file, long start, long length) throws IOException {
+    if (length < SENDFILE_MIN_SIZE || !Boolean.TRUE.equals(req.getAttribute("org.apache.tomcat.sendfile.support")))
+      return false;
+    req.setAttribute("org.apache.tomcat.sendfile.filename", file.getCanonicalPath());
+    req.setAttribute("org.apache.tomcat.sendfile.start", start);
+    req.setAttribute("org.apache.tomcat.sendfile.end", start + length);
+    return true;
+  }
+
+  // reads the ranges of a file for AsyncStreaming, with the part headers when sending multipart/byteranges
+  static class FileRangesSource implements AsyncStreaming.Source {
+    private final FileChannel in;
+    private final List<ByteRange> ranges;
+    private final String boundary, contentType; // boundary is null for a single range
+    private final long fileSize;
+
+    private int next;          // next range
+    private long pos, end;     // what is left of the current range
+    private byte[] header;     // what is left of a part header or the multipart end
+    private int headerPos;
+    private boolean ended;     // multipart end was added
+
+    FileRangesSource(File file, List<ByteRange> ranges, String boundary, String contentType, long fileSize) throws IOException {
+      this.in = new FileInputStream(file).getChannel();
+      this.ranges = ranges;
+      this.boundary = boundary;
+      this.contentType = contentType;
+      this.fileSize = fileSize;
+    }
+
+    @Override
+    public int read(byte[] buff) throws IOException {
+      int count = 0;
+      while (count < buff.length) {
+        if (header != null) {
+          int n = Math.min(buff.length - count, header.length - headerPos);
+          System.arraycopy(header, headerPos, buff, count, n);
+          count += n;
+          headerPos += n;
+          if (headerPos == header.length) header = null;
+
+        } else if (pos < end) {
+          int want = (int) Math.min(buff.length - count, end - pos);
+          int n = in.read(ByteBuffer.wrap(buff, count, want), pos);
+          if (n <= 0)
+            throw new IOException("File transfer not complete: file is shorter than " + end + " bytes");
+          count += n;
+          pos += n;
+
+        } else if (next < ranges.size()) {
+          ByteRange range = ranges.get(next++);
+          pos = range.start;
+          end = range.end;
+          if (boundary != null) setHeader(range.partHeader(boundary, contentType, fileSize));
+
+        } else if (boundary != null && !ended) {
+          setHeader(multipartEnd(boundary));
+          ended = true;
+
+        } else {
+          break;
+        }
+      }
+      return (count == 0) ? -1 : count;
+    }
+
+    private void setHeader(byte[] header) {
+      this.header = header;
+      this.headerPos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  static private void transfer(FileChannel in, long start, long length, WritableByteChannel out) throws IOException {
+    long pos = start;
+    long want = length;
+    while (want > 0) {
+      long did = in.transferTo(pos, want, out);
+      if (did <= 0)
+        throw new IOException("File transfer not complete: file is shorter than " + (start + length) + " bytes");
+      pos += did;
+      want -= did;
+    }
+  }
+
   /**
    * Send given content string as the HTTP response.
    *
@@ -0,0 +1,127 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.servlet.filter;
+
+import thredds.server.exception.ServiceUnavailableException;
+import thredds.servlet.RequestAdmission;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Admits each request through RequestAdmission, holding its slots until the response is complete.
+ * Requests that are not admitted get 503 with a Retry-After header.
+ */
+public class RequestAdmissionFilter implements javax.servlet.Filter {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RequestAdmissionFilter.class);
+
+  public void init(FilterConfig filterConfig) throws ServletException {
+  }
+
+  public void destroy() {
+  }
+
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+          throws IOException, ServletException {
+
+    if (!(servletRequest instanceof HttpServletRequest) || !(servletResponse instanceof HttpServletResponse)) {
+      filterChain.doFilter(servletRequest, servletResponse);
+      return;
+    }
+
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    HttpServletResponse response = (HttpServletResponse) servletResponse;
+    RequestAdmission.Admission admission;
+    try {
+      admission = RequestAdmission.admit(request);
+    } catch (ServiceUnavailableException e) {
+      log.debug("Reject request {}: {}", request.getRequestURI(), e.getMessage());
+      sendServiceUnavailable(response, e);
+      return;
+    }
+
+    if (admission == null) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    boolean ok = false;
+    try {
+      filterChain.doFilter(request, response);
+      ok = true;
+
+    } finally {
+      if (ok && request.isAsyncStarted()) // release when the response is complete
+        request.getAsyncContext().addListener(new Listener(admission));
+      else
+        admission.release();
+    }
+  }
+
+  /**
+   * Send 503 with a Retry-After header.
+   * @param response send on this
+   * @param e the reason
+   * @throws IOException on write error
+   */
+  static public void sendServiceUnavailable(HttpServletResponse response, ServiceUnavailableException e) throws IOException {
+    response.setHeader("Retry-After", Integer.toString(e.getRetryAfter()));
+    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+  }
+
+  static private class Listener implements AsyncListener {
+    private final RequestAdmission.Admission admission;
+
+    Listener(RequestAdmission.Admission admission) {
+      this.admission = admission;
+    }
+
+    public void onComplete(AsyncEvent event) throws IOException {
+      admission.release();
+    }
+
+    public void onTimeout(AsyncEvent event) throws IOException {
+      admission.release();
+    }
+
+    public void onError(AsyncEvent event) throws IOException {
+      admission.release();
+    }
+
+    public void onStartAsync(AsyncEvent event) throws IOException {
+      event.getAsyncContext().addListener(this);  // dispatched again, keep listening
+    }
+  }
+}
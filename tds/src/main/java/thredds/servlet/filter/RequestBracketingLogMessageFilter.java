@@ -40,6 +40,7 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Wraps a request with the UsageLog.setup and UsageLog.closing log messages
@@ -80,8 +81,44 @@ public class RequestBracketingLogMessageFilter implements javax.servlet.Filter {
 
     filterChain.doFilter(request, response);
 
+    if (request.isAsyncStarted()) {  // log the closing message when the response is complete
+      request.getAsyncContext().addListener(new Listener(MDC.getCopyOfContextMap(), response));
+      MDC.clear();
+      return;
+    }
+
     log.info(UsageLog.closingMessageForRequestContext(response.getHttpStatusCode(), response.getHttpResponseBodyLength()));
     MDC.clear();
   }
 
+  private class Listener implements AsyncListener {
+    private final Map<String, String> context;
+    private final TdsServletResponseWrapper response;
+
+    Listener(Map<String, String> context, TdsServletResponseWrapper response) {
+      this.context = context;
+      this.response = response;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+      if (context != null)
+        MDC.setContextMap(context);
+      log.info(UsageLog.closingMessageForRequestContext(response.getHttpStatusCode(), response.getHttpResponseBodyLength()));
+      MDC.clear();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+  }
+
 }
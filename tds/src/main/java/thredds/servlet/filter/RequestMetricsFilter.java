@@ -0,0 +1,249 @@
+/*
+ * Copyright 1998-2015 John Caron and University Corporation for Atmospheric Research/Unidata
+ *
+ *  Portions of this software were developed by the Unidata Program at the
+ *  University Corporation for Atmospheric Research.
+ *
+ *  Access and use of this software shall impose the following obligations
+ *  and understandings on the user. The user is granted the right, without
+ *  any fee or cost, to use, copy, modify, alter, enhance and distribute
+ *  this software, and any derivative works thereof, and its supporting
+ *  documentation for any purpose whatsoever, provided that this entire
+ *  notice appears in all copies of the software, derivative works and
+ *  supporting documentation.  Further, UCAR requests that the user credit
+ *  UCAR/Unidata in any publications that result from the use of this
+ *  software or in any product that includes this software. The names UCAR
+ *  and/or Unidata, however, may not be used in any advertising or publicity
+ *  to endorse or promote any products or commercial entity unless specific
+ *  written permission is obtained from UCAR/Unidata. The user also
+ *  understands that UCAR/Unidata is not obligated to provide the user with
+ *  any support, consulting, training or assistance of any kind with regard
+ *  to the use, operation and performance of this software nor to provide
+ *  the user with any updates, revisions, new versions or "bug fixes."
+ *
+ *  THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ *  INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ *  FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ *  NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ *  WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package thredds.servlet.filter;
+
+import thredds.servlet.RequestMetrics;
+import ucar.unidata.io.RandomAccessFile;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Records the latency, bytes read and sent, and status of each request in RequestMetrics.
+ * Should be first in the filter chain, so that it sees the bytes that are actually sent.
+ * <p>
+ * Bytes read are those read through RandomAccessFile by the request thread, plus files sent with sendfile.
+ * Bytes sent through getWriter() are counted as chars.
+ */
+public class RequestMetricsFilter implements javax.servlet.Filter {
+
+  public void init(FilterConfig filterConfig) throws ServletException {
+  }
+
+  public void destroy() {
+  }
+
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+          throws IOException, ServletException {
+
+    if (!(servletRequest instanceof HttpServletRequest) || !(servletResponse instanceof HttpServletResponse)) {
+      filterChain.doFilter(servletRequest, servletResponse);
+      return;
+    }
+
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    CountingResponseWrapper response = new CountingResponseWrapper((HttpServletResponse) servletResponse);
+    RequestMetrics.Service service = RequestMetrics.getService(request);
+
+    long start = System.nanoTime();
+    long startRead = RandomAccessFile.getThreadBytesRead();
+    service.start();
+    boolean ok = false;
+    try {
+      filterChain.doFilter(request, response);
+      ok = true;
+
+    } finally {
+      long read = RandomAccessFile.getThreadBytesRead() - startRead;
+      if (ok && request.isAsyncStarted()) {   // finish when the response is complete
+        request.getAsyncContext().addListener(new Listener(service, start, read, response));
+      } else {
+        finish(service, start, read, ok ? response.getHttpStatusCode() : HttpServletResponse.SC_INTERNAL_SERVER_ERROR, request, response);
+      }
+    }
+  }
+
+  static private void finish(RequestMetrics.Service service, long start, long read, int status, ServletRequest request, CountingResponseWrapper response) {
+    long sent = response.getBytesSent();
+
+    // ServletUtil.returnFile() may hand the file to Tomcat's sendfile
+    Object sendfileStart = request.getAttribute("org.apache.tomcat.sendfile.start");
+    Object sendfileEnd = request.getAttribute("org.apache.tomcat.sendfile.end");
+    if (sendfileStart instanceof Long && sendfileEnd instanceof Long) {
+      long length = (Long) sendfileEnd - (Long) sendfileStart;
+      read += length;
+      sent += length;
+    }
+
+    service.finish(System.nanoTime() - start, status, read, sent);
+  }
+
+  static private class Listener implements AsyncListener {
+    private final RequestMetrics.Service service;
+    private final long start, read;
+    private final CountingResponseWrapper response;
+    private boolean done;
+
+    Listener(RequestMetrics.Service service, long start, long read, CountingResponseWrapper response) {
+      this.service = service;
+      this.start = start;
+      this.read = read;
+      this.response = response;
+    }
+
+    private synchronized void finish(AsyncEvent event, int status) {
+      if (done) return;
+      done = true;
+      RequestMetricsFilter.finish(service, start, read, status, event.getSuppliedRequest(), response);
+    }
+
+    public void onComplete(AsyncEvent event) throws IOException {
+      finish(event, response.getHttpStatusCode());
+    }
+
+    public void onTimeout(AsyncEvent event) throws IOException {
+      finish(event, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    public void onError(AsyncEvent event) throws IOException {
+      finish(event, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    public void onStartAsync(AsyncEvent event) throws IOException {
+      event.getAsyncContext().addListener(this);  // dispatched again, keep listening
+    }
+  }
+
+  /**
+   * Counts the bytes written to the response.
+   */
+  static class CountingResponseWrapper extends TdsServletResponseWrapper {
+    private CountingOutputStream out;
+    private CountingWriter countingWriter;
+    private PrintWriter writer;
+
+    CountingResponseWrapper(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (out == null)
+        out = new CountingOutputStream(super.getOutputStream());
+      return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        countingWriter = new CountingWriter(super.getWriter());
+        writer = new PrintWriter(countingWriter);
+      }
+      return writer;
+    }
+
+    long getBytesSent() {
+      long count = 0;
+      if (out != null) count += out.count;
+      if (countingWriter != null) count += countingWriter.count;
+      return count;
+    }
+  }
+
+  static private class CountingOutputStream extends ServletOutputStream {
+    private final ServletOutputStream out;
+    private volatile long count;   // written by one thread at a time
+
+    CountingOutputStream(ServletOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      out.setWriteListener(writeListener);
+    }
+  }
+
+  static private class CountingWriter extends Writer {
+    private final Writer out;
+    private volatile long count;
+
+    CountingWriter(Writer out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      out.write(cbuf, off, len);
+      count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      out.write(str, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+}
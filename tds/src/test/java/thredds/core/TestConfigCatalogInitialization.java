@@ -0,0 +1,79 @@
+package thredds.core;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.client.catalog.Dataset;
+import thredds.server.catalog.ConfigCatalog;
+import thredds.server.catalog.tracker.DataRootExt;
+import thredds.server.catalog.tracker.DatasetTracker;
+import thredds.server.catalog.tracker.DatasetTrackerNoop;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that reading the config catalogs in parallel gives the same result as reading them serially.
+ */
+public class TestConfigCatalogInitialization {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  // record everything the initialization reports, in order
+  private static class RecordingCallback implements DatasetTracker.Callback {
+    List<String> events = new ArrayList<>();
+
+    public void hasDataRoot(DataRootExt dataRoot) {
+      events.add("dataRoot " + dataRoot.getPath() + " " + dataRoot.getType() + " " + dataRoot.getCatLocation());
+    }
+
+    public void hasDataset(Dataset ds) {
+      events.add("dataset " + ds.getName() + " " + ds.getID());
+    }
+
+    public void hasTrackedDataset(Dataset ds) {
+      events.add("tracked " + ds.getName());
+    }
+
+    public void hasNcml(Dataset ds) {
+      events.add("ncml " + ds.getName());
+    }
+
+    public void hasRestriction(Dataset ds) {
+      events.add("restrict " + ds.getName() + " " + ds.getRestrictAccess());
+    }
+
+    public void hasCatalogRef(ConfigCatalog cat) {
+      events.add("catalog " + cat.getUriString());
+    }
+
+    public void finish() {
+    }
+  }
+
+  @Test
+  public void testParallelSameAsSerial() throws Exception {
+    File contentDir = new File("../tds/src/test/content/thredds");
+    RecordingCallback callback = new RecordingCallback();
+
+    // the constructor reads with the default number of threads
+    ConfigCatalogInitialization reader = new ConfigCatalogInitialization(ConfigCatalogInitialization.ReadMode.always, contentDir,
+            tempFolder.newFolder().getPath(), new DatasetTrackerNoop(), new AllowedServices(), callback, 0);
+    List<String> parallel = callback.events;
+    Assert.assertTrue(parallel.size() > 10);
+
+    reader.setNumberOfThreads(8);
+    callback.events = new ArrayList<>();
+    reader.reread(ConfigCatalogInitialization.ReadMode.always, true);
+    Assert.assertEquals(parallel, callback.events);
+
+    reader.setNumberOfThreads(1);
+    callback.events = new ArrayList<>();
+    reader.reread(ConfigCatalogInitialization.ReadMode.always, true);
+    Assert.assertEquals(parallel, callback.events);
+  }
+
+}
@@ -0,0 +1,173 @@
+package thredds.server.catalog;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.catalog.tracker.DataRootTracker;
+import ucar.unidata.util.StringUtil2;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Test DataRootPathMatcher, and compare it with the TreeSet matcher it replaced.
+ * Run main() for a benchmark.
+ */
+public class TestDataRootPathMatcher {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  // the previous implementation
+  static class TreeSetMatcher {
+    private final TreeSet<String> treeSet = new TreeSet<>((s1, s2) -> s2.compareTo(s1)); // reverse sort
+
+    void add(String path) {
+      treeSet.add(path);
+    }
+
+    String findLongestPathMatch(String reqPath) {
+      SortedSet<String> tail = treeSet.tailSet(reqPath);
+      if (tail.isEmpty()) return null;
+      String after = tail.first();
+      if (reqPath.startsWith(after))
+        return tail.first();
+      for (String key : tail) {
+        if (reqPath.startsWith(key))
+          return key;
+        if (StringUtil2.match(reqPath, key) == 0)
+          break;
+      }
+      return null;
+    }
+  }
+
+  static private DataRootPathMatcher makeMatcher(String trackerDir, List<String> paths) {
+    DataRootPathMatcher matcher = new DataRootPathMatcher(null, new DataRootTracker(trackerDir, true, null));
+    for (String path : paths)
+      matcher.addRoot(new DatasetRootConfig(path, "/data/" + path), "catalog.xml", true);
+    return matcher;
+  }
+
+  @Test
+  public void testMatch() throws IOException {
+    DataRootPathMatcher m = makeMatcher(tempFolder.newFolder().getPath(),
+            Arrays.asList("thredds/dods/test/longer", "thredds/dods/test", "thredds/dods/tester", "thredds/dods/short",
+                    "myworld", "mynot", "ncmodels", "ncmodels/bzipped", "trailing/"));
+
+    Assert.assertNull(m.findLongestPathMatch("nope"));
+    Assert.assertEquals("thredds/dods/test", m.findLongestPathMatch("thredds/dods/test"));
+    Assert.assertEquals("thredds/dods/test", m.findLongestPathMatch("thredds/dods/test/lo"));
+    Assert.assertEquals("thredds/dods/test", m.findLongestPathMatch("thredds/dods/test/longer.nc"));
+    Assert.assertEquals("thredds/dods/test/longer", m.findLongestPathMatch("thredds/dods/test/longer/donger"));
+    Assert.assertEquals("thredds/dods/tester", m.findLongestPathMatch("thredds/dods/tester/file.nc"));
+    Assert.assertEquals("ncmodels", m.findLongestPathMatch("ncmodels/canonical"));
+    Assert.assertEquals("ncmodels/bzipped", m.findLongestPathMatch("ncmodels/bzipped/file.nc"));
+    Assert.assertNull(m.findLongestPathMatch("thredds/dods"));
+    Assert.assertNull(m.findLongestPathMatch("/my"));
+    Assert.assertNull(m.findLongestPathMatch("mysnot"));
+
+    // only whole segments match
+    Assert.assertNull(m.findLongestPathMatch("myworldly"));
+    Assert.assertNull(m.findLongestPathMatch("ncmodelsX/file.nc"));
+
+    // a trailing "/" must be in the request
+    Assert.assertEquals("trailing/", m.findLongestPathMatch("trailing/file.nc"));
+    Assert.assertNull(m.findLongestPathMatch("trailing"));
+
+    Assert.assertTrue(m.contains("ncmodels/bzipped"));
+    Assert.assertFalse(m.contains("ncmodels/bz"));
+    Assert.assertEquals("/data/ncmodels", m.findDataRoot("ncmodels/x.nc").getDirLocation());
+  }
+
+  @Test
+  public void testCompareTreeSet() throws IOException {
+    List<String> paths = makePaths(2000);
+    DataRootPathMatcher m = makeMatcher(tempFolder.newFolder().getPath(), paths);
+    TreeSetMatcher old = new TreeSetMatcher();
+    for (String path : paths) old.add(path);
+
+    int nsegment = 0;
+    for (String reqPath : makeRequests(paths, 10000)) {
+      String want = null;
+      for (String path : paths) {
+        if (isSegmentMatch(reqPath, path) && (want == null || path.length() > want.length()))
+          want = path;
+      }
+      Assert.assertEquals(reqPath, want, m.findLongestPathMatch(reqPath));
+
+      // the TreeSet also matched part of a segment, eg "run96" for "run964/file.nc"
+      String oldMatch = old.findLongestPathMatch(reqPath);
+      if (oldMatch != null && !isSegmentMatch(reqPath, oldMatch))
+        nsegment++;
+      else
+        Assert.assertEquals(reqPath, oldMatch, want);
+    }
+    Assert.assertTrue(nsegment > 0);
+  }
+
+  static private boolean isSegmentMatch(String reqPath, String path) {
+    return reqPath.startsWith(path) && (path.endsWith("/") || reqPath.length() == path.length() || reqPath.charAt(path.length()) == '/');
+  }
+
+  static List<String> makePaths(int n) {
+    Random random = new Random(1234);
+    String[] models = {"GFS", "NAM", "RAP", "HRRR", "SREF", "WW3", "RTOFS", "NDFD"};
+    List<String> result = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      String model = models[random.nextInt(models.length)];
+      switch (i % 3) {
+        case 0: result.add("model/" + model + "/run" + i); break;
+        case 1: result.add("model/" + model + "/run" + i + "/grib"); break;
+        default: result.add("obs/station" + i); break;
+      }
+    }
+    return result;
+  }
+
+  static List<String> makeRequests(List<String> paths, int n) {
+    Random random = new Random(5678);
+    List<String> result = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      String path = paths.get(random.nextInt(paths.size()));
+      switch (i % 4) {
+        case 0: result.add(path + "/file" + i + ".nc"); break;
+        case 1: result.add(path + "/sub/dir/file.grib2"); break;
+        case 2: result.add(path.substring(0, path.lastIndexOf('/')) + "/nope/file.nc"); break;
+        default: result.add("unknown/" + path + "/file.nc"); break;
+      }
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int nroots = 50 * 1000;
+    List<String> paths = makePaths(nroots);
+    List<String> requests = makeRequests(paths, 100 * 1000);
+    java.io.File trackerDir = java.nio.file.Files.createTempDirectory("TestDataRootPathMatcher").toFile();
+    trackerDir.deleteOnExit();
+
+    DataRootPathMatcher m = makeMatcher(trackerDir.getPath(), paths);
+    TreeSetMatcher old = new TreeSetMatcher();
+    for (String path : paths) old.add(path);
+
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      int count = 0;
+      for (String reqPath : requests)
+        if (old.findLongestPathMatch(reqPath) != null) count++;
+      long tookOld = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int count2 = 0;
+      for (String reqPath : requests)
+        if (m.findLongestPathMatch(reqPath) != null) count2++;
+      long tookNew = System.nanoTime() - start;
+
+      System.out.printf("%d roots, %d requests: TreeSet %d nanosecs/request (%d matched), trie %d nanosecs/request (%d matched)%n",
+              nroots, requests.size(), tookOld / requests.size(), count, tookNew / requests.size(), count2);
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package thredds.server.catalog;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.inventory.MFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Test the DatasetScan directory listing cache.
+ */
+public class TestDirectoryListingCache {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path makeDir(String... names) throws IOException {
+    File dir = tempFolder.newFolder();
+    for (String name : names)
+      Assert.assertTrue(new File(dir, name).createNewFile());
+    return dir.toPath();
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    Path dir = makeDir("c.nc", "a.nc", "b.nc");
+    Assert.assertTrue(new File(dir.toFile(), "sub").mkdir());
+    List<MFile> files = DirectoryListingCache.scan(dir);
+    Assert.assertEquals(4, files.size());
+    Assert.assertEquals("a.nc", files.get(0).getName());
+    Assert.assertEquals("b.nc", files.get(1).getName());
+    Assert.assertEquals("c.nc", files.get(2).getName());
+    Assert.assertEquals("sub", files.get(3).getName());
+    Assert.assertTrue(files.get(3).isDirectory());
+  }
+
+  @Test
+  public void testRecheck() throws IOException {
+    Path dir = makeDir("a.nc", "b.nc");
+    try (DirectoryListingCache cache = new DirectoryListingCache(1000, 0, 0, false)) {
+      List<MFile> files = cache.getListing(dir);
+      Assert.assertEquals(2, files.size());
+      Assert.assertSame(files, cache.getListing(dir));
+      Assert.assertEquals(1, cache.getStats().hitCount());
+
+      Assert.assertTrue(new File(dir.toFile(), "c.nc").createNewFile());
+      Assert.assertTrue(dir.toFile().setLastModified(System.currentTimeMillis() + 10 * 1000));
+      Assert.assertEquals(3, cache.getListing(dir).size());
+      Assert.assertEquals(1, cache.getInvalidations());
+    }
+  }
+
+  @Test
+  public void testFreshTimes() throws IOException {
+    Path dir = makeDir("a.nc");
+    try (DirectoryListingCache cache = new DirectoryListingCache(1000, 3600, 0, false)) {
+      Assert.assertEquals(0, cache.getListing(dir).get(0).getLength());
+
+      // writing to a file does not change the directory
+      Files.write(dir.resolve("a.nc"), new byte[10]);
+      Assert.assertEquals(0, cache.getListing(dir).get(0).getLength());
+      Assert.assertEquals(10, cache.getListing(dir, true).get(0).getLength());
+    }
+  }
+
+  @Test
+  public void testWatch() throws Exception {
+    Path dir = makeDir("a.nc");
+    try (DirectoryListingCache cache = new DirectoryListingCache(1000, 3600, 0, true)) {
+      Assert.assertEquals(1, cache.getListing(dir).size());
+      Assert.assertTrue(new File(dir.toFile(), "b.nc").createNewFile());
+
+      // events are delivered asynchronously, and may be polled
+      List<MFile> files = cache.getListing(dir);
+      for (int i = 0; i < 100 && files.size() == 1; i++) {
+        Thread.sleep(100);
+        files = cache.getListing(dir);
+      }
+      Assert.assertEquals(2, files.size());
+    }
+  }
+
+  @Test
+  public void testMaxFiles() throws IOException {
+    Path dir1 = makeDir("a.nc", "b.nc", "c.nc");
+    Path dir2 = makeDir("d.nc", "e.nc", "f.nc");
+    try (DirectoryListingCache cache = new DirectoryListingCache(4, 3600, 0, false)) {
+      cache.getListing(dir1);
+      cache.getListing(dir2);
+      Assert.assertEquals(1, cache.getNumberOfDirectories());
+      Assert.assertEquals("d.nc", cache.getListing(dir2).get(0).getName());
+    }
+  }
+
+}
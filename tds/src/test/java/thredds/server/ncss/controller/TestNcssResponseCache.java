@@ -0,0 +1,141 @@
+package thredds.server.ncss.controller;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.ncss.params.NcssGridParamsBean;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TestNcssResponseCache {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private NcssGridParamsBean makeParams() {
+    NcssGridParamsBean params = new NcssGridParamsBean();
+    params.setVar(Arrays.asList("Temperature_isobaric", "Relative_humidity"));
+    params.setNorth(40.0);
+    params.setSouth(30.0);
+    params.setEast(-90.0);
+    params.setWest(-100.0);
+    params.setTime("2012-04-18T12:00:00Z");
+    return params;
+  }
+
+  private File writeTempFile(NcssResponseCache cache, String key, int size) throws IOException {
+    File f = cache.makeTempFile(key);
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(new byte[size]);
+    }
+    return f;
+  }
+
+  @Test
+  public void testCanonicalParams() {
+    NcssGridParamsBean params1 = makeParams();
+    NcssGridParamsBean params2 = makeParams();
+    params2.setNorth(40.000);
+    params2.setHorizStride(null);
+    params2.setTime("2012-04-18T12:00:00z ");
+    Assert.assertEquals(params1.toCanonicalString(), params2.toCanonicalString());
+
+    params2.setHorizStride(2);
+    Assert.assertNotEquals(params1.toCanonicalString(), params2.toCanonicalString());
+
+    // variable order is the order in the file
+    params2 = makeParams();
+    params2.setVar(Arrays.asList("Relative_humidity", "Temperature_isobaric"));
+    Assert.assertNotEquals(params1.toCanonicalString(), params2.toCanonicalString());
+  }
+
+  @Test
+  public void testTimeDependent() {
+    NcssGridParamsBean params = makeParams();
+    Assert.assertFalse(params.isTimeDependent());
+
+    params.setTime("present");
+    Assert.assertTrue(params.isTimeDependent());
+
+    params.setTime(null);
+    Assert.assertTrue(params.isTimeDependent()); // defaults to present
+
+    params.setTime_start("2012-04-18T00:00:00Z");
+    params.setTime_end("present");
+    Assert.assertTrue(params.isTimeDependent());
+
+    params.setTime_end("2012-04-19T00:00:00Z");
+    Assert.assertFalse(params.isTimeDependent());
+  }
+
+  @Test
+  public void testKey() {
+    NcssResponseCache cache = new NcssResponseCache(tempFolder.getRoot().getPath(), 1000, 500);
+    String canon = makeParams().toCanonicalString();
+    String key = cache.makeKey("test/dataset.nc", 1234L, "NETCDF3", canon);
+    Assert.assertNotNull(key);
+    Assert.assertEquals(key, cache.makeKey("test/dataset.nc", 1234L, "NETCDF3", canon));
+    Assert.assertNotEquals(key, cache.makeKey("test/dataset.nc", 1235L, "NETCDF3", canon));
+    Assert.assertNotEquals(key, cache.makeKey("test/dataset.nc", 1234L, "NETCDF4", canon));
+    Assert.assertNotEquals(key, cache.makeKey("test/other.nc", 1234L, "NETCDF3", canon));
+    Assert.assertNull(cache.makeKey("test/dataset.nc", -1L, "NETCDF3", canon)); // not a file
+
+    NcssResponseCache disabled = new NcssResponseCache(tempFolder.getRoot().getPath(), 0, 0);
+    Assert.assertNull(disabled.makeKey("test/dataset.nc", 1234L, "NETCDF3", canon));
+  }
+
+  @Test
+  public void testETag() {
+    String etag = NcssResponseCache.getETag("abc");
+    Assert.assertEquals("\"abc\"", etag);
+    Assert.assertTrue(NcssResponseCache.matches("\"abc\"", etag));
+    Assert.assertTrue(NcssResponseCache.matches("\"xyz\", W/\"abc\"", etag));
+    Assert.assertTrue(NcssResponseCache.matches("*", etag));
+    Assert.assertFalse(NcssResponseCache.matches("\"xyz\"", etag));
+    Assert.assertFalse(NcssResponseCache.matches(null, etag));
+  }
+
+  @Test
+  public void testCommitAndEvict() throws IOException {
+    File dir = tempFolder.newFolder();
+    NcssResponseCache cache = new NcssResponseCache(dir.getPath(), 1000, 500);
+    Assert.assertNull(cache.get("a"));
+
+    File fa = cache.commit("a", writeTempFile(cache, "a", 400));
+    Assert.assertNotNull(fa);
+    Assert.assertEquals(fa, cache.get("a"));
+    Assert.assertEquals(400, fa.length());
+
+    Assert.assertNotNull(cache.commit("b", writeTempFile(cache, "b", 400)));
+    Assert.assertNotNull(cache.get("a")); // a is now more recently used than b
+
+    // too big
+    File big = writeTempFile(cache, "c", 600);
+    Assert.assertNull(cache.commit("c", big));
+    Assert.assertFalse(big.exists());
+
+    Assert.assertNotNull(cache.commit("d", writeTempFile(cache, "d", 400)));
+    Assert.assertEquals(2, cache.getNumberOfEntries());
+    Assert.assertEquals(800, cache.getTotalSize());
+    Assert.assertNull(cache.get("b"));
+    Assert.assertNotNull(cache.get("a"));
+    Assert.assertNotNull(cache.get("d"));
+
+    // aborted responses leave nothing behind
+    File temp = writeTempFile(cache, "e", 100);
+    cache.abort(temp);
+    Assert.assertFalse(temp.exists());
+
+    // picked up on restart, leftover temp files are removed
+    writeTempFile(cache, "f", 100);
+    NcssResponseCache cache2 = new NcssResponseCache(dir.getPath(), 1000, 500);
+    Assert.assertEquals(2, cache2.getNumberOfEntries());
+    Assert.assertNotNull(cache2.get("a"));
+    Assert.assertEquals(2, dir.listFiles().length);
+  }
+
+}
@@ -0,0 +1,101 @@
+package thredds.server.opendap;
+
+import opendap.dap.DAS;
+import opendap.servers.ServerDDS;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Test that GuardedDatasetCacheAndClone only clones the DDS and DAS when a session shares them,
+ * and the OpendapTextCache.
+ */
+public class TestGuardedDatasetCacheAndClone {
+  private static final String filename = TestDir.cdmLocalTestDataDir + "jan.nc";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String print(ServerDDS dds) {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    dds.print(bout);
+    return bout.toString();
+  }
+
+  @Test
+  public void testNoSession() throws Exception {
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      GuardedDatasetCacheAndClone gds = new GuardedDatasetCacheAndClone("jan.nc", ncfile, false);
+      ServerDDS dds1 = gds.getDDS();
+      ServerDDS dds2 = gds.getDDS();
+      Assert.assertNotSame(dds1, dds2); // the first one may have been changed by the request
+      Assert.assertEquals(print(new NcDDS("jan.nc", ncfile)), print(dds1));
+      Assert.assertEquals(print(dds1), print(dds2));
+
+      DAS das1 = gds.getDAS();
+      Assert.assertNotSame(das1, gds.getDAS());
+    }
+  }
+
+  @Test
+  public void testSession() throws Exception {
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      GuardedDatasetCacheAndClone gds = new GuardedDatasetCacheAndClone("jan.nc", ncfile, true);
+      ServerDDS dds1 = gds.getDDS();
+      ServerDDS dds2 = gds.getDDS();
+      Assert.assertNotSame(dds1, dds2);
+      Assert.assertEquals(print(dds1), print(dds2));
+      Assert.assertNotSame(gds.getDAS(), gds.getDAS());
+    }
+  }
+
+  @Test
+  public void testTextCache() throws Exception {
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      GuardedDatasetCacheAndClone gds = new GuardedDatasetCacheAndClone("jan.nc", ncfile, false);
+      String ddsKey = gds.getCacheKey("dds");
+      Assert.assertNotNull(ddsKey);
+      Assert.assertNotEquals(ddsKey, gds.getCacheKey("das"));
+      Assert.assertNotEquals(ddsKey, new GuardedDatasetCacheAndClone("other.nc", ncfile, false).getCacheKey("dds"));
+
+      OpendapTextCache cache = new OpendapTextCache(100 * 1000);
+      Assert.assertNull(cache.get(ddsKey));
+      Assert.assertNull(cache.get(null));
+      cache.put(null, new byte[10]); // ignored
+
+      byte[] text = print(gds.getDDS()).getBytes("UTF-8");
+      cache.put(ddsKey, text);
+      Assert.assertSame(text, cache.get(ddsKey));
+
+      cache.put(ddsKey + "2", new byte[100 * 1000]); // over the limit
+      Assert.assertTrue(cache.size() < 2);
+    }
+  }
+
+  // NcML can change without the underlying file changing
+  @Test
+  public void testNcmlNotCached() throws Exception {
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(filename)) {
+      Assert.assertNotNull(new GuardedDatasetCacheAndClone("jan.nc", ncd, false).getCacheKey("dds"));
+    }
+
+    File ncml = tempFolder.newFile("jan.ncml");
+    String text = "<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2' location='" +
+            new File(filename).getAbsolutePath().replace('\\', '/') + "'>\n" +
+            "  <attribute name='title' value='renamed'/>\n</netcdf>\n";
+    Files.write(ncml.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(ncml.getPath())) {
+      Assert.assertTrue(ncd.getLastModified() > 0);
+      Assert.assertNull(new GuardedDatasetCacheAndClone("jan.ncml", ncd, false).getCacheKey("dds"));
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package thredds.server.wms;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestWmsTileCache {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Map<String, String[]> makeParams(String bbox) {
+    Map<String, String[]> params = new HashMap<>();
+    params.put("REQUEST", new String[]{"GetMap"});
+    params.put("LAYERS", new String[]{"Temperature_isobaric"});
+    params.put("STYLES", new String[]{"default-scalar/default"});
+    params.put("TIME", new String[]{"2012-04-18T12:00:00Z"});
+    params.put("ELEVATION", new String[]{"500"});
+    params.put("BBOX", new String[]{bbox});
+    params.put("WIDTH", new String[]{"256"});
+    params.put("HEIGHT", new String[]{"256"});
+    return params;
+  }
+
+  private WmsTileCache.Tile makeTile(int size) {
+    return new WmsTileCache.Tile("image/png", new byte[size]);
+  }
+
+  @Test
+  public void testKey() {
+    String key = WmsTileCache.makeKey("test/file.nc", 1000, makeParams("0,0,90,90"));
+    Assert.assertNotNull(key);
+
+    // names are case insensitive
+    Map<String, String[]> params = makeParams("0,0,90,90");
+    params.put("layers", params.remove("LAYERS"));
+    Assert.assertEquals(key, WmsTileCache.makeKey("test/file.nc", 1000, params));
+
+    Assert.assertNotEquals(key, WmsTileCache.makeKey("test/file.nc", 1000, makeParams("0,0,90,45")));
+    Assert.assertNotEquals(key, WmsTileCache.makeKey("test/file.nc", 1001, makeParams("0,0,90,90")));
+    Assert.assertNotEquals(key, WmsTileCache.makeKey("test/other.nc", 1000, makeParams("0,0,90,90")));
+    Assert.assertNull(WmsTileCache.makeKey("test/file.nc", -1, makeParams("0,0,90,90")));
+  }
+
+  @Test
+  public void testMemory() {
+    WmsTileCache cache = new WmsTileCache(null, 250, 0, 200);
+    cache.put("a", makeTile(100));
+    cache.put("b", makeTile(100));
+    Assert.assertNotNull(cache.get("a"));
+    cache.put("c", makeTile(100)); // b is least recently used
+    Assert.assertNull(cache.get("b"));
+    Assert.assertNotNull(cache.get("a"));
+    Assert.assertNotNull(cache.get("c"));
+    Assert.assertEquals(200, cache.getMemorySize());
+
+    cache.put("d", makeTile(300)); // too big
+    Assert.assertNull(cache.get("d"));
+    Assert.assertEquals(3, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testDisk() throws IOException {
+    File dir = tempFolder.newFolder();
+    WmsTileCache cache = new WmsTileCache(dir.getPath(), 0, 1000, 1000);
+    cache.put("a", new WmsTileCache.Tile("image/gif", new byte[]{1, 2, 3}));
+    WmsTileCache.Tile tile = cache.get("a");
+    Assert.assertNotNull(tile);
+    Assert.assertEquals("image/gif", tile.getContentType());
+    Assert.assertArrayEquals(new byte[]{1, 2, 3}, tile.getData());
+
+    for (int i = 0; i < 5; i++)
+      cache.put("b" + i, makeTile(300));
+    Assert.assertTrue(cache.getDiskSize() <= 1000);
+    Assert.assertNull(cache.get("a"));
+    Assert.assertNull(cache.get("b0"));
+
+    // picked up by a new cache on the same directory
+    WmsTileCache cache2 = new WmsTileCache(dir.getPath(), 0, 1000, 1000);
+    Assert.assertEquals(cache.getDiskSize(), cache2.getDiskSize());
+    Assert.assertNotNull(cache2.get("b4"));
+  }
+
+  @Test
+  public void testCapture() throws IOException {
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    ThreddsWmsServlet.CapturingResponse capture = new ThreddsWmsServlet.CapturingResponse(res, 10);
+    capture.getOutputStream().write(new byte[]{1, 2, 3});
+    capture.getOutputStream().write(4);
+    Assert.assertArrayEquals(new byte[]{1, 2, 3, 4}, capture.getCaptured());
+    Assert.assertArrayEquals(new byte[]{1, 2, 3, 4}, res.getContentAsByteArray());
+
+    capture.getOutputStream().write(new byte[10]); // too big
+    Assert.assertNull(capture.getCaptured());
+    Assert.assertEquals(14, res.getContentAsByteArray().length);
+  }
+
+}
@@ -0,0 +1,215 @@
+package thredds.servlet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test that AsyncStreaming sends responses with a WriteListener, and buffers no more than it should.
+ */
+public class TestAsyncStreaming {
+  static private final int BUFFER_SIZE = 100 * 1000;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File file;
+  private byte[] contents;
+
+  @Before
+  public void setup() throws IOException {
+    AsyncStreaming.init(2, BUFFER_SIZE, 0, 60);
+    contents = new byte[1000 * 1000];
+    for (int i = 0; i < contents.length; i++)
+      contents[i] = (byte) (i * 31);
+    file = tempFolder.newFile("test.nc");
+    Files.write(file.toPath(), contents);
+  }
+
+  @After
+  public void shutdown() {
+    AsyncStreaming.shutdown();
+  }
+
+  // a client that takes one write each time it is ready
+  static private class SlowClient extends ServletOutputStream {
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private WriteListener listener;
+    private boolean ready;
+
+    @Override
+    public synchronized boolean isReady() {
+      return ready;
+    }
+
+    @Override
+    public synchronized void setWriteListener(WriteListener writeListener) {
+      this.listener = writeListener;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      Assert.assertTrue(ready);
+      received.write(b, off, len);
+      ready = false;
+    }
+
+    // what the container does when the client has taken the last write
+    void takeMore() throws IOException {
+      WriteListener wl;
+      synchronized (this) {
+        if (listener == null || ready) return;
+        ready = true;
+        wl = listener;
+      }
+      wl.onWritePossible();
+    }
+  }
+
+  static private class AsyncResponse extends MockHttpServletResponse {
+    final SlowClient client = new SlowClient();
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      return client;
+    }
+  }
+
+  private MockHttpServletRequest makeRequest() {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/thredds/fileServer/test.nc");
+    req.setAsyncSupported(true);
+    return req;
+  }
+
+  // play the client until the response is complete
+  private byte[] receive(MockHttpServletRequest req, AsyncResponse res) throws Exception {
+    long start = System.currentTimeMillis();
+    while (req.isAsyncStarted()) {
+      Assert.assertTrue(System.currentTimeMillis() - start < 10 * 1000);
+      res.client.takeMore();
+      Thread.sleep(1);
+    }
+    return res.client.received.toByteArray();
+  }
+
+  @Test
+  public void testUseAsync() {
+    MockHttpServletRequest req = makeRequest();
+    Assert.assertTrue(AsyncStreaming.useAsync(req, 1));
+    req.setAsyncSupported(false);
+    Assert.assertFalse(AsyncStreaming.useAsync(req, 1));
+
+    AsyncStreaming.init(2, BUFFER_SIZE, 1000, 60);
+    Assert.assertFalse(AsyncStreaming.useAsync(makeRequest(), 999));
+    Assert.assertTrue(AsyncStreaming.useAsync(makeRequest(), 1000));
+
+    MockHttpServletRequest head = makeRequest();
+    head.setMethod("HEAD");
+    Assert.assertFalse(AsyncStreaming.useAsync(head, 1000));
+
+    AsyncStreaming.shutdown();
+    Assert.assertFalse(AsyncStreaming.useAsync(makeRequest(), 1000));
+  }
+
+  // a response stream without a WriteListener, like HttpHeadFilter's
+  @Test
+  public void testNoWriteListener() throws Exception {
+    MockHttpServletRequest req = makeRequest();
+    AsyncResponse res = new AsyncResponse() {
+      @Override
+      public ServletOutputStream getOutputStream() {
+        return new SlowClient() {
+          @Override
+          public synchronized void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+    try {
+      AsyncStreaming.write(req, res, "test", out -> Assert.fail());
+      Assert.fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    Assert.assertFalse(req.isAsyncStarted()); // completed, not left for the timeout
+  }
+
+  @Test
+  public void testReturnFile() throws Exception {
+    MockHttpServletRequest req = makeRequest();
+    AsyncResponse res = new AsyncResponse();
+    ServletUtil.returnFile(req, res, file, "application/x-netcdf");
+    Assert.assertTrue(req.isAsyncStarted());
+    Assert.assertArrayEquals(contents, receive(req, res));
+
+    // multipart is the same as when sent synchronously
+    req = makeRequest();
+    req.addHeader("Range", "bytes=0-9, 500-70000,-5");
+    res = new AsyncResponse();
+    ServletUtil.returnFile(req, res, file, "application/x-netcdf");
+    byte[] async = receive(req, res);
+
+    MockHttpServletRequest syncReq = new MockHttpServletRequest("GET", "/thredds/fileServer/test.nc");
+    syncReq.addHeader("Range", "bytes=0-9, 500-70000,-5");
+    MockHttpServletResponse syncRes = new MockHttpServletResponse();
+    ServletUtil.returnFile(syncReq, syncRes, file, "application/x-netcdf");
+    String boundary = res.getContentType().substring(res.getContentType().indexOf('=') + 1);
+    String syncBoundary = syncRes.getContentType().substring(syncRes.getContentType().indexOf('=') + 1);
+    String want = syncRes.getContentAsString().replace(syncBoundary, boundary);
+    Assert.assertEquals(want, new String(async, "ISO-8859-1"));
+    Assert.assertEquals(async.length, res.getContentLength());
+  }
+
+  @Test
+  public void testProducer() throws Exception {
+    MockHttpServletRequest req = makeRequest();
+    AsyncResponse res = new AsyncResponse();
+    AtomicLong written = new AtomicLong();
+    AsyncStreaming.write(req, res, "test", out -> {
+      for (int i = 0; i < contents.length; i += 1000) {
+        out.write(contents, i, 1000);
+        written.addAndGet(1000);
+      }
+    });
+
+    // the producer stops when the buffer is full
+    Thread.sleep(200);
+    Assert.assertTrue(written.get() < contents.length);
+    Assert.assertTrue(written.get() <= 3 * BUFFER_SIZE);
+
+    Assert.assertArrayEquals(contents, receive(req, res));
+    Assert.assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+  }
+
+  @Test
+  public void testProducerFails() throws Exception {
+    MockHttpServletRequest req = makeRequest();
+    AsyncResponse res = new AsyncResponse();
+    AsyncStreaming.write(req, res, "test", out -> {
+      throw new IOException("failed");
+    });
+    receive(req, res);
+    Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, res.getStatus());
+  }
+
+}
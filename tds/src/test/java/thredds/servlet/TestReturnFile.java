@@ -0,0 +1,159 @@
+package thredds.servlet;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test range requests, multipart/byteranges and ETags in ServletUtil.returnFile().
+ */
+public class TestReturnFile {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File file;
+  private byte[] contents;
+
+  @Before
+  public void makeFile() throws IOException {
+    contents = new byte[100 * 1000];
+    for (int i = 0; i < contents.length; i++)
+      contents[i] = (byte) (i * 31);
+    file = tempFolder.newFile("test.nc");
+    Files.write(file.toPath(), contents);
+  }
+
+  private MockHttpServletResponse get(String... headers) throws IOException {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/thredds/fileServer/test.nc");
+    for (int i = 0; i < headers.length; i += 2)
+      req.addHeader(headers[i], headers[i + 1]);
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    ServletUtil.returnFile(req, res, file, "application/x-netcdf");
+    return res;
+  }
+
+  @Test
+  public void testWholeFile() throws IOException {
+    MockHttpServletResponse res = get();
+    Assert.assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+    Assert.assertArrayEquals(contents, res.getContentAsByteArray());
+    Assert.assertEquals(contents.length, res.getContentLength());
+    Assert.assertEquals("bytes", res.getHeader("Accept-Ranges"));
+    Assert.assertNotNull(res.getHeader("ETag"));
+  }
+
+  @Test
+  public void testRange() throws IOException {
+    MockHttpServletResponse res = get("Range", "bytes=100-199");
+    Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, res.getStatus());
+    Assert.assertEquals("bytes 100-199/100000", res.getHeader("Content-Range"));
+    Assert.assertArrayEquals(Arrays.copyOfRange(contents, 100, 200), res.getContentAsByteArray());
+
+    res = get("Range", "bytes=99000-");
+    Assert.assertArrayEquals(Arrays.copyOfRange(contents, 99000, 100000), res.getContentAsByteArray());
+
+    res = get("Range", "bytes=-500");
+    Assert.assertEquals("bytes 99500-99999/100000", res.getHeader("Content-Range"));
+    Assert.assertArrayEquals(Arrays.copyOfRange(contents, 99500, 100000), res.getContentAsByteArray());
+
+    res = get("Range", "bytes=99990-200000");
+    Assert.assertArrayEquals(Arrays.copyOfRange(contents, 99990, 100000), res.getContentAsByteArray());
+
+    res = get("Range", "bytes=200000-");
+    Assert.assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, res.getStatus());
+    Assert.assertEquals("bytes */100000", res.getHeader("Content-Range"));
+
+    // malformed is ignored
+    res = get("Range", "bytes=abc-");
+    Assert.assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+    Assert.assertEquals(contents.length, res.getContentAsByteArray().length);
+  }
+
+  @Test
+  public void testMultipleRanges() throws IOException {
+    MockHttpServletResponse res = get("Range", "bytes=0-9, 500-599,-5");
+    Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, res.getStatus());
+    String contentType = res.getContentType();
+    Assert.assertTrue(contentType, contentType.startsWith("multipart/byteranges; boundary="));
+    String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+    byte[] body = res.getContentAsByteArray();
+    Assert.assertEquals(body.length, res.getContentLength());
+    String text = new String(body, "ISO-8859-1");
+    String[] parts = text.split("\r\n--" + boundary);
+    Assert.assertEquals(5, parts.length); // empty, 3 parts, "--"
+    Assert.assertEquals("--\r\n", parts[4]);
+
+    int[][] want = {{0, 10}, {500, 600}, {99995, 100000}};
+    for (int i = 0; i < 3; i++) {
+      String part = parts[i + 1];
+      Assert.assertTrue(part, part.contains("Content-Type: application/x-netcdf\r\n"));
+      Assert.assertTrue(part, part.contains("Content-Range: bytes " + want[i][0] + "-" + (want[i][1] - 1) + "/100000\r\n"));
+      byte[] data = part.substring(part.indexOf("\r\n\r\n") + 4).getBytes("ISO-8859-1");
+      Assert.assertArrayEquals(Arrays.copyOfRange(contents, want[i][0], want[i][1]), data);
+    }
+  }
+
+  @Test
+  public void testETag() throws IOException {
+    String etag = get().getHeader("ETag");
+
+    MockHttpServletResponse res = get("If-None-Match", etag);
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+    Assert.assertEquals(0, res.getContentAsByteArray().length);
+    res = get("If-None-Match", "\"other\", W/" + etag);
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+
+    // If-Range: the range if the file is unchanged, otherwise the whole file
+    res = get("Range", "bytes=0-9", "If-Range", etag);
+    Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, res.getStatus());
+    res = get("Range", "bytes=0-9", "If-Range", "\"other\"");
+    Assert.assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+    Assert.assertEquals(contents.length, res.getContentAsByteArray().length);
+
+    Assert.assertTrue(file.setLastModified(file.lastModified() + 10 * 1000));
+    Assert.assertNotEquals(etag, get().getHeader("ETag"));
+    res = get("Range", "bytes=0-9", "If-Range", etag);
+    Assert.assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+  }
+
+  @Test
+  public void testSendfile() throws IOException {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/thredds/fileServer/test.nc");
+    req.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+    req.addHeader("Range", "bytes=1000-");
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    ServletUtil.returnFile(req, res, file, "application/x-netcdf");
+
+    Assert.assertEquals(0, res.getContentAsByteArray().length); // sent by the container
+    Assert.assertEquals(file.getCanonicalPath(), req.getAttribute("org.apache.tomcat.sendfile.filename"));
+    Assert.assertEquals(1000L, req.getAttribute("org.apache.tomcat.sendfile.start"));
+    Assert.assertEquals(100000L, req.getAttribute("org.apache.tomcat.sendfile.end"));
+  }
+
+  @Test
+  public void testParseRange() {
+    Assert.assertNull(ServletUtil.parseRange("items=0-9", 100));
+    Assert.assertNull(ServletUtil.parseRange("bytes=9-0", 100));
+    Assert.assertNull(ServletUtil.parseRange("bytes=5", 100));
+    Assert.assertTrue(ServletUtil.parseRange("bytes=100-", 100).isEmpty());
+    Assert.assertTrue(ServletUtil.parseRange("bytes=-10", 0).isEmpty());
+    List<ServletUtil.ByteRange> ranges = ServletUtil.parseRange("bytes=200-300, 10-19", 100);
+    Assert.assertEquals(1, ranges.size());
+    Assert.assertEquals(10, ranges.get(0).start);
+    Assert.assertEquals(20, ranges.get(0).end);
+  }
+
+}
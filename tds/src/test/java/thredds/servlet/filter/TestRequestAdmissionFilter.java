@@ -0,0 +1,202 @@
+package thredds.servlet.filter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import thredds.server.exception.ServiceUnavailableException;
+import thredds.servlet.RequestAdmission;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Formatter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test that RequestAdmissionFilter limits concurrent requests and sheds the rest with 503.
+ */
+public class TestRequestAdmissionFilter {
+
+  private MockHttpServletRequest makeRequest(String path) {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/thredds" + path);
+    req.setContextPath("/thredds");
+    return req;
+  }
+
+  @After
+  public void clearLimits() {
+    RequestAdmission.setLimits("wms", 0, 0, 0, 0, 0);
+    RequestAdmission.setLimits("ncss", 0, 0, 0, 0, 0);
+    RequestAdmission.setMaxQueued(20);
+  }
+
+  @Test
+  public void testNoLimits() throws Exception {
+    MockFilterChain chain = new MockFilterChain();
+    MockHttpServletRequest req = makeRequest("/dap4/x");
+    new RequestAdmissionFilter().doFilter(req, new MockHttpServletResponse(), chain);
+    Assert.assertSame(req, chain.getRequest());
+
+    RequestAdmission.admitCost(req, Long.MAX_VALUE); // not admitted, so not limited
+  }
+
+  @Test
+  public void testShed() throws Exception {
+    RequestAdmission.setLimits("wms", 1, 1, 60, 0, 0);
+    checkShed();
+  }
+
+  // the queue of the service has room, but the total is bounded
+  @Test
+  public void testMaxQueued() throws Exception {
+    RequestAdmission.setLimits("wms", 1, 10, 60, 0, 0);
+    RequestAdmission.setMaxQueued(1);
+    checkShed();
+  }
+
+  // wms has one slot and room for one waiting request
+  private void checkShed() throws Exception {
+    RequestAdmission.setRetryAfter(7);
+    RequestAdmissionFilter filter = new RequestAdmissionFilter();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+
+    ExecutorService exec = Executors.newFixedThreadPool(2);
+    try {
+      // takes the only slot
+      Future<?> first = exec.submit(() -> {
+        filter.doFilter(makeRequest("/wms/x"), new MockHttpServletResponse(), (req, res) -> {
+          running.countDown();
+          try {
+            done.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+        return null;
+      });
+      Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+
+      // waits in the queue
+      MockHttpServletResponse secondRes = new MockHttpServletResponse();
+      Future<?> second = exec.submit(() -> {
+        filter.doFilter(makeRequest("/wms/x"), secondRes, (req, res) -> res.getWriter().print("ok"));
+        return null;
+      });
+      long start = System.currentTimeMillis();
+      while (!queuedMetric().contains("thredds_requests_queued{service=\"wms\",class=\"all\"} 1")) {
+        Assert.assertTrue(System.currentTimeMillis() - start < 10 * 1000);
+        Thread.sleep(10);
+      }
+
+      // queue is full
+      MockHttpServletResponse res = new MockHttpServletResponse();
+      MockFilterChain chain = new MockFilterChain();
+      filter.doFilter(makeRequest("/wms/x"), res, chain);
+      Assert.assertNull(chain.getRequest());
+      Assert.assertEquals(503, res.getStatus());
+      Assert.assertEquals("7", res.getHeader("Retry-After"));
+
+      // other services are not affected
+      chain = new MockFilterChain();
+      filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), chain);
+      Assert.assertNotNull(chain.getRequest());
+
+      done.countDown();
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(200, secondRes.getStatus());
+      Assert.assertEquals("ok", secondRes.getContentAsString());
+      Assert.assertTrue(queuedMetric().contains("thredds_requests_shed_total{service=\"wms\",class=\"all\"} 1"));
+
+    } finally {
+      done.countDown();
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMaxWait() throws Exception {
+    RequestAdmission.setLimits("wms", 1, 10, 0, 0, 0);
+    RequestAdmissionFilter filter = new RequestAdmissionFilter();
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    filter.doFilter(makeRequest("/wms/x"), new MockHttpServletResponse(),
+            (req, resp) -> filter.doFilter(makeRequest("/wms/x"), res, new MockFilterChain()));
+    Assert.assertEquals(503, res.getStatus());
+
+    // slot was released
+    MockFilterChain chain = new MockFilterChain();
+    filter.doFilter(makeRequest("/wms/x"), new MockHttpServletResponse(), chain);
+    Assert.assertNotNull(chain.getRequest());
+  }
+
+  @Test
+  public void testCost() throws Exception {
+    RequestAdmission.setLimits("ncss", 0, 0, 0, 1000, 1);
+    RequestAdmissionFilter filter = new RequestAdmissionFilter();
+
+    filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req1, res1) -> {
+      HttpServletRequest hreq = (HttpServletRequest) req1;
+      RequestAdmission.admitCost(hreq, 999);   // small
+      RequestAdmission.admitCost(hreq, 5000);  // takes the only large slot
+      RequestAdmission.admitCost(hreq, 5000);  // already has it
+
+      filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req2, res2) -> {
+        RequestAdmission.admitCost((HttpServletRequest) req2, 100);
+        try {
+          RequestAdmission.admitCost((HttpServletRequest) req2, 1000);
+          Assert.fail();
+        } catch (ServiceUnavailableException e) {
+          Assert.assertEquals(RequestAdmission.getRetryAfter(), e.getRetryAfter());
+        }
+      });
+    });
+
+    // large slot was released
+    filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(),
+            (req, res) -> RequestAdmission.admitCost((HttpServletRequest) req, 5000));
+  }
+
+  // a large request gives back its general slot, instead of holding it while it waits for a large one
+  @Test
+  public void testLargeReplacesSlot() throws Exception {
+    RequestAdmission.setLimits("ncss", 1, 0, 0, 1000, 1);
+    RequestAdmissionFilter filter = new RequestAdmissionFilter();
+
+    filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req1, res1) -> {
+      RequestAdmission.admitCost((HttpServletRequest) req1, 5000);
+
+      MockFilterChain chain = new MockFilterChain();
+      filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), chain);
+      Assert.assertNotNull(chain.getRequest());  // the general slot is free
+
+      filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req2, res2) -> {
+        try {
+          RequestAdmission.admitCost((HttpServletRequest) req2, 5000);
+          Assert.fail(); // no large slot, and no queue
+        } catch (ServiceUnavailableException e) {
+          // expected
+        }
+      });
+    });
+
+    // the general slot was given back once, so there is still only one
+    filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req, res) -> {
+      MockHttpServletResponse res3 = new MockHttpServletResponse();
+      filter.doFilter(makeRequest("/ncss/x"), res3, new MockFilterChain());
+      Assert.assertEquals(503, res3.getStatus());
+    });
+  }
+
+  private String queuedMetric() {
+    Formatter f = new Formatter();
+    RequestAdmission.writePrometheus(f);
+    return f.toString();
+  }
+
+}
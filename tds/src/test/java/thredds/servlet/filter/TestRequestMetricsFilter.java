@@ -0,0 +1,111 @@
+package thredds.servlet.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import thredds.servlet.RequestMetrics;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Formatter;
+
+/**
+ * Test that RequestMetricsFilter records requests in RequestMetrics.
+ */
+public class TestRequestMetricsFilter {
+
+  private MockHttpServletRequest makeRequest(String path) {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/thredds" + path);
+    req.setContextPath("/thredds");
+    return req;
+  }
+
+  private RequestMetrics.Service service(String path) {
+    return RequestMetrics.getService(makeRequest(path));
+  }
+
+  @Test
+  public void testServices() {
+    Assert.assertEquals("opendap", service("/dodsC/test/file.nc.dds").getName());
+    Assert.assertEquals("fileServer", service("/fileServer/test/file.nc").getName());
+    Assert.assertEquals("ncss", service("/ncss/grid/test/file.nc").getName());
+    Assert.assertEquals("catalog", service("/catalog/catalog.xml").getName());
+    Assert.assertEquals("other", service("/catalog.xml").getName());
+    Assert.assertEquals("other", service("/dodsCX/file.nc").getName());
+    Assert.assertEquals("other", service("").getName());
+  }
+
+  @Test
+  public void testRequests() throws Exception {
+    RequestMetricsFilter filter = new RequestMetricsFilter();
+    RequestMetrics.Service opendap = service("/dodsC/x");
+    long count = opendap.getCount();
+    long sent = opendap.getBytesSent();
+
+    // output stream
+    FilterChain chain = (req, res) -> {
+      Assert.assertEquals(1, opendap.getInProgress());
+      res.getOutputStream().write(new byte[100]);
+      res.getOutputStream().write(1);
+    };
+    filter.doFilter(makeRequest("/dodsC/x"), new MockHttpServletResponse(), chain);
+    Assert.assertEquals(count + 1, opendap.getCount());
+    Assert.assertEquals(sent + 101, opendap.getBytesSent());
+    Assert.assertEquals(0, opendap.getInProgress());
+
+    // writer
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    filter.doFilter(makeRequest("/dodsC/x"), res, (req, resp) -> resp.getWriter().print("hello"));
+    Assert.assertEquals(sent + 106, opendap.getBytesSent());
+    Assert.assertEquals("hello", res.getContentAsString());
+
+    // sendfile
+    RequestMetrics.Service fileServer = service("/fileServer/x");
+    long read = fileServer.getBytesRead();
+    sent = fileServer.getBytesSent();
+    MockHttpServletRequest req = makeRequest("/fileServer/x");
+    filter.doFilter(req, new MockHttpServletResponse(), (rq, rs) -> {
+      rq.setAttribute("org.apache.tomcat.sendfile.start", 1000L);
+      rq.setAttribute("org.apache.tomcat.sendfile.end", 5000L);
+    });
+    Assert.assertEquals(read + 4000, fileServer.getBytesRead());
+    Assert.assertEquals(sent + 4000, fileServer.getBytesSent());
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    RequestMetricsFilter filter = new RequestMetricsFilter();
+    filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req, res) -> ((HttpServletResponse) res).sendError(404));
+    try {
+      filter.doFilter(makeRequest("/ncss/x"), new MockHttpServletResponse(), (req, res) -> {
+        throw new ServletException("failed");
+      });
+      Assert.fail();
+    } catch (ServletException e) {
+      // expected
+    }
+    Assert.assertEquals(0, service("/ncss/x").getInProgress());
+
+    Formatter f = new Formatter();
+    RequestMetrics.writePrometheus(f);
+    String out = f.toString();
+    Assert.assertTrue(out, out.contains("thredds_requests_total{service=\"ncss\",status=\"4xx\"}"));
+    Assert.assertTrue(out, out.contains("thredds_requests_total{service=\"ncss\",status=\"5xx\"}"));
+    long count = service("/ncss/x").getCount();
+    Assert.assertTrue(out, out.contains("thredds_request_duration_seconds_bucket{service=\"ncss\",le=\"+Inf\"} " + count + "\n"));
+    Assert.assertTrue(out, out.contains("thredds_request_duration_seconds_count{service=\"ncss\"} " + count + "\n"));
+  }
+
+  @Test
+  public void testPassThrough() throws IOException, ServletException {
+    MockFilterChain chain = new MockFilterChain();
+    MockHttpServletRequest req = makeRequest("/wms/x");
+    new RequestMetricsFilter().doFilter(req, new MockHttpServletResponse(), chain);
+    Assert.assertSame(req, chain.getRequest());
+  }
+
+}